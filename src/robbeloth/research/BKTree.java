@@ -0,0 +1,192 @@
+package robbeloth.research;
+
+import java.util.Arrays;
+
+/**
+ * Burkhard-Keller tree over the chain codes of a {@link ChainCodeCorpus}
+ * under the Levenshtein or Damerau-Levenshtein distance.<br/><br/>
+ *
+ * Every row is a node, and each child hangs from its parent by its
+ * distance to the parent, which no two children of one node share. Both
+ * distances are metrics, so when a sample is d from a node and the matches
+ * kept so far are at most t away, only the children hung at d-t through
+ * d+t can hold anything closer. A nearest neighbour search computes the
+ * distance to the nodes along those branches instead of to every row,
+ * passing over any node whose {@link DirectionHistograms} bound already
+ * rules it and everything below it out, and keeps exactly the model
+ * segments a full scan would.<br/><br/>
+ *
+ * Rows appended to the model database are inserted into a copy of the
+ * tree, see {@link #extend(ChainCodeCorpus)}, so a new snapshot does not
+ * rebuild it. A tree is never changed once it is shared.
+ */
+public final class BKTree {
+	private static final int NONE = -1;
+
+	private final ChainCodeCorpus corpus;
+	private final boolean transpositions;	// Damerau-Levenshtein rather than Levenshtein
+	private final int rows;					// rows of corpus in the tree
+	private final int[] firstChild;			// first child of each row
+	private final int[] nextSibling;		// next child of the row's parent
+	private final int[] edges;				// distance of each row to its parent
+	private int height = 0;
+
+	/**
+	 * Build the tree of a snapshot
+	 * @param corpus -- model chain codes
+	 * @param transpositions -- true for the Damerau-Levenshtein distance,
+	 * false for Levenshtein
+	 */
+	BKTree(ChainCodeCorpus corpus, boolean transpositions) {
+		this(corpus, transpositions, null);
+	}
+
+	/* copy the tree of an earlier snapshot, whose rows this one starts
+	 * with, and insert the rest */
+	private BKTree(ChainCodeCorpus corpus, boolean transpositions, BKTree earlier) {
+		this.corpus = corpus;
+		this.transpositions = transpositions;
+		this.rows = corpus.size();
+		int from = 0;
+		if (earlier != null) {
+			from = earlier.rows;
+			firstChild = Arrays.copyOf(earlier.firstChild, rows);
+			nextSibling = Arrays.copyOf(earlier.nextSibling, rows);
+			edges = Arrays.copyOf(earlier.edges, rows);
+			height = earlier.height;
+		}
+		else {
+			firstChild = new int[rows];
+			nextSibling = new int[rows];
+			edges = new int[rows];
+		}
+		for (int k = from; k < rows; k++) {
+			firstChild[k] = NONE;
+			nextSibling[k] = NONE;
+			insert(k);
+		}
+	}
+
+	/**
+	 * Tree of a newer snapshot made by appending rows to this one's
+	 * @param newer -- snapshot holding this tree's rows first
+	 * @return tree with the appended rows inserted, this tree is unchanged
+	 */
+	BKTree extend(ChainCodeCorpus newer) {
+		return new BKTree(newer, transpositions, this);
+	}
+
+	/**
+	 * @return number of rows in the tree
+	 */
+	public int size() {
+		return rows;
+	}
+
+	/**
+	 * @return most edges from the root to any row
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return true when the tree holds Damerau-Levenshtein distances
+	 */
+	public boolean hasTranspositions() {
+		return transpositions;
+	}
+
+	/**
+	 * Find the model segments nearest a sample
+	 * @param sample -- sample chain code in the form the matchers compare
+	 * @param k -- number of model segments to keep
+	 * @return the k nearest model segments by database id, the same a
+	 * scan of every row keeps
+	 */
+	public TopMatches nearest(String sample, int k) {
+		TopMatches top = new TopMatches(k, false);
+		if (rows == 0) {
+			return top;
+		}
+		BitParallelPattern pattern = transpositions ? null : new BitParallelPattern(sample);
+		DirectionHistograms histograms = corpus.getDirectionHistograms();
+		int[] sampleHistogram = DirectionHistograms.histogramOf(sample);
+		int[] stack = new int[rows];
+		int depth = 0;
+		stack[depth++] = 0;
+		while (depth > 0) {
+			int node = stack[--depth];
+
+			/* a child hung at e is at least d - e from the sample, so past
+			 * the worst kept match plus the farthest child neither the node
+			 * nor anything below it can be kept and the exact distance is
+			 * not needed */
+			int bound = top.getIntBound();
+			int farthest = 0;
+			for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+				farthest = Math.max(farthest, edges[c]);
+			}
+			int reach = (int) Math.min(Integer.MAX_VALUE, (long) bound + farthest);
+			if (histograms.editDistanceBound(sampleHistogram, node) > reach) {
+				continue;	// the direction counts alone put it past reach
+			}
+			String model = corpus.getMatchString(node);
+			int d = transpositions ?
+					EditDistance.damerau(sample, model, reach) :
+					pattern.levenshtein(model, reach);
+			if (d > reach) {
+				continue;
+			}
+			top.offer(corpus.getId(node), d);
+
+			/* and at least e - d, the children nearest d are pushed last so
+			 * they are searched first and tighten the bound soonest */
+			bound = top.getIntBound();
+			int pushed = depth;
+			for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+				int gap = Math.abs(d - edges[c]);
+				if (gap <= bound) {
+					int p = depth++;
+					while ((p > pushed) && (Math.abs(d - edges[stack[p-1]]) < gap)) {
+						stack[p] = stack[p-1];
+						p--;
+					}
+					stack[p] = c;
+				}
+			}
+		}
+		return top;
+	}
+
+	/* hang row k below the first node along its path without a child at
+	 * its distance */
+	private void insert(int k) {
+		if (k == 0) {
+			return;		// the first row is the root
+		}
+		String text = corpus.getMatchString(k);
+		BitParallelPattern pattern = transpositions ? null : new BitParallelPattern(text);
+		int node = 0;
+		int level = 1;
+		while (true) {
+			String model = corpus.getMatchString(node);
+			int d = transpositions ?
+					EditDistance.damerau(text, model, Integer.MAX_VALUE) :
+					pattern.levenshtein(model, Integer.MAX_VALUE);
+			int child = firstChild[node];
+			while ((child != NONE) && (edges[child] != d)) {
+				child = nextSibling[child];
+			}
+			if (child == NONE) {
+				edges[k] = d;
+				nextSibling[k] = firstChild[node];
+				firstChild[node] = k;
+				height = Math.max(height, level);
+				return;
+			}
+			node = child;
+			level++;
+		}
+	}
+}
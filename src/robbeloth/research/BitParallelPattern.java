@@ -0,0 +1,290 @@
+package robbeloth.research;
+
+import java.util.HashMap;
+
+/**
+ * Sample chain code prepared for bit-parallel comparison against many
+ * model chain codes.<br/><br/>
+ *
+ * A chain code string has very few distinct symbols, the directions 0
+ * through 7 and, when matching the comma separated form, the comma, so
+ * for each symbol the positions of the sample holding it fit in a bit
+ * vector of one bit per character. The vectors
+ * are built once per sample segment, and then each column of the dynamic
+ * programming matrix is computed 64 rows at a time with Myers' algorithm
+ * as described by Hyyro, using as many 64 bit words as the sample needs.
+ * A model chain code of length n costs about n times the number of words
+ * instead of n times the sample length. The longest common subsequence
+ * is found the same way without the matrix the java-string-similarity
+ * classes allocate for every comparison.<br/><br/>
+ *
+ * The edit distances equal those of {@link EditDistance} for the same
+ * bound, and the subsequence distances those of java-string-similarity.
+ */
+public final class BitParallelPattern {
+	private static final int WORD_BITS = 64;
+
+	/* symbols below this are looked up in a table, anything else in a map */
+	private static final int TABLE_SIZE = 128;
+
+	private final String pattern;
+	private final int length;
+	private final int words;
+	private final long lastBit;				// row m in the last word
+	private final byte[] symbolTable;		// symbol number of each ascii char, 0 if absent
+	private final HashMap<Character, Integer> otherSymbols;
+	private final long[] masks;				// symbol s, word w at s*words+w, symbol 0 all clear
+
+	/**
+	 * Build the match masks of a sample chain code
+	 * @param pattern -- sample chain code
+	 */
+	public BitParallelPattern(String pattern) {
+		this.pattern = pattern;
+		this.length = pattern.length();
+		this.words = Math.max(1, (length + WORD_BITS - 1) / WORD_BITS);
+		this.lastBit = 1L << ((Math.max(length, 1) - 1) % WORD_BITS);
+
+		symbolTable = new byte[TABLE_SIZE];
+		otherSymbols = new HashMap<Character, Integer>();
+		int symbols = 1;
+		for (int i = 0; i < length; i++) {
+			char c = pattern.charAt(i);
+			if ((c < TABLE_SIZE) && (symbolTable[c] == 0)) {
+				symbolTable[c] = (byte) symbols++;
+			}
+			else if ((c >= TABLE_SIZE) && (!otherSymbols.containsKey(c))) {
+				otherSymbols.put(c, symbols++);
+			}
+		}
+
+		masks = new long[symbols * words];
+		for (int i = 0; i < length; i++) {
+			int s = symbolOf(pattern.charAt(i));
+			masks[(s * words) + (i / WORD_BITS)] |= 1L << (i % WORD_BITS);
+		}
+	}
+
+	/**
+	 * @return sample chain code the masks were built from
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return number of characters in the sample chain code
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Levenshtein distance from the sample to a model chain code
+	 * @param text -- model chain code
+	 * @param bound -- largest distance of interest, Integer.MAX_VALUE for
+	 * no bound
+	 * @return the distance if it is at most bound, otherwise a value
+	 * greater than bound
+	 */
+	public int levenshtein(String text, int bound) {
+		if (bandIsCheaper(text, bound)) {
+			return EditDistance.levenshtein(pattern, text, bound);
+		}
+		return myers(text, bound, false);
+	}
+
+	/**
+	 * Optimal string alignment distance from the sample to a model chain
+	 * code
+	 * @param text -- model chain code
+	 * @param bound -- largest distance of interest, Integer.MAX_VALUE for
+	 * no bound
+	 * @return the distance if it is at most bound, otherwise a value
+	 * greater than bound
+	 */
+	public int optimalStringAlignment(String text, int bound) {
+		if (bandIsCheaper(text, bound)) {
+			return EditDistance.optimalStringAlignment(pattern, text, bound);
+		}
+		return myers(text, bound, true);
+	}
+
+	/**
+	 * Levenshtein distance divided by the length of the longer string, 0
+	 * for two empty strings
+	 * @param text -- model chain code
+	 * @return normalized distance between 0 and 1
+	 */
+	public double normalizedLevenshtein(String text) {
+		int maxLength = Math.max(length, text.length());
+		if (maxLength == 0) {
+			return 0.0;
+		}
+		return levenshtein(text, Integer.MAX_VALUE) / (double) maxLength;
+	}
+
+	/**
+	 * Length of the longest common subsequence of the sample and a model
+	 * chain code, computed with the Allison-Dix recurrence as refined by
+	 * Hyyro, a zero bit of the vector marks a row where the subsequence
+	 * grows
+	 * @param text -- model chain code
+	 * @return number of characters in the longest common subsequence
+	 */
+	public int lcsLength(String text) {
+		if (length == 0) {
+			return 0;
+		}
+		long[] v = new long[words];
+		for (int w = 0; w < words; w++) {
+			v[w] = ~0L;
+		}
+
+		for (int j = 0; j < text.length(); j++) {
+			int base = symbolOf(text.charAt(j)) * words;
+			if (base == 0) {
+				continue;	// nothing in the sample matches, column unchanged
+			}
+			long carry = 0;
+			for (int w = 0; w < words; w++) {
+				long u = v[w] & masks[base + w];
+				long sum = v[w] + u + carry;
+
+				/* carry out of the unsigned sum of v, u and carry */
+				carry = (Long.compareUnsigned(sum, v[w]) < 0) ||
+						((carry != 0) && (sum == v[w])) ? 1 : 0;
+				v[w] = sum | (v[w] & ~u);
+			}
+		}
+
+		int lcs = 0;
+		for (int w = 0; w < words; w++) {
+			long zeros = ~v[w];
+			if (w == words - 1) {
+				zeros &= (lastBit << 1) - 1;
+			}
+			lcs += Long.bitCount(zeros);
+		}
+		return lcs;
+	}
+
+	/**
+	 * Longest common subsequence distance, the characters of either
+	 * string outside the longest common subsequence
+	 * @param text -- model chain code
+	 * @return sample length plus model length less twice the longest
+	 * common subsequence
+	 */
+	public int lcsDistance(String text) {
+		return length + text.length() - (2 * lcsLength(text));
+	}
+
+	/**
+	 * Metric longest common subsequence distance
+	 * @param text -- model chain code
+	 * @return one less the longest common subsequence over the longer
+	 * length, 0 for two empty strings
+	 */
+	public double metricLcsDistance(String text) {
+		int maxLength = Math.max(length, text.length());
+		if (maxLength == 0) {
+			return 0.0;
+		}
+		return 1.0 - ((1.0 * lcsLength(text)) / maxLength);
+	}
+
+	/* symbol number of a character, 0 when the sample does not hold it */
+	private int symbolOf(char c) {
+		if (c < TABLE_SIZE) {
+			return symbolTable[c];
+		}
+		Integer s = otherSymbols.get(c);
+		return (s != null) ? s : 0;
+	}
+
+	/* a narrow band of single cells beats whole columns of words, roughly
+	 * six operations a cell against twenty a word */
+	private boolean bandIsCheaper(String text, int bound) {
+		long band = (2L * Math.min(bound, Math.max(length, text.length()))) + 1;
+		return (band * 6) < ((long) words * 20);
+	}
+
+	/* Myers' column recurrence over the words of the sample, with Hyyro's
+	 * transposition term when osa is set, the score is the last row of
+	 * the current column */
+	private int myers(String text, int bound, boolean osa) {
+		int n = text.length();
+		int exceeded = (bound == Integer.MAX_VALUE) ? bound : bound + 1;
+		if (length == 0) {
+			return (n <= bound) ? n : exceeded;
+		}
+		if (Math.abs(length - n) > bound) {
+			return exceeded;
+		}
+
+		long[] vp = new long[words];
+		long[] vn = new long[words];
+		long[] d0 = new long[words];
+		long[] lastMatch = new long[words];	// match masks of the previous column
+		long[] curMatch = new long[words];
+		for (int w = 0; w < words; w++) {
+			vp[w] = ~0L;
+		}
+		int score = length;
+
+		for (int j = 0; j < n; j++) {
+			int base = symbolOf(text.charAt(j)) * words;
+
+			/* the top row counts up by one each column */
+			long hpCarry = 1;
+			long hnCarry = 0;
+			long prevD0 = 0;
+			long prevMatch = 0;
+			for (int w = 0; w < words; w++) {
+				long match = masks[base + w];
+				long x = match;
+				long tr = 0;
+				if (osa) {
+					tr = ((((~d0[w]) & match) << 1) |
+						  (((~prevD0) & prevMatch) >>> (WORD_BITS - 1))) & lastMatch[w];
+					prevD0 = d0[w];
+					prevMatch = match;
+					curMatch[w] = match;
+				}
+				x |= hnCarry;
+				long d = (((x & vp[w]) + vp[w]) ^ vp[w]) | x | vn[w] | tr;
+				long hp = vn[w] | ~(d | vp[w]);
+				long hn = d & vp[w];
+
+				long hpIn = hpCarry;
+				long hnIn = hnCarry;
+				if (w < words - 1) {
+					hpCarry = hp >>> (WORD_BITS - 1);
+					hnCarry = hn >>> (WORD_BITS - 1);
+				}
+				else {
+					hpCarry = ((hp & lastBit) != 0) ? 1 : 0;
+					hnCarry = ((hn & lastBit) != 0) ? 1 : 0;
+				}
+				hp = (hp << 1) | hpIn;
+				hn = (hn << 1) | hnIn;
+				vp[w] = hn | ~(d | hp);
+				vn[w] = hp & d;
+				d0[w] = d;
+			}
+			score += (int) (hpCarry - hnCarry);
+			if (osa) {
+				long[] t = lastMatch;
+				lastMatch = curMatch;
+				curMatch = t;
+			}
+
+			/* each remaining column lowers the score by at most one */
+			if ((long) score - (n - j - 1) > bound) {
+				return exceeded;
+			}
+		}
+		return (score <= bound) ? score : exceeded;
+	}
+}
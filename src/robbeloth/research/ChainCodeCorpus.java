@@ -0,0 +1,480 @@
+package robbeloth.research;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only, in-memory snapshot of the local (chain code) relation of the
+ * model database.<br/><br/>
+ *
+ * The string similarity matchers compare every sample segment against every
+ * model segment. Asking the database for each model chain code turns a single
+ * match into millions of JDBC round trips, so the whole relation is loaded
+ * once into parallel primitive arrays ordered by id and shared by all the
+ * matcher threads. The snapshot remembers the database modification epoch it
+ * was loaded at, see {@link DatabaseModule#getChainCodeCorpus()}, so that a
+ * stale copy is never used after the model database changes.
+ */
+public final class ChainCodeCorpus {
+	/* whether the metric matchers search the trees rather than scanning
+	 * every row, set to false to always scan */
+	public static final String METRIC_TREE_PROPERTY = "obstruction.matcher.metric_tree";
+	private static final boolean USE_METRIC_TREES = 
+			Boolean.parseBoolean(System.getProperty(METRIC_TREE_PROPERTY, "true"));
+
+	private final long epoch;				// database epoch snapshot was taken at
+	private final int[] ids;				// database ids, ascending
+	private final int[] fileIndex;			// index into fileNames for each row
+	private final String[] fileNames;		// distinct model image filenames
+	private final char[] segmentTypes;		// S, R, Y, or Z for each row
+	private final short[] segmentRotations;	// rotation of each row in degrees
+	private final byte[] codes;				// directions of every row back to back
+	private final int[] codeOffsets;		// row k is codes[codeOffsets[k]..codeOffsets[k+1])
+	private final String[] chainCodeStrings;	// comma separated form, built on demand
+	private final String[] matchStrings;		// form the matchers compare, built on demand
+	private final HashMap<Integer, QGramProfiles> qgramProfiles =
+			new HashMap<Integer, QGramProfiles>();	// by gram length, built on demand
+	private final HashMap<Integer, MinHashIndex> minHashIndexes =
+			new HashMap<Integer, MinHashIndex>();	// by shingle length, built on demand
+	private DirectionHistograms histograms = null;	// built on demand
+	private BKTree levenshteinTree = null;			// built or extended on demand
+	private BKTree damerauTree = null;
+	private VPTree metricLcsTree = null;
+	private BKTree earlierLevenshteinTree = null;	// trees of the snapshot this one extends
+	private BKTree earlierDamerauTree = null;
+	private VPTree earlierMetricLcsTree = null;
+
+	/**
+	 * Build a snapshot from already loaded columns, all arrays must be the
+	 * same length and ordered by ascending id
+	 * @param epoch -- database modification epoch the data was read at
+	 * @param ids -- unique database identifiers
+	 * @param fileIndex -- position of each row's filename in fileNames
+	 * @param fileNames -- distinct model image filenames
+	 * @param segmentTypes -- segment type of each row
+	 * @param segmentRotations -- segment rotation of each row
+	 * @param codes -- chain code directions (0-7) of every row back to back
+	 * @param codeOffsets -- start of each row's directions in codes plus
+	 * one final entry holding the total number of directions
+	 */
+	ChainCodeCorpus(long epoch, int[] ids, int[] fileIndex, String[] fileNames,
+			        char[] segmentTypes, short[] segmentRotations,
+			        byte[] codes, int[] codeOffsets) {
+		this.epoch = epoch;
+		this.ids = ids;
+		this.fileIndex = fileIndex;
+		this.fileNames = fileNames;
+		this.segmentTypes = segmentTypes;
+		this.segmentRotations = segmentRotations;
+		this.codes = codes;
+		this.codeOffsets = codeOffsets;
+		this.chainCodeStrings = new String[ids.length];
+		this.matchStrings = new String[ids.length];
+	}
+
+	/**
+	 * Combine the snapshots of several model database shards into one
+	 * @param epoch -- database modification epoch the parts were read at
+	 * @param parts -- snapshots in shard order, so ids keep ascending
+	 * @return snapshot holding every row of every part
+	 */
+	static ChainCodeCorpus merge(long epoch, List<ChainCodeCorpus> parts) {
+		int n = 0;
+		int fileCnt = 0;
+		int codeCnt = 0;
+		for (ChainCodeCorpus part : parts) {
+			n += part.ids.length;
+			fileCnt += part.fileNames.length;
+			codeCnt += part.codes.length;
+		}
+		int[] ids = new int[n];
+		int[] fileIndex = new int[n];
+		String[] fileNames = new String[fileCnt];
+		char[] segmentTypes = new char[n];
+		short[] segmentRotations = new short[n];
+		byte[] codes = new byte[codeCnt];
+		int[] codeOffsets = new int[n+1];
+		int row = 0;
+		int file = 0;
+		int code = 0;
+		for (ChainCodeCorpus part : parts) {
+			int rows = part.ids.length;
+			System.arraycopy(part.ids, 0, ids, row, rows);
+			System.arraycopy(part.segmentTypes, 0, segmentTypes, row, rows);
+			System.arraycopy(part.segmentRotations, 0, segmentRotations, row, rows);
+			System.arraycopy(part.fileNames, 0, fileNames, file, part.fileNames.length);
+			System.arraycopy(part.codes, 0, codes, code, part.codes.length);
+			for (int k = 0; k < rows; k++) {
+				fileIndex[row + k] = part.fileIndex[k] + file;
+				codeOffsets[row + k] = part.codeOffsets[k] + code;
+			}
+			row += rows;
+			file += part.fileNames.length;
+			code += part.codes.length;
+		}
+		codeOffsets[n] = code;
+		return new ChainCodeCorpus(epoch, ids, fileIndex, fileNames, segmentTypes,
+				                   segmentRotations, codes, codeOffsets);
+	}
+
+	/**
+	 * Database modification epoch this snapshot was loaded at
+	 * @return epoch value
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Number of model segments in the snapshot
+	 * @return number of rows
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Largest id held in the snapshot
+	 * @return last id or 0 if the snapshot is empty
+	 */
+	public int getLastId() {
+		return (ids.length > 0) ? ids[ids.length-1] : 0;
+	}
+
+	/**
+	 * Database id of the kth row
+	 * @param k -- row position in the snapshot
+	 * @return unique database id
+	 */
+	public int getId(int k) {
+		return ids[k];
+	}
+
+	/**
+	 * Chain code of the kth row in the comma separated form produced by
+	 * {@link ChainCodingContainer#chainCodeString()}. The string is built
+	 * the first time it is asked for and then reused.
+	 * @param k -- row position in the snapshot
+	 * @return comma separated chain code
+	 */
+	public String getChainCode(int k) {
+		String cc = chainCodeStrings[k];
+		if (cc == null) {
+			/* racing threads build equal strings, either may win */
+			cc = PackedChainCode.toChainCodeString(codes, codeOffsets[k],
+					                               getCodeLength(k));
+			chainCodeStrings[k] = cc;
+		}
+		return cc;
+	}
+
+	/**
+	 * Chain code of the kth row in the form the string matchers compare,
+	 * see {@link PackedChainCode#toMatchString(byte[], int, int)}. The
+	 * string is built the first time it is asked for and then reused.
+	 * @param k -- row position in the snapshot
+	 * @return compact or comma separated chain code
+	 */
+	public String getMatchString(int k) {
+		if (PackedChainCode.isMatchingCommaSeparated()) {
+			return getChainCode(k);
+		}
+		String cc = matchStrings[k];
+		if (cc == null) {
+			/* racing threads build equal strings, either may win */
+			cc = PackedChainCode.toCompactString(codes, codeOffsets[k],
+					                             getCodeLength(k));
+			matchStrings[k] = cc;
+		}
+		return cc;
+	}
+
+	/**
+	 * Directions of every row back to back, shared with the snapshot so
+	 * it must not be modified
+	 * @return one byte (0-7) per direction
+	 */
+	byte[] getCodes() {
+		return codes;
+	}
+
+	/**
+	 * Position of the kth row's first direction in {@link #getCodes()}
+	 * @param k -- row position in the snapshot
+	 * @return offset into the directions array
+	 */
+	public int getCodeOffset(int k) {
+		return codeOffsets[k];
+	}
+
+	/**
+	 * Number of directions in the kth row's chain code
+	 * @param k -- row position in the snapshot
+	 * @return chain code length
+	 */
+	public int getCodeLength(int k) {
+		return codeOffsets[k+1] - codeOffsets[k];
+	}
+
+	/**
+	 * Copy of the kth row's directions
+	 * @param k -- row position in the snapshot
+	 * @return one byte (0-7) per direction
+	 */
+	public byte[] copyCodes(int k) {
+		return Arrays.copyOfRange(codes, codeOffsets[k], codeOffsets[k+1]);
+	}
+
+	/**
+	 * Q-gram profiles of every row, built the first time a gram length is
+	 * asked for and then shared by every matcher using this snapshot
+	 * @param q -- gram length
+	 * @return profiles of the rows
+	 */
+	public QGramProfiles getQGramProfiles(int q) {
+		synchronized (qgramProfiles) {
+			QGramProfiles p = qgramProfiles.get(q);
+			if (p == null) {
+				long tic = System.nanoTime();
+				p = new QGramProfiles(this, q);
+				qgramProfiles.put(q, p);
+				long toc = System.nanoTime();
+				System.out.println("Built " + q + "-gram profiles of " + ids.length 
+						+ " segments in " 
+						+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+						+ " ms");
+			}
+			return p;
+		}
+	}
+
+	/**
+	 * MinHash band tables of every row, built the first time a shingle
+	 * length is asked for with the bands and rows of the
+	 * obstruction.matcher.lsh_bands and obstruction.matcher.lsh_rows
+	 * properties
+	 * @param q -- shingle (gram) length
+	 * @return band tables of the rows
+	 */
+	public MinHashIndex getMinHashIndex(int q) {
+		QGramProfiles profiles = getQGramProfiles(q);
+		synchronized (minHashIndexes) {
+			MinHashIndex index = minHashIndexes.get(q);
+			if (index == null) {
+				long tic = System.nanoTime();
+				index = new MinHashIndex(profiles, MinHashIndex.getDefaultBands(), 
+						                 MinHashIndex.getDefaultRows());
+				minHashIndexes.put(q, index);
+				long toc = System.nanoTime();
+				System.out.println("Built " + index.getBands() + " LSH bands of " 
+						+ index.getRows() + " MinHash rows for " + ids.length 
+						+ " segments in " 
+						+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+						+ " ms");
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Direction histograms of every row, built the first time they are
+	 * asked for and then shared by every matcher using this snapshot
+	 * @return histograms of the rows
+	 */
+	public synchronized DirectionHistograms getDirectionHistograms() {
+		if (histograms == null) {
+			long tic = System.nanoTime();
+			histograms = new DirectionHistograms(this);
+			long toc = System.nanoTime();
+			System.out.println("Built direction histograms of " + ids.length 
+					+ " segments in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+		}
+		return histograms;
+	}
+
+	/**
+	 * Whether the Levenshtein, Damerau-Levenshtein, and metric longest
+	 * common subsequence matchers search metric trees
+	 * @return false when obstruction.matcher.metric_tree is set to false
+	 */
+	public static boolean isUsingMetricTrees() {
+		return USE_METRIC_TREES;
+	}
+
+	/**
+	 * Burkhard-Keller tree of the rows under the Levenshtein distance,
+	 * built or extended from the previous snapshot's the first time it is
+	 * asked for
+	 * @return tree over every row
+	 */
+	public synchronized BKTree getLevenshteinTree() {
+		if (levenshteinTree == null) {
+			long tic = System.nanoTime();
+			levenshteinTree = (earlierLevenshteinTree != null) ? 
+					earlierLevenshteinTree.extend(this) : new BKTree(this, false);
+			earlierLevenshteinTree = null;
+			long toc = System.nanoTime();
+			System.out.println("Built Levenshtein tree of " + ids.length 
+					+ " segments, height " + levenshteinTree.getHeight() + ", in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+		}
+		return levenshteinTree;
+	}
+
+	/**
+	 * Burkhard-Keller tree of the rows under the Damerau-Levenshtein
+	 * distance, built or extended from the previous snapshot's the first
+	 * time it is asked for
+	 * @return tree over every row
+	 */
+	public synchronized BKTree getDamerauTree() {
+		if (damerauTree == null) {
+			long tic = System.nanoTime();
+			damerauTree = (earlierDamerauTree != null) ? 
+					earlierDamerauTree.extend(this) : new BKTree(this, true);
+			earlierDamerauTree = null;
+			long toc = System.nanoTime();
+			System.out.println("Built Damerau-Levenshtein tree of " + ids.length 
+					+ " segments, height " + damerauTree.getHeight() + ", in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+		}
+		return damerauTree;
+	}
+
+	/**
+	 * Vantage point tree of the rows under the metric longest common
+	 * subsequence distance, built or extended from the previous
+	 * snapshot's the first time it is asked for
+	 * @return tree over every row
+	 */
+	public synchronized VPTree getMetricLcsTree() {
+		if (metricLcsTree == null) {
+			long tic = System.nanoTime();
+			metricLcsTree = (earlierMetricLcsTree != null) ? 
+					earlierMetricLcsTree.extend(this) : new VPTree(this);
+			earlierMetricLcsTree = null;
+			long toc = System.nanoTime();
+			System.out.println("Built metric LCS tree of " + metricLcsTree.size() 
+					+ " segments, " + metricLcsTree.getUnindexed() + " more scanned, in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+		}
+		return metricLcsTree;
+	}
+
+	/**
+	 * Take over the metric trees of the snapshot this one replaces, so
+	 * they only need the rows appended since rather than a rebuild. Trees
+	 * are only taken when every row of the earlier snapshot is still at
+	 * the same position with the same chain code.
+	 * @param earlier -- previous snapshot of the model database
+	 */
+	void inheritMetricTrees(ChainCodeCorpus earlier) {
+		BKTree lev;
+		BKTree dam;
+		VPTree mlcs;
+		synchronized (earlier) {
+			lev = (earlier.levenshteinTree != null) ? 
+					earlier.levenshteinTree : earlier.earlierLevenshteinTree;
+			dam = (earlier.damerauTree != null) ? 
+					earlier.damerauTree : earlier.earlierDamerauTree;
+			mlcs = (earlier.metricLcsTree != null) ? 
+					earlier.metricLcsTree : earlier.earlierMetricLcsTree;
+		}
+		if (((lev == null) && (dam == null) && (mlcs == null)) || (!startsWith(earlier))) {
+			return;
+		}
+		synchronized (this) {
+			earlierLevenshteinTree = lev;
+			earlierDamerauTree = dam;
+			earlierMetricLcsTree = mlcs;
+		}
+	}
+
+	/* whether this snapshot holds every row of another, in the same
+	 * positions, followed by any rows appended since */
+	private boolean startsWith(ChainCodeCorpus other) {
+		int n = other.ids.length;
+		if (n > ids.length) {
+			return false;
+		}
+		for (int k = 0; k < n; k++) {
+			if ((ids[k] != other.ids[k]) || (codeOffsets[k+1] != other.codeOffsets[k+1])) {
+				return false;
+			}
+		}
+		for (int i = 0; i < other.codeOffsets[n]; i++) {
+			if (codes[i] != other.codes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Model image filename of the kth row
+	 * @param k -- row position in the snapshot
+	 * @return filename as stored in the database
+	 */
+	public String getFileName(int k) {
+		return fileNames[fileIndex[k]];
+	}
+
+	/**
+	 * Segment type of the kth row
+	 * @param k -- row position in the snapshot
+	 * @return S, R, Y, or Z
+	 */
+	public char getSegmentType(int k) {
+		return segmentTypes[k];
+	}
+
+	/**
+	 * Segment rotation of the kth row
+	 * @param k -- row position in the snapshot
+	 * @return rotation in degrees
+	 */
+	public short getSegmentRotation(int k) {
+		return segmentRotations[k];
+	}
+
+	/**
+	 * Find the row position of a database id
+	 * @param id -- unique database id
+	 * @return row position or a negative value if the id is not present
+	 */
+	public int indexOf(int id) {
+		return Arrays.binarySearch(ids, id);
+	}
+
+	/**
+	 * Equivalent of {@link DatabaseModule#getFileName(int)} that does
+	 * not go back to the database
+	 * @param id -- unique database id
+	 * @return filename of model image, N/A for a negative id, or null
+	 * if the id is unknown
+	 */
+	public String getFileNameForId(int id) {
+		if (id < 0) {
+			return "N/A";
+		}
+		int k = indexOf(id);
+		if (k < 0) {
+			System.err.println("Error retrieving FILENAME field value for id:" + id);
+			return null;
+		}
+		return getFileName(k);
+	}
+
+	@Override
+	public String toString() {
+		return "Chain code corpus of " + ids.length + " segments from "
+	           + fileNames.length + " model images at epoch " + epoch;
+	}
+}
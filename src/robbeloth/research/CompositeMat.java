@@ -2,6 +2,8 @@ package robbeloth.research;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.opencv.core.Mat;
 
@@ -17,6 +19,7 @@ public class CompositeMat {
 	private long startingId;			// first id recorded to database
 	private long lastId;               // last used id recorded to database
 	private String filename;			// file from which segments were generated
+	private Future<long[]> pendingIds;	// first and last id once the segments are written
 	
 	public CompositeMat() {
 		listofMats = new ArrayList<Mat>();
@@ -51,6 +54,7 @@ public class CompositeMat {
 	}
 
 	public long getStartingId() {
+		awaitIds();
 		return startingId;
 	}
 
@@ -67,8 +71,34 @@ public class CompositeMat {
 	}
 
 	public long getLastId() {
+		awaitIds();
 		return lastId;
 	}
+	
+	/* Segments still being written to the database get their ids when the
+	 * write completes, readers of the ids wait for it */
+	public void setPendingIds(Future<long[]> pendingIds) {
+		this.pendingIds = pendingIds;
+	}
+	
+	private void awaitIds() {
+		Future<long[]> ids = pendingIds;
+		if (ids == null) {
+			return;
+		}
+		try {
+			long[] range = ids.get();
+			setStartingId(range[0]);
+			setLastId(range[1]);
+		} catch (ExecutionException e) {
+			System.err.println("Ids for " + filename + " are not available: " 
+		                       + e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		pendingIds = null;
+	}
 
 	public void setLastId(long lastId) {
 		this.lastId = lastId;
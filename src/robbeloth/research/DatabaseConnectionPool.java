@@ -0,0 +1,237 @@
+package robbeloth.research;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed size pool of connections to the model database used by the read
+ * paths of {@link DatabaseModule}.<br/><br/>
+ *
+ * A connection is leased to one thread at a time, so each leased connection
+ * can keep a private cache of the prepared statements it has already parsed.
+ * The parallel matchers then run their queries side by side instead of
+ * queueing on the single shared connection and re-preparing the same SQL
+ * for every row.
+ */
+final class DatabaseConnectionPool {
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int maxConnections;
+	private final BlockingQueue<PooledConnection> idle;
+	private final List<PooledConnection> all;
+	private volatile boolean closed = false;
+
+	/**
+	 * Create an empty pool, connections are opened on demand
+	 * @param url -- JDBC url of the database
+	 * @param user -- database user
+	 * @param password -- password of the database user
+	 * @param maxConnections -- most connections that will be opened
+	 */
+	DatabaseConnectionPool(String url, String user, String password,
+			               int maxConnections) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxConnections = (maxConnections < 1) ? 1 : maxConnections;
+		this.idle = new ArrayBlockingQueue<PooledConnection>(this.maxConnections);
+		this.all = new ArrayList<PooledConnection>(this.maxConnections);
+	}
+
+	/**
+	 * Lease a connection, opening a new one if the pool is not full yet or
+	 * waiting for another thread to hand one back otherwise. The caller
+	 * must close the lease, preferably with try-with-resources.
+	 * @return leased connection
+	 * @throws SQLException if the pool is closed or a connection could not
+	 * be opened
+	 */
+	PooledConnection acquire() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		PooledConnection pc = idle.poll();
+		if (pc != null) {
+			return pc;
+		}
+
+		synchronized (all) {
+			if (all.size() < maxConnections) {
+				Connection c = DriverManager.getConnection(url, user, password);
+				c.setAutoCommit(true);
+				pc = new PooledConnection(this, c);
+				all.add(pc);
+				return pc;
+			}
+		}
+
+		try {
+			return idle.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a database connection", e);
+		}
+	}
+
+	/**
+	 * Hand a leased connection back to the pool
+	 * @param pc -- connection to return
+	 */
+	private void release(PooledConnection pc) {
+		if (closed) {
+			pc.closeQuietly();
+			return;
+		}
+		idle.offer(pc);
+	}
+
+	/**
+	 * Number of connections opened so far
+	 * @return connection count
+	 */
+	int size() {
+		synchronized (all) {
+			return all.size();
+		}
+	}
+
+	/**
+	 * Most connections this pool will open
+	 * @return connection limit
+	 */
+	int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Close every connection and its cached statements. Connections
+	 * still on lease are closed when they are handed back.
+	 */
+	void close() {
+		closed = true;
+		synchronized (all) {
+			for (PooledConnection pc : all) {
+				if (idle.remove(pc)) {
+					pc.closeQuietly();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A connection leased from the pool together with the prepared
+	 * statements already parsed on it
+	 */
+	static final class PooledConnection implements AutoCloseable {
+		private final DatabaseConnectionPool pool;
+		private final Connection connection;
+		private final HashMap<String, PreparedStatement> statements =
+				new HashMap<String, PreparedStatement>();
+
+		/**
+		 * Wrap an open connection, the pool may be null for a connection
+		 * that is owned elsewhere and only wants the statement cache
+		 * @param pool -- pool the connection goes back to when closed
+		 * @param connection -- open database connection
+		 */
+		PooledConnection(DatabaseConnectionPool pool, Connection connection) {
+			this.pool = pool;
+			this.connection = connection;
+		}
+
+		/**
+		 * Get the underlying connection
+		 * @return database connection
+		 */
+		Connection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * Get a prepared statement for the sql, parsing it only the first
+		 * time it is seen on this connection
+		 * @param sql -- statement with ? placeholders
+		 * @return prepared statement with its parameters cleared
+		 * @throws SQLException if the statement cannot be prepared
+		 */
+		PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement ps = statements.get(sql);
+			if ((ps == null) || (ps.isClosed())) {
+				ps = connection.prepareStatement(sql);
+				statements.put(sql, ps);
+			}
+			else {
+				ps.clearParameters();
+			}
+			return ps;
+		}
+
+		/**
+		 * Get a prepared statement for an insert that reports the values
+		 * generated for the given columns, parsing it only the first time
+		 * it is seen on this connection
+		 * @param sql -- insert statement with ? placeholders
+		 * @param keyColumns -- generated columns to report
+		 * @return prepared statement with its parameters cleared
+		 * @throws SQLException if the statement cannot be prepared
+		 */
+		PreparedStatement prepare(String sql, String[] keyColumns) throws SQLException {
+			String key = String.join(",", keyColumns) + "<-" + sql;
+			PreparedStatement ps = statements.get(key);
+			if ((ps == null) || (ps.isClosed())) {
+				ps = connection.prepareStatement(sql, keyColumns);
+				statements.put(key, ps);
+			}
+			else {
+				ps.clearParameters();
+			}
+			return ps;
+		}
+
+		/**
+		 * Close the cached statements but leave the connection open
+		 */
+		void closeStatements() {
+			for (PreparedStatement ps : statements.values()) {
+				try {
+					ps.close();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+			statements.clear();
+		}
+
+		/**
+		 * Close the cached statements and the connection itself
+		 */
+		void closeQuietly() {
+			closeStatements();
+			try {
+				if (!connection.isClosed()) {
+					connection.close();
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Hand the connection back to its pool
+		 */
+		@Override
+		public void close() {
+			if (pool != null) {
+				pool.release(this);
+			}
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package robbeloth.research;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -10,11 +14,22 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import org.opencv.core.Point;
 
+import robbeloth.research.DatabaseConnectionPool.PooledConnection;
+
 /**
  * 
  * @author mrobbeloth
@@ -23,8 +38,6 @@ import org.opencv.core.Point;
  * for debugging
  */
  public final class DatabaseModule {
-	private static Connection connection;
-	private static Statement statement = null;
 	public static final int NUMBER_RELATIONS = 4;
 	private static final String databasePath = "data/obstruction";
 	private static final String databaseName = 
@@ -43,6 +56,7 @@ import org.opencv.core.Point;
 	public static final String MOMENTX_COLUMN = "MOMENTX";
 	public static final String MOMENTY_COLUMN = "MOMENTY";
 	public static final String CHAINCODE_COLUMN = "CHAINCODE";
+	public static final String CHAINCODE_PACKED_COLUMN = "CHAINCODE_PACKED";
 	public static final String STARTCCX_COLUMN = "STARTCC_X";
 	public static final String STARTCCY_COLUMN = "STARTCC_Y";
 	public static final String SEGMENT_TYPE_COLUMN = "SEGMENT_TYPE";
@@ -52,18 +66,25 @@ import org.opencv.core.Point;
 	public static final String THETA2_COLUMN = "THETA_2_ANGLE";
 	public static final String SIZE_COLUMN = "SIZE_PIXELS";	
 	public static final String SIMG_SCORE_DELAUNAY = "SIMG_SCORE_DELAUNAY";
+	public static final String TRIADS_PACKED_COLUMN = "TRIADS_PACKED";
 	public static final String TRIAD_X1 = "TX1";
 	public static final String TRIAD_Y1 = "TY1";
 	public static final String TRIAD_X2 = "TX2";
 	public static final String TRIAD_Y2 = "TY2";
 	public static final String TRIAD_X3 = "TX3";
 	public static final String TRIAD_Y3 = "TY3";
+	/* three bits per direction, see PackedChainCode, the old comma separated 
+	 * CLOB column is only kept for rows that predate the packed column */
+	private static final String chainCodePackedType = "VARBINARY(16777216)";
+	/* whole Delaunay triangulation of a model image, see PackedTriads */
+	private static final String triadsPackedType = "VARBINARY(16777216)";
 	private static final String createLocalTblStmt = "CREATE TABLE " 
 	           + dbLocalTable
 			   + " ( " + ID_COLUMN + " INTEGER GENERATED ALWAYS AS IDENTITY,"
 			   + " " + FILENAME_COLUMN + " VARCHAR(255) NOT NULL,"
 			   + " " + SEGMENT_COLUMN + " INTEGER NOT NULL,"              
                + " " + CHAINCODE_COLUMN + " CLOB," 
+               + " " + CHAINCODE_PACKED_COLUMN + " " + chainCodePackedType + ","
                + " " + STARTCCX_COLUMN + " INTEGER, "
                + " " + STARTCCY_COLUMN + " INTEGER, "
                + " " + SEGMENT_TYPE_COLUMN + " CHARACTER(1), "
@@ -83,6 +104,7 @@ import org.opencv.core.Point;
 			   + dbGlobalMetaTable
 			   + " ( " + FILENAME_COLUMN + " VARCHAR(255) NOT NULL,"
 			   + " " + SIMG_SCORE_DELAUNAY + " DOUBLE, "
+			   + " " + TRIADS_PACKED_COLUMN + " " + triadsPackedType + ","
 			   + " PRIMARY KEY(" + FILENAME_COLUMN + "))";
 	/* This structure assumes a flattened set of nodes where each node links to the next*/
 	private static final String createGlbDelaunayTable = "CREATE TABLE "
@@ -102,6 +124,25 @@ import org.opencv.core.Point;
 	private static final String selectAllDelaGlbStmt = "SELECT * FROM " + dbGlobalDelGrpTbl;
 	private static final String selectFileDelaGlbStmt = "SELECT * FROM " + dbGlobalDelGrpTbl 
 			                                            + " WHERE " + FILENAME_COLUMN + "=?"; 
+	private static final String selectFileLocalStmt = "SELECT * FROM " + dbLocalTable + " WHERE " 
+			                                            + ID_COLUMN + " BETWEEN ? AND ? AND " 
+			                                            + FILENAME_COLUMN + "=? ORDER BY " + ID_COLUMN;
+	private static final String selectFileGlbStmt = "SELECT g.* FROM " + dbGlobalTable + " g JOIN " 
+			                                            + dbLocalTable + " l ON g." + ID_COLUMN + "=l." 
+			                                            + ID_COLUMN + " WHERE l." + ID_COLUMN 
+			                                            + " BETWEEN ? AND ? AND l." + FILENAME_COLUMN 
+			                                            + "=? ORDER BY g." + ID_COLUMN;
+	private static final String selectFileGlbMetaStmt = "SELECT * FROM " + dbGlobalMetaTable 
+			                                            + " WHERE " + FILENAME_COLUMN + "=?";
+	/* the Delaunay relation is looked up by filename, keep that off a table scan */
+	private static final String createDelaunayFilenameIndex = "CREATE INDEX IF NOT EXISTS " 
+			                                            + dbGlobalDelGrpTbl + "_fn ON " 
+			                                            + dbGlobalDelGrpTbl + " (" + FILENAME_COLUMN + ")";
+	
+	/* Dumps hand rows over this many at a time and write through a buffer
+	 * of this many characters */
+	private static final int DUMP_FETCH_SIZE = 1000;
+	private static final int DUMP_BUFFER_SIZE = 1 << 16;
 	private static String insLocalTuple = 
 			"INSERT INTO " + dbLocalTable + " " +  
 			"(" + FILENAME_COLUMN         + ", " 
@@ -110,8 +151,9 @@ import org.opencv.core.Point;
 			    + STARTCCX_COLUMN         + ", "  
 			    + STARTCCY_COLUMN         + ", " 
 			    + SEGMENT_TYPE_COLUMN     + ", " 
-			    + SEGMENT_ROTATION_COLUMN + ") "			
-			+ "VALUES (?, ?, ?, ?, ?, ?, ?)";
+			    + SEGMENT_ROTATION_COLUMN + ", "
+			    + CHAINCODE_PACKED_COLUMN + ") "			
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 	private static String insGblTuple = 
 			"INSERT INTO " + dbGlobalTable + " " +  
 			"(" + MOMENTX_COLUMN           + ", " 
@@ -121,11 +163,21 @@ import org.opencv.core.Point;
 			    + THETA2_COLUMN            + ", "
 			    + SIZE_COLUMN              + ") "
 			+ "VALUES (?, ?, ?, ?, ?, ?)";
-	private static String insGlbMetaTuple = 
-			"INSERT INTO " + dbGlobalMetaTable + " " +
-			"(" + FILENAME_COLUMN     + ", "
-			    + SIMG_SCORE_DELAUNAY + ") "
-			 + "VALUES (?, ?)";
+	/* a model image seen before keeps its first simG score and has its new
+	 * triangles appended to the ones already packed */
+	private static String mergeGlbMetaTuple = 
+			"MERGE INTO " + dbGlobalMetaTable + " m USING (VALUES(CAST(? AS VARCHAR(255)), " 
+			+ "CAST(? AS DOUBLE), CAST(? AS " + triadsPackedType + "))) AS v(" 
+			+ FILENAME_COLUMN + ", " + SIMG_SCORE_DELAUNAY + ", " + TRIADS_PACKED_COLUMN + ") "
+			+ "ON m." + FILENAME_COLUMN + "=v." + FILENAME_COLUMN + " "
+			+ "WHEN MATCHED THEN UPDATE SET m." + SIMG_SCORE_DELAUNAY + "=COALESCE(m." 
+			+ SIMG_SCORE_DELAUNAY + ", v." + SIMG_SCORE_DELAUNAY + "), m." + TRIADS_PACKED_COLUMN 
+			+ "=CASE WHEN v." + TRIADS_PACKED_COLUMN + " IS NULL THEN m." + TRIADS_PACKED_COLUMN 
+			+ " ELSE COALESCE(m." + TRIADS_PACKED_COLUMN + ", X'') || v." + TRIADS_PACKED_COLUMN 
+			+ " END "
+			+ "WHEN NOT MATCHED THEN INSERT (" + FILENAME_COLUMN + ", " + SIMG_SCORE_DELAUNAY 
+			+ ", " + TRIADS_PACKED_COLUMN + ") VALUES (v." + FILENAME_COLUMN + ", v." 
+			+ SIMG_SCORE_DELAUNAY + ", v." + TRIADS_PACKED_COLUMN + ")";
 	private static String insDelaGlbTuple = 
 			"INSERT INTO " + dbGlobalDelGrpTbl + " " +
 			"(" + FILENAME_COLUMN     + ", "
@@ -145,45 +197,133 @@ import org.opencv.core.Point;
 	private static String deleteImgGlblDelTbl = 
 			"DELETE FROM " + dbGlobalDelGrpTbl + " " + 
 			"WHERE " + FILENAME_COLUMN + "=?";
-	private static final String getLastIdStmt = "SELECT TOP 1 ID FROM " + dbLocalTable + " ORDER BY ID DESC";
-	private static String getLastIdStmtWithFilename = "SELECT TOP 1 ID FROM " + 
-	                                                  dbLocalTable + " WHERE FILENAME=?"
-			                                          + " ORDER BY ID DESC";
-	private static String getStartIdStmtWithFilename = "SELECT TOP 1 ID FROM " + 
-													   dbLocalTable + " WHERE FILENAME=?"
-													   + " ORDER BY ID ASC";
-	private static String getSegmentCnt = "SELECT COUNT(FILENAME) AS SEGMENTCOUNT FROM " + 
-			     						   dbLocalTable + " WHERE FILENAME=?";
+	private static String clearImgPackedTriads = 
+			"UPDATE " + dbGlobalMetaTable + " SET " + TRIADS_PACKED_COLUMN + "=NULL " + 
+			"WHERE " + FILENAME_COLUMN + "=?";
 	private static String doesDBExistStmt = "SELECT COUNT(TABLE_NAME) FROM " + 
 	                                          "INFORMATION_SCHEMA.SYSTEM_TABLES WHERE " +
 			                                  "TABLE_NAME LIKE 'OBSTRUCTION%'";
-	private static String selectChainCode = "SELECT " + CHAINCODE_COLUMN +  " FROM " + dbLocalTable + 
-			                                " WHERE " + ID_COLUMN + "=?";
+	private static String selectChainCode = "SELECT " + CHAINCODE_PACKED_COLUMN + ", " + CHAINCODE_COLUMN 
+			                                +  " FROM " + dbLocalTable + " WHERE " + ID_COLUMN + "=?";
+	private static String selectChainCodeCorpus = "SELECT " + ID_COLUMN + ", " + FILENAME_COLUMN + ", " 
+			                                + SEGMENT_TYPE_COLUMN + ", " + SEGMENT_ROTATION_COLUMN + ", " 
+			                                + CHAINCODE_PACKED_COLUMN + ", " + CHAINCODE_COLUMN 
+			                                + " FROM " + dbLocalTable + " ORDER BY " + ID_COLUMN;
+	private static String selectPackedColumn = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE "
+			                                + "TABLE_NAME='" + dbLocalTable.toUpperCase() + "' AND COLUMN_NAME='" 
+			                                + CHAINCODE_PACKED_COLUMN + "'";
+	private static String addPackedColumn = "ALTER TABLE " + dbLocalTable + " ADD COLUMN " 
+			                                + CHAINCODE_PACKED_COLUMN + " " + chainCodePackedType;
+	private static String selectTriadsColumn = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE "
+			                                + "TABLE_NAME='" + dbGlobalMetaTable.toUpperCase() + "' AND COLUMN_NAME='" 
+			                                + TRIADS_PACKED_COLUMN + "'";
+	private static String addTriadsColumn = "ALTER TABLE " + dbGlobalMetaTable + " ADD COLUMN " 
+			                                + TRIADS_PACKED_COLUMN + " " + triadsPackedType;
+	private static String selectTriadsToPack = "SELECT " + FILENAME_COLUMN + ", " + TRIAD_X1 + ", " 
+			                                + TRIAD_Y1 + ", " + TRIAD_X2 + ", " + TRIAD_Y2 + ", " + TRIAD_X3 
+			                                + ", " + TRIAD_Y3 + " FROM " + dbGlobalDelGrpTbl + " ORDER BY " 
+			                                + FILENAME_COLUMN + ", " + ID_COLUMN;
+	private static String selectTriadCorpus = "SELECT " + FILENAME_COLUMN + ", " + TRIADS_PACKED_COLUMN 
+			                                + " FROM " + dbGlobalMetaTable + " WHERE " + TRIADS_PACKED_COLUMN 
+			                                + " IS NOT NULL";
+	private static String selectUnpackedChainCodes = "SELECT TOP 10000 " + ID_COLUMN + ", " + CHAINCODE_COLUMN 
+			                                + " FROM " + dbLocalTable + " WHERE " + ID_COLUMN + ">? AND " 
+			                                + CHAINCODE_PACKED_COLUMN + " IS NULL AND " + CHAINCODE_COLUMN 
+			                                + " IS NOT NULL ORDER BY " + ID_COLUMN;
+	private static String updatePackedChainCode = "UPDATE " + dbLocalTable + " SET " 
+			                                + CHAINCODE_PACKED_COLUMN + "=?, " + CHAINCODE_COLUMN 
+			                                + "=NULL WHERE " + ID_COLUMN + "=?";
 	private static String selectMoment = "SELECT " + MOMENTX_COLUMN + "," + MOMENTY_COLUMN + " FROM " + dbGlobalTable + 
 											" WHERE " + ID_COLUMN + "=?";
-	private static String selectFn = "SELECT " + FILENAME_COLUMN + " FROM " + dbLocalTable + 
-									 " WHERE " + ID_COLUMN + "=?";
 	private static String selectFilesWMoment = "SELECT " + FILENAME_COLUMN +  " FROM " + dbLocalTable + 
 									 " WHERE ID IN(SELECT " + ID_COLUMN + " FROM " + dbGlobalTable + 
 									 " WHERE " +  MOMENTX_COLUMN + "=? AND " + MOMENTY_COLUMN + "=?)";  
 	private static String selectFilesWMomentWithEpsilon = "SELECT " + FILENAME_COLUMN +  " FROM " + dbLocalTable + 
 			 " WHERE ID IN(SELECT " + ID_COLUMN + " FROM " + dbGlobalTable + 
 			 " WHERE (" +  MOMENTX_COLUMN + ">=? AND " + MOMENTX_COLUMN + "<=?) AND (" + MOMENTY_COLUMN 
-			 + ">=? AND " + MOMENTY_COLUMN + " =?))";  
+			 + ">=? AND " + MOMENTY_COLUMN + "<=?))";  
+	private static String selectMomentIndex = "SELECT g." + ID_COLUMN + ", g." + MOMENTX_COLUMN + ", g." 
+			 + MOMENTY_COLUMN + ", l." + FILENAME_COLUMN + " FROM " + dbGlobalTable + " g JOIN " 
+			 + dbLocalTable + " l ON g." + ID_COLUMN + "=l." + ID_COLUMN;
 	private static String selectccStart = "SELECT " + FILENAME_COLUMN + " FROM " + dbLocalTable +
 										  " WHERE " + STARTCCX_COLUMN + "=? AND " + STARTCCY_COLUMN + "=? AND " 
 										  + SEGMENT_TYPE_COLUMN + "=? AND " + SEGMENT_ROTATION_COLUMN + "=?" ;
-	private static String selectModelFilenames = "SELECT DISTINCT " + FILENAME_COLUMN + " FROM " + dbLocalTable;
-	private static String selectUpperThresholds = "SELECT " + THETA2_COLUMN + " FROM " + dbGlobalTable + 
-												  " WHERE " + ID_COLUMN + " BETWEEN " + "? AND ?";
-	private static String selectLowerThresholds = "SELECT " + THETA1_COLUMN + " FROM " + dbGlobalTable + 
-											      " WHERE " + ID_COLUMN + " BETWEEN " + "? AND ?";
-	private static String selectsimGDelaunayValue = "SELECT " + SIMG_SCORE_DELAUNAY + " FROM " + dbGlobalMetaTable
-			                                        + " WHERE " + FILENAME_COLUMN + "=?";
-	private static String selectTriads = "SELECT " + TRIAD_X1 +", " + TRIAD_X2 + ", " + TRIAD_X3 + ", " + TRIAD_Y1 + 
-										 ", " + TRIAD_Y2 + ", " + TRIAD_Y3 + " FROM " + dbGlobalDelGrpTbl 
-										 + " WHERE " + FILENAME_COLUMN + "=?";
+	private static String selectModelDirectory = "SELECT " + ID_COLUMN + ", " + FILENAME_COLUMN + ", " 
+										  + SEGMENT_TYPE_COLUMN + ", " + SEGMENT_ROTATION_COLUMN + " FROM " 
+										  + dbLocalTable + " ORDER BY " + ID_COLUMN;
+	private static String selectThresholdCache = "SELECT " + ID_COLUMN + ", " + THETA1_COLUMN + ", " 
+										  + THETA2_COLUMN + " FROM " + dbGlobalTable + " ORDER BY " + ID_COLUMN;
+	private static String selectStartPointIndex = "SELECT " + ID_COLUMN + ", " + STARTCCX_COLUMN + ", " 
+										  + STARTCCY_COLUMN + ", " + SEGMENT_TYPE_COLUMN + ", " 
+										  + SEGMENT_ROTATION_COLUMN + ", " + FILENAME_COLUMN + " FROM " 
+										  + dbLocalTable;
+	private static String selectStoreSegments = "SELECT l." + ID_COLUMN + ", l." + FILENAME_COLUMN + ", l." 
+			 + SEGMENT_COLUMN + ", l." + STARTCCX_COLUMN + ", l." + STARTCCY_COLUMN + ", l." 
+			 + SEGMENT_TYPE_COLUMN + ", l." + SEGMENT_ROTATION_COLUMN + ", l." + CHAINCODE_PACKED_COLUMN 
+			 + ", l." + CHAINCODE_COLUMN + ", g." + ID_COLUMN + ", g." + MOMENTX_COLUMN + ", g." 
+			 + MOMENTY_COLUMN + ", g." + DISTANCE_COLUMN + ", g." + THETA1_COLUMN + ", g." + THETA2_COLUMN 
+			 + ", g." + SIZE_COLUMN + " FROM " + dbLocalTable + " l LEFT JOIN " + dbGlobalTable 
+			 + " g ON l." + ID_COLUMN + "=g." + ID_COLUMN + " ORDER BY l." + ID_COLUMN;
+	private static String selectStoreMeta = "SELECT " + FILENAME_COLUMN + ", " + SIMG_SCORE_DELAUNAY 
+			 + " FROM " + dbGlobalMetaTable + " WHERE " + SIMG_SCORE_DELAUNAY + " IS NOT NULL";
+	private static String selectStoreTriads = "SELECT " + FILENAME_COLUMN + ", " + TRIAD_X1 + ", " + TRIAD_Y1 
+			 + ", " + TRIAD_X2 + ", " + TRIAD_Y2 + ", " + TRIAD_X3 + ", " + TRIAD_Y3 + " FROM " 
+			 + dbGlobalDelGrpTbl + " ORDER BY " + ID_COLUMN;
+	private static String selectStoreFingerprint = "SELECT COUNT(*), COALESCE(MAX(" + ID_COLUMN + "), 0), " 
+			 + "(SELECT COUNT(*) FROM " + dbGlobalTable + "), (SELECT COUNT(*) FROM " + dbGlobalMetaTable 
+			 + " WHERE " + SIMG_SCORE_DELAUNAY + " IS NOT NULL), (SELECT COUNT(*) FROM " + dbGlobalDelGrpTbl + ") FROM " + dbLocalTable;
 	private static volatile DatabaseModule singleton = null;
+	
+	/* Bumped on every change to the model relations so cached snapshots 
+	 * of the model database know when they are stale */
+	private static final AtomicLong modelEpoch = new AtomicLong();
+	private static volatile ChainCodeCorpus chainCodeCorpus = null;
+	private static final Object chainCodeCorpusLock = new Object();
+	private static volatile MomentGridIndex momentIndex = null;
+	private static final Object momentIndexLock = new Object();
+	private static volatile StartPointIndex startPointIndex = null;
+	private static final Object startPointIndexLock = new Object();
+	private static volatile ModelDirectory modelDirectory = null;
+	private static final Object modelDirectoryLock = new Object();
+	private static volatile TriadCorpus triadCorpus = null;
+	private static volatile ModelThresholds modelThresholds = null;
+	private static final Object modelThresholdsLock = new Object();
+	private static final Object triadCorpusLock = new Object();
+	
+	/* Number of obstruction relations last seen in the catalog, -1 when 
+	 * unknown. Only createModel and dropDatabase change the schema, so 
+	 * this is checked once and then kept current by them */
+	private static volatile int relationCount = -1;
+	private static final Object relationCountLock = new Object();
+	
+	/* Columnar copy of the model relations, only used while the model 
+	 * database is at the epoch it was opened at */
+	public static final String DEFAULT_MODEL_STORE = databasePath + ".store";
+	private static volatile ModelStore modelStore = null;
+	private static volatile long modelStoreEpoch = -1;
+	
+	/* Model images queued for the writer thread, started on first use. 
+	 * A few images is enough to keep the writer busy while the next one 
+	 * is processed without holding many images' tuples in memory */
+	private static final int WRITE_BEHIND_CAPACITY = 4;
+	private static volatile ModelWriteBehind writeBehind = null;
+	private static final Object writeBehindLock = new Object();
+	
+	/* Readers lease their own connection, writers stay on their shard's 
+	 * connection and serialize on the class lock */
+	private static final String databaseURLOptions = ";shutdown=true;hsqldb.cache_rows=250000"
+            + ";hsqldb.cache_size=250000";
+	private static final int READ_POOL_SIZE = 
+			Runtime.getRuntime().availableProcessors();
+	
+	/* Model images are spread over this many database files by a hash of 
+	 * their filename, set with -Dobstruction.shards=N. The first shard is 
+	 * the original database file, so the default of one shard is the 
+	 * database as it has always been. A populated model database has to 
+	 * keep the shard count it was built with. */
+	public static final String SHARDS_PROPERTY = "obstruction.shards";
+	private static ModelShard[] shards = null;
+	private static ModelShard lastLocalShard = null;
 	private static final String TABLE_NAME = "TABLE_NAME";
 	/* It really is TABLE_SCHEM for TABLE_SCHEMA*/
 	private static final String TABLE_SCHEMA = "TABLE_SCHEM";
@@ -198,37 +338,35 @@ import org.opencv.core.Point;
 			System.exit(-1);
 		}
 		
-		// Connect to the database
-		try {
-			connection = DriverManager.getConnection("jdbc:hsqldb:file:" + databasePath 
-					                                 + ";shutdown=true;hsqldb.cache_rows=250000"
-					                                 + ";hsqldb.cache_size=250000", "sa", "");
-			connection.setAutoCommit(true);			
-			if (connection == null) {
-				System.err.println("Connection not established, terminating program");
-				System.exit(-2);
-			}
-			else {
-				System.out.println("Connection established");
-				System.out.println("Connection info: " + 
-				                    connection.getMetaData().getURL());
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
+		// Connect to each shard of the database
+		int shardCnt = Integer.getInteger(SHARDS_PROPERTY, 1);
+		if ((shardCnt < 1) || (shardCnt > ModelShard.MAX_SHARDS)) {
+			System.err.println(SHARDS_PROPERTY + "=" + shardCnt + " is not between 1 and " 
+		                       + ModelShard.MAX_SHARDS + ", using one shard");
+			shardCnt = 1;
 		}
-		
-		// Create the object for passing SQL statements			
-		try {
-			statement = connection.createStatement();			
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}		
-				
+		shards = new ModelShard[shardCnt];
+		for (int i = 0; i < shardCnt; i++) {
+			String path = (i == 0) ? databasePath : databasePath + "_shard" + i;
+			shards[i] = new ModelShard(i, path, databaseURLOptions, READ_POOL_SIZE);
+		}
+		lastLocalShard = shards[0];
 	}
 	
 	private DatabaseModule() {
-		if (doesDBExist() == 2) 
-			dumpDBMetadata();}
+		int gotDB = doesDBExist();
+		if (gotDB == 2) 
+			dumpDBMetadata();
+		
+		/* Bring databases built before chain codes were packed up to date */
+		if (gotDB > 0) {
+			migrateChainCodes();
+		}
+		if (gotDB == NUMBER_RELATIONS) {
+			indexDelaunayFilenames();
+			migrateDelaunayTriads();
+		}
+	}
 	
 	public static synchronized DatabaseModule getInstance() {
 		if (singleton == null) {		
@@ -242,7 +380,67 @@ import org.opencv.core.Point;
 	}
 	
 	public static synchronized Connection getConnection() {
-		return connection;
+		return shards[0].getConnection();
+	}
+	
+	/**
+	 * Number of database files the model database is spread over
+	 * @return shard count
+	 */
+	public static int getShardCount() {
+		return shards.length;
+	}
+	
+	/**
+	 * Find the shard holding a model image, the one that already has 
+	 * segments of the image or else the one its filename hashes to
+	 * @param filename -- model image filename in either representation
+	 * @return shard for the image's tuples
+	 */
+	private static ModelShard shardFor(String filename) {
+		if (shards.length == 1) {
+			return shards[0];
+		}
+		
+		/* local relation stores : where the other relations store / */
+		String key = (filename != null) ? filename.replace('/', ':') : "";
+		ModelDirectory directory = getModelDirectory();
+		ModelDirectory.Entry entry = 
+				(directory != null) ? directory.getEntry(key) : null;
+		if (entry != null) {
+			return shards[ModelShard.shardOf(entry.getFirstId())];
+		}
+		return shards[(key.hashCode() & Integer.MAX_VALUE) % shards.length];
+	}
+	
+	/**
+	 * Find the shard holding a segment
+	 * @param id -- global id of the segment
+	 * @return shard holding the id or null if no shard could
+	 */
+	private static ModelShard shardOf(int id) {
+		int shard = ModelShard.shardOf(id);
+		return ((id >= 0) && (shard < shards.length)) ? shards[shard] : null;
+	}
+	
+	/**
+	 * Run a query against every shard, in parallel when there are several
+	 * @param query -- work to do on one shard
+	 * @return result of each shard in shard order
+	 */
+	private static <T> List<T> fanOut(Function<ModelShard, T> query) {
+		List<T> results = new ArrayList<T>(Collections.nCopies(shards.length, (T) null));
+		if (shards.length == 1) {
+			results.set(0, query.apply(shards[0]));
+			return results;
+		}
+		IntStream.range(0, shards.length).parallel().forEach((i) -> {
+			T result = query.apply(shards[i]);
+			synchronized (results) {
+				results.set(i, result);
+			}
+		});
+		return results;
 	}
 	
 	/**
@@ -270,17 +468,21 @@ import org.opencv.core.Point;
 		 *  that may shift segment center's of mass slightly, enough that
 		 *  a match out to a number of decimal places is not possible*/
 
+		ModelShard shard = shardFor(filename);
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
 		PreparedStatement ps;
 		if ((connection != null) && (statement != null)){
 			try {
 				/* Supply insertion statement with placeholders 
 				 * for actual data */
-				ps = connection.prepareStatement(insLocalTuple);
+				ps = writer.prepare(insLocalTuple, new String[]{ID_COLUMN});
 				
 				/* fill in placeholders in insertion statement*/
 				ps.setString(1, filename.replace('/', ':'));
 				ps.setInt(2, segmentNumber);
-				ps.setString(3, cc);	
+				setChainCode(ps, 3, 8, cc);	
 				if ((Double.isNaN(startCC.x)) || (Double.isNaN(startCC.y))) {
 					ps.setDouble(4, 0.0);
 					ps.setDouble(5, 0.0);	
@@ -295,9 +497,21 @@ import org.opencv.core.Point;
 				
 				/* Insert data into database */
 				ps.execute();
+				modelChanged();
 				
 				/* Return the id from the last insert operation */
-				return getLastId();
+				int id = -100;
+				ResultSet keys = ps.getGeneratedKeys();
+				if (keys.next()) {
+					id = shard.toGlobalId(keys.getInt(1));
+					
+					/* the global tuple of this segment has to follow it */
+					lastLocalShard = shard;
+					directoryAdd(filename.replace('/', ':'), new int[]{id}, 
+							     segmentType, segmentRotation);
+				}
+				keys.close();
+				return id;
 			} catch (SQLException e) {
 				e.printStackTrace();
 				return -100;
@@ -314,12 +528,17 @@ import org.opencv.core.Point;
 			double theta1,
 			double theta2,
 			LGNode node) {
+		/* global tuples share the id of the local tuple inserted last */
+		ModelShard shard = lastLocalShard;
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
 		PreparedStatement ps;
 		if ((connection != null) && (statement != null)){
 			try {
 				/* Supply insertion statement with placeholders 
 				 * for actual data */
-				ps = connection.prepareStatement(insGblTuple);
+				ps = writer.prepare(insGblTuple);
 				
 				/* fill in placeholders in insertion statement*/
 				if ((Double.isNaN(moment.x)) || (Double.isNaN(moment.y))) {
@@ -365,6 +584,8 @@ import org.opencv.core.Point;
 				
 				/* Insert data into database */
 				ps.execute();
+				modelChanged();
+				thresholdsRemove();
 				
 				/* Return normal result */
 				return 0;
@@ -389,12 +610,16 @@ import org.opencv.core.Point;
 	 */
 	public static synchronized int insertIntoModelDBGlobaMetaRelation(
 			String filename, double simGScore) {
+		ModelShard shard = shardFor(filename);
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
 		PreparedStatement ps;
 		if ((connection != null) && (statement != null)){
 			try {
 				/* Supply insertion statement with placeholders 
 				 * for actual data */
-				ps = connection.prepareStatement(insGlbMetaTuple);
+				ps = writer.prepare(mergeGlbMetaTuple);
 				
 				if ((filename != null) && (!filename.isEmpty())) {
 					ps.setString(1, filename);	
@@ -404,9 +629,12 @@ import org.opencv.core.Point;
 				}
 				
 			    ps.setDouble(2, simGScore);
+			    ps.setNull(3, Types.VARBINARY);
 				
 				/* Insert data into database */
 				ps.execute();
+				modelChanged();
+				thresholdsRemove();
 				
 				/* Return normal result*/
 				return 0;
@@ -428,13 +656,17 @@ import org.opencv.core.Point;
 			return -1;
 		}
 		
+		ModelShard shard = shardFor(filename);
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
 		PreparedStatement ps;
 		if ((connection != null) && (statement != null)){
 			try {
 				for (int i = 0; i < triads.size(); i+=3) {					
 					/* Supply insertion statement with placeholders 
 					 * for actual data */
-					ps = connection.prepareStatement(insDelaGlbTuple);
+					ps = writer.prepare(insDelaGlbTuple);
 					
 					/* prepare parameters */
 					ps.setString(1, filename);
@@ -450,6 +682,13 @@ import org.opencv.core.Point;
 					ps.execute();
 				}
 				
+				/* Keep the packed copy the Delaunay matchers read current */
+				ps = writer.prepare(mergeGlbMetaTuple);
+				ps.setString(1, filename);
+				ps.setNull(2, Types.DOUBLE);
+				ps.setBytes(3, PackedTriads.pack(triads));
+				ps.execute();
+				modelChanged();
 			}
 			catch (SQLException e) {
 				e.printStackTrace();
@@ -461,6 +700,489 @@ import org.opencv.core.Point;
 		return 0;		
 	}
 	
+	/**
+	 * Write every tuple gathered for a model image in one transaction, 
+	 * using JDBC batches for the local, global, and Delaunay relations
+	 * @param batch -- tuples for a single model image
+	 * @return ids assigned to the local tuples in the order they were 
+	 * added or null if nothing was written
+	 */
+	public static synchronized int[] insertModelBatch(ModelIngestBatch batch) {
+		if ((batch == null) || (batch.getFilename() == null) || 
+			(batch.getFilename().isEmpty())) {
+			System.err.println("insertModelBatch(): no model image to insert");
+			return null;
+		}
+		
+		/* every tuple of a model image lives in the same shard */
+		ModelShard shard = shardFor(batch.getFilename());
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
+		if ((connection == null) || (statement == null)) {
+			System.err.println("insertModelBatch(): Failed to add " 
+		                       + batch.getFilename() + " into database");
+			return null;
+		}
+		
+		if (batch.getGlobalCount() != batch.getLocalCount()) {
+			System.err.println("insertModelBatch(): " + batch.getLocalCount() 
+			                   + " local tuples but " + batch.getGlobalCount() 
+			                   + " global tuples for " + batch.getFilename());
+		}
+		
+		String filename = batch.getFilename();
+		int[] ids = new int[batch.getLocalCount()];
+		try {
+			connection.setAutoCommit(false);
+			
+			/* Local relation, the database hands back the new ids */
+			if (!batch.getLocalTuples().isEmpty()) {
+				PreparedStatement ps = writer.prepare(insLocalTuple, 
+						                              new String[]{ID_COLUMN});
+				for (ModelIngestBatch.LocalTuple t : batch.getLocalTuples()) {
+					ps.setString(1, filename.replace('/', ':'));
+					ps.setInt(2, t.segmentNumber);
+					setChainCode(ps, 3, 8, t.chainCode);
+					if ((t.startCC == null) || (Double.isNaN(t.startCC.x)) || 
+						(Double.isNaN(t.startCC.y))) {
+						ps.setDouble(4, 0.0);
+						ps.setDouble(5, 0.0);	
+						System.err.println("Start of chain code is NaN, setting to 0,0");
+					}
+					else {
+						ps.setDouble(4, t.startCC.x);
+						ps.setDouble(5, t.startCC.y);					
+					}
+					ps.setString(6, String.valueOf(t.segmentType));
+					ps.setShort(7, t.segmentRotation);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+				ResultSet keys = ps.getGeneratedKeys();
+				int k = 0;
+				while (keys.next() && (k < ids.length)) {
+					ids[k++] = shard.toGlobalId(keys.getInt(1));
+				}
+				keys.close();
+			}
+			
+			/* Global relation, ids line up with the local relation */
+			int[] globalIds = new int[batch.getGlobalCount()];
+			double[] theta1s = new double[globalIds.length];
+			double[] theta2s = new double[globalIds.length];
+			if (!batch.getGlobalTuples().isEmpty()) {
+				PreparedStatement ps = writer.prepare(insGblTuple, 
+						                              new String[]{ID_COLUMN});
+				int g = 0;
+				for (ModelIngestBatch.GlobalTuple t : batch.getGlobalTuples()) {
+					if ((t.moment == null) || (Double.isNaN(t.moment.x)) || 
+						(Double.isNaN(t.moment.y))) {
+						ps.setDouble(1, 0.0);
+						ps.setDouble(2, 0.0);	
+						System.err.println("Centroid is NaN, setting to 0,0");
+					}
+					else {
+						ps.setDouble(1, t.moment.x);
+						ps.setDouble(2, t.moment.y);					
+					}
+					ps.setDouble(3, zeroIfNaN(t.distance, "Distance is NaN, setting to 0.0"));
+					theta1s[g] = zeroIfNaN(t.theta1, "theta1 angle is NaN, setting to 0.0 degree");
+					theta2s[g++] = zeroIfNaN(t.theta2, "theta2 angle is NaN, setting to 0.0 degrees");
+					ps.setDouble(4, theta1s[g-1]);
+					ps.setDouble(5, theta2s[g-1]);
+					ps.setDouble(6, zeroIfNaN(t.size, "Node does not have a valid size, setting to zero"));
+					ps.addBatch();
+				}
+				ps.executeBatch();
+				ResultSet keys = ps.getGeneratedKeys();
+				int k = 0;
+				while (keys.next() && (k < globalIds.length)) {
+					globalIds[k++] = shard.toGlobalId(keys.getInt(1));
+				}
+				keys.close();
+			}
+			
+			/* simG score and the whole Delaunay graph packed into one value,
+			 * a model image seen before keeps its old score */
+			List<Point> triads = batch.getDelaunayGraph();
+			byte[] packedTriads = ((triads != null) && (triads.size() >= 3)) ? 
+					              PackedTriads.pack(triads) : null;
+			if ((batch.getSimGScore() != null) || (packedTriads != null)) {
+				PreparedStatement ps = writer.prepare(mergeGlbMetaTuple);
+				ps.setString(1, filename);
+				if (batch.getSimGScore() != null) {
+					ps.setDouble(2, batch.getSimGScore());
+				}
+				else {
+					ps.setNull(2, Types.DOUBLE);
+				}
+				if (packedTriads != null) {
+					ps.setBytes(3, packedTriads);
+				}
+				else {
+					ps.setNull(3, Types.VARBINARY);
+				}
+				ps.execute();
+			}
+			
+			/* Delaunay graph, one tuple per triad */
+			if ((triads != null) && (!triads.isEmpty())) {
+				PreparedStatement ps = writer.prepare(insDelaGlbTuple);
+				for (int i = 0; i + 2 < triads.size(); i+=3) {
+					ps.setString(1, filename);
+					ps.setDouble(2, triads.get(i).x);
+					ps.setDouble(3, triads.get(i).y);
+					ps.setDouble(4, triads.get(i+1).x);
+					ps.setDouble(5, triads.get(i+1).y);
+					ps.setDouble(6, triads.get(i+2).x);
+					ps.setDouble(7, triads.get(i+2).y);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+			
+			connection.commit();
+			modelChanged();
+			if (ids.length > 0) {
+				ModelIngestBatch.LocalTuple first = batch.getLocalTuples().get(0);
+				directoryAdd(filename.replace('/', ':'), ids, 
+						     first.segmentType, first.segmentRotation);
+			}
+			thresholdsAdd(filename, globalIds, theta1s, theta2s, batch.getSimGScore());
+			System.out.println("insertModelBatch(): added " + ids.length 
+					           + " segments of " + filename + " into database");
+			return ids;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				connection.rollback();
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			System.err.println("insertModelBatch(): Failed to add " 
+			                   + filename + " into database");
+			return null;
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Queue a model image to be written by the writer thread, see 
+	 * {@link #insertModelBatch(ModelIngestBatch)}. Images are written in 
+	 * the order they are queued and the call only waits when the queue is
+	 * full. The tuples are not visible to readers until the future is 
+	 * done or {@link #flushModelWrites()} returns.
+	 * @param batch -- tuples for a single model image
+	 * @return future holding the ids assigned to the local tuples, or the
+	 * reason nothing was written
+	 */
+	public static CompletableFuture<int[]> insertModelBatchAsync(ModelIngestBatch batch) {
+		ModelWriteBehind queue = writeBehind;
+		if (queue == null) {
+			synchronized (writeBehindLock) {
+				if (writeBehind == null) {
+					writeBehind = new ModelWriteBehind(WRITE_BEHIND_CAPACITY);
+				}
+				queue = writeBehind;
+			}
+		}
+		return queue.submit(batch);
+	}
+	
+	/**
+	 * Wait until every model image queued by insertModelBatchAsync so far
+	 * is written
+	 * @return true if they were all stored; false if any failed
+	 */
+	public static boolean flushModelWrites() {
+		ModelWriteBehind queue = writeBehind;
+		if (queue == null) {
+			return true;
+		}
+		
+		/* the writer needs the class lock for every image */
+		if (Thread.holdsLock(DatabaseModule.class)) {
+			System.err.println("flushModelWrites(): cannot wait for the writer "
+					           + "while holding the database lock");
+			return false;
+		}
+		return queue.flush();
+	}
+	
+	/**
+	 * Fill in the chain code placeholders of the local insert statement, 
+	 * storing the packed form when the chain code can be packed and the 
+	 * comma separated form otherwise
+	 * @param ps -- local insert statement
+	 * @param clobIdx -- placeholder of the comma separated chain code
+	 * @param packedIdx -- placeholder of the packed chain code
+	 * @param cc -- chain code as produced by chainCodeString()
+	 * @throws SQLException if a parameter cannot be set
+	 */
+	private static void setChainCode(PreparedStatement ps, int clobIdx, 
+			                         int packedIdx, String cc) throws SQLException {
+		try {
+			ps.setBytes(packedIdx, PackedChainCode.pack(cc));
+			ps.setNull(clobIdx, Types.CLOB);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println("Chain code cannot be packed, storing as text: " 
+		                       + e.getMessage());
+			ps.setNull(packedIdx, Types.VARBINARY);
+			ps.setString(clobIdx, cc);
+		}
+	}
+	
+	/**
+	 * Replace a NaN column value with zero
+	 * @param value -- value to store
+	 * @param warning -- message to print if the value is replaced
+	 * @return value or zero
+	 */
+	private static double zeroIfNaN(double value, String warning) {
+		if (Double.isNaN(value)) {
+			System.err.println(warning);
+			return 0.0;
+		}
+		return value;
+	}
+	
+	/**
+	 * Add the filename index to Delaunay relations created before it
+	 * existed, shards that already have it are left alone
+	 */
+	private static void indexDelaunayFilenames() {
+		for (ModelShard shard : shards) {
+			Statement statement = shard.getStatement();
+			if (statement == null) {
+				continue;
+			}
+			try {
+				statement.execute(createDelaunayFilenameIndex);
+			} catch (SQLException e) {
+				System.err.println("Unable to run " + createDelaunayFilenameIndex);
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Pack the Delaunay graph of every model image into the meta relation 
+	 * when the meta relation predates the packed triads column
+	 * @return number of model images packed or a negative error code
+	 */
+	public static synchronized int migrateDelaunayTriads() {
+		int migrated = 0;
+		for (ModelShard shard : shards) {
+			int shardMigrated = migrateDelaunayTriads(shard);
+			if (shardMigrated < 0) {
+				return shardMigrated;
+			}
+			migrated += shardMigrated;
+		}
+		
+		if (migrated > 0) {
+			modelChanged();
+		}
+		return migrated;
+	}
+	
+	/**
+	 * Pack the Delaunay graphs of one shard
+	 * @param shard -- shard to convert
+	 * @return number of model images packed or a negative error code
+	 */
+	private static int migrateDelaunayTriads(ModelShard shard) {
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
+		if ((connection == null) || (statement == null)) {
+			System.err.println("migrateDelaunayTriads(): connection not available");
+			return -200;
+		}
+		
+		int migrated = 0;
+		try {
+			/* Only a meta relation without the column needs converting */
+			ResultSet rs = statement.executeQuery(selectTriadsColumn);
+			if ((!rs.next()) || (rs.getInt(1) > 0)) {
+				rs.close();
+				return 0;
+			}
+			rs.close();
+			System.out.println("migrateDelaunayTriads(): adding column " 
+		                       + TRIADS_PACKED_COLUMN);
+			statement.execute(addTriadsColumn);
+			
+			/* prepared inserts still refer to the old table definition */
+			writer.closeStatements();
+			
+			/* One pass over the Delaunay relation grouped by filename */
+			connection.setAutoCommit(false);
+			try {
+				PreparedStatement merge = writer.prepare(mergeGlbMetaTuple);
+				rs = statement.executeQuery(selectTriadsToPack);
+				String filename = null;
+				List<Point> triads = new ArrayList<Point>();
+				boolean more = rs.next();
+				while (more || (filename != null)) {
+					String next = more ? rs.getString(1) : null;
+					if ((filename != null) && (!filename.equals(next))) {
+						merge.setString(1, filename);
+						merge.setNull(2, Types.DOUBLE);
+						merge.setBytes(3, PackedTriads.pack(triads));
+						merge.addBatch();
+						migrated++;
+						triads.clear();
+					}
+					filename = next;
+					if (more) {
+						for (int v = 0; v < 3; v++) {
+							triads.add(new Point(rs.getInt(2 + (v * 2)), rs.getInt(3 + (v * 2))));
+						}
+						more = rs.next();
+					}
+				}
+				rs.close();
+				merge.executeBatch();
+				connection.commit();
+			}
+			catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+			finally {
+				connection.setAutoCommit(true);
+			}
+			System.out.println("migrateDelaunayTriads(): packed the Delaunay graphs of " 
+			                   + migrated + " model images");
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return -100;
+		}
+		return migrated;
+	}
+	
+	/**
+	 * Move chain codes stored in the old comma separated CLOB column into 
+	 * the packed column, adding the packed column first if the local 
+	 * relation predates it. Rows are converted in chunks, each in its own
+	 * transaction, and the database is defragmented afterwards to give 
+	 * back the space the CLOBs used. 
+	 * @return number of rows converted or a negative error code
+	 */
+	public static synchronized int migrateChainCodes() {
+		int migrated = 0;
+		for (ModelShard shard : shards) {
+			int shardMigrated = migrateChainCodes(shard);
+			if (shardMigrated < 0) {
+				return shardMigrated;
+			}
+			migrated += shardMigrated;
+		}
+		
+		if (migrated > 0) {
+			modelChanged();
+			defrag();
+		}
+		return migrated;
+	}
+	
+	/**
+	 * Move the chain codes of one shard into the packed column
+	 * @param shard -- shard to convert
+	 * @return number of rows converted or a negative error code
+	 */
+	private static int migrateChainCodes(ModelShard shard) {
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
+		if ((connection == null) || (statement == null)) {
+			System.err.println("migrateChainCodes(): connection not available");
+			return -200;
+		}
+		
+		int migrated = 0;
+		try {
+			/* Add the packed column to a local relation that lacks it */
+			ResultSet rs = statement.executeQuery(selectPackedColumn);
+			if (rs.next() && (rs.getInt(1) == 0)) {
+				System.out.println("migrateChainCodes(): adding column " 
+			                       + CHAINCODE_PACKED_COLUMN);
+				statement.execute(addPackedColumn);
+				
+				/* prepared inserts still refer to the old table definition */
+				writer.closeStatements();
+				modelChanged();
+			}
+			rs.close();
+			
+			/* Convert rows in chunks so memory use stays bounded */
+			int lastID = -1;
+			boolean moreRows = true;
+			while (moreRows) {
+				PreparedStatement select = writer.prepare(selectUnpackedChainCodes);
+				select.setInt(1, lastID);
+				rs = select.executeQuery();
+				ArrayList<Integer> ids = new ArrayList<Integer>();
+				ArrayList<String> chainCodes = new ArrayList<String>();
+				while (rs.next()) {
+					ids.add(rs.getInt(1));
+					chainCodes.add(rs.getString(2));
+				}
+				rs.close();
+				moreRows = !ids.isEmpty();
+				if (!moreRows) {
+					break;
+				}
+				lastID = ids.get(ids.size()-1);
+				
+				connection.setAutoCommit(false);
+				try {
+					PreparedStatement update = writer.prepare(updatePackedChainCode);
+					int batched = 0;
+					for (int i = 0; i < ids.size(); i++) {
+						byte[] packed;
+						try {
+							packed = PackedChainCode.pack(chainCodes.get(i));
+						}
+						catch (IllegalArgumentException e) {
+							System.err.println("migrateChainCodes(): leaving id " + ids.get(i) 
+							                   + " as text, " + e.getMessage());
+							continue;
+						}
+						update.setBytes(1, packed);
+						update.setInt(2, ids.get(i));
+						update.addBatch();
+						batched++;
+					}
+					update.executeBatch();
+					connection.commit();
+					migrated += batched;
+				}
+				catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				}
+				finally {
+					connection.setAutoCommit(true);
+				}
+				System.out.println("migrateChainCodes(): packed " + migrated 
+						           + " chain codes so far");
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return -100;
+		}
+		return migrated;
+	}
+	
 	/**
 	 * Remove the tuples associated with an image in the filename field
 	 * This is just the filename, not a path and filename 
@@ -469,6 +1191,10 @@ import org.opencv.core.Point;
 	 */
 	public static synchronized int deleteImageFromDB(String filename) {
 
+		ModelShard shard = shardFor(filename);
+		Connection connection = shard.getConnection();
+		Statement statement = shard.getStatement();
+		PooledConnection writer = shard.getWriter();
 		PreparedStatement ps;
 		if ((connection != null) && (statement != null)){
 			try {
@@ -484,9 +1210,9 @@ import org.opencv.core.Point;
 				// remove entries from local table
 				int startingID = getStartId(filename);
 				int endingID = getLastId(filename);
-				ps = connection.prepareStatement(deleteImageGlobalTable);
-				ps.setInt(1, startingID);
-				ps.setInt(2, endingID);
+				ps = writer.prepare(deleteImageGlobalTable);
+				ps.setInt(1, ModelShard.localId(startingID));
+				ps.setInt(2, ModelShard.localId(endingID));
 				
 				boolean result = ps.execute();
 				if (result) {
@@ -500,7 +1226,7 @@ import org.opencv.core.Point;
 				}
 				
 				// remove entries from global table
-				ps = connection.prepareStatement(deleteImageLocalTable);
+				ps = writer.prepare(deleteImageLocalTable);
 				
 				/* fill in placeholders in insertion statement*/
 				ps.setString(1, filename);				
@@ -511,9 +1237,15 @@ import org.opencv.core.Point;
 				int entrsRm = ps.getUpdateCount();
 				
 				/* Delete associated Delaunay graph*/
-				ps = connection.prepareStatement(deleteImgGlblDelTbl);
+				ps = writer.prepare(deleteImgGlblDelTbl);
+				ps.setString(1, filename);
+				ps.execute();
+				ps = writer.prepare(clearImgPackedTriads);
 				ps.setString(1, filename);
 				ps.execute();
+				modelChanged();
+				directoryRemove(filename);
+				thresholdsRemove();
 				
 				System.out.println("deleteImageFromDB(): Number of entries removed-local: " + entrsRm);
 				return entrsRm;
@@ -532,30 +1264,17 @@ import org.opencv.core.Point;
 	 */
 	public static int getLastId() {
 		/* Sanity check database existence*/
-		int gotDB = doesDBExist();
-		if (gotDB == 0) {
+		if (getRelationCount() == 0) {
 			System.err.println("Unable to find database");
 			return 404;
 		}
 		
-		/* Selects just one record after getting all the ids and 
-		 * ordering the values in the id column in descending order */
-		String stmt = getLastIdStmt;
-		System.out.println("Retrieve statement: " + stmt);
-		if (connection != null){
-			try {
-				ResultSet rs = statement.executeQuery(stmt);
-				if (rs.next()){
-					// return the first row's single column value
-					return rs.getInt(1);
-				}
-				return 0;
-			} catch (SQLException e) {
-				e.printStackTrace();
-				return 0;
-			}			
+		/* The directory tracks the largest id in the local relation */
+		ModelDirectory directory = getModelDirectory();
+		if (directory == null) {
+			return 0;
 		}
-		return 0;
+		return directory.getLastId();
 	}	
 	
 	/**
@@ -565,8 +1284,7 @@ import org.opencv.core.Point;
 	 */
 	public static int getLastId(String filename) {
 		/* Sanity check database existence*/
-		int gotDB = doesDBExist();
-		if (gotDB == 0) {
+		if (getRelationCount() == 0) {
 			System.err.println("Unable to find database");
 			return 404;
 		}
@@ -574,35 +1292,10 @@ import org.opencv.core.Point;
 		/* fix how filename is in i/o verses database representation */
 		filename = filename.replaceAll("/", ":");
 		
-		/* Selects just one record after getting all the ids and 
-		 * ordering the values in the id column in descending order */
-		String stmt = getLastIdStmtWithFilename;
-		System.out.println("Retrieve statement: " + stmt);
-		PreparedStatement ps = null;
-		try {
-			ps = connection.prepareStatement(stmt);
-		} catch (SQLException e1) {
-			e1.printStackTrace();
-		}
-				
-		if (ps != null) {
-			try {
-				ps.setString(1, filename);
-				boolean result = ps.execute();
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					if (rs != null) {
-						result = rs.next();
-						if (result) {
-							return rs.getInt(1);
-						}
-					}
-				}
-			} catch (SQLException e1) {
-				e1.printStackTrace();	
-			}
-		}
-		return 0;
+		ModelDirectory directory = getModelDirectory();
+		ModelDirectory.Entry entry = 
+				(directory != null) ? directory.getEntry(filename) : null;
+		return (entry != null) ? entry.getLastId() : 0;
 	}	
 	
 	/**
@@ -612,8 +1305,7 @@ import org.opencv.core.Point;
 	 */
 	public static int getStartId(String filename) {
 		/* Sanity check database existence*/
-		int gotDB = doesDBExist();
-		if (gotDB == 0) {
+		if (getRelationCount() == 0) {
 			System.err.println("Unable to find database");
 			return 404;
 		}
@@ -621,79 +1313,28 @@ import org.opencv.core.Point;
 		/* fix how filename is in i/o verses database representation */
 		filename = filename.replaceAll("/", ":");
 		
-		/* Selects just one record after getting all the ids and 
-		 * ordering the values in the id column in descending order */
-		String stmt = getStartIdStmtWithFilename;
-		System.out.println("Retrieve statement: " + stmt);
-		PreparedStatement ps = null;
-		try {
-			ps = connection.prepareStatement(stmt);
-		} catch (SQLException e1) {
-			e1.printStackTrace();
-		}
-				
-		if (ps != null) {
-			try {
-				ps.setString(1, filename);
-				boolean result = ps.execute();
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					if (rs != null) {
-						result = rs.next();
-						if (result) {
-							return rs.getInt(1);
-						}
-					}
-				}
-			} catch (SQLException e1) {
-				e1.printStackTrace();	
-			}
-		}
-		return 0;
-	}	
-	
-	/**
-	 * Count the number of segments for a file
-	 * @param filename -- relative name of file
-	 * @return the identifier 
-	 */
-	public static synchronized int cntSegmentsForFile(String filename) {
-		/* Sanity check database existence*/
-		int gotDB = doesDBExist();
-		if (gotDB == 0) {
-			System.err.println("Unable to find database");
-			return 404;
+		ModelDirectory directory = getModelDirectory();
+		ModelDirectory.Entry entry = 
+				(directory != null) ? directory.getEntry(filename) : null;
+		return (entry != null) ? entry.getFirstId() : 0;
+	}	
+	
+	/**
+	 * Count the number of segments for a file
+	 * @param filename -- relative name of file
+	 * @return the identifier 
+	 */
+	public static int cntSegmentsForFile(String filename) {
+		/* Sanity check database existence*/
+		if (getRelationCount() == 0) {
+			System.err.println("Unable to find database");
+			return 404;
 		}
 		
-		/* Selects just one record after getting all the ids and 
-		 * ordering the values in the id column in descending order */
-		String stmt = getSegmentCnt;
-		System.out.println("Retrieve statement: " + stmt);
-		PreparedStatement ps = null;
-		try {
-			ps = connection.prepareStatement(stmt);
-		} catch (SQLException e1) {
-			e1.printStackTrace();
-		}
-				
-		if (ps != null) {
-			try {
-				ps.setString(1, filename);
-				boolean result = ps.execute();
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					if (rs != null) {
-						result = rs.next();
-						if (result) {
-							return rs.getInt("SEGMENTCOUNT");
-						}
-					}
-				}
-			} catch (SQLException e1) {
-				e1.printStackTrace();	
-			}
-		}
-		return 0;
+		ModelDirectory directory = getModelDirectory();
+		ModelDirectory.Entry entry = 
+				(directory != null) ? directory.getEntry(filename) : null;
+		return (entry != null) ? entry.getCount() : 0;
 	}	
 	
 	/**
@@ -703,52 +1344,64 @@ import org.opencv.core.Point;
 	public static synchronized boolean dropDatabase() {
 		System.out.println("Dropping old database table " + dbLocalTable + "...");	
 		
-		/* Sanity check database existence*/
-		int gotDB = doesDBExist();
-		if (gotDB == 0) {
+		/* Sanity check database existence, any shard holding relations
+		 * is worth dropping */
+		int gotDB = Arrays.stream(queryRelationCounts()).max().orElse(0);
+		if (gotDB <= 0) {
 			System.err.println(databaseName  
 					+ " database does not exist, no point in trying "
 					+ "to remove it");
 			return false;
 		}
 		
-		/* Database exists, so start w/ delaunay meta table and fk to local table*/
-		if (connection != null) {
-			try {
-				statement.execute(destroyDelTable);			
-			} catch (SQLException e) {
-				e.printStackTrace();
+		/* Every shard holds all four relations */
+		for (ModelShard shard : shards) {
+			Connection connection = shard.getConnection();
+			Statement statement = shard.getStatement();
+			
+			/* Database exists, so start w/ delaunay meta table and fk to local table*/
+			if (connection != null) {
+				try {
+					statement.execute(destroyDelTable);			
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
 			}
-		}
 		
-		/* Database exists, so next get rid of global meta table and fk to local table*/
-		if (connection != null) {
-			try {
-				statement.execute(destroyGlobalMetaTable);			
-			} catch (SQLException e) {
-				e.printStackTrace();
+			/* Database exists, so next get rid of global meta table and fk to local table*/
+			if (connection != null) {
+				try {
+					statement.execute(destroyGlobalMetaTable);			
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
 			}
-		}
 		
-		/* Database exists, so start w/ global table and fk to local table*/
-		if (connection != null) {
-			try {
-				statement.execute(destroyGlobalTable);			
-			} catch (SQLException e) {
-				e.printStackTrace();
+			/* Database exists, so start w/ global table and fk to local table*/
+			if (connection != null) {
+				try {
+					statement.execute(destroyGlobalTable);			
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
 			}
-		}
 		
-		/* work on local table */
-		if (connection != null) {
-			try {		
-				statement.execute(destroyLocalTable);
-			} catch (SQLException e) {
-				e.printStackTrace();
+			/* work on local table */
+			if (connection != null) {
+				try {		
+					statement.execute(destroyLocalTable);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
 			}
 		}
 		
-		if (doesDBExist() == 0) {
+		modelChanged();
+		schemaChanged();
+		directoryRemove(null);
+		thresholdsRemove();
+		if ((doesDBExist() == 0) && 
+			(Arrays.stream(queryRelationCounts()).max().orElse(0) == 0)) {
 			System.out.println("Database removed");
 			return true;
 		}
@@ -779,50 +1432,61 @@ import org.opencv.core.Point;
 		}
 		
 		
-		/* Create local table first */
-		if (connection != null) {
-			try {
-				System.out.println("Executing create table statement " + createLocalTblStmt);
-				statement.execute(createLocalTblStmt);
-			} catch (SQLException e) {
-				e.printStackTrace(); 
+		/* Every shard holds all four relations */
+		for (ModelShard shard : shards) {
+			Connection connection = shard.getConnection();
+			Statement statement = shard.getStatement();
+			
+			/* Create local table first */
+			if (connection != null) {
+				try {
+					System.out.println("Executing create table statement " + createLocalTblStmt);
+					statement.execute(createLocalTblStmt);
+				} catch (SQLException e) {
+					e.printStackTrace(); 
+				}
 			}
-		}
 		
-		/* Create global table next */
-		if (connection != null) {
-			try {
-				System.out.println("Executing create table statement " + createGlbTblStmt);
-				statement.execute(createGlbTblStmt);	
-			} catch (SQLException e) {
-				System.err.println("Unable to run create table statement " + createGlbTblStmt);
-				e.printStackTrace(); 
+			/* Create global table next */
+			if (connection != null) {
+				try {
+					System.out.println("Executing create table statement " + createGlbTblStmt);
+					statement.execute(createGlbTblStmt);	
+				} catch (SQLException e) {
+					System.err.println("Unable to run create table statement " + createGlbTblStmt);
+					e.printStackTrace(); 
+				}
 			}
-		}
 		
-		/* Create global meta table next */
-		if (connection != null) {
-			try {
-				System.out.println("Executing create table statement " + createGlbMetaTblStmt);
-				statement.execute(createGlbMetaTblStmt);	
-			} catch (SQLException e) {
-				System.err.println("Unable to run create table statement " + createGlbMetaTblStmt);
-				e.printStackTrace(); 
+			/* Create global meta table next */
+			if (connection != null) {
+				try {
+					System.out.println("Executing create table statement " + createGlbMetaTblStmt);
+					statement.execute(createGlbMetaTblStmt);	
+				} catch (SQLException e) {
+					System.err.println("Unable to run create table statement " + createGlbMetaTblStmt);
+					e.printStackTrace(); 
+				}
 			}
-		}
 		
-		/* Finally, create Global Delaunay Graph Table  */
-		if (connection != null) {
-			try {
-				System.out.println("Executing create table statement " + createGlbDelaunayTable);
-				statement.execute(createGlbDelaunayTable);	
-			} catch (SQLException e) {
-				System.err.println("Unable to run create table statement " + createGlbDelaunayTable);
-				e.printStackTrace(); 
+			/* Finally, create Global Delaunay Graph Table  */
+			if (connection != null) {
+				try {
+					System.out.println("Executing create table statement " + createGlbDelaunayTable);
+					statement.execute(createGlbDelaunayTable);	
+					statement.execute(createDelaunayFilenameIndex);
+				} catch (SQLException e) {
+					System.err.println("Unable to run create table statement " + createGlbDelaunayTable);
+					e.printStackTrace(); 
+				}
 			}
 		}
 		
 		/* Verify creation */
+		modelChanged();
+		schemaChanged();
+		directoryRemove(null);
+		thresholdsRemove();
 		if (doesDBExist() == NUMBER_RELATIONS) {
 			System.out.println(databaseName + " database created");
 			dumpDBMetadata();
@@ -835,6 +1499,18 @@ import org.opencv.core.Point;
 	}
 	
 	public static synchronized boolean dumpDBMetadata() {
+		boolean result = true;
+		for (ModelShard shard : shards) {
+			if (shards.length > 1) {
+				System.out.println("*** " + shard + " ***");
+			}
+			result &= dumpDBMetadata(shard);
+		}
+		return result;
+	}
+	
+	private static boolean dumpDBMetadata(ModelShard shard) {
+		Connection connection = shard.getConnection();
 		if (connection == null) {
 			System.err.println("Connection is null, returning");
 			return false;
@@ -864,16 +1540,7 @@ import org.opencv.core.Point;
 		    	System.out.println("Name=" + rsmd.getColumnName(i));
 		    	System.out.println("Type=" + rsmd.getColumnType(i));
 		    }
-		    Statement st = connection.createStatement();
-		    ResultSet rsAll = st.executeQuery(selectAllLocalStmt);
-		    rsmd = rsAll.getMetaData();
-		    System.out.println("");
-		    System.out.println("Found " + rsmd.getColumnCount() + " column(s)" 
-		    		           + " from data columns of " + dbLocalTable);
-		    for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-		    	System.out.println("Name=" + rsmd.getColumnName(i));
-		    	System.out.println("Type=" + rsmd.getColumnType(i));
-		    }
+		    printQueryColumns(connection, selectAllLocalStmt, dbLocalTable);
 		    
 		    /* Get global table information */
 		    columns = dbmd.getColumns(null, "PUBLIC", 
@@ -886,16 +1553,7 @@ import org.opencv.core.Point;
 		    	System.out.println("Name=" + rsmd.getColumnName(i));
 		    	System.out.println("Type=" + rsmd.getColumnType(i));
 		    }
-		    st = connection.createStatement();
-		    rsAll = st.executeQuery(selectAllGlbStmt);
-		    rsmd = rsAll.getMetaData();
-		    System.out.println("");
-		    System.out.println("Found " + rsmd.getColumnCount() + " column(s)" 
-		    		           + " from data columns of " + dbLocalTable);
-		    for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-		    	System.out.println("Name=" + rsmd.getColumnName(i));
-		    	System.out.println("Type=" + rsmd.getColumnType(i));
-		    }
+		    printQueryColumns(connection, selectAllGlbStmt, dbGlobalTable);
 		    
 		    /* Get global meta table information */
 		    columns = dbmd.getColumns(null, "PUBLIC", 
@@ -908,16 +1566,7 @@ import org.opencv.core.Point;
 		    	System.out.println("Name=" + rsmd.getColumnName(i));
 		    	System.out.println("Type=" + rsmd.getColumnType(i));
 		    }
-		    st = connection.createStatement();
-		    rsAll = st.executeQuery(selectAllGlbMetaStmt);
-		    rsmd = rsAll.getMetaData();
-		    System.out.println("");
-		    System.out.println("Found " + rsmd.getColumnCount() + " column(s)" 
-		    		           + " from data columns of " + dbGlobalMetaTable);
-		    for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-		    	System.out.println("Name=" + rsmd.getColumnName(i));
-		    	System.out.println("Type=" + rsmd.getColumnType(i));
-		    }
+		    printQueryColumns(connection, selectAllGlbMetaStmt, dbGlobalMetaTable);
 		    
 		    /* Get Delaunay table information*/
 		    
@@ -932,16 +1581,7 @@ import org.opencv.core.Point;
 		    	System.out.println("Name=" + rsmd.getColumnName(i));
 		    	System.out.println("Type=" + rsmd.getColumnType(i));
 		    }	
-		    st = connection.createStatement();
-		    rsAll = st.executeQuery(selectAllDelaGlbStmt);
-		    rsmd = rsAll.getMetaData();
-		    System.out.println("");
-		    System.out.println("Found " + rsmd.getColumnCount() + " column(s)" 
-		    		           + " from data columns of " + dbGlobalDelGrpTbl);
-		    for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-		    	System.out.println("Name=" + rsmd.getColumnName(i));
-		    	System.out.println("Type=" + rsmd.getColumnType(i));
-		    }		    
+		    printQueryColumns(connection, selectAllDelaGlbStmt, dbGlobalDelGrpTbl);		    
 		    
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -950,10 +1590,33 @@ import org.opencv.core.Point;
 		return true;
 	}
 	
+	/**
+	 * Print the columns a query returns without running it
+	 * @param connection -- connection to describe the query on
+	 * @param sql -- query to describe
+	 * @param table -- relation the query reads, for the heading
+	 * @throws SQLException if the query could not be prepared
+	 */
+	private static void printQueryColumns(Connection connection, String sql, 
+			                              String table) throws SQLException {
+		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+			ResultSetMetaData rsmd = ps.getMetaData();
+		    System.out.println("");
+		    System.out.println("Found " + rsmd.getColumnCount() + " column(s)" 
+		    		           + " from data columns of " + table);
+		    for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+		    	System.out.println("Name=" + rsmd.getColumnName(i));
+		    	System.out.println("Type=" + rsmd.getColumnType(i));
+		    }
+		}
+	}
+	
 	/**
 	 * Display all the records in the primary obstruction table of the
 	 * database (the chain code table) <br/> <br/> 
-	 * Does not destroy the table
+	 * Does not destroy the table. Rows are fetched DUMP_FETCH_SIZE at a 
+	 * time and written through a buffer, so the dump never holds a whole
+	 * relation in memory.
 	 * @return true if the dump was successful; false otherwise
 	 */
 	public static synchronized boolean dumpModel() {
@@ -969,327 +1632,655 @@ import org.opencv.core.Point;
 			return false;
 		}
 		
+		boolean result = true;
+		for (ModelShard shard : shards) {
+			if (shards.length > 1) {
+				System.out.println("*** " + shard + " ***");
+			}
+			result &= dumpModel(shard);
+		}
+		return result;
+	}
+	
+	/**
+	 * Display all the records of one shard, ids are shown as global ids
+	 * @param shard -- shard to display
+	 * @return true if the dump was successful; false otherwise
+	 */
+	private static boolean dumpModel(ModelShard shard) {
+		Connection connection = shard.getConnection();
+		
 		/* Display metadata on database before showing records to see
 		 * if database overall was correctly structured */
-		dumpDBMetadata();
+		dumpDBMetadata(shard);
 		
 		/* The database exists, let's see if there is anything in it */
-		if (connection != null) {
-			try {
-				boolean result = statement.execute(selectAllLocalStmt);
-				
-				/* Check to see if there are records to process
-				 * and get the set of records if there are  */
-				ResultSet dumpAllRecordsSet = null;				
-				if (result) {
-					dumpAllRecordsSet = statement.getResultSet();
-					System.out.println("Retrieved result set");
-				}
-				else {
-					System.err.println("No entries in table");
-				}
-				
-				/* Show each record from) local table*/
-				if (dumpAllRecordsSet != null) {					
-					/* Move the cursor to the first record */
-					System.out.println("Moving to the first record");
-					boolean recordsToProcess = dumpAllRecordsSet.next();
-					
-					/* Process the first and all remaining records */
-					while (recordsToProcess) {
-						int id = dumpAllRecordsSet.getInt(ID_COLUMN);
-						String filename = dumpAllRecordsSet.getString(FILENAME_COLUMN);
-						int segNumber = dumpAllRecordsSet.getInt(SEGMENT_COLUMN);
-						Clob chaincode = dumpAllRecordsSet.getClob(CHAINCODE_COLUMN);
-						int startccx = dumpAllRecordsSet.getInt(STARTCCX_COLUMN);
-						int startccy = dumpAllRecordsSet.getInt(STARTCCY_COLUMN);
-						long ccLen = chaincode.length();
-						short segrotation = dumpAllRecordsSet.getShort(SEGMENT_ROTATION_COLUMN);
-						String segType = dumpAllRecordsSet.getString(SEGMENT_TYPE_COLUMN);
-						
-						/* Only show a small part of the chain code */
-						String ccCodeStart = 
-								chaincode.getSubString(1, (int) ((ccLen > 20) ? 20 : ccLen));						
-						System.out.println(id + "," + filename + "," + 
-								           segNumber + ",(" +ccCodeStart + ")" 
-								           + "CC Length=" + ccLen 
-								           + " start("+startccx+","+startccy+")" 
-								           + " rotation=" + segrotation
-								           + " type " + segType);
-						
-						/* advance the cursor */
-						recordsToProcess = dumpAllRecordsSet.next();					
-					}
-				}
-				else {
-					System.err.println("dumpModel(): No local graph result set entries to process");
-					return false;
-				}				
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				boolean result = statement.execute(selectAllGlbStmt);
-				
-				/* Check to see if there are records to process
-				 * and get the set of records if there are  */
-				ResultSet dumpAllRecordsSet = null;				
-				if (result) {
-					dumpAllRecordsSet = statement.getResultSet();
-					System.out.println("Retrieved result set");
-				}
-				else {
-					System.err.println("No entries in table");
-				}
-				
-				/* Show each record from global table*/
-				if (dumpAllRecordsSet != null) {					
-					/* Move the cursor to the first record */
-					System.out.println("Moving to the first record");
-					boolean recordsToProcess = dumpAllRecordsSet.next();
-					
-					/* Process the first and all remaining records */
-					while (recordsToProcess) {
-						int id = dumpAllRecordsSet.getInt(ID_COLUMN);
-						int momentx = dumpAllRecordsSet.getInt(MOMENTX_COLUMN);
-						int momenty = dumpAllRecordsSet.getInt(MOMENTY_COLUMN);
-						double distance = dumpAllRecordsSet.getDouble(DISTANCE_COLUMN);
-						double theta1_angle = dumpAllRecordsSet.getDouble(THETA1_COLUMN);
-						double theta2_angle = dumpAllRecordsSet.getDouble(THETA2_COLUMN);
-						int size_seg_pixels = dumpAllRecordsSet.getInt(SIZE_COLUMN);
-												
-						System.out.println(id + ", moment(" + momentx + "," + momenty + 
-								   "), distance="+ distance + ", theta1_angle=" 
-								   + theta1_angle + ", theta2_angle=" + theta2_angle
-								   + ", segment_area=" + size_seg_pixels + " pixels");
-						
-						/* advance the cursor */
-						recordsToProcess = dumpAllRecordsSet.next();					
-					}
-				}
-				else {
-					System.err.println("No result set entries to process");
-					return false;
-				}				
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				boolean result = statement.execute(selectAllGlbMetaStmt);
-				
-				/* Check to see if there are records to process
-				 * and get the set of records if there are  */
-				ResultSet dumpAllRecordsSet = null;				
-				if (result) {
-					dumpAllRecordsSet = statement.getResultSet();
-					System.out.println("Retrieved result set");
-				}
-				else {
-					System.err.println("No entries in table");
-				}
-				
-				/* Show each record from global table*/
-				if (dumpAllRecordsSet != null) {					
-					/* Move the cursor to the first record */
-					System.out.println("Moving to the first record");
-					boolean recordsToProcess = dumpAllRecordsSet.next();
-					
-					/* Process the first and all remaining records */
-					while (recordsToProcess) {
-						String filename = dumpAllRecordsSet.getString(FILENAME_COLUMN);
-						double simg_score = dumpAllRecordsSet.getDouble(SIMG_SCORE_DELAUNAY);
-												
-						System.out.println("Model " + filename + " has sim_g score " + simg_score);
-						
-						/* advance the cursor */
-						recordsToProcess = dumpAllRecordsSet.next();					
-					}
-				}
-				else {
-					System.err.println("No result set entries to process");
-					return false;
-				}				
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				boolean result = statement.execute(selectAllDelaGlbStmt);
-				
-				/* Check to see if there are records to process
-				 * and get the set of records if there are  */
-				ResultSet dumpAllRecordsSet = null;				
-				if (result) {
-					dumpAllRecordsSet = statement.getResultSet();
-					System.out.println("Retrieved result set");
-				}
-				else {
-					System.err.println("No entries in table");
-				}
-				
-				/* Show each record from global table*/
-				if (dumpAllRecordsSet != null) {					
-					/* Move the cursor to the first record */
-					System.out.println("Moving to the first record");
-					boolean recordsToProcess = dumpAllRecordsSet.next();
-					
-					/* Process the first and all remaining records */
-					while (recordsToProcess) {
-						String filename = dumpAllRecordsSet.getString(FILENAME_COLUMN);
-						Point p1 = new Point(dumpAllRecordsSet.getDouble(TRIAD_X1),
-								 			 dumpAllRecordsSet.getDouble(TRIAD_Y1));
-						Point p2 = new Point(dumpAllRecordsSet.getDouble(TRIAD_X2),
-					 			 			 dumpAllRecordsSet.getDouble(TRIAD_Y2));
-						Point p3 = new Point(dumpAllRecordsSet.getDouble(TRIAD_X3),
-		 			 			 			 dumpAllRecordsSet.getDouble(TRIAD_Y3));
-												
-						System.out.print("Model " + filename + "(" + p1.x + "," + p1.y + ") ");
-						System.out.print("(" + p2.x + "," + p2.y + ") ");
-						System.out.println("(" + p3.x + "," + p3.y + ")");
-						
-						/* advance the cursor */
-						recordsToProcess = dumpAllRecordsSet.next();					
-					}
-					return true;
-				}
-				else {
-					System.err.println("No result set entries to process");
-					return false;
-				}				
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
+		if (connection == null) {
+			return false;
+		}
+		PrintWriter out = dumpWriter();
+		try (PooledConnection pc = shard.acquire()) {
+			int localCnt = dumpLocalRows(shard, streamQuery(pc, selectAllLocalStmt), out);
+			int globalCnt = dumpGlobalRows(shard, streamQuery(pc, selectAllGlbStmt), out);
+			int metaCnt = dumpMetaRows(streamQuery(pc, selectAllGlbMetaStmt), out);
+			int triadCnt = dumpTriadRows(streamQuery(pc, selectAllDelaGlbStmt), out);
+			out.println("Dumped " + localCnt + " local, " + globalCnt + " global, " 
+			            + metaCnt + " meta and " + triadCnt + " Delaunay tuples");
+			return true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			out.flush();
 		}
-		return false;
 	}
 	
 	/**
-	 * Backup database to directory
-	 * @param location -- directory holding database backup
-	 * @return a backed up database in location with naming convention
-	 * databaseTableName_currentTimeMillis.tgz
+	 * Display only the records of one model image. The image's tuples are
+	 * found through the model directory and the relations' indexes, so 
+	 * the cost does not grow with the size of the database. 
+	 * @param filename -- model image filename in either representation
+	 * @return true if the dump was successful; false otherwise
 	 */
-	public static synchronized boolean backupDatabase (File location) {
-		/* Build statement to execute, for some reason you can't set
-		 * the filename as a SQL parameter */
-		String backupDatabase = "BACKUP DATABASE TO " + "'" 
-							    + location.getAbsolutePath()
-				                + File.separatorChar + dbLocalTable + "_" 
-				                + System.currentTimeMillis() 
-				                + ".tgz' BLOCKING";
-		
-		int gotDB = doesDBExist();		
-		if (gotDB == NUMBER_RELATIONS) {
-			System.err.println(databaseName + " database already exists");
+	public static synchronized boolean dumpModel(String filename) {
+		if ((filename == null) || (filename.isEmpty())) {
+			return false;
 		}
-		else {
-			System.out.println(databaseName + " database does not exist "
-					+ "or was not fully created");
+		if (getRelationCount() != NUMBER_RELATIONS) {
+			System.err.println(databaseName  
+					+ " database does not exist yet or is not fully created");						
 			return false;
-		}	
+		}
 		
-		try {
-			if ((connection != null) &&
-					(!connection.isClosed())) {
-				PreparedStatement ps = 
-						connection.prepareStatement(backupDatabase);
-				boolean result = ps.execute();
-				return result;
+		/* local relation stores : where the other relations store / */
+		String localName = filename.replace('/', ':');
+		String rawName = filename.replace(':', '/');
+		ModelShard shard = shardFor(filename);
+		ModelDirectory directory = getModelDirectory();
+		ModelDirectory.Entry entry = 
+				(directory != null) ? directory.getEntry(localName) : null;
+		
+		PrintWriter out = dumpWriter();
+		try (PooledConnection pc = shard.acquire()) {
+			out.println("*** " + rawName + " in " + shard + " ***");
+			int localCnt = 0;
+			int globalCnt = 0;
+			if (entry != null) {
+				int first = ModelShard.localId(entry.getFirstId());
+				int last = ModelShard.localId(entry.getLastId());
+				localCnt = dumpLocalRows(shard, 
+						streamQuery(pc, selectFileLocalStmt, first, last, localName), out);
+				globalCnt = dumpGlobalRows(shard, 
+						streamQuery(pc, selectFileGlbStmt, first, last, localName), out);
 			}
+			int metaCnt = dumpMetaRows(streamQuery(pc, selectFileGlbMetaStmt, rawName), out);
+			int triadCnt = dumpTriadRows(streamQuery(pc, selectFileDelaGlbStmt, rawName), out);
+			out.println("Dumped " + localCnt + " local, " + globalCnt + " global, " 
+		                + metaCnt + " meta and " + triadCnt + " Delaunay tuples for " 
+		                + rawName);
+			return true;
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			out.flush();
 		}
-		return false;
 	}
 	
 	/**
-	 * Determine if the primary obstruction table exists
-	 * @return true if the database exists; false otherwise
+	 * Display only the size of each relation, summed over the shards
+	 * @return true if the sizes could be read; false otherwise
 	 */
-	public static synchronized int doesDBExist() {
-		try {
-			
-			/* Pull all the system tables and look for the one that says
-			 * obstruction -- in the future may make the primary table
-			 * the chain code table and create additional tables with 
-			 * other attributes and foreign keys? */
-			ResultSet existSet = statement.executeQuery(doesDBExistStmt);
-			int tblCnt = -1;
-			if (existSet.next()) {
-				tblCnt = existSet.getInt(1);	
+	public static synchronized boolean dumpModelStats() {
+		if (getRelationCount() != NUMBER_RELATIONS) {
+			System.err.println(databaseName  
+					+ " database does not exist yet or is not fully created");						
+			return false;
+		}
+		
+		/* local count, last local id and the global, meta and Delaunay counts */
+		List<int[]> counts = fanOut((shard) -> {
+			try (PooledConnection pc = shard.acquire()) {
+				ResultSet rs = pc.prepare(selectStoreFingerprint).executeQuery();
+				if (!rs.next()) {
+					return null;
+				}
+				int[] shardCounts = {rs.getInt(1), rs.getInt(2), rs.getInt(3), 
+						             rs.getInt(4), rs.getInt(5)};
+				rs.close();
+				return shardCounts;
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return null;
 			}
-			else {
-			   return 0;	
+		});
+		
+		long[] total = new long[5];
+		for (int i = 0; i < shards.length; i++) {
+			int[] shardCounts = counts.get(i);
+			if (shardCounts == null) {
+				return false;
 			}
-			
-			/* the obstruction table was found */
-			if (tblCnt > 0) {
-				System.out.println(databaseName + " database exists");
-				System.out.println("A total of " + tblCnt + " relations were found");
-				return tblCnt;
+			if (shards.length > 1) {
+				System.out.println(shards[i] + ": " + shardCounts[0] + " local, " 
+						+ shardCounts[2] + " global, " + shardCounts[3] + " meta, " 
+						+ shardCounts[4] + " Delaunay tuples");
 			}
-			else {
-				System.out.println(databaseName + " does not exists");
-				return 0;
+			for (int j = 0; j < total.length; j++) {
+				total[j] += shardCounts[j];
 			}
-		} catch (SQLException e) {
-			e.printStackTrace();
 		}
-		return 0;
+		ModelDirectory directory = getModelDirectory();
+		System.out.println(databaseName + ": " 
+				+ ((directory != null) ? directory.size() : -1) + " model images, " 
+				+ total[0] + " local, " + total[2] + " global, " + total[3] + " meta, " 
+				+ total[4] + " Delaunay tuples, last id " 
+				+ ((directory != null) ? directory.getLastId() : -1));
+		return true;
 	}
 	
 	/**
-	 * Terminate access to the database in a controlled manner 
-	 * @return true if the shutdown was w/o error; false otherwise
+	 * Buffered writer over standard output for the dumps, flushed but 
+	 * never closed by them
+	 * @return writer for dump output
 	 */
-	public static synchronized boolean shutdown() {
-		boolean result = false;
-		try {
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps = connection.prepareStatement("shutdown");
-				ps.execute();
-				connection.close();
-				System.out.println("shutdown(): shutdown command issued");
-			} 
-			else if (connection == null) {
-				System.err.println("shutdown(): connection was not available");
-			}
-			else if ((connection != null) && (connection.isClosed())) {
-				System.err.println("shutdown(): connection was closed but "
-						+ "resource was not released");
-			}
-			return result;
-		} catch (SQLException e) {
-			e.printStackTrace();
-			return false;
-		} 
+	private static PrintWriter dumpWriter() {
+		return new PrintWriter(new BufferedWriter(
+				new OutputStreamWriter(System.out), DUMP_BUFFER_SIZE), false);
 	}
 	
 	/**
-	 * Trim size of database
-	 * @return result of operation
+	 * Run a dump query, having the rows handed over DUMP_FETCH_SIZE at a time
+	 * @param pc -- leased reader connection
+	 * @param sql -- query to run
+	 * @param params -- values of the query's parameters, in order
+	 * @return rows of the query
+	 * @throws SQLException if the query failed
 	 */
-	public static synchronized boolean defrag() {
-		boolean result = false;
-		try {
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps = connection.prepareStatement("checkpoint defrag");
-				ps.execute();
-				System.out.println("defrag(): shrinking database to min size");
-			} 
-			else if (connection == null) {
-				System.err.println("defrag(): connection was not available");
-			}
-			else if ((connection != null) && (connection.isClosed())) {
-				System.err.println("defrag(): connection was closed but "
-						+ "resource was not released");
-			}
-			return result;
-		} catch (SQLException e) {
-			e.printStackTrace();
+	private static ResultSet streamQuery(PooledConnection pc, String sql, 
+			                             Object... params) throws SQLException {
+		PreparedStatement ps = pc.prepare(sql);
+		ps.setFetchSize(DUMP_FETCH_SIZE);
+		for (int i = 0; i < params.length; i++) {
+			ps.setObject(i + 1, params[i]);
+		}
+		return ps.executeQuery();
+	}
+	
+	/**
+	 * Write local relation rows, only a small part of each chain code
+	 * @param shard -- shard the rows came from
+	 * @param rs -- rows to write, closed when done
+	 * @param out -- writer for the dump
+	 * @return number of rows written
+	 * @throws SQLException if the rows could not be read
+	 */
+	private static int dumpLocalRows(ModelShard shard, ResultSet rs, 
+			                         PrintWriter out) throws SQLException {
+		int cnt = 0;
+		while (rs.next()) {
+			int id = shard.toGlobalId(rs.getInt(ID_COLUMN));
+			String filename = rs.getString(FILENAME_COLUMN);
+			int segNumber = rs.getInt(SEGMENT_COLUMN);
+			byte[] packed = rs.getBytes(CHAINCODE_PACKED_COLUMN);
+			Clob chaincode = rs.getClob(CHAINCODE_COLUMN);
+			int startccx = rs.getInt(STARTCCX_COLUMN);
+			int startccy = rs.getInt(STARTCCY_COLUMN);
+			String ccString = (packed != null) ? PackedChainCode.toChainCodeString(packed) :
+				              (chaincode != null) ? chaincode.getSubString(1, (int) chaincode.length()) : "";
+			long ccLen = ccString.length();
+			short segrotation = rs.getShort(SEGMENT_ROTATION_COLUMN);
+			String segType = rs.getString(SEGMENT_TYPE_COLUMN);
+			
+			/* Only show a small part of the chain code */
+			String ccCodeStart = 
+					ccString.substring(0, (int) ((ccLen > 20) ? 20 : ccLen));						
+			out.println(id + "," + filename + "," + 
+					    segNumber + ",(" +ccCodeStart + ")" 
+					    + "CC Length=" + ccLen 
+					    + " start("+startccx+","+startccy+")" 
+					    + " rotation=" + segrotation
+					    + " type " + segType);
+			cnt++;
+		}
+		rs.close();
+		return cnt;
+	}
+	
+	/**
+	 * Write global relation rows
+	 * @param shard -- shard the rows came from
+	 * @param rs -- rows to write, closed when done
+	 * @param out -- writer for the dump
+	 * @return number of rows written
+	 * @throws SQLException if the rows could not be read
+	 */
+	private static int dumpGlobalRows(ModelShard shard, ResultSet rs, 
+			                          PrintWriter out) throws SQLException {
+		int cnt = 0;
+		while (rs.next()) {
+			int id = shard.toGlobalId(rs.getInt(ID_COLUMN));
+			int momentx = rs.getInt(MOMENTX_COLUMN);
+			int momenty = rs.getInt(MOMENTY_COLUMN);
+			double distance = rs.getDouble(DISTANCE_COLUMN);
+			double theta1_angle = rs.getDouble(THETA1_COLUMN);
+			double theta2_angle = rs.getDouble(THETA2_COLUMN);
+			int size_seg_pixels = rs.getInt(SIZE_COLUMN);
+									
+			out.println(id + ", moment(" + momentx + "," + momenty + 
+					   "), distance="+ distance + ", theta1_angle=" 
+					   + theta1_angle + ", theta2_angle=" + theta2_angle
+					   + ", segment_area=" + size_seg_pixels + " pixels");
+			cnt++;
+		}
+		rs.close();
+		return cnt;
+	}
+	
+	/**
+	 * Write global meta relation rows
+	 * @param rs -- rows to write, closed when done
+	 * @param out -- writer for the dump
+	 * @return number of rows written
+	 * @throws SQLException if the rows could not be read
+	 */
+	private static int dumpMetaRows(ResultSet rs, PrintWriter out) throws SQLException {
+		int cnt = 0;
+		while (rs.next()) {
+			String filename = rs.getString(FILENAME_COLUMN);
+			double simg_score = rs.getDouble(SIMG_SCORE_DELAUNAY);
+			out.println("Model " + filename + " has sim_g score " + simg_score);
+			cnt++;
+		}
+		rs.close();
+		return cnt;
+	}
+	
+	/**
+	 * Write Delaunay relation rows
+	 * @param rs -- rows to write, closed when done
+	 * @param out -- writer for the dump
+	 * @return number of rows written
+	 * @throws SQLException if the rows could not be read
+	 */
+	private static int dumpTriadRows(ResultSet rs, PrintWriter out) throws SQLException {
+		int cnt = 0;
+		while (rs.next()) {
+			String filename = rs.getString(FILENAME_COLUMN);
+			Point p1 = new Point(rs.getDouble(TRIAD_X1), rs.getDouble(TRIAD_Y1));
+			Point p2 = new Point(rs.getDouble(TRIAD_X2), rs.getDouble(TRIAD_Y2));
+			Point p3 = new Point(rs.getDouble(TRIAD_X3), rs.getDouble(TRIAD_Y3));
+									
+			out.print("Model " + filename + "(" + p1.x + "," + p1.y + ") ");
+			out.print("(" + p2.x + "," + p2.y + ") ");
+			out.println("(" + p3.x + "," + p3.y + ")");
+			cnt++;
+		}
+		rs.close();
+		return cnt;
+	}
+	
+	/**
+	 * Backup database to directory
+	 * @param location -- directory holding database backup
+	 * @return a backed up database in location with naming convention
+	 * databaseTableName_currentTimeMillis.tgz
+	 */
+	public static synchronized boolean backupDatabase (File location) {
+		int gotDB = doesDBExist();		
+		if (gotDB == NUMBER_RELATIONS) {
+			System.err.println(databaseName + " database already exists");
+		}
+		else {
+			System.out.println(databaseName + " database does not exist "
+					+ "or was not fully created");
+			return false;
+		}	
+		
+		/* one archive per shard, the first keeps the original name */
+		long timestamp = System.currentTimeMillis();
+		boolean result = false;
+		for (ModelShard shard : shards) {
+			Connection connection = shard.getConnection();
+			
+			/* Build statement to execute, for some reason you can't set
+			 * the filename as a SQL parameter */
+			String backupDatabase = "BACKUP DATABASE TO " + "'" 
+								    + location.getAbsolutePath()
+					                + File.separatorChar + dbLocalTable 
+					                + ((shard.getNumber() > 0) ? "_shard" + shard.getNumber() : "") 
+					                + "_" + timestamp 
+					                + ".tgz' BLOCKING";
+			try {
+				if ((connection != null) &&
+						(!connection.isClosed())) {
+					PreparedStatement ps = 
+							connection.prepareStatement(backupDatabase);
+					result = ps.execute();
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Write the four model relations into a columnar model store file that
+	 * later runs map with {@link #openModelStore(File)} instead of loading
+	 * the relations through JDBC
+	 * @param location -- file to write, replaced if it exists
+	 * @return number of model segments exported or -1 on error
+	 */
+	public static synchronized int exportModelStore(File location) {
+		if (getRelationCount() != NUMBER_RELATIONS) {
+			System.err.println(databaseName + " database does not exist "
+					+ "or was not fully created");
+			return -1;
+		}
+		
+		long tic = System.nanoTime();
+		ModelStore.Writer storeWriter = new ModelStore.Writer();
+		try {
+			/* shards in order, so the ids keep ascending */
+			for (ModelShard shard : shards) {
+				try (PooledConnection pc = shard.acquire()) {
+			
+					/* local tuples with their global tuple, if any, in id order */
+					ResultSet rs = pc.prepare(selectStoreSegments).executeQuery();
+					while (rs.next()) {
+						byte[] packed = rs.getBytes(8);
+						if (packed == null) {
+							try {
+								packed = PackedChainCode.pack(rs.getString(9));
+							}
+							catch (IllegalArgumentException e) {
+								System.err.println("exportModelStore(): unusable chain code for id " 
+							                       + shard.toGlobalId(rs.getInt(1)) + ": " + e.getMessage());
+								packed = PackedChainCode.pack("");
+							}
+						}
+						String segmentType = rs.getString(6);
+						storeWriter.addSegment(shard.toGlobalId(rs.getInt(1)), rs.getString(2), rs.getInt(3), 
+								rs.getInt(4), rs.getInt(5), 
+								((segmentType != null) && (!segmentType.isEmpty())) ? 
+										segmentType.charAt(0) : ' ', 
+								rs.getShort(7), packed);
+						rs.getInt(10);
+						if (!rs.wasNull()) {
+							storeWriter.setGlobal(rs.getInt(11), rs.getInt(12), rs.getDouble(13), 
+									              rs.getDouble(14), rs.getDouble(15), rs.getInt(16));
+						}
+					}
+					rs.close();
+			
+					rs = pc.prepare(selectStoreMeta).executeQuery();
+					while (rs.next()) {
+						storeWriter.setSimGScore(rs.getString(1), rs.getDouble(2));
+					}
+					rs.close();
+			
+					rs = pc.prepare(selectStoreTriads).executeQuery();
+					while (rs.next()) {
+						storeWriter.addTriad(rs.getString(1), rs.getInt(2), rs.getInt(3), 
+								rs.getInt(4), rs.getInt(5), rs.getInt(6), rs.getInt(7));
+					}
+					rs.close();
+				}
+			}
+			
+			long bytes = storeWriter.write(location);
+			long toc = System.nanoTime();
+			System.out.println("Exported " + storeWriter.size() + " segments (" + bytes 
+					+ " bytes) to " + location.getAbsolutePath() + " in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+			return storeWriter.size();
+		} catch (SQLException | IOException e) {
+			e.printStackTrace();
+			return -1;
+		}
+	}
+	
+	/**
+	 * Map a model store written by {@link #exportModelStore(File)} and use 
+	 * it to build the in-memory snapshots of the model database. The store 
+	 * is only used if it holds the same tuples as the database and only 
+	 * until the database is next modified.
+	 * @param location -- model store file
+	 * @return true if the store is in use; false if it is missing, 
+	 * unreadable, or out of date
+	 */
+	public static boolean openModelStore(File location) {
+		long tic = System.nanoTime();
+		ModelStore store;
+		try {
+			store = ModelStore.open(location);
+		} catch (IOException e) {
+			System.err.println("Unable to open model store " 
+		                       + location.getAbsolutePath() + ": " + e.getMessage());
+			return false;
+		}
+		
+		/* tuple counts of every shard add up, the last id is the largest
+		 * global id of any shard */
+		long epoch = modelEpoch.get();
+		List<int[]> fingerprints = fanOut((shard) -> {
+			try (PooledConnection pc = shard.acquire()) {
+				ResultSet rs = pc.prepare(selectStoreFingerprint).executeQuery();
+				if (!rs.next()) {
+					return null;
+				}
+				int[] counts = {rs.getInt(1), rs.getInt(2), rs.getInt(3), 
+						        rs.getInt(4), rs.getInt(5)};
+				rs.close();
+				if (counts[0] > 0) {
+					counts[1] = shard.toGlobalId(counts[1]);
+				}
+				return counts;
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return null;
+			}
+		});
+		int[] total = new int[5];
+		for (int[] counts : fingerprints) {
+			if (counts == null) {
+				return false;
+			}
+			for (int i = 0; i < total.length; i++) {
+				total[i] = (i == 1) ? Math.max(total[i], counts[i]) : total[i] + counts[i];
+			}
+		}
+		if (!store.matches(total[0], total[1], total[2], total[3], total[4])) {
+			System.err.println(store + " does not match " + databaseName 
+					+ " database, export it again");
+			return false;
+		}
+		
+		modelStore = store;
+		modelStoreEpoch = epoch;
+		directoryRemove(null);
+		thresholdsRemove();
+		long toc = System.nanoTime();
+		System.out.println("Opened " + store + " in " 
+				+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+				+ " ms");
+		return true;
+	}
+	
+	/**
+	 * Get the model store if it still describes the model database 
+	 * @param epoch -- modification epoch the caller is reading at
+	 * @return model store or null if none is open or it is out of date
+	 */
+	private static ModelStore getModelStore(long epoch) {
+		ModelStore store = modelStore;
+		if ((store != null) && (modelStoreEpoch == epoch)) {
+			return store;
+		}
+		return null;
+	}
+	
+	/**
+	 * Determine if the primary obstruction table exists, always asks the
+	 * database catalog and reports what it found
+	 * @return number of obstruction relations found, 0 if there are none
+	 */
+	public static int doesDBExist() {
+		int tblCnt = queryRelationCount();
+		
+		/* the obstruction table was found */
+		if (tblCnt > 0) {
+			System.out.println(databaseName + " database exists");
+			System.out.println("A total of " + tblCnt + " relations were found");
+			return tblCnt;
+		}
+		else if (tblCnt == 0) {
+			System.out.println(databaseName + " does not exists");
+		}
+		return 0;
+	}
+	
+	/**
+	 * Number of obstruction relations in the database without going to 
+	 * the catalog each time. The count is validated when the module is 
+	 * initialized and refreshed whenever the relations are created or 
+	 * dropped, so it is safe to call from matching loops.
+	 * @return number of obstruction relations, 0 if there are none
+	 */
+	public static int getRelationCount() {
+		int cnt = relationCount;
+		if (cnt < 0) {
+			synchronized (relationCountLock) {
+				cnt = relationCount;
+				if (cnt < 0) {
+					cnt = queryRelationCount();
+				}
+			}
+		}
+		return (cnt < 0) ? 0 : cnt;
+	}
+	
+	/**
+	 * Ask the database catalog how many obstruction relations exist and
+	 * remember the answer. With several shards this is the count of the 
+	 * shard with the fewest relations, so a database only counts as fully 
+	 * created once every shard is.
+	 * @return number of relations or -1 if the catalog could not be read
+	 */
+	private static int queryRelationCount() {
+		int tblCnt = Integer.MAX_VALUE;
+		for (int shardCnt : queryRelationCounts()) {
+			tblCnt = Math.min(tblCnt, shardCnt);
+		}
+		if (tblCnt >= 0) {
+			relationCount = tblCnt;
+		}
+		return tblCnt;
+	}
+	
+	/**
+	 * Ask the database catalog of every shard how many obstruction 
+	 * relations it holds
+	 * @return number of relations in each shard, -1 for a shard whose
+	 * catalog could not be read
+	 */
+	private static int[] queryRelationCounts() {
+		List<Integer> counts = fanOut((shard) -> {
+			try (PooledConnection pc = shard.acquire()) {
+				
+				/* Pull all the system tables and look for the one that says
+				 * obstruction -- in the future may make the primary table
+				 * the chain code table and create additional tables with 
+				 * other attributes and foreign keys? */
+				ResultSet existSet = pc.prepare(doesDBExistStmt).executeQuery();
+				int tblCnt = 0;
+				if (existSet.next()) {
+					tblCnt = existSet.getInt(1);	
+				}
+				return tblCnt;
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			return -1;
+		});
+		return counts.stream().mapToInt(c -> c).toArray();
+	}
+	
+	/**
+	 * Note that relations were created or dropped so the cached relation
+	 * count is read from the catalog again
+	 */
+	private static void schemaChanged() {
+		relationCount = -1;
+	}
+	
+	/**
+	 * Terminate access to the database in a controlled manner, model 
+	 * images still queued for the writer thread are written first
+	 * @return true if the shutdown was w/o error; false otherwise
+	 */
+	public static boolean shutdown() {
+		synchronized (writeBehindLock) {
+			if (writeBehind != null) {
+				writeBehind.close();
+				writeBehind = null;
+			}
+		}
+		return shutdownShards();
+	}
+	
+	private static synchronized boolean shutdownShards() {
+		boolean result = false;
+		try {
+			for (ModelShard shard : shards) {
+				Connection connection = shard.getConnection();
+				if ((connection != null) && (!connection.isClosed())) {
+					shard.close();
+					System.out.println("shutdown(): shutdown command issued");
+				} 
+				else if (connection == null) {
+					System.err.println("shutdown(): connection was not available");
+				}
+				else if ((connection != null) && (connection.isClosed())) {
+					System.err.println("shutdown(): connection was closed but "
+							+ "resource was not released");
+				}
+			}
+			return result;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return false;
+		} 
+	}
+	
+	/**
+	 * Trim size of database
+	 * @return result of operation
+	 */
+	public static synchronized boolean defrag() {
+		boolean result = false;
+		try {
+			for (ModelShard shard : shards) {
+				Connection connection = shard.getConnection();
+				if ((connection != null) && (!connection.isClosed())) {
+					PreparedStatement ps = connection.prepareStatement("checkpoint defrag");
+					ps.execute();
+					System.out.println("defrag(): shrinking database to min size");
+				} 
+				else if (connection == null) {
+					System.err.println("defrag(): connection was not available");
+				}
+				else if ((connection != null) && (connection.isClosed())) {
+					System.err.println("defrag(): connection was closed but "
+							+ "resource was not released");
+				}
+			}
+			return result;
+		} catch (SQLException e) {
+			e.printStackTrace();
 			return false;
 		} 	
 	}
@@ -1305,11 +2296,16 @@ import org.opencv.core.Point;
 	 * @return chain code of the row containing the id
 	 */
 	public static String getChainCode(int id) {
-		try {
+		ModelShard shard = shardOf(id);
+		if (shard == null) {
+			return null;
+		}
+		Connection connection = shard.getConnection();
+		try (PooledConnection pc = shard.acquire()) {
 			if ((connection != null) && (!connection.isClosed())) {
 				PreparedStatement ps = 
-						connection.prepareStatement(selectChainCode);
-				ps.setInt(1, id);
+						pc.prepare(selectChainCode);
+				ps.setInt(1, ModelShard.localId(id));
 				boolean result = ps.execute();
 				if (result) {
 					ResultSet rs = ps.getResultSet();
@@ -1321,7 +2317,11 @@ import org.opencv.core.Point;
 						return null;
 					}
 					else {
-						return rs.getString("CHAINCODE");	
+						byte[] packed = rs.getBytes(CHAINCODE_PACKED_COLUMN);
+						if (packed != null) {
+							return PackedChainCode.toChainCodeString(packed);
+						}
+						return rs.getString(CHAINCODE_COLUMN);	
 					}					
 				}
 				else {
@@ -1335,18 +2335,215 @@ import org.opencv.core.Point;
 		return null; 
 	}
 	
+	/**
+	 * Note that the model relations changed so that any cached 
+	 * snapshot of them is reloaded on next use
+	 */
+	private static void modelChanged() {
+		modelEpoch.incrementAndGet();
+		
+		/* a model store is a copy of the relations as they were */
+		modelStore = null;
+	}
+	
+	/**
+	 * Get the modification epoch of the model database, it changes 
+	 * whenever tuples are inserted or deleted or the relations are 
+	 * dropped or created
+	 * @return current epoch
+	 */
+	public static long getModelEpoch() {
+		return modelEpoch.get();
+	}
+	
+	/**
+	 * Get an in-memory snapshot of every chain code in the model 
+	 * database. The snapshot is loaded with a single query the first 
+	 * time it is asked for and then shared by all callers until the 
+	 * model database changes, so the string similarity matchers do not
+	 * need a database round trip for every model segment they compare.
+	 * @return snapshot of the local relation or null if it could not 
+	 * be loaded
+	 */
+	public static ChainCodeCorpus getChainCodeCorpus() {
+		ChainCodeCorpus current = chainCodeCorpus;
+		if ((current != null) && (current.getEpoch() == modelEpoch.get())) {
+			return current;
+		}
+		
+		/* Only one caller needs to do the loading, the rest wait for it */
+		synchronized (chainCodeCorpusLock) {
+			current = chainCodeCorpus;
+			long epoch = modelEpoch.get();
+			if ((current != null) && (current.getEpoch() == epoch)) {
+				return current;
+			}
+			ChainCodeCorpus earlier = current;
+			current = loadChainCodeCorpus(epoch);
+			
+			/* rows appended since the last snapshot are inserted into its 
+			 * metric trees instead of building them again */
+			if ((current != null) && (earlier != null)) {
+				current.inheritMetricTrees(earlier);
+			}
+			chainCodeCorpus = current;
+			return current;
+		}
+	}
+	
+	/**
+	 * Read the whole local relation into a chain code snapshot
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return snapshot of the local relation or null on error
+	 */
+	private static ChainCodeCorpus loadChainCodeCorpus(long epoch) {
+		long tic = System.nanoTime();
+		ModelStore store = getModelStore(epoch);
+		if (store != null) {
+			ChainCodeCorpus corpus = store.toChainCodeCorpus(epoch);
+			long toc = System.nanoTime();
+			System.out.println("Loaded " + corpus + " from model store in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+			return corpus;
+		}
+		
+		List<ChainCodeCorpus> parts = fanOut((shard) -> loadChainCodeCorpus(shard, epoch));
+		if (parts.contains(null)) {
+			return null;
+		}
+		ChainCodeCorpus corpus = (parts.size() == 1) ? parts.get(0) : ChainCodeCorpus.merge(epoch, parts);
+		long toc = System.nanoTime();
+		System.out.println("Loaded " + corpus + " in " 
+				+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+				+ " ms");
+		return corpus;
+	}
+	
+	/**
+	 * Read the chain codes of one shard's local relation
+	 * @param shard -- shard to read
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return snapshot of the shard or null on error
+	 */
+	private static ChainCodeCorpus loadChainCodeCorpus(ModelShard shard, long epoch) {
+		try (PooledConnection pc = shard.acquire()) {
+			if ((shard.getConnection() == null) || (shard.getConnection().isClosed())) {
+				System.err.println("loadChainCodeCorpus(): no connection");
+				return null;
+			}
+			
+			ArrayList<String> fileNames = new ArrayList<String>();
+			HashMap<String, Integer> fileNameIdx = new HashMap<String, Integer>();
+			int capacity = 1024;
+			int[] ids = new int[capacity];
+			int[] fileIndex = new int[capacity];
+			char[] segmentTypes = new char[capacity];
+			short[] segmentRotations = new short[capacity];
+			int[] codeOffsets = new int[capacity+1];
+			byte[] codes = new byte[capacity * 64];
+			int codeCnt = 0;
+			int cnt = 0;
+			
+			PreparedStatement ps = 
+					pc.prepare(selectChainCodeCorpus);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				if (cnt == capacity) {
+					capacity *= 2;
+					ids = Arrays.copyOf(ids, capacity);
+					fileIndex = Arrays.copyOf(fileIndex, capacity);
+					segmentTypes = Arrays.copyOf(segmentTypes, capacity);
+					segmentRotations = Arrays.copyOf(segmentRotations, capacity);
+					codeOffsets = Arrays.copyOf(codeOffsets, capacity+1);
+				}
+				ids[cnt] = shard.toGlobalId(rs.getInt(1));
+				String fn = rs.getString(2);
+				Integer fnIdx = fileNameIdx.get(fn);
+				if (fnIdx == null) {
+					fnIdx = fileNames.size();
+					fileNames.add(fn);
+					fileNameIdx.put(fn, fnIdx);
+				}
+				fileIndex[cnt] = fnIdx;
+				String segmentType = rs.getString(3);
+				segmentTypes[cnt] = ((segmentType != null) && (!segmentType.isEmpty())) ? 
+						             segmentType.charAt(0) : 'S';
+				segmentRotations[cnt] = rs.getShort(4);
+				
+				/* chain codes go into one flat array of directions, rows 
+				 * that predate the packed column are converted on the fly */
+				byte[] packed = rs.getBytes(5);
+				byte[] rowCodes = null;
+				int rowLength = 0;
+				if (packed != null) {
+					rowLength = PackedChainCode.unpackedLength(packed);
+				}
+				else {
+					try {
+						rowCodes = PackedChainCode.toCodes(rs.getString(6));
+						rowLength = rowCodes.length;
+					}
+					catch (IllegalArgumentException e) {
+						System.err.println("loadChainCodeCorpus(): unusable chain code for id " 
+					                       + ids[cnt] + ": " + e.getMessage());
+					}
+				}
+				if (codeCnt + rowLength > codes.length) {
+					codes = Arrays.copyOf(codes, 
+							Math.max(codes.length * 2, codeCnt + rowLength));
+				}
+				if (packed != null) {
+					PackedChainCode.unpack(packed, codes, codeCnt);
+				}
+				else if (rowCodes != null) {
+					System.arraycopy(rowCodes, 0, codes, codeCnt, rowLength);
+				}
+				codeOffsets[cnt] = codeCnt;
+				codeCnt += rowLength;
+				codeOffsets[cnt+1] = codeCnt;
+				cnt++;
+			}
+			rs.close();
+			
+			ChainCodeCorpus corpus = new ChainCodeCorpus(epoch, 
+					Arrays.copyOf(ids, cnt), 
+					Arrays.copyOf(fileIndex, cnt),
+					fileNames.toArray(new String[fileNames.size()]),
+					Arrays.copyOf(segmentTypes, cnt),
+					Arrays.copyOf(segmentRotations, cnt),
+					Arrays.copyOf(codes, codeCnt),
+					Arrays.copyOf(codeOffsets, cnt+1));
+			return corpus;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
 	/**
 	 * Get the moment associated with a unique identifier
 	 * @param id -- database id which is unique for each entry
 	 * @return moment for given id
 	 */
 	public static Point getMoment(int id) {
-		try {
+		ModelStore store = getModelStore(modelEpoch.get());
+		if (store != null) {
+			int k = store.indexOf(id);
+			return (k >= 0) ? store.getMoment(k) : null;
+		}
+		
+		ModelShard shard = shardOf(id);
+		if (shard == null) {
+			return null;
+		}
+		Connection connection = shard.getConnection();
+		try (PooledConnection pc = shard.acquire()) {
 			if ((connection != null) && 
 					(!connection.isClosed())) {
 				PreparedStatement ps = 
-						connection.prepareStatement(selectMoment);	
-				ps.setInt(1, id);
+						pc.prepare(selectMoment);	
+				ps.setInt(1, ModelShard.localId(id));
 				boolean result = ps.execute();
 				if (result) {
 					ResultSet rs = ps.getResultSet();
@@ -1371,48 +2568,19 @@ import org.opencv.core.Point;
 	}
 	
 	public static double[] getThresholds(int firstID, int lastID, boolean retrieveUpper) {
-		ArrayList<Double> thresholds = null;
-		try {			
-			if ((connection != null) && 
-					(!connection.isClosed())) {
-				
-				/* Prepare statement to get upper/lower thresholds for a particular image r*/
-				PreparedStatement ps = null;
-				if (retrieveUpper) {
-					ps = connection.prepareStatement(selectUpperThresholds);					
-				}
-				else {
-					ps = connection.prepareStatement(selectLowerThresholds);
-				}
-				
-				/* set starting and ending IDs needed to get the thresholds for a particular image */				
-				ps.setInt(1, firstID);
-				ps.setInt(2, lastID);
-				
-				/* Execute the SQL to get all the upper/lower thresholds for a given image */
-				boolean result = ps.execute();
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					thresholds = new ArrayList<Double>(ps.getFetchSize());
-					if (retrieveUpper) {
-						while (rs.next()) {
-							thresholds.add(rs.getDouble(THETA2_COLUMN));														
-						}						
-					}
-					else {
-						while (rs.next()) {
-							thresholds.add(rs.getDouble(THETA1_COLUMN));
-						}
-					}					
-					
-				}
-			}
+		/* an image's segments all live in one shard */
+		ModelShard shard = shardOf(firstID);
+		if (shard == null) {
+			return null;
 		}
-		catch (SQLException e) {
-			e.printStackTrace();
+		ModelThresholds thresholds = getModelThresholds();
+		if (thresholds == null) {
 			return null;
 		}
-		return thresholds.stream().mapToDouble(d -> d).toArray();
+		if (ModelShard.shardOf(lastID) != shard.getNumber()) {
+			lastID = shard.toGlobalId(ModelShard.LOCAL_ID_MASK);
+		}
+		return thresholds.getThresholds(firstID, lastID, retrieveUpper);
 	}
 	
 	/**
@@ -1421,129 +2589,152 @@ import org.opencv.core.Point;
 	 * @param momentx -- x coordinate of the moment
 	 * @param momenty -- y coordinate of the moment
 	 * @param epsilon -- error that is acceptable in finding a match
-	 * @return models containing the moment
+	 * @return models containing the moment, once per matching segment
 	 */
 	public static ArrayList<String> getFilesWithMoment(
 			int momentx, int momenty, float epsilon) {
-		ArrayList<String> filenames = new ArrayList<String>();
+		MomentGridIndex index = getMomentIndex();
+		if (index == null) {
+			return null;
+		}
+		return index.getFilesWithMoment(momentx, momenty, epsilon);
+	}
+	
+	/**
+	 * Return the model images containing each of a set of moments,
+	 * answered together from the moment index
+	 * @param moments -- sample moments
+	 * @param epsilon -- error that is acceptable in finding a match
+	 * @return models containing each moment, in the order given
+	 */
+	public static List<ArrayList<String>> getFilesWithMoments(
+			List<Point> moments, float epsilon) {
+		MomentGridIndex index = getMomentIndex();
+		if (index == null) {
+			return null;
+		}
+		return index.getFilesWithMoments(moments, epsilon);
+	}
+	
+	/**
+	 * Get the grid index over the moments of every model segment. It is 
+	 * built with a single query the first time it is asked for and 
+	 * rebuilt on next use after the model database changes.
+	 * @return moment index or null if it could not be built
+	 */
+	public static MomentGridIndex getMomentIndex() {
+		MomentGridIndex current = momentIndex;
+		if ((current != null) && (current.getEpoch() == modelEpoch.get())) {
+			return current;
+		}
 		
-		try {
-			
-			// There are no negative coordinates
-			if ((momentx < 0) || (momenty < 0)) {
-				return null;
+		synchronized (momentIndexLock) {
+			current = momentIndex;
+			long epoch = modelEpoch.get();
+			if ((current != null) && (current.getEpoch() == epoch)) {
+				return current;
 			}
+			current = loadMomentIndex(epoch);
+			momentIndex = current;
+			return current;
+		}
+	}
+	
+	/**
+	 * Read the moments of the global relation into a grid index
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return moment index or null on error
+	 */
+	private static MomentGridIndex loadMomentIndex(long epoch) {
+		long tic = System.nanoTime();
+		ModelStore store = getModelStore(epoch);
+		if (store != null) {
+			MomentGridIndex index = store.toMomentIndex(epoch);
+			long toc = System.nanoTime();
+			System.out.println("Loaded " + index + " from model store in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+			return index;
+		}
+		
+		List<MomentGridIndex> parts = fanOut((shard) -> loadMomentIndex(shard, epoch));
+		if (parts.contains(null)) {
+			return null;
+		}
+		MomentGridIndex index = (parts.size() == 1) ? parts.get(0) : MomentGridIndex.merge(epoch, parts);
+		long toc = System.nanoTime();
+		System.out.println("Loaded " + index + " in " 
+				+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+				+ " ms");
+		return index;
+	}
+	
+	/**
+	 * Read the moments of one shard's global relation
+	 * @param shard -- shard to read
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return moment index of the shard or null on error
+	 */
+	private static MomentGridIndex loadMomentIndex(ModelShard shard, long epoch) {
+		try (PooledConnection pc = shard.acquire()) {
+			ArrayList<String> fileNames = new ArrayList<String>();
+			HashMap<String, Integer> fileNameIdx = new HashMap<String, Integer>();
+			int capacity = 1024;
+			int[] ids = new int[capacity];
+			int[] xs = new int[capacity];
+			int[] ys = new int[capacity];
+			int[] fileIndex = new int[capacity];
+			int cnt = 0;
 			
-			// if the database is connected, execute the query
-			if ((connection != null) && (!connection.isClosed())) {
-				int minx = (int) (momentx - (momentx * epsilon));
-				int maxx = (int) (momentx + (momentx * epsilon));
-				int miny = (int) (momenty - (momenty * epsilon));
-				int maxy = (int) (momenty + (momenty * epsilon));
-				PreparedStatement ps = 
-						connection.prepareStatement(selectFilesWMomentWithEpsilon);
-				ps.setInt(1, minx);
-				ps.setInt(2, maxx);
-				ps.setInt(3, miny);
-				ps.setInt(4, maxy);
-				boolean result = ps.execute();
-				
-				// if there is a result, process it 
-				if (result) {					
-					ResultSet rs = ps.getResultSet();
-					System.out.println("Positive result from statement " + rs.getStatement().toString());
-					while (rs.next()) {
-						filenames.add(rs.getString(1));
-					}
-					return filenames;
+			ResultSet rs = pc.prepare(selectMomentIndex).executeQuery();
+			while (rs.next()) {
+				if (cnt == capacity) {
+					capacity *= 2;
+					ids = Arrays.copyOf(ids, capacity);
+					xs = Arrays.copyOf(xs, capacity);
+					ys = Arrays.copyOf(ys, capacity);
+					fileIndex = Arrays.copyOf(fileIndex, capacity);
 				}
-				else {
-					return null;
+				ids[cnt] = shard.toGlobalId(rs.getInt(1));
+				xs[cnt] = rs.getInt(2);
+				ys[cnt] = rs.getInt(3);
+				String fn = rs.getString(4);
+				Integer fnIdx = fileNameIdx.get(fn);
+				if (fnIdx == null) {
+					fnIdx = fileNames.size();
+					fileNames.add(fn);
+					fileNameIdx.put(fn, fnIdx);
 				}
+				fileIndex[cnt] = fnIdx;
+				cnt++;
 			}
+			rs.close();
+			
+			MomentGridIndex index = new MomentGridIndex(epoch, 
+					MomentGridIndex.DEFAULT_CELL_SIZE,
+					Arrays.copyOf(ids, cnt), Arrays.copyOf(xs, cnt), 
+					Arrays.copyOf(ys, cnt), Arrays.copyOf(fileIndex, cnt),
+					fileNames.toArray(new String[fileNames.size()]));
+			return index;
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return null;
 		}
-		return null;
 	}
 	
+	/**
+	 * Retrieve the Delaunay graph of a model image from the triad corpus
+	 * @param filename -- model image filename in either representation
+	 * @return flattened list of triangle vertices, empty if the image has 
+	 * no graph, or null if the corpus could not be loaded
+	 */
 	public static List<Point> getDelaunayGraph(String filename) {
-		try {
-			List <Point> graphPoints;
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps = 
-						connection.prepareStatement(selectFileDelaGlbStmt);
-				ps.setString(1, filename);
-				boolean result = ps.execute();
-				
-				// if there is a result, process it 
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					
-					// determine size of data structure to hold results					
-					graphPoints = new ArrayList<Point>();															
-					
-					while (rs.next()) {
-						double tx1 = rs.getDouble(TRIAD_X1);
-						double ty1 = rs.getDouble(TRIAD_Y1);
-						double tx2 = rs.getDouble(TRIAD_X2);
-						double ty2 = rs.getDouble(TRIAD_Y2);
-						double tx3 = rs.getDouble(TRIAD_X3);
-						double ty3 = rs.getDouble(TRIAD_Y3);
-						graphPoints.add(new Point(tx1,ty1));
-						graphPoints.add(new Point(tx2,ty2));
-						graphPoints.add(new Point(tx3,ty3));
-					}
-					
-					// try searching using the alternative filename formulation
-					if (graphPoints.isEmpty()) {
-						if (filename.contains(":")) {
-							filename = filename.replace(':', '/');
-						}
-						else if (filename.contains("/")) {
-							filename = filename.replace('/', ':');
-						}
-					}
-					else {
-						return graphPoints;
-					}
-					
-					ps = connection.prepareStatement(selectFileDelaGlbStmt);
-					ps.setString(1,  filename);
-					result = ps.execute();
-					
-					if (result) {
-						rs = ps.getResultSet();
-					}
-					else {
-						return null;
-					}				
-					
-					while (rs.next()) {
-						double tx1 = rs.getDouble(TRIAD_X1);
-						double ty1 = rs.getDouble(TRIAD_Y1);
-						double tx2 = rs.getDouble(TRIAD_X2);
-						double ty2 = rs.getDouble(TRIAD_Y2);
-						double tx3 = rs.getDouble(TRIAD_X3);
-						double ty3 = rs.getDouble(TRIAD_Y3);
-						graphPoints.add(new Point(tx1,ty1));
-						graphPoints.add(new Point(tx2,ty2));
-						graphPoints.add(new Point(tx3,ty3));
-					}					
-									
-					// return the graph
-					return graphPoints;
-				}
-				else {
-					return null;
-				}
-			}
-		} catch (SQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		TriadCorpus corpus = getTriadCorpus();
+		if ((corpus == null) || (filename == null)) {
+			return null;
 		}
-		return null;
+		int k = corpus.indexOf(filename);
+		return (k >= 0) ? corpus.toPoints(k) : new ArrayList<Point>();
 	}
 	
 	/**
@@ -1552,45 +2743,22 @@ import org.opencv.core.Point;
 	 * @return filename of model image
 	 */
 	public static String getFileName(int id) {
-		try {
-			
-			// There are no negative ids or segments
-			if (id < 0) {
-				return "N/A";
-			}
-			
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps = 
-						connection.prepareStatement(selectFn);
-				ps.setInt(1, id);
-				boolean result = ps.execute();
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					if (rs != null) {
-						result = rs.next();
-						if (result)
-						   return rs.getString("FILENAME");
-						else {
-							System.err.println("Error retrieving "
-									+ "FILENAME field value for id"
-									+ ":" + id);
-						}
-					}
-					else {
-						System.err.println("There was no cursor to process in "
-								+ "retrieveing data for id "+ id);
-					}
-				}
-				else {
-					System.err.println("There was no fileanme for id " + id);
-					return null;
-				}
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
+		// There are no negative ids or segments
+		if (id < 0) {
+			return "N/A";
+		}
+		
+		ModelDirectory directory = getModelDirectory();
+		if (directory == null) {
 			return null;
 		}
-		return null; 
+		String filename = directory.getFileName(id);
+		if (filename == null) {
+			System.err.println("Error retrieving "
+					+ "FILENAME field value for id"
+					+ ":" + id);
+		}
+		return filename;
 	}
 	
 	/**
@@ -1599,43 +2767,24 @@ import org.opencv.core.Point;
 	 * @return simG score
 	 */
 	public static double getSimGScore(String filename) {
-		try {
-			
-			// There are no negative ids or segments
-			if ((filename == null) || (filename.isEmpty())) {
-				return -1.0;
-			}
-			
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps = 
-						connection.prepareStatement(selectsimGDelaunayValue);
-				ps.setString(1, filename);
-				boolean result = ps.execute();
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					if (rs != null) {
-						result = rs.next();
-						if (result)
-						   return rs.getDouble(1);
-						else {
-							System.err.println("Error retrieving "
-									+ "individual simG score for " + filename);
-						}
-					}
-					else {
-						System.err.println("No result set for " + filename);
-					}
-				}
-				else {
-					System.err.println("There was no result from the query for " + filename);
-					return -2;
-				}
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
+		// There are no negative ids or segments
+		if ((filename == null) || (filename.isEmpty())) {
+			return -1.0;
+		}
+		
+		ModelThresholds thresholds = getModelThresholds();
+		if (thresholds == null) {
 			return -3;
 		}
-		return -4.0; 
+		
+		/* images only ever stored with a triangulation have no score */
+		Double simG = thresholds.getSimGScore(filename);
+		if (simG == null) {
+			System.err.println("Error retrieving "
+					+ "individual simG score for " + filename);
+			return -4.0;
+		}
+		return simG;
 	}
 	
 	/**
@@ -1644,50 +2793,115 @@ import org.opencv.core.Point;
 	 * @return Delunay triangulation of model as a list of triads
 	 */
 	public static List<Point> getTriads(String filename) {
-		List<Point> triads = new ArrayList<Point>();
+		// There are no negative ids or segments
+		if ((filename == null) || (filename.isEmpty())) {
+			return null;
+		}
 		
-		try {
-			
-			// There are no negative ids or segments
-			if ((filename == null) || (filename.isEmpty())) {
-				return null;
+		TriadCorpus corpus = getTriadCorpus();
+		if (corpus == null) {
+			return null;
+		}
+		int k = corpus.indexOf(filename);
+		List<Point> triads = (k >= 0) ? corpus.toPoints(k) : new ArrayList<Point>();
+		
+		System.out.println("Returning Delaunay Triangulation with " + (triads.size()/3) + " triads ");
+		return triads; 
+	}
+	
+	/**
+	 * Get the Delaunay triangulation of every model image. It is built from 
+	 * the packed triads column, one query per shard, the first time it is 
+	 * asked for and rebuilt on next use after the model database changes.
+	 * @return triad corpus or null if it could not be built
+	 */
+	public static TriadCorpus getTriadCorpus() {
+		TriadCorpus current = triadCorpus;
+		if ((current != null) && (current.getEpoch() == modelEpoch.get())) {
+			return current;
+		}
+		
+		synchronized (triadCorpusLock) {
+			current = triadCorpus;
+			long epoch = modelEpoch.get();
+			if ((current != null) && (current.getEpoch() == epoch)) {
+				return current;
 			}
+			current = loadTriadCorpus(epoch);
+			triadCorpus = current;
+			return current;
+		}
+	}
+	
+	/**
+	 * Read the packed triangulations of every model image
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return triad corpus or null on error
+	 */
+	private static TriadCorpus loadTriadCorpus(long epoch) {
+		long tic = System.nanoTime();
+		ModelStore store = getModelStore(epoch);
+		if (store != null) {
+			TriadCorpus corpus = store.toTriadCorpus(epoch);
+			long toc = System.nanoTime();
+			System.out.println("Loaded " + corpus + " from model store in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+			return corpus;
+		}
+		
+		List<TriadCorpus> parts = fanOut((shard) -> loadTriadCorpus(shard, epoch));
+		if (parts.contains(null)) {
+			return null;
+		}
+		TriadCorpus corpus = (parts.size() == 1) ? parts.get(0) : TriadCorpus.merge(epoch, parts);
+		long toc = System.nanoTime();
+		System.out.println("Loaded " + corpus + " in " 
+				+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+				+ " ms");
+		return corpus;
+	}
+	
+	/**
+	 * Read the packed triangulations of one shard's meta relation
+	 * @param shard -- shard to read
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return triad corpus of the shard or null on error
+	 */
+	private static TriadCorpus loadTriadCorpus(ModelShard shard, long epoch) {
+		try (PooledConnection pc = shard.acquire()) {
+			ArrayList<String> fileNames = new ArrayList<String>();
+			ArrayList<byte[]> blobs = new ArrayList<byte[]>();
+			int triadCnt = 0;
 			
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps = 
-						connection.prepareStatement(selectTriads);
-				ps.setString(1, filename);
-				boolean result = ps.execute();
-				if (result) {					
-					ResultSet rs = ps.getResultSet();
-					System.out.println("getTriads() -- Positive result from statement: " + rs.getStatement().toString());					
-					while (rs.next()) {					
-				      int x1 = rs.getInt(TRIAD_X1);
-					  int y1 = rs.getInt(TRIAD_Y1);
-				      int x2 = rs.getInt(TRIAD_X2);
-					  int y2 = rs.getInt(TRIAD_Y2);
-				      int x3 = rs.getInt(TRIAD_X3);
-					  int y3 = rs.getInt(TRIAD_Y3);
-					  Point p1 = new Point(x1,y1);
-					  Point p2 = new Point(x2,y2);
-					  Point p3 = new Point(x3,y3);
-					  triads.add(p1);
-					  triads.add(p2);
-					  triads.add(p3);
-					}
-					
+			ResultSet rs = pc.prepare(selectTriadCorpus).executeQuery();
+			while (rs.next()) {
+				byte[] packed = rs.getBytes(2);
+				if (PackedTriads.count(packed) == 0) {
+					continue;
 				}
-				else {
-					System.err.println("No result set for " + filename);
-				}			
+				fileNames.add(rs.getString(1));
+				blobs.add(packed);
+				triadCnt += PackedTriads.count(packed);
 			}
+			rs.close();
+			
+			int[] triadStarts = new int[fileNames.size() + 1];
+			int[] coordinates = new int[triadCnt * PackedTriads.INTS_PER_TRIAD];
+			int triad = 0;
+			for (int k = 0; k < blobs.size(); k++) {
+				triadStarts[k] = triad;
+				PackedTriads.unpack(blobs.get(k), coordinates, 
+						            triad * PackedTriads.INTS_PER_TRIAD);
+				triad += PackedTriads.count(blobs.get(k));
+			}
+			triadStarts[blobs.size()] = triad;
+			return new TriadCorpus(epoch, fileNames.toArray(new String[fileNames.size()]),
+					               triadStarts, coordinates);
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return null;
 		}
-		
-		System.out.println("Returning Delaunay Triangulation with " + (triads.size()/3) + " triads ");
-		return triads; 
 	}
 	
 	/**
@@ -1695,67 +2909,407 @@ import org.opencv.core.Point;
 	 * @return
 	 */
 	public static List<String> getAllModelFileName(){	
-		List<String> modelNames = null;
-		try {
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps =
-						connection.prepareStatement(selectModelFilenames);
-				boolean result = ps.execute();
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					modelNames = new ArrayList<String>(rs.getFetchSize());
-					while(rs.next()) {
-						modelNames.add(rs.getString(FILENAME_COLUMN));						
-					}
-				}
-				else {
-					System.err.println("getAllModelFileName(): Connection is closed");
+		ModelDirectory directory = getModelDirectory();
+		if (directory == null) {
+			return null;
+		}
+		return directory.getFileNames();
+	}
+	
+	/**
+	 * Find the standard, unrotated model segments whose chain code starts
+	 * at a given point
+	 * @param ccStart -- chain code start point of a sample segment
+	 * @return one container per matching model segment holding the model
+	 * filename
+	 */
+	public static List<PointMatchContainer> getImagesMatchingCCStart(Point ccStart){
+		StartPointIndex index = getStartPointIndex();
+		if (index == null) {
+			return null;
+		}
+		return index.getImagesMatchingCCStart(ccStart, 'S', (short)0, 0);
+	}
+	
+	/**
+	 * Find the standard, unrotated model segments whose chain code starts
+	 * at or near each of a set of points, answered together from the 
+	 * start point index
+	 * @param ccStarts -- chain code start points of the sample segments
+	 * @param tolerance -- pixels a start may be off along each axis, 0 for
+	 * an exact match
+	 * @return matches for each start point, in the order given
+	 */
+	public static List<List<PointMatchContainer>> getImagesMatchingCCStarts(
+			List<Point> ccStarts, int tolerance){
+		StartPointIndex index = getStartPointIndex();
+		if (index == null) {
+			return null;
+		}
+		return index.getImagesMatchingCCStarts(ccStarts, 'S', (short)0, tolerance);
+	}
+	
+	/**
+	 * Get the directory of model images in the local relation. It is 
+	 * loaded with a single query the first time it is asked for and then 
+	 * kept up to date as model images are inserted and deleted.
+	 * @return model directory or null if it could not be loaded
+	 */
+	public static ModelDirectory getModelDirectory() {
+		ModelDirectory current = modelDirectory;
+		if (current != null) {
+			return current;
+		}
+		
+		synchronized (modelDirectoryLock) {
+			if (modelDirectory == null) {
+				modelDirectory = loadModelDirectory();
+			}
+			return modelDirectory;
+		}
+	}
+	
+	/**
+	 * Record newly inserted segments of a model image in the directory,
+	 * nothing is done if the directory has not been loaded yet
+	 * @param filename -- filename as stored in the database
+	 * @param ids -- ids of the new segments, ascending
+	 * @param segmentType -- segment type of the new segments
+	 * @param segmentRotation -- segment rotation of the new segments
+	 */
+	private static void directoryAdd(String filename, int[] ids, 
+			                         char segmentType, short segmentRotation) {
+		synchronized (modelDirectoryLock) {
+			if (modelDirectory != null) {
+				modelDirectory = modelDirectory.withSegments(filename, ids, 
+						                                     segmentType, segmentRotation);
+			}
+		}
+	}
+	
+	/**
+	 * Remove a model image from the directory, or forget the whole 
+	 * directory when filename is null so it is reloaded on next use
+	 * @param filename -- filename as stored in the database or null
+	 */
+	private static void directoryRemove(String filename) {
+		synchronized (modelDirectoryLock) {
+			if ((modelDirectory != null) && (filename != null)) {
+				modelDirectory = modelDirectory.without(filename);
+			}
+			else {
+				modelDirectory = null;
+			}
+		}
+	}
+	
+	/**
+	 * Get the angle thresholds of every segment and the simG score of 
+	 * every model image. They are loaded with one query per relation the 
+	 * first time they are asked for and then kept up to date as model 
+	 * images are inserted.
+	 * @return threshold cache or null if it could not be loaded
+	 */
+	public static ModelThresholds getModelThresholds() {
+		ModelThresholds current = modelThresholds;
+		if (current != null) {
+			return current;
+		}
+		
+		synchronized (modelThresholdsLock) {
+			if (modelThresholds == null) {
+				modelThresholds = loadModelThresholds();
+			}
+			return modelThresholds;
+		}
+	}
+	
+	/**
+	 * Record the global tuples and simG score of a newly inserted model 
+	 * image, nothing is done if the cache has not been loaded yet
+	 * @param filename -- filename as stored in the meta relation
+	 * @param ids -- ids of the new global tuples, ascending
+	 * @param theta1s -- lower threshold of each new tuple
+	 * @param theta2s -- upper threshold of each new tuple
+	 * @param simGScore -- simG score of the image or null if it has none
+	 */
+	private static void thresholdsAdd(String filename, int[] ids, double[] theta1s,
+			                          double[] theta2s, Double simGScore) {
+		synchronized (modelThresholdsLock) {
+			if (modelThresholds != null) {
+				modelThresholds = modelThresholds.withImage(filename, ids, theta1s, 
+						                                    theta2s, simGScore);
+			}
+		}
+	}
+	
+	/**
+	 * Forget the threshold cache so it is reloaded on next use
+	 */
+	private static void thresholdsRemove() {
+		synchronized (modelThresholdsLock) {
+			modelThresholds = null;
+		}
+	}
+	
+	/**
+	 * Read the thresholds of the global relation and the scores of the 
+	 * meta relation
+	 * @return threshold cache or null on error
+	 */
+	private static ModelThresholds loadModelThresholds() {
+		long tic = System.nanoTime();
+		ModelStore store = getModelStore(modelEpoch.get());
+		if (store != null) {
+			ModelThresholds thresholds = store.toModelThresholds();
+			long toc = System.nanoTime();
+			System.out.println("Loaded " + thresholds + " from model store in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+			return thresholds;
+		}
+		
+		List<ModelThresholds> parts = fanOut((shard) -> loadModelThresholds(shard));
+		if (parts.contains(null)) {
+			return null;
+		}
+		ModelThresholds thresholds = (parts.size() == 1) ? parts.get(0) : ModelThresholds.merge(parts);
+		long toc = System.nanoTime();
+		System.out.println("Loaded " + thresholds + " in " 
+				+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+				+ " ms");
+		return thresholds;
+	}
+	
+	/**
+	 * Read the thresholds and scores of one shard
+	 * @param shard -- shard to read
+	 * @return threshold cache of the shard or null on error
+	 */
+	private static ModelThresholds loadModelThresholds(ModelShard shard) {
+		try (PooledConnection pc = shard.acquire()) {
+			int capacity = 1024;
+			int[] ids = new int[capacity];
+			double[] theta1s = new double[capacity];
+			double[] theta2s = new double[capacity];
+			int cnt = 0;
+			
+			ResultSet rs = pc.prepare(selectThresholdCache).executeQuery();
+			while (rs.next()) {
+				if (cnt == capacity) {
+					capacity *= 2;
+					ids = Arrays.copyOf(ids, capacity);
+					theta1s = Arrays.copyOf(theta1s, capacity);
+					theta2s = Arrays.copyOf(theta2s, capacity);
 				}
+				ids[cnt] = shard.toGlobalId(rs.getInt(1));
+				theta1s[cnt] = rs.getDouble(2);
+				theta2s[cnt] = rs.getDouble(3);
+				cnt++;
+			}
+			rs.close();
+			
+			HashMap<String, Double> simGScores = new HashMap<String, Double>();
+			rs = pc.prepare(selectStoreMeta).executeQuery();
+			while (rs.next()) {
+				simGScores.put(rs.getString(1), rs.getDouble(2));
 			}
+			rs.close();
+			return new ModelThresholds(Arrays.copyOf(ids, cnt), Arrays.copyOf(theta1s, cnt),
+					                   Arrays.copyOf(theta2s, cnt), simGScores);
 		} catch (SQLException e) {
 			e.printStackTrace();
+			return null;
 		}
-		return modelNames;
 	}
 	
-	public static List<PointMatchContainer> getImagesMatchingCCStart(Point ccStart){
-		List<PointMatchContainer> pmcList = new ArrayList<PointMatchContainer>();
+	/**
+	 * Read the ids and filenames of the local relation into a directory
+	 * @return model directory or null on error
+	 */
+	private static ModelDirectory loadModelDirectory() {
+		long tic = System.nanoTime();
+		ModelStore store = getModelStore(modelEpoch.get());
+		if (store != null) {
+			ModelDirectory directory = store.toModelDirectory();
+			long toc = System.nanoTime();
+			System.out.println("Loaded " + directory + " from model store in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+			return directory;
+		}
 		
-		try {
+		List<ModelDirectory> parts = fanOut((shard) -> loadModelDirectory(shard));
+		if (parts.contains(null)) {
+			return null;
+		}
+		ModelDirectory directory = (parts.size() == 1) ? parts.get(0) : ModelDirectory.merge(parts);
+		long toc = System.nanoTime();
+		System.out.println("Loaded " + directory + " in " 
+				+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+				+ " ms");
+		return directory;
+	}
+	
+	/**
+	 * Read the ids and filenames of one shard's local relation
+	 * @param shard -- shard to read
+	 * @return directory of the shard or null on error
+	 */
+	private static ModelDirectory loadModelDirectory(ModelShard shard) {
+		try (PooledConnection pc = shard.acquire()) {
+			HashMap<String, String> fileNames = new HashMap<String, String>();
+			int capacity = 1024;
+			int[] ids = new int[capacity];
+			String[] filenames = new String[capacity];
+			char[] types = new char[capacity];
+			short[] rotations = new short[capacity];
+			int cnt = 0;
 			
-			// There are no negative coordinates
-			if ((ccStart == null) || (ccStart.x < 0) || (ccStart.y < 0)){
-				return null;
+			ResultSet rs = pc.prepare(selectModelDirectory).executeQuery();
+			while (rs.next()) {
+				if (cnt == capacity) {
+					capacity *= 2;
+					ids = Arrays.copyOf(ids, capacity);
+					filenames = Arrays.copyOf(filenames, capacity);
+					types = Arrays.copyOf(types, capacity);
+					rotations = Arrays.copyOf(rotations, capacity);
+				}
+				ids[cnt] = shard.toGlobalId(rs.getInt(1));
+				
+				/* share one string per model image */
+				String fn = rs.getString(2);
+				String shared = fileNames.putIfAbsent(fn, fn);
+				filenames[cnt] = (shared != null) ? shared : fn;
+				String segmentType = rs.getString(3);
+				types[cnt] = ((segmentType != null) && (!segmentType.isEmpty())) ? 
+						      segmentType.charAt(0) : ' ';
+				rotations[cnt] = rs.getShort(4);
+				cnt++;
 			}
+			rs.close();
 			
-			// if the database is connected, execute the query
-			if ((connection != null) && (!connection.isClosed())) {
-				PreparedStatement ps = 
-						connection.prepareStatement(selectccStart);
-				ps.setInt(1, (int)ccStart.x);
-				ps.setInt(2, (int)ccStart.y);
-				ps.setString(3, String.valueOf('S'));
-				ps.setShort(4, (short)0);
-				boolean result = ps.execute();
-				
-				// if there is a result, process it 
-				if (result) {
-					ResultSet rs = ps.getResultSet();
-					while (rs.next()) {
-						PointMatchContainer pmc = new PointMatchContainer(ccStart);
-						pmc.setMatch(rs.getString(1));
-						pmcList.add(new PointMatchContainer(pmc));
-					}
-					return pmcList;
+			ModelDirectory directory = 
+					ModelDirectory.fromRows(ids, filenames, types, rotations, cnt);
+			return directory;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Get the hash index over the chain code start point of every model 
+	 * segment. It is built with a single query the first time it is asked 
+	 * for and rebuilt on next use after the model database changes.
+	 * @return start point index or null if it could not be built
+	 */
+	public static StartPointIndex getStartPointIndex() {
+		StartPointIndex current = startPointIndex;
+		if ((current != null) && (current.getEpoch() == modelEpoch.get())) {
+			return current;
+		}
+		
+		synchronized (startPointIndexLock) {
+			current = startPointIndex;
+			long epoch = modelEpoch.get();
+			if ((current != null) && (current.getEpoch() == epoch)) {
+				return current;
+			}
+			current = loadStartPointIndex(epoch);
+			startPointIndex = current;
+			return current;
+		}
+	}
+	
+	/**
+	 * Read the chain code start points of the local relation into a hash
+	 * index
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return start point index or null on error
+	 */
+	private static StartPointIndex loadStartPointIndex(long epoch) {
+		long tic = System.nanoTime();
+		ModelStore store = getModelStore(epoch);
+		if (store != null) {
+			StartPointIndex index = store.toStartPointIndex(epoch);
+			long toc = System.nanoTime();
+			System.out.println("Loaded " + index + " from model store in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+			return index;
+		}
+		
+		List<StartPointIndex> parts = fanOut((shard) -> loadStartPointIndex(shard, epoch));
+		if (parts.contains(null)) {
+			return null;
+		}
+		StartPointIndex index = (parts.size() == 1) ? parts.get(0) : StartPointIndex.merge(epoch, parts);
+		long toc = System.nanoTime();
+		System.out.println("Loaded " + index + " in " 
+				+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+				+ " ms");
+		return index;
+	}
+	
+	/**
+	 * Read the chain code start points of one shard's local relation
+	 * @param shard -- shard to read
+	 * @param epoch -- modification epoch the data is being read at
+	 * @return start point index of the shard or null on error
+	 */
+	private static StartPointIndex loadStartPointIndex(ModelShard shard, long epoch) {
+		try (PooledConnection pc = shard.acquire()) {
+			ArrayList<String> fileNames = new ArrayList<String>();
+			HashMap<String, Integer> fileNameIdx = new HashMap<String, Integer>();
+			int capacity = 1024;
+			int[] ids = new int[capacity];
+			int[] xs = new int[capacity];
+			int[] ys = new int[capacity];
+			char[] types = new char[capacity];
+			short[] rotations = new short[capacity];
+			int[] fileIndex = new int[capacity];
+			int cnt = 0;
+			
+			ResultSet rs = pc.prepare(selectStartPointIndex).executeQuery();
+			while (rs.next()) {
+				if (cnt == capacity) {
+					capacity *= 2;
+					ids = Arrays.copyOf(ids, capacity);
+					xs = Arrays.copyOf(xs, capacity);
+					ys = Arrays.copyOf(ys, capacity);
+					types = Arrays.copyOf(types, capacity);
+					rotations = Arrays.copyOf(rotations, capacity);
+					fileIndex = Arrays.copyOf(fileIndex, capacity);
 				}
-				else {
-					return null;
+				ids[cnt] = shard.toGlobalId(rs.getInt(1));
+				xs[cnt] = rs.getInt(2);
+				ys[cnt] = rs.getInt(3);
+				String segmentType = rs.getString(4);
+				types[cnt] = ((segmentType != null) && (!segmentType.isEmpty())) ? 
+						      segmentType.charAt(0) : ' ';
+				rotations[cnt] = rs.getShort(5);
+				String fn = rs.getString(6);
+				Integer fnIdx = fileNameIdx.get(fn);
+				if (fnIdx == null) {
+					fnIdx = fileNames.size();
+					fileNames.add(fn);
+					fileNameIdx.put(fn, fnIdx);
 				}
+				fileIndex[cnt] = fnIdx;
+				cnt++;
 			}
+			rs.close();
+			
+			StartPointIndex index = new StartPointIndex(epoch, 
+					Arrays.copyOf(ids, cnt), Arrays.copyOf(xs, cnt), 
+					Arrays.copyOf(ys, cnt), Arrays.copyOf(types, cnt),
+					Arrays.copyOf(rotations, cnt), Arrays.copyOf(fileIndex, cnt),
+					fileNames.toArray(new String[fileNames.size()]));
+			return index;
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return null;
 		}
-		return null;
 	}
 }
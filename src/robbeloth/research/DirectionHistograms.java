@@ -0,0 +1,142 @@
+package robbeloth.research;
+
+import java.util.stream.IntStream;
+
+/**
+ * How often each of the eight directions occurs in every chain code of a
+ * {@link ChainCodeCorpus}, built once per snapshot and used to put cheap
+ * lower bounds on the distance from a sample segment to each model
+ * segment.<br/><br/>
+ *
+ * Every character of a match string that is not a direction, the commas
+ * of the comma separated form, is counted in one more bin, so the bins of
+ * a string always add up to its length. An insertion or deletion changes
+ * one bin by one and a substitution moves one occurrence between two
+ * bins, while a transposition changes none, so no edit distance can be
+ * smaller than the occurrences one string holds beyond the other. Nor can
+ * a common subsequence be longer than the occurrences the two strings
+ * share. Both bounds are at least as tight as the difference in length,
+ * and a matcher skips the dynamic programming for any model segment whose
+ * bound is already worse than every match it keeps.
+ */
+public final class DirectionHistograms {
+	/* the eight directions and one bin for anything else */
+	private static final int BINS = 9;
+
+	private final int[] counts;		// bin b of row k at k*BINS+b
+	private final int[] lengths;	// length of each row's match string
+
+	/**
+	 * Count the directions of every row of a snapshot
+	 * @param corpus -- model chain codes
+	 */
+	DirectionHistograms(ChainCodeCorpus corpus) {
+		int rows = corpus.size();
+		counts = new int[rows * BINS];
+		lengths = new int[rows];
+		IntStream.range(0, rows).parallel().forEach((k) -> {
+			String cc = corpus.getMatchString(k);
+			lengths[k] = cc.length();
+			count(cc, counts, k * BINS);
+		});
+	}
+
+	/**
+	 * @return number of rows counted
+	 */
+	public int size() {
+		return lengths.length;
+	}
+
+	/**
+	 * Count the directions of a string so it can be bounded against the
+	 * corpus rows
+	 * @param text -- match string, typically of a sample segment
+	 * @return occurrences of each direction followed by those of every
+	 * other character
+	 */
+	public static int[] histogramOf(String text) {
+		int[] hist = new int[BINS];
+		count(text, hist, 0);
+		return hist;
+	}
+
+	/**
+	 * Lower bound on the Levenshtein, optimal string alignment, and
+	 * Damerau-Levenshtein distances from a sample to a corpus row
+	 * @param sample -- histogram of the sample from {@link #histogramOf(String)}
+	 * @param k -- row position in the snapshot
+	 * @return the larger of the occurrences the sample holds beyond the
+	 * row and those the row holds beyond the sample
+	 */
+	public int editDistanceBound(int[] sample, int k) {
+		int base = k * BINS;
+		int surplus = 0;
+		int deficit = 0;
+		for (int b = 0; b < BINS; b++) {
+			int d = sample[b] - counts[base + b];
+			if (d > 0) {
+				surplus += d;
+			}
+			else {
+				deficit -= d;
+			}
+		}
+		return Math.max(surplus, deficit);
+	}
+
+	/**
+	 * Lower bound on the longest common subsequence distance from a
+	 * sample to a corpus row
+	 * @param sample -- histogram of the sample from {@link #histogramOf(String)}
+	 * @param k -- row position in the snapshot
+	 * @return both lengths less twice the occurrences they share
+	 */
+	public int lcsDistanceBound(int[] sample, int k) {
+		return lengthOf(sample) + lengths[k] - (2 * sharedCount(sample, k));
+	}
+
+	/**
+	 * Lower bound on the metric longest common subsequence distance from
+	 * a sample to a corpus row
+	 * @param sample -- histogram of the sample from {@link #histogramOf(String)}
+	 * @param k -- row position in the snapshot
+	 * @return one less the shared occurrences over the longer length, 0
+	 * for two empty strings
+	 */
+	public double metricLcsDistanceBound(int[] sample, int k) {
+		int maxLength = Math.max(lengthOf(sample), lengths[k]);
+		if (maxLength == 0) {
+			return 0.0;
+		}
+		return 1.0 - ((1.0 * sharedCount(sample, k)) / maxLength);
+	}
+
+	/* occurrences the sample and row k have in common, no common
+	 * subsequence is longer */
+	private int sharedCount(int[] sample, int k) {
+		int base = k * BINS;
+		int shared = 0;
+		for (int b = 0; b < BINS; b++) {
+			shared += Math.min(sample[b], counts[base + b]);
+		}
+		return shared;
+	}
+
+	/* length of the string a histogram was taken from */
+	private static int lengthOf(int[] hist) {
+		int n = 0;
+		for (int b = 0; b < BINS; b++) {
+			n += hist[b];
+		}
+		return n;
+	}
+
+	/* add the characters of text to the bins starting at base */
+	private static void count(String text, int[] bins, int base) {
+		for (int i = 0; i < text.length(); i++) {
+			int d = text.charAt(i) - '0';
+			bins[base + (((d >= 0) && (d < BINS - 1)) ? d : BINS - 1)]++;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package robbeloth.research;
+
+import java.util.Arrays;
+
+/**
+ * Threshold bounded edit distances for the best match searches of the
+ * string similarity matchers.<br/><br/>
+ *
+ * A best match search only needs the exact distance of a model chain code
+ * that could beat the best one found so far, so each kernel takes a bound
+ * and gives up as soon as the distance is certain to exceed it. Only the
+ * cells of the dynamic programming matrix within k of the main diagonal
+ * are computed (Ukkonen's band), since a cell further out already costs
+ * more than k, and a comparison is abandoned once every cell of a row
+ * exceeds k. The band starts narrow and doubles until it holds the
+ * distance or reaches the bound, so the work grows with the distance
+ * rather than with the product of the lengths.<br/><br/>
+ *
+ * Every kernel gives the same distance as the java-string-similarity (or
+ * xmlbeans) implementation the matchers used before whenever that
+ * distance is within the bound.
+ */
+public final class EditDistance {
+	/* first band half width tried */
+	private static final int INITIAL_BAND = 16;
+
+	private EditDistance() {
+	}
+
+	/**
+	 * Levenshtein distance, the fewest single character insertions,
+	 * deletions and substitutions turning one string into the other
+	 * @param a -- first string
+	 * @param b -- second string
+	 * @param bound -- largest distance of interest, Integer.MAX_VALUE for
+	 * no bound
+	 * @return the distance if it is at most bound, otherwise a value
+	 * greater than bound
+	 */
+	public static int levenshtein(String a, String b, int bound) {
+		return banded(a, b, bound, 0);
+	}
+
+	/**
+	 * Optimal string alignment distance, Levenshtein plus transposition of
+	 * two adjacent characters where no substring is edited more than once
+	 * @param a -- first string
+	 * @param b -- second string
+	 * @param bound -- largest distance of interest, Integer.MAX_VALUE for
+	 * no bound
+	 * @return the distance if it is at most bound, otherwise a value
+	 * greater than bound
+	 */
+	public static int optimalStringAlignment(String a, String b, int bound) {
+		return banded(a, b, bound, 1);
+	}
+
+	/**
+	 * Damerau-Levenshtein distance with unrestricted transpositions
+	 * @param a -- first string
+	 * @param b -- second string
+	 * @param bound -- largest distance of interest, Integer.MAX_VALUE for
+	 * no bound
+	 * @return the distance if it is at most bound, otherwise a value
+	 * greater than bound
+	 */
+	public static int damerau(String a, String b, int bound) {
+		return banded(a, b, bound, 2);
+	}
+
+	/**
+	 * Levenshtein distance divided by the length of the longer string, 0
+	 * for two empty strings
+	 * @param a -- first string
+	 * @param b -- second string
+	 * @return normalized distance between 0 and 1
+	 */
+	public static double normalizedLevenshtein(String a, String b) {
+		int maxLength = Math.max(a.length(), b.length());
+		if (maxLength == 0) {
+			return 0.0;
+		}
+		return levenshtein(a, b, Integer.MAX_VALUE) / (double) maxLength;
+	}
+
+	/* widen the band until it holds the distance or reaches the bound,
+	 * kind is 0 for Levenshtein, 1 for OSA and 2 for Damerau */
+	private static int banded(String a, String b, int bound, int kind) {
+		int n = a.length();
+		int m = b.length();
+		int exceeded = (bound == Integer.MAX_VALUE) ? bound : bound + 1;
+		if (bound < 0) {
+			return exceeded;
+		}
+
+		/* no distance is larger than the longer string */
+		int limit = Math.min(bound, Math.max(n, m));
+		if (Math.abs(n - m) > limit) {
+			return exceeded;
+		}
+		int k = Math.min(limit, Math.max(Math.abs(n - m), INITIAL_BAND));
+		while (true) {
+			int d = (kind == 2) ? damerauBand(a, b, k) : levenshteinBand(a, b, k, kind == 1);
+			if (d <= k) {
+				return d;
+			}
+			if (k >= limit) {
+				return exceeded;
+			}
+			k = (int) Math.min(limit, 2L * k);
+		}
+	}
+
+	/* Levenshtein or OSA restricted to |i-j| <= k, values saturate at
+	 * k+1, row i keeps column j at j-i+k+1 with a sentinel at each end */
+	private static int levenshteinBand(String a, String b, int k, boolean transpose) {
+		int n = a.length();
+		int m = b.length();
+		int over = k + 1;
+		int width = (2 * k) + 3;
+		int[] prev2 = new int[width];
+		int[] prev = new int[width];
+		int[] cur = new int[width];
+		Arrays.fill(prev2, over);
+		Arrays.fill(prev, over);
+		for (int j = 0; j <= Math.min(m, k); j++) {
+			prev[j + k + 1] = j;
+		}
+
+		for (int i = 1; i <= n; i++) {
+			Arrays.fill(cur, over);
+			int rowMin = over;
+			int jlo = Math.max(0, i - k);
+			int jhi = Math.min(m, i + k);
+			char ai = a.charAt(i - 1);
+			for (int j = jlo; j <= jhi; j++) {
+				int q = j - i + k + 1;
+				int v;
+				if (j == 0) {
+					v = Math.min(i, over);
+				}
+				else {
+					char bj = b.charAt(j - 1);
+					int cost = (ai == bj) ? 0 : 1;
+					v = Math.min(prev[q] + cost, Math.min(prev[q+1], cur[q-1]) + 1);
+					if (transpose && (i > 1) && (j > 1) && (ai == b.charAt(j - 2)) &&
+						(a.charAt(i - 2) == bj)) {
+						v = Math.min(v, prev2[q] + cost);
+					}
+					if (v > over) {
+						v = over;
+					}
+				}
+				cur[q] = v;
+				if (v < rowMin) {
+					rowMin = v;
+				}
+			}
+
+			/* every path to the end crosses this row */
+			if (rowMin > k) {
+				return over;
+			}
+			int[] t = prev2;
+			prev2 = prev;
+			prev = cur;
+			cur = t;
+		}
+		return prev[m - n + k + 1];
+	}
+
+	/* Damerau-Levenshtein (Lowrance-Wagner) restricted to |i-j| <= k, a
+	 * transposition reaching back more than k rows costs more than k, so
+	 * only the last k+3 rows are kept */
+	private static int damerauBand(String a, String b, int k) {
+		int n = a.length();
+		int m = b.length();
+		int over = k + 1;
+		int width = (2 * k) + 3;
+		int rows = k + 3;
+		int[][] ring = new int[rows][width];
+		for (int[] row : ring) {
+			Arrays.fill(row, over);
+		}
+		for (int j = 0; j <= Math.min(m, k); j++) {
+			ring[0][j + k + 1] = j;
+		}
+
+		/* last row holding each character, 0 if none yet */
+		char maxChar = 0;
+		for (int i = 0; i < n; i++) {
+			maxChar = (char) Math.max(maxChar, a.charAt(i));
+		}
+		for (int j = 0; j < m; j++) {
+			maxChar = (char) Math.max(maxChar, b.charAt(j));
+		}
+		int[] lastRow = new int[maxChar + 1];
+
+		for (int i = 1; i <= n; i++) {
+			int[] cur = ring[i % rows];
+			int[] prev = ring[(i - 1) % rows];
+			Arrays.fill(cur, over);
+			int rowMin = over;
+			int jlo = Math.max(0, i - k);
+			int jhi = Math.min(m, i + k);
+			char ai = a.charAt(i - 1);
+			int lastCol = 0;
+			for (int j = jlo; j <= jhi; j++) {
+				int q = j - i + k + 1;
+				int v;
+				if (j == 0) {
+					v = Math.min(i, over);
+				}
+				else {
+					char bj = b.charAt(j - 1);
+					int i1 = lastRow[bj];
+					int j1 = lastCol;
+					int cost = 1;
+					if (ai == bj) {
+						cost = 0;
+						lastCol = j;
+					}
+					v = Math.min(prev[q] + cost, Math.min(prev[q+1], cur[q-1]) + 1);
+
+					/* transposition from cell (i1-1, j1-1) */
+					if ((i1 > 0) && (j1 > 0) && (i - i1 - 1 <= k)) {
+						int q1 = (j1 - 1) - (i1 - 1) + k + 1;
+						if ((q1 > 0) && (q1 < width - 1)) {
+							int t = ring[(i1 - 1) % rows][q1] + (i - i1 - 1) + 1 + (j - j1 - 1);
+							if (t < v) {
+								v = t;
+							}
+						}
+					}
+					if (v > over) {
+						v = over;
+					}
+				}
+				cur[q] = v;
+				if (v < rowMin) {
+					rowMin = v;
+				}
+			}
+			lastRow[ai] = i;
+
+			/* every path to the end has a cell this cheap in this row */
+			if (rowMin > k) {
+				return over;
+			}
+		}
+		return ring[n % rows][m - n + k + 1];
+	}
+}
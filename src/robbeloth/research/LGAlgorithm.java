@@ -1,14 +1,7 @@
 package robbeloth.research;
 
-import info.debatty.java.stringsimilarity.Cosine;
-import info.debatty.java.stringsimilarity.Damerau;
 import info.debatty.java.stringsimilarity.JaroWinkler;
-import info.debatty.java.stringsimilarity.LongestCommonSubsequence;
-import info.debatty.java.stringsimilarity.MetricLCS;
 import info.debatty.java.stringsimilarity.NGram;
-import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
-import info.debatty.java.stringsimilarity.OptimalStringAlignment;
-import info.debatty.java.stringsimilarity.QGram;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -25,10 +18,11 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.CellType;
@@ -38,7 +32,6 @@ import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.xmlbeans.impl.common.Levenshtein;
 import org.opencv.core.Core;
 import org.opencv.core.Core.MinMaxLocResult;
 import org.opencv.core.CvType;
@@ -164,6 +157,92 @@ public class LGAlgorithm {
 		PROCESS_SAMPLE;
 	}
 	
+	/* matchers that spread over the chain code corpus with parallel 
+	 * streams ask for every thread, the scheduler caps them at its pool */
+	private final static int CORPUS_MATCHER_PARALLELISM = Runtime.getRuntime().availableProcessors();
+	
+	/* gram length of the QGram, NGram and Cosine matchers */
+	private final static int GRAM_LENGTH = 5;
+	
+	/* The built in matchers, chosen by these names in ssaChoices */
+	static {
+		MatcherRegistry.register(Matcher.of("LevenShtein", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Matching using Levenshtein measure");
+			match_to_model_Levenshtein(c.getSampleChains(), c.getResults());	
+		}));
+		MatcherRegistry.register(Matcher.of("Normalized Levenshtein", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Matching using Normalized Levenshtein measure");
+			match_to_model_Normalized_Levenshtein(c.getSampleChains(), c.getResults());	
+		}));
+		MatcherRegistry.register(Matcher.of("Damerau Levenshtein", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Matching using Damerau-Levenshtein");
+			match_to_model_Damerau_Levenshtein(c.getSampleChains(), c.getResults());		
+		}));
+		MatcherRegistry.register(Matcher.of("Optimal String Alignment", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Optimal String Alignment");
+			match_to_model_Opt_Str_Alignment(c.getSampleChains(), c.getResults());	
+		}));
+		MatcherRegistry.register(Matcher.of("Jaro-Winkler", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Jaro-Winkler");
+			match_to_model_Jaro_Winkler(c.getSampleChains(), c.getResults());	
+		}));
+		
+		/* this is equivalent to matching on string length for line segment properties
+		 * just that this is the long border chain code with fine resolution
+		 * string similarity match the chain codes in earlier experimental
+		 * runs, so let's do that here and add that into final equation match */
+		MatcherRegistry.register(Matcher.of("Longest-Common-Subsequence", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Longest-Common-SubSequence");
+			match_to_model_LCS(c.getSampleChains(), c.getResults());	
+		}));
+		MatcherRegistry.register(Matcher.of("Metric Longest-Common-SubSequence", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Metric Longest-Common-SubSequence");
+			match_to_model_MLCS(c.getSampleChains(), c.getResults());	
+		}));
+		MatcherRegistry.register(Matcher.of("NGram Distance", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("NGram Distance");
+			match_to_model_NGram_Distance(c.getSampleChains(), c.getResults());
+		}));
+		MatcherRegistry.register(Matcher.of("QGram (Ukkonen) Distance", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("QGram (Ukkonen) Distance");
+			match_to_model_QGram_Distance(c.getSampleChains(), c.getResults());
+		}));
+		MatcherRegistry.register(Matcher.of("Cosine Similarity", CORPUS_MATCHER_PARALLELISM, (c) -> {
+			System.out.println("Cosine Similarity");
+			match_to_model_COS_Similarity(c.getSampleChains(), c.getResults());
+		}));
+		
+		/* Ancillary match by moments */
+		MatcherRegistry.register(Matcher.of("Moments Similarity", 1, (c) -> {
+			System.out.println("Moments Similarity");
+			match_to_model_by_Moments(c.getSampleMoments(), c.getResults(), 0.10f);
+		}));
+		MatcherRegistry.register(Matcher.of("Delaunay No ML", 1, (c) -> {
+			System.out.println("Delaunay No ML");						
+			match_to_model_by_Delaunay_Graph_NoML(c.getResults(), c.copyTriangleList(), 0.03f);
+		}));
+		
+		/* Ancillary match by chain code start location */
+		MatcherRegistry.register(Matcher.of("CC Segment Start Location", 1, (c) -> {
+			System.out.println("CC Segment Start Location");
+			String matching_image_ccSegment = 
+					match_to_model_by_CC_Segment_Start(c.getSampleccStartPts(), c.getResults(), 0);
+			System.out.println("Segment Start was "+matching_image_ccSegment);
+		}));
+		
+		/*  match by global model similarity */
+		MatcherRegistry.register(Matcher.of("Match Model Glb. Str. Angles", 1, (c) -> {
+			System.out.println("Match Model Glb. Str. Angles");
+			match_to_model_by_global_structure_angles(c.getAngleDifferences(), c.getResults(), "Sim_G Meas");
+		}));
+		
+		/* match by Delaunay model similarity */
+		MatcherRegistry.register(Matcher.of("Delaunay Weka Match", 1, (c) -> {
+			System.out.println("Delaunay Weka Match");
+			match_to_model_by_Delaunay_Graph(c.getResults(), c.copyTriangleList(), c.getClassifierPref());						
+		}));
+	}
+	
 	/**
 	 * Local Global (LG) Graph Run Me Bootstrap Algorithm
 	 * @param data -- input image
@@ -538,13 +617,17 @@ public class LGAlgorithm {
 		// Connect to database
 		int segmentNumber = 1;
 		int lastSegNumDb = -1;
+		ModelIngestBatch modelBatch = null;
 		if (mode == Mode.PROCESS_MODEL) {
+			/* Model tuples are gathered here and written in one transaction 
+			 * once the whole image has been processed */
+			modelBatch = new ModelIngestBatch(filename);
 			lastSegNumDb = DatabaseModule.getLastId();
 			System.out.println("localGlobal_graph(): Last used id: " + 
 								lastSegNumDb);
 			
 			// Initialize database if necessary
-			if (DatabaseModule.doesDBExist() != DatabaseModule.NUMBER_RELATIONS) {
+			if (DatabaseModule.getRelationCount() != DatabaseModule.NUMBER_RELATIONS) {
 				DatabaseModule.createModel();
 			}
 			
@@ -853,16 +936,13 @@ public class LGAlgorithm {
 			
 			/* Add entry into database if part of a model image */
 			if (mode == Mode.PROCESS_MODEL) {				
-				int id = DatabaseModule.insertIntoModelDBLocalRelation(filename, 
-						                         segmentNumber++, 
-						                         ccc.chainCodeString(), 
-						                         start, imageType, imageRotation);
-				
-				System.out.println("Added id "+ id + " into database ");
+				modelBatch.addLocalTuple(segmentNumber++, 
+						                 ccc.chainCodeString(), 
+						                 start, imageType, imageRotation);
 			}			
 			else {
 				// add to data structure
-				sampleChains.put(i, ccc.chainCodeString());
+				sampleChains.put(i, PackedChainCode.toMatchString(ccc.chainCodeString()));
 				sampleMoments.put(i, centroid_array.get(i));
 				sampleccStartPts.add(start);
 			}
@@ -1194,8 +1274,8 @@ public class LGAlgorithm {
 						   startCentroid.x, centroid_array.get(i).x, 
 						   startCentroid.y, centroid_array.get(i).y);
 				
-				System.out.println("localGlobal_graph(): inserting into global table, working on segment: "+ i);
-				DatabaseModule.insertIntoModelDBGlobalRelation(
+				System.out.println("localGlobal_graph(): queueing for global table, working on segment: "+ i);
+				modelBatch.addGlobalTuple(
 						(centroid_array.get(i) != null) ? centroid_array.get(i) : new Point(0,0),
 						d,
 						(angle_differences.get(i,0) != null) ? angle_differences.get(i, 0)[0] : 0.0,
@@ -1271,7 +1351,7 @@ public class LGAlgorithm {
 				 double simGModel = graphSimilarity(lowerSampleThresholds, upperSampleThresholds);
 				 System.out.println("SIM_G Score for Model Image: " + simGModel);
 				 
-				 DatabaseModule.insertIntoModelDBGlobaMetaRelation(filename, simGModel);
+				 modelBatch.setSimGScore(simGModel);
 				 delaunay_angle_differences.release();			 
 			}	
 			
@@ -1279,11 +1359,18 @@ public class LGAlgorithm {
 			// NOTE: do not release delaunay angle differences here for sample image, it needs a separate
 			// matching thread action below		
 			if (mode == Mode.PROCESS_MODEL) {
-				DatabaseModule.insertIntoModelDBGblDelGraph(filename, convertedTriangleList);
+				modelBatch.setDelaunayGraph(convertedTriangleList);
 				convertedTriangleList.clear();	
 			}			
 						
 		}
+		
+		/* queue the model image to be written in a single transaction while
+		 * the caller moves on to the next image */
+		CompletableFuture<int[]> modelWrite = null;
+		if (mode == Mode.PROCESS_MODEL) {
+			modelWrite = DatabaseModule.insertModelBatchAsync(modelBatch);
+		}
 
 		
 		// Free up resources used for spreadsheet
@@ -1300,265 +1387,12 @@ public class LGAlgorithm {
 			XSSFWorkbook wkbkResults = new XSSFWorkbook();
 			buildSummarySheet(wkbkResults);
 						
-			/* Chaincode matching methods */
-			Thread levenshtein_thread = null;
-			if (ssaChoices.contains("LevenShtein") || ssaChoices.contains("all")) {
-				levenshtein_thread = new Thread("Levenshtein") {
-					public void run() {
-						System.out.println("Matching using Levenshtein measure");
-						match_to_model_Levenshtein(sampleChains, wkbkResults);	
-					}				
-				};
-				System.out.println("Running thread: " + levenshtein_thread.getName());
-				levenshtein_thread.start();
-			}
-			
-			Thread n_levenshtein_thread = null;
-			if (ssaChoices.contains("Normalized Levenshtein") || ssaChoices.contains("all"))	{
-				n_levenshtein_thread = new Thread("Normalized Levenshtein") {
-					public void run() {
-						System.out.println("Matching using Normalized Levenshtein measure");
-						match_to_model_Normalized_Levenshtein(sampleChains, wkbkResults);	
-					}				
-				};
-				n_levenshtein_thread.start();
-				System.out.println("Running thread: " + n_levenshtein_thread.getName());				
-			}
-
-
-			Thread damerau_levenshtein_thread = null; 
-			if (ssaChoices.contains("Damerau Levenshtein") || ssaChoices.contains("all")) {
-				damerau_levenshtein_thread = new Thread("Damerau Levenshtein") {
-					public void run() {
-						System.out.println("Matching using Damerau-Levenshtein");
-						match_to_model_Damerau_Levenshtein(sampleChains, wkbkResults);		
-					}				
-				};
-				damerau_levenshtein_thread.start();
-				System.out.println("Running thread: " + damerau_levenshtein_thread.getName());				
-			}		
-
-			Thread ost_thread = null;
-			if (ssaChoices.contains("Optimal String Alignment") || ssaChoices.contains("all")) {
-				ost_thread = new Thread("Optimal String Alignment") {
-					public void run() {
-						System.out.println("Optimal String Alignment");
-						match_to_model_Opt_Str_Alignment(sampleChains, wkbkResults);	
-					}				
-				};
-				ost_thread.start();
-				System.out.println("Running thread: " + ost_thread.getName());					
-			}
-		
-			Thread jaro_thread = null;
-			if (ssaChoices.contains("Jaro-Winkler") || ssaChoices.contains("all")) {
-				jaro_thread = new Thread("Jaro-Winkler") {
-					public void run() {
-						System.out.println("Jaro-Winkler");
-						match_to_model_Jaro_Winkler(sampleChains, wkbkResults);	
-					}				
-				};
-				jaro_thread.start();
-				System.out.println("Running thread: " + jaro_thread.getName());				
-			}
-			
-			/* this is equivalent to matching on string length for line segment properties
-			 * just that this is the long border chain code with fine resolution
-			 * string similarity match the chain codes in earlier experimental
-			 * runs, so let's do that here and add that into final equation match */
-			Thread lcs_thread = null;
-			if (ssaChoices.contains("Longest-Common-Subsequence") || ssaChoices.contains("all")) {
-				lcs_thread = new Thread("Longest-Common-SubSequence") {
-					public void run() {
-						System.out.println("Longest-Common-SubSequence");
-						match_to_model_LCS(sampleChains, wkbkResults);	
-					}				
-				};
-				lcs_thread.start();
-				System.out.println("Running thread: " + lcs_thread.getName());					
-			}
-			
-			Thread mlcs_thread = null;
-			if (ssaChoices.contains("Metric Longest-Common-SubSequence") || ssaChoices.contains("all")) {
-				mlcs_thread = new Thread("Metric Longest-Common-SubSequence") {
-					public void run() {
-						System.out.println("Metric Longest-Common-SubSequence");
-						match_to_model_MLCS(sampleChains, wkbkResults);	
-					}				
-				};
-				mlcs_thread.start();
-				System.out.println("Running thread: " + mlcs_thread.getName());				
-			}			
-			
-			Thread ngram_thread = null;
-			if (ssaChoices.contains("NGram Distance") || ssaChoices.contains("all")) {
-				ngram_thread = new Thread("NGram Distance") {
-					public void run() {
-						System.out.println("NGram Distance");
-						match_to_model_NGram_Distance(sampleChains, wkbkResults);
-					}				
-				};
-				ngram_thread.start();
-				System.out.println("Running thread: " + ngram_thread.getName());					
-			}
-			
-			Thread qgram_thread = null;
-			if (ssaChoices.contains("QGram (Ukkonen) Distance") || ssaChoices.contains("all")) {
-				qgram_thread = new Thread("QGram (Ukkonen) Distance") {
-					public void run() {
-						System.out.println("QGram (Ukkonen) Distance");
-						match_to_model_QGram_Distance(sampleChains, wkbkResults);
-					}				
-				};
-				qgram_thread.start();
-				System.out.println("Running thread: " + qgram_thread.getName());				
-			}
-				
-			Thread cosSim_thread = null;
-			if (ssaChoices.contains("Cosine Similarity") || ssaChoices.contains("all")) {
-				cosSim_thread = new Thread("Cosine Similarity") {
-					public void run() {
-						System.out.println("Cosine Similarity");
-						match_to_model_COS_Similarity(sampleChains, wkbkResults);
-					}				
-				};
-				cosSim_thread.start();
-				System.out.println("Running thread: " + cosSim_thread.getName());				
-			}
-
-			/* Ancillary match by moments */
-			Thread moments_thread = null;
-			if (ssaChoices.contains("Moments Similarity") || ssaChoices.contains("all")) {
-				moments_thread = new Thread("Moments Similarity") {
-					public void run() {
-						System.out.println("Moments Similarity");
-						match_to_model_by_Moments(sampleMoments, wkbkResults, 0.10f);
-					}				
-				};
-				moments_thread.start();
-				System.out.println("Running thread: " + moments_thread.getName());					
-			}
-			
-			Thread delaunay_no_ml_thread = null;
-			if (ssaChoices.contains("Delaunay No ML") || ssaChoices.contains("all")) {
-				final List<Point> copyConvertedTraingleList = new ArrayList<Point>(convertedTriangleList);
-				delaunay_no_ml_thread = new Thread("Delaunay No ML") {					
-					public void run() {
-						System.out.println("Delaunay No ML");						
-						match_to_model_by_Delaunay_Graph_NoML(wkbkResults, copyConvertedTraingleList, 0.03f);
-					}				
-				};
-				delaunay_no_ml_thread.start();
-				System.out.println("Running thread: " + delaunay_no_ml_thread.getName());					
-			}
-			
-			/* Ancillary match by chain code start location */
-			Thread cc_segstart_thread = null;
-			if (ssaChoices.contains("CC Segment Start Location") || ssaChoices.contains("all")) {
-				cc_segstart_thread = new Thread("CC Segment Start Location") {
-					public void run() {
-						System.out.println("CC Segment Start Location");
-						String matching_image_ccSegment = 
-								match_to_model_by_CC_Segment_Start(sampleccStartPts, wkbkResults);
-						System.out.println("Segment Start was "+matching_image_ccSegment);
-					}
-				};
-				cc_segstart_thread.start();
-				System.out.println("Running thread: " + cc_segstart_thread.getName());				
-			}
-
-			
-			/*  match by global model similarity */
-			Thread matchGlbStrs_thread = null;
-			if (ssaChoices.contains("Match Model Glb. Str. Angles") || ssaChoices.contains("all")) {
-				matchGlbStrs_thread = new Thread("Match Model Glb. Str. Angles") {
-					public void run() {
-						System.out.println("Match Model Glb. Str. Angles");
-						match_to_model_by_global_structure_angles(angle_differences, wkbkResults, "Sim_G Meas");
-					}
-				};
-				matchGlbStrs_thread.start();		
-				System.out.println("Running thread: " + matchGlbStrs_thread.getName());
-			}						
-			
-			/* match by Delaunay model similarity */
-			Thread match_Delaunay_Weka_thread = null;
-			if (ssaChoices.contains("Delaunay Weka Match") || ssaChoices.contains("all")) {
-				final List<Point> copyConvertedTraingleList = new ArrayList<Point>(convertedTriangleList);				
-				match_Delaunay_Weka_thread = new Thread("Delaunay Weka Match") {					
-					public void run() {
-						System.out.println("Delaunay Weka Match");
-						match_to_model_by_Delaunay_Graph(wkbkResults, copyConvertedTraingleList, classiferPref);						
-					}
-				};
-				match_Delaunay_Weka_thread.start();
-				System.out.println("Running thread: " + match_Delaunay_Weka_thread.getName());
-			}										
-			
-			try {
-				if (levenshtein_thread != null) {
-					levenshtein_thread.join();	
-				}
-				
-				if (n_levenshtein_thread != null) {
-					n_levenshtein_thread.join();	
-				}
-				
-				if (damerau_levenshtein_thread != null) {
-					damerau_levenshtein_thread.join();	
-				}
-				
-				if (ost_thread != null) {
-					ost_thread.join();	
-				}
-				
-				if (jaro_thread != null) {
-					jaro_thread.join();	
-				}
-				
-				if (lcs_thread != null) {
-					lcs_thread.join();	
-				}
-				
-				if (ngram_thread != null) {
-					ngram_thread.join();	
-				}
-				
-				if (qgram_thread != null) {
-					qgram_thread.join();	
-				}
-				
-				if (cosSim_thread != null) {
-					cosSim_thread.join();	
-				}
-				
-				if (mlcs_thread != null) {
-					mlcs_thread.join();	
-				}
-				
-				if (moments_thread != null) {
-					moments_thread.join();	
-				}				
-				
-				if (delaunay_no_ml_thread != null) {
-					delaunay_no_ml_thread.join();
-				}
-				
-				if (cc_segstart_thread != null) {
-					cc_segstart_thread.join();
-				}
-				
-				if (matchGlbStrs_thread != null) {
-					matchGlbStrs_thread.join();
-				}
-				
-				if (match_Delaunay_Weka_thread != null) {
-					match_Delaunay_Weka_thread.join();
-				}
-			} catch (InterruptedException e1) {
-				// TODO Auto-generated catch block
-				e1.printStackTrace();
-			}
+			/* Run the chosen matchers, see the registrations above, on 
+			 * the shared scheduler and wait for every one of them */
+			MatchContext matchContext = new MatchContext(sampleChains, sampleMoments, 
+					sampleccStartPts, angle_differences, convertedTriangleList, 
+					classiferPref, wkbkResults);
+			MatchScheduler.getShared().runAll(MatcherRegistry.select(ssaChoices), matchContext);
 			
 			/* Update summary sheet with final calcluations */
 			updateSummarySheet(wkbkResults);
@@ -1583,10 +1417,31 @@ public class LGAlgorithm {
 		}
 		
 		// finalize ids for image
-		cm.setStartingId(DatabaseModule.getStartId(filename));
-		cm.setLastId(DatabaseModule.getLastId(filename));
-		System.out.println(" IDs for image " + cm.getFilename() + " will be" + 
-		cm.getStartingId() + " to " + cm.getLastId());
+		if (modelWrite != null) {
+			/* the id range is only final once the writer has stored the 
+			 * image, the composite waits for it when the ids are read */
+			cm.setPendingIds(modelWrite.handle((ids, e) -> {
+				if (e != null) {
+					System.err.println("localGlobal_graph(): unable to store " 
+				                       + filename + ": " + e);
+				}
+				else {
+					for (int id : ids) {
+						System.out.println("Added id "+ id + " into database ");
+					}
+				}
+				return new long[] {DatabaseModule.getStartId(filename), 
+						           DatabaseModule.getLastId(filename)};
+			}));
+			System.out.println(" IDs for image " + cm.getFilename() + 
+					" will be set once it is written");
+		}
+		else {
+			cm.setStartingId(DatabaseModule.getStartId(filename));
+			cm.setLastId(DatabaseModule.getLastId(filename));
+			System.out.println(" IDs for image " + cm.getFilename() + " will be" + 
+			cm.getStartingId() + " to " + cm.getLastId());
+		}
 		
 		// return to caller
 		return global_graph;
@@ -1702,7 +1557,7 @@ public class LGAlgorithm {
 	}
 	
 	private static String match_to_model_by_CC_Segment_Start(ArrayList<Point> sampleccStartPts, 
-															 XSSFWorkbook wkbkResults) {
+															 XSSFWorkbook wkbkResults, int tolerance) {
 		XSSFSheet sheet = null;
 		synchronized(wkbkResults) {
 			sheet = wkbkResults.createSheet("CCStartMeasure");	
@@ -1711,10 +1566,15 @@ public class LGAlgorithm {
 		Map<String, Integer> modelFileCnts = new TreeMap<String, Integer>();
 		
 		/* for one chaincode starting segment in the sample image, find
-		 * one matching model images
+		 * one matching model images, all looked up together in the index
 		 */
-		for(Point ccStart : sampleccStartPts) {
-			List<PointMatchContainer> pmcList = DatabaseModule.getImagesMatchingCCStart(ccStart);
+		List<List<PointMatchContainer>> pmcLists = 
+				DatabaseModule.getImagesMatchingCCStarts(sampleccStartPts, tolerance);
+		if (pmcLists == null) {
+			System.err.println("match_to_model_by_CC_Segment_Start(): unable to load model start points");
+			pmcLists = new ArrayList<List<PointMatchContainer>>();
+		}
+		for(List<PointMatchContainer> pmcList : pmcLists) {
 			
 			// if there any matches, count the number of times each model image was matched
 			if (pmcList == null) {
@@ -1832,15 +1692,27 @@ public class LGAlgorithm {
 				new HashMap<String, Integer>(cntMatchesSz, 
 						(float)0.90); 
 		
+		/* Ask the moment index about every sample segment in one go */
+		List<Point> segmentMoments = new ArrayList<Point>(sampleMoments.values());
+		List<ArrayList<String>> namesPerSegment = 
+				DatabaseModule.getFilesWithMoments(segmentMoments, epsilon);
+		if (namesPerSegment == null) {
+			System.err.println("match_to_model_by_Moments(): unable to load model moments");
+			return;
+		}
+		
 		Iterator<Integer> segments = sampleMoments.keySet().iterator();
+		int segmentIdx = 0;
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			Point segmentMoment = sampleMoments.get(segment);
 			sb.append("Working with sample segment Point " + 
 			   segment +  " with coordinates (" + (int)segmentMoment.x + "," 
 			   + (int)segmentMoment.y + ")" + "\n");
-			ArrayList<String> names = DatabaseModule.getFilesWithMoment(
-					(int)segmentMoment.x, (int)segmentMoment.y, epsilon);
+			ArrayList<String> names = namesPerSegment.get(segmentIdx++);
+			if (names == null) {
+				names = new ArrayList<String>();
+			}
 			sb.append("Returned " + names.size() + " model image(s)" + "\n");
 			for(String name: names) {
 				Integer cnt = cntMatches.get(name);
@@ -1958,6 +1830,120 @@ public class LGAlgorithm {
 		System.out.println("Done running thread");
 	}
 	
+	/**
+	 * Rows of the model snapshot a string matcher scores a sample segment
+	 * against, every row unless approximate matching is on. Then only the
+	 * rows sharing an LSH band with the sample are scored, or every row
+	 * if none does.
+	 * @param corpus -- model snapshot
+	 * @param segmentChain -- sample segment chain code, may be null
+	 * @return parallel stream of row positions
+	 */
+	private static IntStream modelRows(ChainCodeCorpus corpus, String segmentChain) {
+		if ((MinHashIndex.isApproximate()) && (segmentChain != null)) {
+			int[] candidates = corpus.getMinHashIndex(GRAM_LENGTH).candidates(segmentChain);
+			if (candidates.length > 0) {
+				return IntStream.of(candidates).parallel();
+			}
+		}
+		return IntStream.range(0, corpus.size()).parallel();
+	}
+	
+	/**
+	 * Measure the accuracy approximate matching gives up and the time it
+	 * saves, on the model database built from the sample set, with the
+	 * Levenshtein matcher. Each chosen model segment is held out and
+	 * matched against every other one, then against only its LSH 
+	 * candidates for several numbers of bands.
+	 * @param queryCnt -- most model segments to match, spread evenly
+	 * over the database
+	 */
+	public static void benchmark_LSH(int queryCnt) {
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if ((corpus == null) || (corpus.size() < 2)) {
+			System.err.println("benchmark_LSH(): need at least two model chain codes");
+			return;
+		}
+		int n = corpus.size();
+		int step = Math.max(1, n / Math.max(1, queryCnt));
+		int[] queries = IntStream.iterate(0, (q) -> q + step).limit((n + step - 1) / step).toArray();
+		QGramProfiles profiles = corpus.getQGramProfiles(GRAM_LENGTH);
+		DirectionHistograms histograms = corpus.getDirectionHistograms();
+		
+		/* the exact nearest model segment of every query */
+		double[] exactScores = new double[queries.length];
+		String[] exactImages = new String[queries.length];
+		long tic = System.nanoTime();
+		for (int j = 0; j < queries.length; j++) {
+			TopMatches top = benchmarkMatch(corpus, histograms, queries[j], 
+					IntStream.range(0, n).parallel());
+			exactScores[j] = top.getBestScore();
+			exactImages[j] = corpus.getFileNameForId(top.getBestId());
+		}
+		long exactTime = System.nanoTime() - tic;
+		System.out.println("Exact Levenshtein match of " + queries.length + " of " + n 
+				+ " model segments took " 
+				+ TimeUnit.MILLISECONDS.convert(exactTime, TimeUnit.NANOSECONDS) + " ms");
+		
+		Set<Integer> bandCnts = new TreeSet<Integer>(Arrays.asList(4, 8, 16, 32));
+		bandCnts.add(MinHashIndex.getDefaultBands());
+		int rows = MinHashIndex.getDefaultRows();
+		for (int bands : bandCnts) {
+			tic = System.nanoTime();
+			MinHashIndex lsh = new MinHashIndex(profiles, bands, rows);
+			long buildTime = System.nanoTime() - tic;
+			
+			long candidateCnt = 0;
+			int sameScore = 0;
+			int sameImage = 0;
+			tic = System.nanoTime();
+			for (int j = 0; j < queries.length; j++) {
+				int q = queries[j];
+				int[] candidates = IntStream.of(lsh.candidates(corpus.getMatchString(q)))
+						.filter((k) -> k != q).toArray();
+				candidateCnt += candidates.length;
+				
+				/* as a matcher does, scan everything when no band is shared */
+				IntStream rowsToScore = (candidates.length > 0) ? 
+						IntStream.of(candidates).parallel() : IntStream.range(0, n).parallel();
+				TopMatches top = benchmarkMatch(corpus, histograms, q, rowsToScore);
+				if (top.getBestScore() == exactScores[j]) {
+					sameScore++;
+				}
+				String image = corpus.getFileNameForId(top.getBestId());
+				if ((image != null) && (image.equals(exactImages[j]))) {
+					sameImage++;
+				}
+			}
+			long approxTime = System.nanoTime() - tic;
+			System.out.println(String.format(
+					"%2d bands of %d rows: %.2f%% of segments scored, nearest distance "
+					+ "found %.1f%%, nearest model image found %.1f%%, %d ms (%.1fx) "
+					+ "after %d ms building", 
+					bands, rows, 100.0 * candidateCnt / ((double) queries.length * (n - 1)), 
+					100.0 * sameScore / queries.length, 100.0 * sameImage / queries.length,
+					TimeUnit.MILLISECONDS.convert(approxTime, TimeUnit.NANOSECONDS),
+					(double) exactTime / Math.max(1, approxTime),
+					TimeUnit.MILLISECONDS.convert(buildTime, TimeUnit.NANOSECONDS)));
+		}
+	}
+	
+	/* nearest model segment to row q among some rows, skipping q itself */
+	private static TopMatches benchmarkMatch(ChainCodeCorpus corpus, 
+			DirectionHistograms histograms, int q, IntStream rowsToScore) {
+		String sample = corpus.getMatchString(q);
+		BitParallelPattern samplePattern = new BitParallelPattern(sample);
+		int[] sampleHistogram = DirectionHistograms.histogramOf(sample);
+		return rowsToScore.collect(() -> new TopMatches(1, false), (t, k) -> {
+			if ((k == q) || 
+				(histograms.editDistanceBound(sampleHistogram, k) > t.getIntBound())) {
+				return;
+			}
+			t.offer(corpus.getId(k), 
+					samplePattern.levenshtein(corpus.getMatchString(k), t.getIntBound()));
+		}, TopMatches::addAll);
+	}
+	
 	private static void match_to_model_COS_Similarity(
 			Map<Integer, String> sampleChains, XSSFWorkbook wkbkResults) {
 		/* The closer to zero, the more similar the two strings as the 
@@ -1988,56 +1974,59 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Double>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Double>>(
 						sampleChains.size(),(float)0.75);
-		Map<String, Integer> cntMatches = 
-				new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 						(float)0.90); 
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_COS_Similarity(): unable to load model chain codes");
+			return;
+		}
+		int topK = TopMatches.getDefaultK();
+		QGramProfiles profiles = corpus.getQGramProfiles(GRAM_LENGTH);
+		QGramIndex index = profiles.getIndex();
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);
+			QGramProfile sampleProfile = (segmentChain != null) ? 
+					profiles.profileOf(segmentChain) : null;
+			
+			/* one pass over the posting lists of the sample's grams gives 
+			 * the distance to every model segment */
+			double[] distances = (sampleProfile != null) ? 
+					index.cosineDistances(sampleProfile) : null;
 			sb.append("Working with sample segment " + segment + "\n");
-			AtomicFloat bestSimSoFar = new AtomicFloat(Float.MIN_VALUE);
-			AtomicInteger minID = new AtomicInteger(Integer.MIN_VALUE);
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);
+			TopMatches top = modelRows(corpus, segmentChain).collect(
+					() -> new TopMatches(topK, true), (t, k) -> {
+				int i = corpus.getId(k);
+				/* Get the kth chain code from the model snapshot */
+				String modelSegmentChain = corpus.getMatchString(k);
 				
 				/* 1 - similarity where similarity is: /**
 				 * the cosine of the angle between
 				 * these two vectors representation. 
 				 * It is computed as V1 . V2 / (|V1| * |V2|)
 				 **/				
-				Cosine c = new Cosine(5);
 				if ((segmentChain == null) || (modelSegmentChain == null)) {
 					System.err.println("COS: modelSegment null for chain code" + i);					
 					return;
 				}
-				double similarity = c.distance(segmentChain, modelSegmentChain);
+				double similarity = distances[k];
 				
 				/* We want measures as close to one as possible*/	
-				if (Float.compare((float)similarity, bestSimSoFar.get()) > 0) {				
-					bestSimSoFar.set((float)similarity);					
-					minID.set(i);					
-				}				
-			});
+				t.offer(i, (float) similarity);				
+			}, TopMatches::addAll);
 
 			ConcurrentHashMap<Integer, Double> hm = 
 					new ConcurrentHashMap<Integer, Double>(1, (float) 0.75);
-			hm.put(minID.get(), bestSimSoFar.doubleValue());
+			hm.put(top.getBestId(), top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(minID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}
+			top.vote(cntMatches, corpus);
 		}
 		
 		/* Display result */
@@ -2048,7 +2037,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("Best COS_SIM Match for segment " + key + " is " + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) + " measure" + "\n");	
@@ -2063,8 +2052,8 @@ public class LGAlgorithm {
 	    int probsCnt = 0;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	double probMatch = ((double)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	double probMatch = count.doubleValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) + " %"
 	    			            + "\n");
@@ -2145,53 +2134,56 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Integer>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Integer>>(
 						sampleChains.size(),(float)0.75);
-		Map<String, Integer> cntMatches = 
-				new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 						(float)0.90); 
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_QGram_Distance(): unable to load model chain codes");
+			return;
+		}
+		int topK = TopMatches.getDefaultK();
+		QGramProfiles profiles = corpus.getQGramProfiles(GRAM_LENGTH);
+		QGramIndex index = profiles.getIndex();
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);
+			QGramProfile sampleProfile = (segmentChain != null) ? 
+					profiles.profileOf(segmentChain) : null;
+			
+			/* one pass over the posting lists of the sample's grams gives 
+			 * the distance to every model segment */
+			int[] distances = (sampleProfile != null) ? 
+					index.qgramDistances(sampleProfile) : null;
 			sb.append("Working with sample segment " + segment + "\n");
-			AtomicInteger minDistance = new AtomicInteger(Integer.MAX_VALUE);
-			AtomicInteger minID = new AtomicInteger(Integer.MIN_VALUE);
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);
+			TopMatches top = modelRows(corpus, segmentChain).collect(
+					() -> new TopMatches(topK, false), (t, k) -> {
+				int i = corpus.getId(k);
+				/* Get the kth chain code from the model snapshot */
+				String modelSegmentChain = corpus.getMatchString(k);
 				
-				QGram qg = new QGram(5);
 				if ((segmentChain == null) || (modelSegmentChain == null)) {
 					System.err.println("QGram: modelSegment null for chain code" + i);					
 					return;
 				}
-				int distance = (int) qg.distance(segmentChain, modelSegmentChain);
+				int distance = distances[k];
 				
 				/* track entry with the small number of  
 				 * edits then report filename and segment of id entry */
-				if (distance < minDistance.get()) {
-					minDistance.set(distance);
-					minID.set(i);
-				}				
+				t.offer(i, distance);				
 				
-			});
+			}, TopMatches::addAll);
 
 			ConcurrentHashMap<Integer, Integer> hm = 
 					new ConcurrentHashMap<Integer, Integer>(1, (float) 0.75);
-			hm.put(minID.get(), minDistance.get());
+			hm.put(top.getBestId(), (int) top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(minID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}		
+			top.vote(cntMatches, corpus);		
 		}
 		
 		/* Display result */
@@ -2202,7 +2194,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("Best QGram Match for segment " + key + " is " + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) 
@@ -2229,8 +2221,8 @@ public class LGAlgorithm {
 	    int probsCnt = 0;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	float probMatch = ((float)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	float probMatch = count.floatValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) 
 	    			            + " %" + "\n");
@@ -2323,49 +2315,47 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Double>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Double>>(
 						sampleChains.size(),(float)0.75);
-		Map<String, Integer> cntMatches = 
-				new HashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new HashMap<String, Double>(cntMatchesSz, 
 						(float)0.90); 
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_NGram_Distance(): unable to load model chain codes");
+			return;
+		}
+		int topK = TopMatches.getDefaultK();
+		
+		/* NGram holds nothing but its gram length, so one serves every 
+		 * comparison */
+		NGram ng = new NGram(GRAM_LENGTH);
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);
 			sb.append("Working with sample segment " + segment + "\n");
-			AtomicFloat minNormDistance = new AtomicFloat(Float.MIN_VALUE);
-			AtomicInteger minID = new AtomicInteger(Integer.MIN_VALUE);
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);
+			TopMatches top = modelRows(corpus, segmentChain).collect(
+					() -> new TopMatches(topK, true), (t, k) -> {
+				int i = corpus.getId(k);
+				/* Get the kth chain code from the model snapshot */
+				String modelSegmentChain = corpus.getMatchString(k);
 				
 				/* Convert strings into sets of n-grams */
-				NGram ng = new NGram(5);
 				double distance = ng.distance(segmentChain, modelSegmentChain);
 				
 				/* track entry with the small number of  
 				 * edits then report filename and segment of id entry */
-				if (Float.compare((float)distance, minNormDistance.get()) > 0) {
-					minNormDistance.set((float)distance);
-					minID.set(i);
-				}				
-			});
+				t.offer(i, (float) distance);				
+			}, TopMatches::addAll);
 
 			ConcurrentHashMap<Integer, Double> hm = 
 					new ConcurrentHashMap<Integer, Double>(1, (float) 0.75);
-			hm.put(minID.get(), minNormDistance.doubleValue());
+			hm.put(top.getBestId(), top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(minID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}
+			top.vote(cntMatches, corpus);
 		}
 		
 		/* Display result */
@@ -2376,7 +2366,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("Best NGram Match for segment " + key + " is chaincode identifier" + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) + " similarity measure"
@@ -2392,8 +2382,8 @@ public class LGAlgorithm {
 	    int probsCnt = 0;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	float probMatch = ((float)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	float probMatch = count.floatValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) 
 	    			            + " %" + "\n");
@@ -2472,53 +2462,68 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Double>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Double>>(
 						bestMatchesSz, (float)0.75);
-		Map<String, Integer> cntMatches = 
-				new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 						(float)0.90);  
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_MLCS(): unable to load model chain codes");
+			return;
+		}
+		int topK = TopMatches.getDefaultK();
+		DirectionHistograms histograms = corpus.getDirectionHistograms();
+		VPTree tree = (ChainCodeCorpus.isUsingMetricTrees() && 
+				(!MinHashIndex.isApproximate())) ? 
+				corpus.getMetricLcsTree() : null;
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);
+			int[] sampleHistogram = (segmentChain != null) ? 
+					DirectionHistograms.histogramOf(segmentChain) : null;
+			BitParallelPattern samplePattern = (segmentChain != null) ? 
+					new BitParallelPattern(segmentChain) : null;
 			sb.append("Working with sample segment " + segment + "\n");			
-			AtomicFloat minDistance = new AtomicFloat(Float.MAX_VALUE);
-			AtomicInteger minID = new AtomicInteger(Integer.MIN_VALUE);
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);
+			TopMatches top;
+			if ((tree != null) && (segmentChain != null)) {
+				/* the tree only compares the model segments the triangle 
+				 * inequality cannot rule out */
+				top = tree.nearest(segmentChain, topK);
+			}
+			else {
+				top = modelRows(corpus, segmentChain).collect(
+						() -> new TopMatches(topK, false), (t, k) -> {
+					int i = corpus.getId(k);
+					/* Get the kth chain code from the model snapshot */
+					String modelSegmentChain = corpus.getMatchString(k);
 				
-				/* */
-				MetricLCS mlcs = new MetricLCS();
-				if ((segmentChain == null) || (modelSegmentChain == null)) {
-					System.err.println("MetricLCS: modelSegment null for chain code" + i);					
-					return;
-				}
-				double distance = mlcs.distance(segmentChain, modelSegmentChain);
+					/* */
+					if ((segmentChain == null) || (modelSegmentChain == null)) {
+						System.err.println("MetricLCS: modelSegment null for chain code" + i);					
+						return;
+					}
+					/* a model whose direction counts alone put it further than the 
+					 * worst this thread keeps cannot be kept, skip the comparison */
+					if ((float) histograms.metricLcsDistanceBound(sampleHistogram, k) > t.getBound()) {
+						return;
+					}
+					double distance = samplePattern.metricLcsDistance(modelSegmentChain);
 				
-				/* track entry with the small number of  
-				 * edits then report filename and segment of id entry */
-				if (Float.compare((float)distance, minDistance.get()) < 0) {
-					minDistance.set((float)distance);
-					minID.set(i);
-				}				
-			});
+					/* track entry with the small number of  
+					 * edits then report filename and segment of id entry */
+					t.offer(i, (float) distance);				
+				}, TopMatches::addAll);
+			}
 
 			ConcurrentHashMap<Integer, Double> hm = 
 					new ConcurrentHashMap<Integer, Double>(1, (float) 0.75);
-			hm.put(minID.get(), minDistance.doubleValue());
+			hm.put(top.getBestId(), top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(minID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}
+			top.vote(cntMatches, corpus);
 		}
 		
 		/* Display result */
@@ -2529,7 +2534,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("Best M.L.C.S Match for segment " + key + " is " + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) + " measure"
@@ -2545,8 +2550,8 @@ public class LGAlgorithm {
 	    int probsCnt = 0;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	float probMatch = ((float)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	float probMatch = count.floatValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) 
 	    			            + " %" + "\n");
@@ -2630,38 +2635,55 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Integer>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Integer>>(
 						bestMatchesSz,(float)0.75);
-		Map<String, Integer> cntMatches = 
-				new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 						(float)0.90); 
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_LCS(): unable to load model chain codes");
+			return null;
+		}
+		int topK = TopMatches.getDefaultK();
+		DirectionHistograms histograms = corpus.getDirectionHistograms();
 		
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);
+			int[] sampleHistogram = (segmentChain != null) ? 
+					DirectionHistograms.histogramOf(segmentChain) : null;
+			BitParallelPattern samplePattern = (segmentChain != null) ? 
+					new BitParallelPattern(segmentChain) : null;
 			sb.append("LCS(): Working with sample segment " + segment + "\n");
-			AtomicInteger minDistance = new AtomicInteger(Integer.MAX_VALUE);
-			AtomicInteger minID = new AtomicInteger(Integer.MIN_VALUE);
 			
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);	
+			TopMatches top = modelRows(corpus, segmentChain).collect(
+					() -> new TopMatches(topK, false), (t, k) -> {
+				int i = corpus.getId(k);
+				/* Get the kth chain code from the model snapshot */
+				String modelSegmentChain = corpus.getMatchString(k);	
+				
+				/* a model whose direction counts alone put it further than the 
+				 * worst this thread keeps cannot be kept, skip the comparison */
+				if ((sampleHistogram != null) && 
+					(histograms.lcsDistanceBound(sampleHistogram, k) > t.getIntBound())) {
+					return;
+				}
 				
 				/* LCS measure is
 				 * the minimum number of single-character edits 
 				 * (insertions, deletions or substitutions) required to 
 				 *  change one word into the other */
-				LongestCommonSubsequence lcs = new LongestCommonSubsequence();
 				int distance;
 				if ((segmentChain != null) && (modelSegmentChain != null)) {
-					distance = (int) lcs.distance(segmentChain, modelSegmentChain);
+					distance = samplePattern.lcsDistance(modelSegmentChain);
 				}
 				else {
 					/* if it is null, we cannot make a comparison, so 
-					 * the number of mods is essentially infinite 
+					 * the number of mods is essentially infinite and the 
+					 * model segment is never a match
 					 */
-					distance = Integer.MAX_VALUE;
+					return;
 				}
 				
 				/* track entry with the small number of  
@@ -2671,29 +2693,19 @@ public class LGAlgorithm {
 				 *  deletions and substitutions to get the sample substring to look like
 				 *  the model substring -- subsequence don't have to have consecutive 
 				 *  chars, unlike a common substring (hence subsequence)*/
-				if (distance < minDistance.get()) {
-					minDistance.set(distance);
-					minID.set(i);
-				}			
+				t.offer(i, distance);			
 				
-			});						
+			}, TopMatches::addAll);						
 			
 			/* Keep track of the best match for the current segment */
 			ConcurrentHashMap<Integer, Integer> hm = 
 					new ConcurrentHashMap<Integer, Integer>(1, (float) 0.75);
-			hm.put(minID.get(), minDistance.get());
+			hm.put(top.getBestId(), (int) top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(minID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}	
+			top.vote(cntMatches, corpus);	
 			
 			// Just trying to recover some memory here in a more aggressive way
 			System.gc();
@@ -2707,7 +2719,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("Best L.C.S Match for segment " + key + " is " + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) + " mods needed to match"
@@ -2734,8 +2746,8 @@ public class LGAlgorithm {
 	    int probsCnt = 1;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	float probMatch = ((float)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	float probMatch = count.floatValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) 
 	    			            + " %" + "\n");
@@ -2823,8 +2835,8 @@ public class LGAlgorithm {
 			Map<Integer, ConcurrentHashMap<Integer,Double>> bestMatches = 
 					new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Double>>(
 							bestMatchesSz,(float)0.75);
-			Map<String, Integer> cntMatches = 
-					new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+			Map<String, Double> cntMatches = 
+					new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 							(float)0.90); 
 			
 			XSSFSheet sheet = null;
@@ -2833,16 +2845,21 @@ public class LGAlgorithm {
 			}
 			
 			Iterator<Integer> segments = sampleChains.keySet().iterator();
-			int lastEntryID = DatabaseModule.getLastId();
+			ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+			if (corpus == null) {
+				System.err.println("match_to_model_Jaro_Winkler(): unable to load model chain codes");
+				return;
+			}
+			int topK = TopMatches.getDefaultK();
 			while(segments.hasNext()) {
 				Integer segment = segments.next();
 				String segmentChain = sampleChains.get(segment);
 				sb.append("Working with sample segment " + segment + "\n");
-				AtomicFloat bestLvlOfMatch = new AtomicFloat(Float.MIN_VALUE);
-				AtomicInteger bestID = new AtomicInteger(Integer.MIN_VALUE);
-				IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-					/* Get the ith chain code from the database */
-					String modelSegmentChain = DatabaseModule.getChainCode(i);
+				TopMatches top = modelRows(corpus, segmentChain).collect(
+						() -> new TopMatches(topK, true), (t, k) -> {
+					int i = corpus.getId(k);
+					/* Get the kth chain code from the model snapshot */
+					String modelSegmentChain = corpus.getMatchString(k);
 					
 					/* computes the similarity between 2 strings, and the returned value 
 					 * lies in the interval [0.0, 1.0]. It is (roughly) a variation of 
@@ -2858,27 +2875,17 @@ public class LGAlgorithm {
 					
 					/* track entry with the small number of  
 					 * edits then report filename and segment of id entry */
-					if (Float.compare((float)similarity, bestLvlOfMatch.get()) > 0) {
-						bestLvlOfMatch.set((float)similarity);
-						bestID.set(i);
-					}					
-				});
+					t.offer(i, (float) similarity);					
+				}, TopMatches::addAll);
 
 				ConcurrentHashMap<Integer, Double> hm = 
 						new ConcurrentHashMap<Integer, Double>(1, (float) 0.75);
-				hm.put(bestID.get(), bestLvlOfMatch.doubleValue());
+				hm.put(top.getBestId(), top.getBestScore());
 				bestMatches.put(segment, hm);
 				
 				/* For each segment of the sample, track which model image 
 				 * and which image model perspective provides the best match*/
-				String modelOfInterest = DatabaseModule.getFileName(bestID.get());
-				Integer curCnt = cntMatches.get(modelOfInterest);			
-				if (curCnt == null) {
-					cntMatches.put(modelOfInterest, 1);	
-				}
-				else {
-					cntMatches.put(modelOfInterest, ++curCnt);
-				}
+				top.vote(cntMatches, corpus);
 			}
 			
 			/* Display result */
@@ -2889,7 +2896,7 @@ public class LGAlgorithm {
 		    	Iterator<Integer> ii = minValue.keySet().iterator();
 		    	while(ii.hasNext()) {
 		    		Integer idmin = ii.next();
-		    		String filenameOfID = DatabaseModule.getFileName(idmin);
+		    		String filenameOfID = corpus.getFileNameForId(idmin);
 		    		sb.append("Best Jaro Winker match for segment " + key + " is " + 
 		    		                    idmin + " (" + filenameOfID +") with " + 
 		    				            minValue.get(idmin) + " similarity"
@@ -2905,8 +2912,8 @@ public class LGAlgorithm {
 		    int probsCnt = 0;
 		    while (cntIterator.hasNext()) {
 		    	String filename = cntIterator.next();
-		    	Integer count = cntMatches.get(filename);
-		    	float probMatch = ((float)count) / sampleChains.size();
+		    	Double count = cntMatches.get(filename);
+		    	float probMatch = count.floatValue() / sampleChains.size();
 		    	sb.append("Probablity of matching " + filename 
 		    			            + " is :" + (probMatch * 100) 
 		    			            + " %" + "\n");
@@ -2985,56 +2992,62 @@ public class LGAlgorithm {
 			Map<Integer, ConcurrentHashMap<Integer,Integer>> bestMatches = 
 					new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Integer>>(
 							bestMatchesSz,(float)0.75);
-			Map<String, Integer> cntMatches = 
-					new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+			Map<String, Double> cntMatches = 
+					new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 							(float)0.90); 
 			
 			Iterator<Integer> segments = sampleChains.keySet().iterator();
-			int lastEntryID = DatabaseModule.getLastId();
+			ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+			if (corpus == null) {
+				System.err.println("match_to_model_Opt_Str_Alignment(): unable to load model chain codes");
+				return;
+			}
+			int topK = TopMatches.getDefaultK();
+			DirectionHistograms histograms = corpus.getDirectionHistograms();
 			while(segments.hasNext()) {
 				Integer segment = segments.next();
 				String segmentChain = sampleChains.get(segment);
+				int[] sampleHistogram = (segmentChain != null) ? 
+						DirectionHistograms.histogramOf(segmentChain) : null;
+				BitParallelPattern samplePattern = (segmentChain != null) ? 
+						new BitParallelPattern(segmentChain) : null;
 				sb.append("Working with sample segment " + segment + "\n");
-				AtomicInteger minDistance = new AtomicInteger(Integer.MAX_VALUE);
-				AtomicInteger minID = new AtomicInteger(Integer.MIN_VALUE);
-				IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-					/* Get the ith chain code from the database */
-					String modelSegmentChain = DatabaseModule.getChainCode(i);
+				TopMatches top = modelRows(corpus, segmentChain).collect(
+						() -> new TopMatches(topK, false), (t, k) -> {
+					int i = corpus.getId(k);
+					/* Get the kth chain code from the model snapshot */
+					String modelSegmentChain = corpus.getMatchString(k);
 					
 					/* the number of edit operations needed to make the strings
 					 *  equal under the condition that no substring is edited 
 					 *  more than once*/
-					OptimalStringAlignment osa = new OptimalStringAlignment();
 					if ((segmentChain == null) || (modelSegmentChain == null)) {
 						System.err.println("OSA: modelSegment null for chain code" + i);					
 						return;
 					}
-					int distance = (int) osa.distance(
-							segmentChain, modelSegmentChain);
+					/* a model whose direction counts alone put it further than the 
+					 * worst this thread keeps cannot be kept, skip the comparison */
+					if (histograms.editDistanceBound(sampleHistogram, k) > t.getIntBound()) {
+						return;
+					}
+					int distance = samplePattern.optimalStringAlignment(
+							modelSegmentChain, t.getIntBound());
 					
 					/* track entry with the small number of  
-					 * edits then report filename and segment of id entry */
-					if (distance < minDistance.get()) {
-						minDistance.set(distance);
-						minID.set(i);
-					}					
-				});
+					 * edits then report filename and segment of id entry, a model 
+					 * further than the worst this thread keeps comes back over the 
+					 * bound */
+					t.offer(i, distance);					
+				}, TopMatches::addAll);
 
 				ConcurrentHashMap<Integer, Integer> hm = 
 						new ConcurrentHashMap<Integer, Integer>(1, (float) 0.75);
-				hm.put(minID.get(), minDistance.get());
+				hm.put(top.getBestId(), (int) top.getBestScore());
 				bestMatches.put(segment, hm);
 				
 				/* For each segment of the sample, track which model image 
 				 * and which image model perspective provides the best match*/
-				String modelOfInterest = DatabaseModule.getFileName(minID.get());
-				Integer curCnt = cntMatches.get(modelOfInterest);			
-				if (curCnt == null) {
-					cntMatches.put(modelOfInterest, 1);	
-				}
-				else {
-					cntMatches.put(modelOfInterest, ++curCnt);
-				}
+				top.vote(cntMatches, corpus);
 			}
 			
 			/* Display result */
@@ -3045,7 +3058,7 @@ public class LGAlgorithm {
 		    	Iterator<Integer> ii = minValue.keySet().iterator();
 		    	while(ii.hasNext()) {
 		    		Integer idmin = ii.next();
-		    		String filenameOfID = DatabaseModule.getFileName(idmin);
+		    		String filenameOfID = corpus.getFileNameForId(idmin);
 		    		sb.append("Best O.S.A. for segment " + key + " is " + 
 		    		                    idmin + " (" + filenameOfID +") with " + 
 		    				            minValue.get(idmin) 
@@ -3061,8 +3074,8 @@ public class LGAlgorithm {
 		    int probsCnt = 0;
 		    while (cntIterator.hasNext()) {
 		    	String filename = cntIterator.next();
-		    	Integer count = cntMatches.get(filename);
-		    	float probMatch = ((float)count) / sampleChains.size();
+		    	Double count = cntMatches.get(filename);
+		    	float probMatch = count.floatValue() / sampleChains.size();
 		    	sb.append("Probablity of matching " + filename 
 		    			            + " is :" + (probMatch * 100) + " %"
 		    			            + "\n");
@@ -3142,56 +3155,72 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Integer>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Integer>>(
 						sampleChains.size(),(float)0.75);
-		Map<String, Integer> cntMatches = 
-				new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 						(float)0.90); 
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_Damerau_Levenshtein(): unable to load model chain codes");
+			return;
+		}
+		int topK = TopMatches.getDefaultK();
+		DirectionHistograms histograms = corpus.getDirectionHistograms();
+		BKTree tree = (ChainCodeCorpus.isUsingMetricTrees() && 
+				(!MinHashIndex.isApproximate())) ? 
+				corpus.getDamerauTree() : null;
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);			
+			int[] sampleHistogram = (segmentChain != null) ? 
+					DirectionHistograms.histogramOf(segmentChain) : null;
 			sb.append("Working with sample segment " + segment + "\n");			
-			AtomicInteger minDistance = new AtomicInteger(Integer.MAX_VALUE);
-			AtomicInteger minID = new AtomicInteger(-Integer.MIN_VALUE);
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);
+			TopMatches top;
+			if ((tree != null) && (segmentChain != null)) {
+				/* the tree only compares the model segments the triangle 
+				 * inequality cannot rule out */
+				top = tree.nearest(segmentChain, topK);
+			}
+			else {
+				top = modelRows(corpus, segmentChain).collect(
+						() -> new TopMatches(topK, false), (t, k) -> {
+					int i = corpus.getId(k);
+					/* Get the kth chain code from the model snapshot */
+					String modelSegmentChain = corpus.getMatchString(k);
 				
-				/* Levenshtein measure is
-				 * the minimum number of single-character edits 
-				 * (insertions, deletions or substitutions) required to 
-				 *  change one word into the other */
-				Damerau d = new Damerau();
-				if ((segmentChain == null) || (modelSegmentChain == null)) {
-					System.err.println("Damerau: modelSegment null for chain code" + i);					
-					return;
-				}
-				int distance = (int) d.distance(segmentChain, modelSegmentChain);
+					/* Levenshtein measure is
+					 * the minimum number of single-character edits 
+					 * (insertions, deletions or substitutions) required to 
+					 *  change one word into the other */
+					if ((segmentChain == null) || (modelSegmentChain == null)) {
+						System.err.println("Damerau: modelSegment null for chain code" + i);					
+						return;
+					}
+					/* a model whose direction counts alone put it further than the 
+					 * worst this thread keeps cannot be kept, skip the comparison */
+					if (histograms.editDistanceBound(sampleHistogram, k) > t.getIntBound()) {
+						return;
+					}
+					int distance = EditDistance.damerau(segmentChain, 
+							modelSegmentChain, t.getIntBound());
 				
-				/* track entry with the small number of  
-				 * edits then report filename and segment of id entry */
-				if (distance < minDistance.get()) {
-					minDistance.set(distance);
-					minID.set(i);
-				}				
-			});
+					/* track entry with the small number of  
+					 * edits then report filename and segment of id entry, a model 
+					 * further than the worst this thread keeps comes back over the 
+					 * bound */
+					t.offer(i, distance);				
+				}, TopMatches::addAll);
+			}
 
 			ConcurrentHashMap<Integer, Integer> hm = 
 					new ConcurrentHashMap<Integer, Integer>(1, (float) 0.75);
-			hm.put(minID.get(), minDistance.get());
+			hm.put(top.getBestId(), (int) top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(minID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}
+			top.vote(cntMatches, corpus);
 		}
 		
 		/* Display result */
@@ -3202,7 +3231,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("Best D-L Match for segment " + key + " is " + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) + 
@@ -3218,8 +3247,8 @@ public class LGAlgorithm {
 	    int probsCnt = 0;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	float probMatch = ((float)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	float probMatch = count.floatValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) + " %"
 	    			            + "\n");
@@ -3299,12 +3328,18 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Double>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Double>>(
 						bestMatchesSz,(float)0.75);
-		Map<String, Integer> cntMatches = 
-				new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 						(float)0.90); 
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_Normalized_Levenshtein(): unable to load model chain codes");
+			return;
+		}
+		int topK = TopMatches.getDefaultK();
+		int lastEntryID = corpus.getLastId();
 		sb.append("N.Lev. lastEntryID = " + lastEntryID);
 		
 		// run through all the segments in the sample image
@@ -3313,51 +3348,43 @@ public class LGAlgorithm {
 			// get the chaincode for the current segment
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);
+			BitParallelPattern samplePattern = (segmentChain != null) ? 
+					new BitParallelPattern(segmentChain) : null;
 			sb.append("Working with sample segment " + segment + "\n");
 			System.out.println("Ẅorking with segment" + segment);
 			
-			AtomicFloat bestLvlOfMatch = new AtomicFloat(Float.MIN_VALUE);
-			AtomicInteger bestID = new AtomicInteger(Integer.MIN_VALUE);			
 			
 			// run through all the chaincodes in the database
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);
+			TopMatches top = modelRows(corpus, segmentChain).collect(
+					() -> new TopMatches(topK, true), (t, k) -> {
+				int i = corpus.getId(k);
+				/* Get the kth chain code from the model snapshot */
+				String modelSegmentChain = corpus.getMatchString(k);
 				
 				/* Levenshtein measure is
 				 * the minimum number of single-character edits 
 				 * (insertions, deletions or substitutions) required to 
 				 *  change one word into the other */
-				NormalizedLevenshtein nl = new NormalizedLevenshtein();
 				if ((segmentChain == null) || (modelSegmentChain == null)) {
 					System.err.println("NormalizedLevenshtein: modelSegment null for chain code" + i);					
 					return;
 				}
-				double similarity = nl.distance(segmentChain, modelSegmentChain);
+				double similarity = samplePattern.normalizedLevenshtein(
+						modelSegmentChain);
 				
 				/* track entry with the small number of  
 				 * edits then report filename and segment of id entry */
-				if (Float.compare((float)similarity, bestLvlOfMatch.get()) > 0) {
-					bestLvlOfMatch.set((float)similarity);
-					bestID.set(i);
-				}				
-			});
+				t.offer(i, (float) similarity);				
+			}, TopMatches::addAll);
 
 			ConcurrentHashMap<Integer, Double> hm = 
 					new ConcurrentHashMap<Integer, Double>(1, (float) 0.75);
-			hm.put(bestID.get(), bestLvlOfMatch.doubleValue());
+			hm.put(top.getBestId(), top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(bestID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}
+			top.vote(cntMatches, corpus);
 		}
 		
 		/* Display result, segment by segment */
@@ -3371,7 +3398,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("N.Lev. Best Match for segment " + key + " is " + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) + " similarity"
@@ -3387,8 +3414,8 @@ public class LGAlgorithm {
 	    int probsCnt = 0;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	float probMatch = ((float)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	float probMatch = count.floatValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) + " %"
 	    			            + "\n");
@@ -3467,58 +3494,78 @@ public class LGAlgorithm {
 		Map<Integer, ConcurrentHashMap<Integer,Integer>> bestMatches = 
 				new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer,Integer>>(
 						bestMatchesSz,(float)0.75);
-		Map<String, Integer> cntMatches = 
-				new ConcurrentHashMap<String, Integer>(cntMatchesSz, 
+		Map<String, Double> cntMatches = 
+				new ConcurrentHashMap<String, Double>(cntMatchesSz, 
 						(float)0.90); 
 		
 		Iterator<Integer> segments = sampleChains.keySet().iterator();
-		int lastEntryID = DatabaseModule.getLastId();
+		ChainCodeCorpus corpus = DatabaseModule.getChainCodeCorpus();
+		if (corpus == null) {
+			System.err.println("match_to_model_Levenshtein(): unable to load model chain codes");
+			return;
+		}
+		int topK = TopMatches.getDefaultK();
+		DirectionHistograms histograms = corpus.getDirectionHistograms();
+		BKTree tree = (ChainCodeCorpus.isUsingMetricTrees() && 
+				(!MinHashIndex.isApproximate())) ? 
+				corpus.getLevenshteinTree() : null;
+		int lastEntryID = corpus.getLastId();
 		sb.append("Last ID="+lastEntryID + "\n");
 		while(segments.hasNext()) {
 			Integer segment = segments.next();
 			String segmentChain = sampleChains.get(segment);
+			int[] sampleHistogram = (segmentChain != null) ? 
+					DirectionHistograms.histogramOf(segmentChain) : null;
+			BitParallelPattern samplePattern = (segmentChain != null) ? 
+					new BitParallelPattern(segmentChain) : null;
 			sb.append("Working with sample segment " + segment + "\n");			
-			AtomicInteger minDistance = new AtomicInteger(Integer.MAX_VALUE);
-			AtomicInteger minID = new AtomicInteger(Integer.MIN_VALUE);
-			IntStream.rangeClosed(0, lastEntryID).parallel().forEach((i) -> {
-				/* Get the ith chain code from the database */
-				String modelSegmentChain = DatabaseModule.getChainCode(i);
+			TopMatches top;
+			if ((tree != null) && (segmentChain != null)) {
+				/* the tree only compares the model segments the triangle 
+				 * inequality cannot rule out */
+				top = tree.nearest(segmentChain, topK);
+			}
+			else {
+				top = modelRows(corpus, segmentChain).collect(
+						() -> new TopMatches(topK, false), (t, k) -> {
+					int i = corpus.getId(k);
+					/* Get the kth chain code from the model snapshot */
+					String modelSegmentChain = corpus.getMatchString(k);
 				
-				/* Levenshtein measure is
-				 * the minimum number of single-character edits 
-				 * (insertions, deletions or substitutions) required to 
-				 *  change one word into the other */
-				if ((segmentChain == null) || (modelSegmentChain == null)) {
-					System.err.println("Levenshtein: modelSegment null for chain code" + i);					
-					return;
-				}
-				int distance = Levenshtein.distance(segmentChain, modelSegmentChain);
+					/* Levenshtein measure is
+					 * the minimum number of single-character edits 
+					 * (insertions, deletions or substitutions) required to 
+					 *  change one word into the other */
+					if ((segmentChain == null) || (modelSegmentChain == null)) {
+						System.err.println("Levenshtein: modelSegment null for chain code" + i);					
+						return;
+					}
+					/* a model whose direction counts alone put it further than the 
+					 * worst this thread keeps cannot be kept, skip the comparison */
+					if (histograms.editDistanceBound(sampleHistogram, k) > t.getIntBound()) {
+						return;
+					}
+					int distance = samplePattern.levenshtein(
+							modelSegmentChain, t.getIntBound());
 				
-				/* track entry with the small number of  
-				 * edits then report filename and segment of id entry */
-				if (distance < minDistance.get()) {
-					minDistance.set(distance);
-					minID.set(i);
-				}				
-			});
+					/* track entry with the small number of  
+					 * edits then report filename and segment of id entry, a model 
+					 * further than the worst this thread keeps comes back over the 
+					 * bound */
+					t.offer(i, distance);				
+				}, TopMatches::addAll);
+			}
 
 			/* Track which model segment provides the 
 			 * fewest modifications to a match */
 			ConcurrentHashMap<Integer, Integer> hm = 
 					new ConcurrentHashMap<Integer, Integer>(1, (float) 0.75);
-			hm.put(minID.get(), minDistance.get());
+			hm.put(top.getBestId(), (int) top.getBestScore());
 			bestMatches.put(segment, hm);
 			
 			/* For each segment of the sample, track which model image 
 			 * and which image model perspective provides the best match*/
-			String modelOfInterest = DatabaseModule.getFileName(minID.get());
-			Integer curCnt = cntMatches.get(modelOfInterest);			
-			if (curCnt == null) {
-				cntMatches.put(modelOfInterest, 1);	
-			}
-			else {
-				cntMatches.put(modelOfInterest, ++curCnt);
-			}
+			top.vote(cntMatches, corpus);
 		}
 		
 		/* Display result */
@@ -3529,7 +3576,7 @@ public class LGAlgorithm {
 	    	Iterator<Integer> ii = minValue.keySet().iterator();
 	    	while(ii.hasNext()) {
 	    		Integer idmin = ii.next();
-	    		String filenameOfID = DatabaseModule.getFileName(idmin);
+	    		String filenameOfID = corpus.getFileNameForId(idmin);
 	    		sb.append("Best L. Match for segment " + key + " is " + 
 	    		                    idmin + " (" + filenameOfID +") with " + 
 	    				            minValue.get(idmin) 
@@ -3545,8 +3592,8 @@ public class LGAlgorithm {
 	    int probsCnt = 0;
 	    while (cntIterator.hasNext()) {
 	    	String filename = cntIterator.next();
-	    	Integer count = cntMatches.get(filename);
-	    	float probMatch = ((float)count) / sampleChains.size();
+	    	Double count = cntMatches.get(filename);
+	    	float probMatch = count.floatValue() / sampleChains.size();
 	    	sb.append("Probablity of matching " + filename 
 	    			            + " is :" + (probMatch * 100) + " %"
 	    			            + "\n");
@@ -3978,30 +4025,41 @@ public class LGAlgorithm {
 		List<String> modelFileNames = DatabaseModule.getAllModelFileName();		
 		System.out.println("Delaunay_Graph_NoML: Working with " + modelFileNames.size() + " models ");
 		
+		/* every model's triads come from one snapshot rather than a query 
+		 * per model */
+		TriadCorpus triadCorpus = DatabaseModule.getTriadCorpus();
+		if (triadCorpus == null) {
+			System.err.println("Delaunay_Graph_NoML: unable to load model triads");
+			return;
+		}
+		
 		//  2. For each model image
 		for (String model : modelFileNames) {
 			// 2.1 Ask the database for all the triads for the model image
 			// System.out.println("Delaunay_Graph_NoML: Working with " + model + " model ");
-			List<Point> delaunay_model = DatabaseModule.getTriads(model.replace(':', '/'));
-			// System.out.println("Delaunay_Graph_NoML: There are " + (delaunay_model.size()/3) + " triads to work with.");
+			int modelIdx = triadCorpus.indexOf(model);
+			int[] delaunay_model = (modelIdx >= 0) ? triadCorpus.getTriads(modelIdx) : new int[0];
+			int nVertices = delaunay_model.length / 2;
+			// System.out.println("Delaunay_Graph_NoML: There are " + (nVertices/3) + " triads to work with.");
 						 
 			// 2.2 For each model image triad, run through all the unknown model image triads vertices
 			Map<Double, Double> trackdupsModel = new ConcurrentHashMap<>();
-			for (int i = 0; i < delaunay_model.size()-1; i++) {				
-				Point m1 = delaunay_model.get(i);			
+			for (int i = 0; i < nVertices-1; i++) {				
+				double m1x = delaunay_model[2*i];
+				double m1y = delaunay_model[(2*i)+1];
 				
-				Double dupResult = trackdupsModel.put(m1.x,m1.y);
+				Double dupResult = trackdupsModel.put(m1x,m1y);
 				if (dupResult != null) {
 					continue;
 				}
 				
-				double m1minx = delaunay_model.get(i).x;
+				double m1minx = m1x;
 		        m1minx = m1minx - (m1minx * epsilon);
-			    double m1miny = delaunay_model.get(i).y;
+			    double m1miny = m1y;
 			    m1miny = m1miny - (m1miny * epsilon);
-			    double m1maxx = delaunay_model.get(i).x;
+			    double m1maxx = m1x;
 			    m1maxx = m1maxx + (m1maxx * epsilon);
-			    double m1maxy = delaunay_model.get(i).y;
+			    double m1maxy = m1y;
 			    m1maxy = m1maxy + (m1maxy * epsilon);
 			    
 				for (int j = 0; j < convertedTriangleList.size()-1; j++) {
@@ -4025,7 +4083,7 @@ public class LGAlgorithm {
 					 */
 					
 					if ((((u1.x >= m1minx) && (u1.x <= m1maxx) && (u1.y >= m1miny) && (u1.y <= m1maxy)))) {
-						System.out.println("Woohoo I found a match with "+ model + " with node "+ m1 
+						System.out.println("Woohoo I found a match with "+ model + " with node "+ new Point(m1x, m1y) 
 								+ " and sample having node" + u1);
 						if (cnts.get(model) == null) {
 							cnts.put(model, 1);
@@ -4134,28 +4192,32 @@ public class LGAlgorithm {
 		// need to determine which attribute and its index will hold the labels
 		training.setClassIndex(training.numAttributes()-1);
 		
+		// every model's triads come from one snapshot
+		TriadCorpus triadCorpus = DatabaseModule.getTriadCorpus();
+		
 		// work through each model
 		for (String model : modelFileNames) {
 			System.out.println("Working with model " + model);
-			List<Point> modelPointsForTraining = DatabaseModule.getDelaunayGraph(model);
+			int modelIdx = (triadCorpus != null) ? triadCorpus.indexOf(model) : -1;
 			
-			if (modelPointsForTraining == null) {
+			if (modelIdx < 0) {
 				System.out.println(" Model " + model + " has no valid data for training ");
 				continue;
 			}
+			int[] modelTriadsForTraining = triadCorpus.getTriads(modelIdx);
 						
 			// go tuple-by-tuple for each model image
-			int graphSize = modelPointsForTraining.size();
-			for (int i = 0; i < graphSize; i+=3) {
+			int graphSize = modelTriadsForTraining.length;
+			for (int i = 0; i < graphSize; i+=PackedTriads.INTS_PER_TRIAD) {
 				
 				// take graph data row from database and transform into training instance
 				Instance inst = new DenseInstance(attributes.size());	
-				inst.setValue(attributes.get(0), modelPointsForTraining.get(i).x);
-				inst.setValue(attributes.get(1), modelPointsForTraining.get(i).y);
-				inst.setValue(attributes.get(2), modelPointsForTraining.get(i+1).x);
-				inst.setValue(attributes.get(3), modelPointsForTraining.get(i+1).y);
-				inst.setValue(attributes.get(4), modelPointsForTraining.get(i+2).x);
-				inst.setValue(attributes.get(5), modelPointsForTraining.get(i+2).y);
+				inst.setValue(attributes.get(0), modelTriadsForTraining[i]);
+				inst.setValue(attributes.get(1), modelTriadsForTraining[i+1]);
+				inst.setValue(attributes.get(2), modelTriadsForTraining[i+2]);
+				inst.setValue(attributes.get(3), modelTriadsForTraining[i+3]);
+				inst.setValue(attributes.get(4), modelTriadsForTraining[i+4]);
+				inst.setValue(attributes.get(5), modelTriadsForTraining[i+5]);
 
 				/* To prevent UnsignedDataSetExeception, set the instance dataset to the 
 			       instances object that you are adding the instance to, seems circular
@@ -0,0 +1,102 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+/**
+ * Features of a sample image handed to every {@link Matcher}, along with
+ * the workbook the matchers record their results in. Matchers run
+ * concurrently, so they only read the features and synchronize on the
+ * workbook when writing to it.
+ */
+public final class MatchContext {
+	private final Map<Integer, String> sampleChains;
+	private final Map<Integer, Point> sampleMoments;
+	private final ArrayList<Point> sampleccStartPts;
+	private final Mat angleDifferences;
+	private final List<Point> triangleList;
+	private final String classifierPref;
+	private final XSSFWorkbook wkbkResults;
+
+	/**
+	 * @param sampleChains -- chain code of each sample segment, in the form
+	 * from {@link PackedChainCode#toMatchString(String)}
+	 * @param sampleMoments -- centroid of each sample segment
+	 * @param sampleccStartPts -- chain code start of each sample segment
+	 * @param angleDifferences -- global structure angle differences
+	 * @param triangleList -- Delaunay triangulation of the sample, may be
+	 * null when it was not calculated
+	 * @param classifierPref -- Weka classifier for the Delaunay graph
+	 * @param wkbkResults -- spreadsheet to record results
+	 */
+	public MatchContext(Map<Integer, String> sampleChains,
+			            Map<Integer, Point> sampleMoments,
+			            ArrayList<Point> sampleccStartPts, Mat angleDifferences,
+			            List<Point> triangleList, String classifierPref,
+			            XSSFWorkbook wkbkResults) {
+		this.sampleChains = sampleChains;
+		this.sampleMoments = sampleMoments;
+		this.sampleccStartPts = sampleccStartPts;
+		this.angleDifferences = angleDifferences;
+		this.triangleList = triangleList;
+		this.classifierPref = classifierPref;
+		this.wkbkResults = wkbkResults;
+	}
+
+	/**
+	 * @return chain code of each sample segment
+	 */
+	public Map<Integer, String> getSampleChains() {
+		return sampleChains;
+	}
+
+	/**
+	 * @return centroid of each sample segment
+	 */
+	public Map<Integer, Point> getSampleMoments() {
+		return sampleMoments;
+	}
+
+	/**
+	 * @return chain code start of each sample segment
+	 */
+	public ArrayList<Point> getSampleccStartPts() {
+		return sampleccStartPts;
+	}
+
+	/**
+	 * @return global structure angle differences of the sample
+	 */
+	public Mat getAngleDifferences() {
+		return angleDifferences;
+	}
+
+	/**
+	 * Delaunay triangulation of the sample, copied so a matcher may
+	 * change it
+	 * @return flattened triangle vertices, empty if not calculated
+	 */
+	public List<Point> copyTriangleList() {
+		return (triangleList != null) ? new ArrayList<Point>(triangleList) :
+			                            new ArrayList<Point>();
+	}
+
+	/**
+	 * @return Weka classifier to use with the Delaunay graph
+	 */
+	public String getClassifierPref() {
+		return classifierPref;
+	}
+
+	/**
+	 * @return spreadsheet to record results in
+	 */
+	public XSSFWorkbook getResults() {
+		return wkbkResults;
+	}
+}
@@ -0,0 +1,143 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the chosen {@link Matcher}s of a sample image concurrently within
+ * a fixed number of threads.<br/><br/>
+ *
+ * Each matcher gets a parallelism budget, its own parallelism clamped to
+ * the pool size, and takes that many permits from the pool before it
+ * starts, so the matchers running at any time never hold more threads
+ * than the pool has. The matcher runs inside a ForkJoinPool of its
+ * budget, which keeps its parallel streams there instead of on the
+ * common pool that every other matcher would also be using. Each run
+ * is a future, and a failed matcher is reported without stopping the
+ * others.
+ */
+public final class MatchScheduler {
+	/* number of threads matchers may use at once, defaults to the number
+	 * of processors */
+	public static final String THREADS_PROPERTY = "obstruction.matcher.threads";
+
+	private static volatile MatchScheduler shared = null;
+
+	private final int poolSize;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+
+	/**
+	 * Create a scheduler
+	 * @param poolSize -- most threads the matchers may use at once
+	 */
+	public MatchScheduler(int poolSize) {
+		this.poolSize = Math.max(1, poolSize);
+		AtomicInteger threadCnt = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(this.poolSize, (r) -> {
+			Thread t = new Thread(r, "Matcher " + threadCnt.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		permits = new Semaphore(this.poolSize, true);
+	}
+
+	/**
+	 * Scheduler shared by every sample image, sized by the
+	 * obstruction.matcher.threads property
+	 * @return shared scheduler
+	 */
+	public static MatchScheduler getShared() {
+		MatchScheduler current = shared;
+		if (current != null) {
+			return current;
+		}
+		synchronized (MatchScheduler.class) {
+			if (shared == null) {
+				shared = new MatchScheduler(Integer.getInteger(THREADS_PROPERTY,
+						Runtime.getRuntime().availableProcessors()));
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * @return most threads the matchers may use at once
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Threads a matcher will be given
+	 * @param matcher -- matcher to run
+	 * @return parallelism budget between one and the pool size
+	 */
+	public int getBudget(Matcher matcher) {
+		return Math.max(1, Math.min(poolSize, matcher.getParallelism()));
+	}
+
+	/**
+	 * Start a matcher
+	 * @param matcher -- matcher to run
+	 * @param context -- sample features and results workbook
+	 * @return future completed when the matcher is done, or exceptionally
+	 * with what it threw
+	 */
+	public CompletableFuture<Void> submit(Matcher matcher, MatchContext context) {
+		int budget = getBudget(matcher);
+		return CompletableFuture.runAsync(() -> run(matcher, context, budget), executor);
+	}
+
+	/**
+	 * Run matchers and wait for all of them to finish
+	 * @param matchers -- matchers to run, started in this order
+	 * @param context -- sample features and results workbook
+	 * @return number of matchers that failed
+	 */
+	public int runAll(List<Matcher> matchers, MatchContext context) {
+		List<CompletableFuture<Void>> runs = new ArrayList<CompletableFuture<Void>>();
+		for (Matcher m : matchers) {
+			runs.add(submit(m, context));
+		}
+
+		int failed = 0;
+		for (int i = 0; i < runs.size(); i++) {
+			try {
+				runs.get(i).join();
+			} catch (CompletionException e) {
+				failed++;
+				System.err.println("Matcher " + matchers.get(i).getName() + " failed");
+				e.getCause().printStackTrace();
+			}
+		}
+		return failed;
+	}
+
+	/* body of each run, holds the budget's permits for the whole match */
+	private void run(Matcher matcher, MatchContext context, int budget) {
+		permits.acquireUninterruptibly(budget);
+		ForkJoinPool pool = new ForkJoinPool(budget);
+		try {
+			System.out.println("Running matcher: " + matcher.getName() + " with "
+		                       + budget + " of " + poolSize + " threads");
+			pool.submit(() -> matcher.match(context)).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(e);
+		} catch (ExecutionException e) {
+			throw new CompletionException(e.getCause());
+		} finally {
+			pool.shutdown();
+			permits.release(budget);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package robbeloth.research;
+
+import java.util.function.Consumer;
+
+/**
+ * A way of matching a sample image against the model database. Matchers
+ * are looked up by name in the {@link MatcherRegistry} and run by the
+ * {@link MatchScheduler}, each writing its own results into the shared
+ * results workbook of the {@link MatchContext}.
+ */
+public interface Matcher {
+	/**
+	 * Name the matcher is registered and chosen under
+	 * @return matcher name
+	 */
+	String getName();
+
+	/**
+	 * Most threads the matcher can keep busy, the scheduler never gives
+	 * it more than its pool size
+	 * @return parallelism budget, 1 for a sequential matcher
+	 */
+	default int getParallelism() {
+		return 1;
+	}
+
+	/**
+	 * Match the sample against the model database and record the results
+	 * @param context -- sample features and results workbook
+	 */
+	void match(MatchContext context);
+
+	/**
+	 * Build a matcher around a method
+	 * @param name -- name the matcher is chosen under
+	 * @param parallelism -- most threads the matcher can keep busy
+	 * @param body -- matching method
+	 * @return matcher
+	 */
+	static Matcher of(String name, int parallelism, Consumer<MatchContext> body) {
+		return new Matcher() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public int getParallelism() {
+				return parallelism;
+			}
+
+			@Override
+			public void match(MatchContext context) {
+				body.accept(context);
+			}
+
+			@Override
+			public String toString() {
+				return name;
+			}
+		};
+	}
+}
@@ -0,0 +1,75 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Matchers available to match a sample image, by name. A new matcher is
+ * added by registering it rather than by editing the matching code, and
+ * is then chosen with its name like the built in ones, which
+ * {@link LGAlgorithm} registers.
+ */
+public final class MatcherRegistry {
+	/* choice that selects every registered matcher */
+	public static final String ALL = "all";
+
+	/* kept in registration order, which is the order matchers start in */
+	private static final LinkedHashMap<String, Matcher> matchers =
+			new LinkedHashMap<String, Matcher>();
+
+	private MatcherRegistry() {
+	}
+
+	/**
+	 * Make a matcher available
+	 * @param matcher -- matcher to add
+	 * @throws IllegalArgumentException if a matcher with the same name is
+	 * already registered
+	 */
+	public static synchronized void register(Matcher matcher) {
+		if (matchers.containsKey(matcher.getName())) {
+			throw new IllegalArgumentException("A matcher named "
+		                                       + matcher.getName() + " is already registered");
+		}
+		matchers.put(matcher.getName(), matcher);
+	}
+
+	/**
+	 * Look up a matcher
+	 * @param name -- name the matcher was registered under
+	 * @return matcher or null if none has the name
+	 */
+	public static synchronized Matcher get(String name) {
+		return matchers.get(name);
+	}
+
+	/**
+	 * Names of every registered matcher
+	 * @return names in registration order
+	 */
+	public static synchronized List<String> getNames() {
+		return new ArrayList<String>(matchers.keySet());
+	}
+
+	/**
+	 * Matchers chosen by a list of names
+	 * @param choices -- matcher names, or all for every matcher
+	 * @return chosen matchers in registration order
+	 */
+	public static synchronized List<Matcher> select(List<String> choices) {
+		List<Matcher> selected = new ArrayList<Matcher>();
+		boolean all = choices.contains(ALL);
+		for (Matcher m : matchers.values()) {
+			if (all || choices.contains(m.getName())) {
+				selected.add(m);
+			}
+		}
+		for (String choice : choices) {
+			if ((!choice.equals(ALL)) && (!matchers.containsKey(choice))) {
+				System.err.println("No matcher is registered as " + choice);
+			}
+		}
+		return selected;
+	}
+}
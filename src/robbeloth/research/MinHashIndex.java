@@ -0,0 +1,230 @@
+package robbeloth.research;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * MinHash signatures of the chain codes of a {@link ChainCodeCorpus},
+ * kept in locality sensitive hashing band tables, for approximate
+ * matching against a large model database.<br/><br/>
+ *
+ * The shingles of a chain code are its distinct q-grams, as keyed by
+ * {@link QGramProfiles}. A signature holds, for each of bands times rows
+ * hash functions, the smallest hash of any shingle, so two chain codes
+ * agree on any one of them with a probability equal to the Jaccard
+ * similarity of their shingles. The signature is cut into bands of rows
+ * values, and a model segment is a candidate for a sample when the two
+ * agree on every value of at least one band. More bands find more of the
+ * similar model segments but return more candidates, while more rows per
+ * band return fewer candidates that are more alike.<br/><br/>
+ *
+ * When obstruction.matcher.approximate is set the string matchers only
+ * score the candidates, so their results may differ from a full scan,
+ * see LGAlgorithm.benchmark_LSH for how much.
+ */
+public final class MinHashIndex {
+	/* score only the candidates of the band tables instead of every model
+	 * segment, defaults to false */
+	public static final String APPROXIMATE_PROPERTY = "obstruction.matcher.approximate";
+
+	/* number of bands, raise it for better recall at the cost of speed */
+	public static final String BANDS_PROPERTY = "obstruction.matcher.lsh_bands";
+
+	/* signature values per band, raise it for speed at the cost of recall */
+	public static final String ROWS_PROPERTY = "obstruction.matcher.lsh_rows";
+
+	private static final boolean APPROXIMATE = Boolean.getBoolean(APPROXIMATE_PROPERTY);
+	private static final int DEFAULT_BANDS = 16;
+	private static final int DEFAULT_ROWS = 4;
+
+	/* first seed of the hash functions, fixed so runs are repeatable */
+	private static final long SEED = 0x6F627374L;
+
+	private final QGramProfiles profiles;
+	private final int bands;
+	private final int rows;
+	private final long[] seeds;			// one per signature value
+	private final long[][] bandKeys;	// hash of each band of each row, ascending per band
+	private final int[][] bandRows;		// row holding each of those hashes
+
+	/**
+	 * Sign every row of a snapshot and fill the band tables
+	 * @param profiles -- q-gram profiles of the rows, their grams are the
+	 * shingles
+	 * @param bands -- number of bands
+	 * @param rows -- signature values per band
+	 */
+	MinHashIndex(QGramProfiles profiles, int bands, int rows) {
+		if ((bands < 1) || (rows < 1)) {
+			throw new IllegalArgumentException("LSH needs at least one band of one row, not "
+		                                       + bands + " bands of " + rows);
+		}
+		this.profiles = profiles;
+		this.bands = bands;
+		this.rows = rows;
+		seeds = new long[bands * rows];
+		long s = SEED;
+		for (int j = 0; j < seeds.length; j++) {
+			s += 0x9E3779B97F4A7C15L;
+			seeds[j] = mix(s);
+		}
+
+		int n = profiles.size();
+		long[][] keys = new long[bands][n];
+		IntStream.range(0, n).parallel().forEach((k) -> {
+			long[] bandHashes = bandHashes(profiles.get(k));
+			for (int b = 0; b < bands; b++) {
+				keys[b][k] = bandHashes[b];
+			}
+		});
+
+		/* order the rows of each band by hash so a lookup is a search */
+		bandKeys = new long[bands][];
+		bandRows = new int[bands][];
+		IntStream.range(0, bands).parallel().forEach((b) -> {
+			Integer[] order = new Integer[n];
+			for (int k = 0; k < n; k++) {
+				order[k] = k;
+			}
+			long[] bk = keys[b];
+			Arrays.sort(order, (x, y) -> (bk[x] != bk[y]) ?
+					Long.compare(bk[x], bk[y]) : Integer.compare(x, y));
+			long[] sortedKeys = new long[n];
+			int[] sortedRows = new int[n];
+			for (int i = 0; i < n; i++) {
+				sortedRows[i] = order[i];
+				sortedKeys[i] = bk[order[i]];
+			}
+			bandKeys[b] = sortedKeys;
+			bandRows[b] = sortedRows;
+		});
+	}
+
+	/**
+	 * Whether the string matchers score only the candidates of the band
+	 * tables
+	 * @return true when obstruction.matcher.approximate is set
+	 */
+	public static boolean isApproximate() {
+		return APPROXIMATE;
+	}
+
+	/**
+	 * Number of bands set with the obstruction.matcher.lsh_bands property
+	 * @return bands, at least 1
+	 */
+	public static int getDefaultBands() {
+		return Math.max(1, Integer.getInteger(BANDS_PROPERTY, DEFAULT_BANDS));
+	}
+
+	/**
+	 * Signature values per band set with the obstruction.matcher.lsh_rows
+	 * property
+	 * @return rows, at least 1
+	 */
+	public static int getDefaultRows() {
+		return Math.max(1, Integer.getInteger(ROWS_PROPERTY, DEFAULT_ROWS));
+	}
+
+	/**
+	 * @return number of bands
+	 */
+	public int getBands() {
+		return bands;
+	}
+
+	/**
+	 * @return signature values per band
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return number of corpus rows in the band tables
+	 */
+	public int size() {
+		return profiles.size();
+	}
+
+	/**
+	 * Model segments sharing at least one band with a sample
+	 * @param sample -- sample chain code in the form the matchers compare
+	 * @return row positions in the snapshot, ascending
+	 */
+	public int[] candidates(String sample) {
+		long[] bandHashes = bandHashes(profiles.profileOf(sample));
+		int n = profiles.size();
+		boolean[] found = new boolean[n];
+		int cnt = 0;
+		for (int b = 0; b < bands; b++) {
+			long[] keys = bandKeys[b];
+			int i = firstAtLeast(keys, bandHashes[b]);
+			for (; (i < n) && (keys[i] == bandHashes[b]); i++) {
+				int row = bandRows[b][i];
+				if (!found[row]) {
+					found[row] = true;
+					cnt++;
+				}
+			}
+		}
+
+		int[] rowsFound = new int[cnt];
+		int c = 0;
+		for (int k = 0; (k < n) && (c < cnt); k++) {
+			if (found[k]) {
+				rowsFound[c++] = k;
+			}
+		}
+		return rowsFound;
+	}
+
+	/* hash of each band of the MinHash signature of a profile, a profile
+	 * without grams signs as every value at its largest */
+	private long[] bandHashes(QGramProfile p) {
+		long[] mins = new long[seeds.length];
+		Arrays.fill(mins, Long.MAX_VALUE);
+		for (int g = 0; g < p.size(); g++) {
+			long gram = p.getGram(g);
+			for (int j = 0; j < seeds.length; j++) {
+				long h = mix(gram ^ seeds[j]);
+				if (h < mins[j]) {
+					mins[j] = h;
+				}
+			}
+		}
+
+		long[] hashes = new long[bands];
+		for (int b = 0; b < bands; b++) {
+			long h = b;
+			for (int r = 0; r < rows; r++) {
+				h = mix(h ^ mins[(b * rows) + r]) + 0x9E3779B97F4A7C15L;
+			}
+			hashes[b] = h;
+		}
+		return hashes;
+	}
+
+	/* first position of an ascending array holding at least key */
+	private static int firstAtLeast(long[] keys, long key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] < key) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/* SplitMix64 finalizer, spreads every bit of x over the result */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+}
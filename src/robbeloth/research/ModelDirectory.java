@@ -0,0 +1,314 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Directory of the model images in the local relation, mapping each
+ * filename to the ids of its segments and each id back to its
+ * filename.<br/><br/>
+ *
+ * A model image's segments are written together, so their ids form a run
+ * of consecutive values. The directory keeps those runs sorted by their
+ * first id. Finding the model image of an id is then a binary search, and
+ * a filename lookup is a hash lookup, with no SQL at all. Instances are
+ * immutable. {@link DatabaseModule} swaps in an updated copy as model
+ * images are inserted or deleted.
+ */
+public final class ModelDirectory {
+	private static final ModelDirectory EMPTY =
+			new ModelDirectory(new ArrayList<Run>());
+
+	private final int[] runStarts;		// first id of each run, ascending
+	private final int[] runEnds;		// last id of each run
+	private final String[] runFiles;	// filename of each run
+	private final HashMap<String, Entry> entries;
+	private final int lastId;
+
+	/**
+	 * Summary of one model image in the local relation
+	 */
+	public static final class Entry {
+		private final String filename;
+		private final int firstId;
+		private final int lastId;
+		private final int count;
+		private final char segmentType;
+		private final short segmentRotation;
+
+		Entry(String filename, int firstId, int lastId, int count,
+			  char segmentType, short segmentRotation) {
+			this.filename = filename;
+			this.firstId = firstId;
+			this.lastId = lastId;
+			this.count = count;
+			this.segmentType = segmentType;
+			this.segmentRotation = segmentRotation;
+		}
+
+		/**
+		 * @return filename as stored in the database
+		 */
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * @return smallest id of the image's segments
+		 */
+		public int getFirstId() {
+			return firstId;
+		}
+
+		/**
+		 * @return largest id of the image's segments
+		 */
+		public int getLastId() {
+			return lastId;
+		}
+
+		/**
+		 * @return number of segments stored for the image
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return segment type of the image's first segment
+		 */
+		public char getSegmentType() {
+			return segmentType;
+		}
+
+		/**
+		 * @return segment rotation of the image's first segment
+		 */
+		public short getSegmentRotation() {
+			return segmentRotation;
+		}
+
+		@Override
+		public String toString() {
+			return filename + " [" + firstId + ", " + lastId + "] " + count
+				   + " segments type " + segmentType + " rotation "
+				   + segmentRotation;
+		}
+	}
+
+	/* consecutive ids belonging to one model image */
+	private static final class Run {
+		final int start;
+		final int end;
+		final String filename;
+		final char segmentType;
+		final short segmentRotation;
+
+		Run(int start, int end, String filename, char segmentType,
+			short segmentRotation) {
+			this.start = start;
+			this.end = end;
+			this.filename = filename;
+			this.segmentType = segmentType;
+			this.segmentRotation = segmentRotation;
+		}
+	}
+
+	private ModelDirectory(List<Run> runs) {
+		Collections.sort(runs, (a, b) -> Integer.compare(a.start, b.start));
+		int n = runs.size();
+		runStarts = new int[n];
+		runEnds = new int[n];
+		runFiles = new String[n];
+		entries = new HashMap<String, Entry>(Math.max(16, n * 2));
+		int maxId = 0;
+		for (int i = 0; i < n; i++) {
+			Run r = runs.get(i);
+			runStarts[i] = r.start;
+			runEnds[i] = r.end;
+			runFiles[i] = r.filename;
+			maxId = Math.max(maxId, r.end);
+			Entry e = entries.get(r.filename);
+			if (e == null) {
+				e = new Entry(r.filename, r.start, r.end, r.end - r.start + 1,
+						      r.segmentType, r.segmentRotation);
+			}
+			else {
+				e = new Entry(r.filename, Math.min(e.firstId, r.start),
+						      Math.max(e.lastId, r.end),
+						      e.count + (r.end - r.start + 1),
+						      e.segmentType, e.segmentRotation);
+			}
+			entries.put(r.filename, e);
+		}
+		lastId = maxId;
+	}
+
+	/**
+	 * Directory with no model images
+	 * @return empty directory
+	 */
+	public static ModelDirectory empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Build a directory from the rows of the local relation
+	 * @param ids -- id of each row, ascending
+	 * @param filenames -- filename of each row
+	 * @param segmentTypes -- segment type of each row
+	 * @param segmentRotations -- segment rotation of each row
+	 * @param n -- number of rows to use from the arrays
+	 * @return directory of the rows
+	 */
+	static ModelDirectory fromRows(int[] ids, String[] filenames,
+			                       char[] segmentTypes, short[] segmentRotations,
+			                       int n) {
+		List<Run> runs = new ArrayList<Run>();
+		int i = 0;
+		while (i < n) {
+			int j = i;
+			while ((j + 1 < n) && (ids[j+1] == ids[j] + 1) &&
+				   (filenames[j+1].equals(filenames[i]))) {
+				j++;
+			}
+			runs.add(new Run(ids[i], ids[j], filenames[i], segmentTypes[i],
+					         segmentRotations[i]));
+			i = j + 1;
+		}
+		return new ModelDirectory(runs);
+	}
+
+	/**
+	 * Combine the directories of several model database shards into one
+	 * @param parts -- directories to combine
+	 * @return directory of every model image in every part
+	 */
+	static ModelDirectory merge(List<ModelDirectory> parts) {
+		List<Run> runs = new ArrayList<Run>();
+		for (ModelDirectory part : parts) {
+			runs.addAll(part.toRuns());
+		}
+		return new ModelDirectory(runs);
+	}
+
+	/**
+	 * Copy of this directory with newly inserted segments of a model image
+	 * @param filename -- filename as stored in the database
+	 * @param ids -- ids of the new segments, ascending
+	 * @param segmentType -- segment type of the new segments
+	 * @param segmentRotation -- segment rotation of the new segments
+	 * @return updated directory
+	 */
+	public ModelDirectory withSegments(String filename, int[] ids,
+			                           char segmentType, short segmentRotation) {
+		if ((ids == null) || (ids.length == 0)) {
+			return this;
+		}
+
+		/* a directory loaded while the segments were being committed may
+		 * already hold some of them */
+		int[] newIds = Arrays.stream(ids).filter(id -> getFileName(id) == null).toArray();
+		if (newIds.length == 0) {
+			return this;
+		}
+
+		List<Run> runs = toRuns();
+		int i = 0;
+		while (i < newIds.length) {
+			int j = i;
+			while ((j + 1 < newIds.length) && (newIds[j+1] == newIds[j] + 1)) {
+				j++;
+			}
+			runs.add(new Run(newIds[i], newIds[j], filename, segmentType, segmentRotation));
+			i = j + 1;
+		}
+		return new ModelDirectory(runs);
+	}
+
+	/**
+	 * Copy of this directory without a deleted model image
+	 * @param filename -- filename as stored in the database
+	 * @return updated directory
+	 */
+	public ModelDirectory without(String filename) {
+		if (!entries.containsKey(filename)) {
+			return this;
+		}
+		List<Run> runs = toRuns();
+		runs.removeIf(r -> r.filename.equals(filename));
+		return new ModelDirectory(runs);
+	}
+
+	private List<Run> toRuns() {
+		List<Run> runs = new ArrayList<Run>(runStarts.length + 1);
+		for (int i = 0; i < runStarts.length; i++) {
+			Entry e = entries.get(runFiles[i]);
+			runs.add(new Run(runStarts[i], runEnds[i], runFiles[i],
+					         e.segmentType, e.segmentRotation));
+		}
+		return runs;
+	}
+
+	/**
+	 * Look up a model image
+	 * @param filename -- filename as stored in the database
+	 * @return summary of the image or null if it is not in the directory
+	 */
+	public Entry getEntry(String filename) {
+		return entries.get(filename);
+	}
+
+	/**
+	 * Find the model image a segment id belongs to
+	 * @param id -- unique id for a model image and segment
+	 * @return filename as stored in the database or null if no segment
+	 * has the id
+	 */
+	public String getFileName(int id) {
+		int i = Arrays.binarySearch(runStarts, id);
+		if (i < 0) {
+			/* insertion point minus one is the run starting before id */
+			i = -i - 2;
+		}
+		if ((i >= 0) && (id <= runEnds[i])) {
+			return runFiles[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Largest segment id in the directory
+	 * @return last id or 0 if there are no segments
+	 */
+	public int getLastId() {
+		return lastId;
+	}
+
+	/**
+	 * Number of model images in the directory
+	 * @return image count
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Filenames of every model image in the directory
+	 * @return filenames in ascending order
+	 */
+	public List<String> getFileNames() {
+		List<String> names = new ArrayList<String>(entries.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	@Override
+	public String toString() {
+		return "Model directory of " + entries.size() + " images in "
+			   + runStarts.length + " id ranges";
+	}
+}
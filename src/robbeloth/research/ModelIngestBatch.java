@@ -0,0 +1,160 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Point;
+
+/**
+ * Everything the model database needs to store for one model image,
+ * gathered while the image is processed and written afterwards by
+ * {@link DatabaseModule#insertModelBatch(ModelIngestBatch)} in a single
+ * transaction.<br/><br/>
+ *
+ * Writing the local, global, and Delaunay tuples one at a time with
+ * autocommit on means a commit per segment, which dominates the time to
+ * build a model database once every rotation and synthesized image is
+ * added.
+ */
+public final class ModelIngestBatch {
+	private final String filename;
+	private final List<LocalTuple> localTuples = new ArrayList<LocalTuple>();
+	private final List<GlobalTuple> globalTuples = new ArrayList<GlobalTuple>();
+	private Double simGScore = null;
+	private List<Point> triads = null;
+
+	/**
+	 * Start an empty batch for a model image
+	 * @param filename -- file where the segments originated
+	 */
+	public ModelIngestBatch(String filename) {
+		this.filename = filename;
+	}
+
+	/**
+	 * Queue a model segment for the local relation
+	 * @param segmentNumber -- segment number assigned to segment by segmentation and region growing process
+	 * @param cc -- chain code representation of border region of segment
+	 * @param startCC -- point where chain code of segment starts
+	 * @param segmentType -- type of segment (S for standard, R for rotated standard, Y for synthesis, Z for rotated
+	 * synthesis)
+	 * @param segmentRotation -- rotation of segment (0 degrees for standard/synthesis standard)
+	 */
+	public void addLocalTuple(int segmentNumber, String cc, Point startCC,
+			                  char segmentType, short segmentRotation) {
+		localTuples.add(new LocalTuple(segmentNumber, cc, startCC,
+				                       segmentType, segmentRotation));
+	}
+
+	/**
+	 * Queue a node for the global relation, nodes must be added in the
+	 * same order as their segments so the ids line up
+	 * @param moment -- centroid of segment
+	 * @param distance -- distance from the starting centroid
+	 * @param theta1 -- first angle difference
+	 * @param theta2 -- second angle difference
+	 * @param node -- local global graph node holding the segment size
+	 */
+	public void addGlobalTuple(Point moment, double distance, double theta1,
+			                   double theta2, LGNode node) {
+		globalTuples.add(new GlobalTuple(moment, distance, theta1, theta2,
+				                         (node != null) ? node.getSize() : Double.NaN));
+	}
+
+	/**
+	 * Set the simG score for the Delaunay graph of the model image
+	 * @param simGScore -- similarity score given threshold measurements from Delaunay construction
+	 */
+	public void setSimGScore(double simGScore) {
+		this.simGScore = simGScore;
+	}
+
+	/**
+	 * Set the Delaunay triangulation of the model image, the list is
+	 * copied so the caller may reuse it
+	 * @param triads -- flattened list of triangle vertices, three per triangle
+	 */
+	public void setDelaunayGraph(List<Point> triads) {
+		this.triads = (triads != null) ? new ArrayList<Point>(triads) : null;
+	}
+
+	/**
+	 * Get the model image filename as given by the caller
+	 * @return filename
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * Number of queued local tuples
+	 * @return tuple count
+	 */
+	public int getLocalCount() {
+		return localTuples.size();
+	}
+
+	/**
+	 * Number of queued global tuples
+	 * @return tuple count
+	 */
+	public int getGlobalCount() {
+		return globalTuples.size();
+	}
+
+	List<LocalTuple> getLocalTuples() {
+		return localTuples;
+	}
+
+	List<GlobalTuple> getGlobalTuples() {
+		return globalTuples;
+	}
+
+	Double getSimGScore() {
+		return simGScore;
+	}
+
+	List<Point> getDelaunayGraph() {
+		return triads;
+	}
+
+	/**
+	 * One row of the local relation
+	 */
+	static final class LocalTuple {
+		final int segmentNumber;
+		final String chainCode;
+		final Point startCC;
+		final char segmentType;
+		final short segmentRotation;
+
+		LocalTuple(int segmentNumber, String chainCode, Point startCC,
+				   char segmentType, short segmentRotation) {
+			this.segmentNumber = segmentNumber;
+			this.chainCode = chainCode;
+			this.startCC = startCC;
+			this.segmentType = segmentType;
+			this.segmentRotation = segmentRotation;
+		}
+	}
+
+	/**
+	 * One row of the global relation
+	 */
+	static final class GlobalTuple {
+		final Point moment;
+		final double distance;
+		final double theta1;
+		final double theta2;
+		final double size;
+
+		GlobalTuple(Point moment, double distance, double theta1,
+				    double theta2, double size) {
+			this.moment = moment;
+			this.distance = distance;
+			this.theta1 = theta1;
+			this.theta2 = theta2;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package robbeloth.research;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import robbeloth.research.DatabaseConnectionPool.PooledConnection;
+
+/**
+ * One partition of the model database, an embedded HSQLDB file holding
+ * the four model relations for a subset of the model images.<br/><br/>
+ *
+ * Each shard has its own writer connection and its own pool of reader
+ * connections, so scans of different shards run side by side on separate
+ * cores and, when the files live on separate disks, separate spindles.
+ * Every shard numbers its segments from its own identity column. The id
+ * handed to the rest of the program carries the shard number in its top
+ * bits, see {@link #toGlobalId(int)}, so ids stay unique across shards.
+ * With a single shard global and local ids are the same.
+ */
+final class ModelShard {
+	/* bits of a global id holding the id within its shard */
+	static final int LOCAL_ID_BITS = 26;
+	static final int LOCAL_ID_MASK = (1 << LOCAL_ID_BITS) - 1;
+
+	/* shard numbers have to fit in the rest of a positive int */
+	static final int MAX_SHARDS = 1 << (31 - LOCAL_ID_BITS);
+
+	private final int number;
+	private final String path;
+	private final Connection connection;
+	private final Statement statement;
+	private final PooledConnection writer;
+	private final DatabaseConnectionPool readPool;
+
+	/**
+	 * Connect to a shard, creating its database file if needed. A shard
+	 * that cannot be reached is left without a connection and every
+	 * operation on it fails the way an unavailable database always has.
+	 * @param number -- position of the shard, 0 for the first
+	 * @param path -- path of the HSQLDB file without extension
+	 * @param urlOptions -- HSQLDB connection properties appended to the url
+	 * @param readers -- most reader connections to open
+	 */
+	ModelShard(int number, String path, String urlOptions, int readers) {
+		this.number = number;
+		this.path = path;
+		String url = "jdbc:hsqldb:file:" + path + urlOptions;
+
+		Connection c = null;
+		Statement st = null;
+		try {
+			c = DriverManager.getConnection(url, "sa", "");
+			c.setAutoCommit(true);
+			System.out.println("Connection established");
+			System.out.println("Connection info: " + c.getMetaData().getURL());
+			st = c.createStatement();
+		} catch (SQLException e) {
+			System.err.println("Connection to shard " + number + " at " + path
+					           + " not established");
+			e.printStackTrace();
+		}
+		this.connection = c;
+		this.statement = st;
+
+		// Cache the writers' prepared statements and set up the readers
+		this.writer = new PooledConnection(null, c);
+		this.readPool = new DatabaseConnectionPool(url, "sa", "", readers);
+	}
+
+	/**
+	 * @return position of the shard, 0 for the first
+	 */
+	int getNumber() {
+		return number;
+	}
+
+	/**
+	 * @return path of the shard's HSQLDB file without extension
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return connection used for writes and schema changes, null if the
+	 * shard could not be reached
+	 */
+	Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * @return statement on the writer connection, null if the shard could
+	 * not be reached
+	 */
+	Statement getStatement() {
+		return statement;
+	}
+
+	/**
+	 * @return prepared statement cache of the writer connection
+	 */
+	PooledConnection getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Lease a reader connection, see {@link DatabaseConnectionPool#acquire()}
+	 * @return leased connection
+	 * @throws SQLException if no connection could be leased
+	 */
+	PooledConnection acquire() throws SQLException {
+		return readPool.acquire();
+	}
+
+	/**
+	 * Convert an id from the shard's identity columns to a global id
+	 * @param localId -- id within this shard
+	 * @return id unique across all shards
+	 */
+	int toGlobalId(int localId) {
+		return (number << LOCAL_ID_BITS) | localId;
+	}
+
+	/**
+	 * @param globalId -- id unique across all shards
+	 * @return position of the shard holding the id
+	 */
+	static int shardOf(int globalId) {
+		return globalId >>> LOCAL_ID_BITS;
+	}
+
+	/**
+	 * @param globalId -- id unique across all shards
+	 * @return id within the shard holding it
+	 */
+	static int localId(int globalId) {
+		return globalId & LOCAL_ID_MASK;
+	}
+
+	/**
+	 * Release the readers and shut the shard's database down
+	 * @throws SQLException if the shutdown failed
+	 */
+	void close() throws SQLException {
+		/* release the readers before the database goes away */
+		readPool.close();
+		writer.closeStatements();
+		PreparedStatement ps = connection.prepareStatement("shutdown");
+		ps.execute();
+		connection.close();
+	}
+
+	@Override
+	public String toString() {
+		return "Shard " + number + " at " + path;
+	}
+}
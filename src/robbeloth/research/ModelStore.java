@@ -0,0 +1,855 @@
+package robbeloth.research;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.opencv.core.Point;
+
+/**
+ * Columnar copy of the four model relations in a single file that is
+ * opened with {@link FileChannel#map}, so a process can start matching
+ * without reading the model database through JDBC.<br/><br/>
+ *
+ * The file is a fixed header followed by one section per column. Each
+ * section is aligned to eight bytes and everything is big-endian:
+ * <ul>
+ * <li>header: magic, version, segment count, filename count, triad count,
+ * last id, global tuple count, meta tuple count, then the offset of every
+ * section</li>
+ * <li>filenames: length prefixed UTF-8, referenced by index everywhere
+ * else</li>
+ * <li>simG score of each filename, NaN when the meta relation has none</li>
+ * <li>one fixed width column per local and global attribute, ordered by
+ * ascending id, with a flag telling whether the segment has a global
+ * tuple</li>
+ * <li>offsets into the packed chain codes (see {@link PackedChainCode})
+ * followed by the packed chain codes themselves</li>
+ * <li>Delaunay triads grouped by filename index, with the first triad of
+ * each filename plus an end marker</li>
+ * </ul>
+ * Column accessors read straight from the mapping, so features come from
+ * the page cache without being copied onto the heap. Instances are
+ * immutable. {@link DatabaseModule#openModelStore(File)} decides whether a
+ * store still matches the model database.
+ */
+public final class ModelStore {
+	private static final int MAGIC = 0x4F42534D;	// OBSM
+	private static final int VERSION = 1;
+
+	private static final int S_FILE_NAMES = 0;
+	private static final int S_SIMG = 1;
+	private static final int S_IDS = 2;
+	private static final int S_FILE_INDEX = 3;
+	private static final int S_SEGMENT_NUMBER = 4;
+	private static final int S_START_X = 5;
+	private static final int S_START_Y = 6;
+	private static final int S_SEGMENT_TYPE = 7;
+	private static final int S_SEGMENT_ROTATION = 8;
+	private static final int S_HAS_GLOBAL = 9;
+	private static final int S_MOMENT_X = 10;
+	private static final int S_MOMENT_Y = 11;
+	private static final int S_DISTANCE = 12;
+	private static final int S_THETA1 = 13;
+	private static final int S_THETA2 = 14;
+	private static final int S_SIZE = 15;
+	private static final int S_CODE_OFFSETS = 16;
+	private static final int S_CODES = 17;
+	private static final int S_TRIAD_STARTS = 18;
+	private static final int S_TRIADS = 19;
+	private static final int SECTION_CNT = 20;
+
+	/* eight ints of counts followed by the section offsets */
+	private static final int HEADER_BYTES = (8 * 4) + (SECTION_CNT * 8);
+
+	private final File file;
+	private final int segmentCnt;
+	private final int lastId;
+	private final int globalCnt;
+	private final int metaCnt;
+	private final int triadCnt;
+	private final String[] fileNames;
+	private final HashMap<String, Integer> fileNameIdx;
+	private final DoubleBuffer simGScores;
+	private final IntBuffer ids;
+	private final IntBuffer fileIndex;
+	private final IntBuffer segmentNumbers;
+	private final IntBuffer startXs;
+	private final IntBuffer startYs;
+	private final CharBuffer segmentTypes;
+	private final ShortBuffer segmentRotations;
+	private final ByteBuffer hasGlobal;
+	private final IntBuffer momentXs;
+	private final IntBuffer momentYs;
+	private final DoubleBuffer distances;
+	private final DoubleBuffer theta1s;
+	private final DoubleBuffer theta2s;
+	private final IntBuffer sizes;
+	private final IntBuffer codeOffsets;
+	private final ByteBuffer codes;
+	private final IntBuffer triadStarts;
+	private final IntBuffer triads;
+
+	private ModelStore(File file, MappedByteBuffer map) throws IOException {
+		this.file = file;
+		if ((map.capacity() < HEADER_BYTES) || (map.getInt(0) != MAGIC)) {
+			throw new IOException(file + " is not a model store");
+		}
+		if (map.getInt(4) != VERSION) {
+			throw new IOException(file + " has unsupported model store version "
+		                          + map.getInt(4));
+		}
+		segmentCnt = map.getInt(8);
+		int fileCnt = map.getInt(12);
+		triadCnt = map.getInt(16);
+		lastId = map.getInt(20);
+		globalCnt = map.getInt(24);
+		metaCnt = map.getInt(28);
+		long[] offsets = new long[SECTION_CNT+1];
+		for (int s = 0; s < SECTION_CNT; s++) {
+			offsets[s] = map.getLong(32 + (s * 8));
+		}
+		offsets[SECTION_CNT] = map.capacity();
+
+		ByteBuffer names = section(map, offsets, S_FILE_NAMES);
+		fileNames = new String[fileCnt];
+		fileNameIdx = new HashMap<String, Integer>(Math.max(16, fileCnt * 2));
+		for (int f = 0; f < fileCnt; f++) {
+			byte[] utf8 = new byte[names.getInt()];
+			names.get(utf8);
+			fileNames[f] = new String(utf8, StandardCharsets.UTF_8);
+			fileNameIdx.put(fileNames[f], f);
+		}
+		simGScores = section(map, offsets, S_SIMG).asDoubleBuffer();
+		ids = section(map, offsets, S_IDS).asIntBuffer();
+		fileIndex = section(map, offsets, S_FILE_INDEX).asIntBuffer();
+		segmentNumbers = section(map, offsets, S_SEGMENT_NUMBER).asIntBuffer();
+		startXs = section(map, offsets, S_START_X).asIntBuffer();
+		startYs = section(map, offsets, S_START_Y).asIntBuffer();
+		segmentTypes = section(map, offsets, S_SEGMENT_TYPE).asCharBuffer();
+		segmentRotations = section(map, offsets, S_SEGMENT_ROTATION).asShortBuffer();
+		hasGlobal = section(map, offsets, S_HAS_GLOBAL);
+		momentXs = section(map, offsets, S_MOMENT_X).asIntBuffer();
+		momentYs = section(map, offsets, S_MOMENT_Y).asIntBuffer();
+		distances = section(map, offsets, S_DISTANCE).asDoubleBuffer();
+		theta1s = section(map, offsets, S_THETA1).asDoubleBuffer();
+		theta2s = section(map, offsets, S_THETA2).asDoubleBuffer();
+		sizes = section(map, offsets, S_SIZE).asIntBuffer();
+		codeOffsets = section(map, offsets, S_CODE_OFFSETS).asIntBuffer();
+		codes = section(map, offsets, S_CODES);
+		triadStarts = section(map, offsets, S_TRIAD_STARTS).asIntBuffer();
+		triads = section(map, offsets, S_TRIADS).asIntBuffer();
+
+		if ((ids.limit() < segmentCnt) || (codeOffsets.limit() < segmentCnt + 1) ||
+			(triadStarts.limit() < fileCnt + 1) || (triads.limit() < triadCnt * 6)) {
+			throw new IOException(file + " is truncated");
+		}
+	}
+
+	/* view of one section, positioned at its start */
+	private static ByteBuffer section(MappedByteBuffer map, long[] offsets, int s)
+			throws IOException {
+		if ((offsets[s] < HEADER_BYTES) || (offsets[s] > offsets[SECTION_CNT])) {
+			throw new IOException("Bad offset for model store section " + s);
+		}
+
+		/* sections are stored in order, so the next one that starts after
+		 * this one bounds it */
+		long end = offsets[SECTION_CNT];
+		for (int t = s + 1; t < SECTION_CNT; t++) {
+			if (offsets[t] >= offsets[s]) {
+				end = offsets[t];
+				break;
+			}
+		}
+		ByteBuffer view = map.duplicate();
+		view.limit((int) end);
+		view.position((int) offsets[s]);
+		return view.slice();
+	}
+
+	/**
+	 * Map a model store file read only
+	 * @param file -- file written by {@link DatabaseModule#exportModelStore(File)}
+	 * @return the store
+	 * @throws IOException if the file cannot be mapped or is not a model
+	 * store
+	 */
+	public static ModelStore open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				                                    StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map");
+			}
+
+			/* the mapping stays valid once the channel is closed */
+			MappedByteBuffer map =
+					channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new ModelStore(file, map);
+		}
+	}
+
+	/**
+	 * Check whether the store holds the same tuples as the model database
+	 * @param localCnt -- number of tuples in the local relation
+	 * @param maxId -- largest id in the local relation
+	 * @param globalTupleCnt -- number of tuples in the global relation
+	 * @param metaTupleCnt -- number of tuples in the meta relation
+	 * @param delaunayTupleCnt -- number of tuples in the Delaunay relation
+	 * @return true if every count matches
+	 */
+	boolean matches(int localCnt, int maxId, int globalTupleCnt,
+			        int metaTupleCnt, int delaunayTupleCnt) {
+		return (localCnt == segmentCnt) && (maxId == lastId) &&
+			   (globalTupleCnt == globalCnt) && (metaTupleCnt == metaCnt) &&
+			   (delaunayTupleCnt == triadCnt);
+	}
+
+	/**
+	 * File the store was mapped from
+	 * @return store file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Number of model segments in the store
+	 * @return segment count
+	 */
+	public int size() {
+		return segmentCnt;
+	}
+
+	/**
+	 * Largest id in the store
+	 * @return last id or 0 if there are no segments
+	 */
+	public int getLastId() {
+		return lastId;
+	}
+
+	/**
+	 * Find the position of a database id in the store
+	 * @param id -- unique database identifier
+	 * @return position of the id or -1 if it is not stored
+	 */
+	public int indexOf(int id) {
+		int lo = 0;
+		int hi = segmentCnt - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int midId = ids.get(mid);
+			if (midId < id) {
+				lo = mid + 1;
+			}
+			else if (midId > id) {
+				hi = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return database id of the segment
+	 */
+	public int getId(int k) {
+		return ids.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return filename of the segment as stored in the local relation
+	 */
+	public String getFileName(int k) {
+		return fileNames[fileIndex.get(k)];
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return segment number assigned by segmentation
+	 */
+	public int getSegmentNumber(int k) {
+		return segmentNumbers.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return x coordinate of the chain code start
+	 */
+	public int getStartX(int k) {
+		return startXs.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return y coordinate of the chain code start
+	 */
+	public int getStartY(int k) {
+		return startYs.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return segment type, blank if the database had none
+	 */
+	public char getSegmentType(int k) {
+		return segmentTypes.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return segment rotation in degrees
+	 */
+	public short getSegmentRotation(int k) {
+		return segmentRotations.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return true if the segment has a tuple in the global relation
+	 */
+	public boolean hasGlobal(int k) {
+		return hasGlobal.get(k) != 0;
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return moment of the segment or null if it has no global tuple
+	 */
+	public Point getMoment(int k) {
+		return hasGlobal(k) ? new Point(momentXs.get(k), momentYs.get(k)) : null;
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return distance from the starting centroid
+	 */
+	public double getDistance(int k) {
+		return distances.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return first angle difference, the lower threshold
+	 */
+	public double getTheta1(int k) {
+		return theta1s.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return second angle difference, the upper threshold
+	 */
+	public double getTheta2(int k) {
+		return theta2s.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return size of the segment in pixels
+	 */
+	public int getSize(int k) {
+		return sizes.get(k);
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return number of directions in the segment's chain code
+	 */
+	public int getChainCodeLength(int k) {
+		return PackedChainCode.unpackedLength(codes, codeOffsets.get(k));
+	}
+
+	/**
+	 * @param k -- position in the store, 0 to size()-1
+	 * @return directions (0-7) of the segment's chain code
+	 */
+	public byte[] getChainCode(int k) {
+		byte[] dst = new byte[getChainCodeLength(k)];
+		PackedChainCode.unpack(codes, codeOffsets.get(k), dst, 0);
+		return dst;
+	}
+
+	/**
+	 * Build a Delaunay triangulation snapshot from the store
+	 * @param epoch -- database modification epoch to tag the snapshot with
+	 * @return snapshot of every model image with triangles
+	 */
+	TriadCorpus toTriadCorpus(long epoch) {
+		int files = 0;
+		for (int f = 0; f < fileNames.length; f++) {
+			if (triadStarts.get(f+1) > triadStarts.get(f)) {
+				files++;
+			}
+		}
+		String[] names = new String[files];
+		int[] starts = new int[files+1];
+		int[] coordinates = new int[triadCnt * PackedTriads.INTS_PER_TRIAD];
+		IntBuffer source = triads.duplicate();
+		int k = 0;
+		int t = 0;
+		for (int f = 0; f < fileNames.length; f++) {
+			int first = triadStarts.get(f);
+			int last = triadStarts.get(f+1);
+			if (last == first) {
+				continue;
+			}
+			names[k] = fileNames[f];
+			starts[k++] = t;
+			source.position(first * PackedTriads.INTS_PER_TRIAD);
+			source.get(coordinates, t * PackedTriads.INTS_PER_TRIAD, 
+					   (last - first) * PackedTriads.INTS_PER_TRIAD);
+			t += last - first;
+		}
+		starts[files] = t;
+		return new TriadCorpus(epoch, names, starts, coordinates);
+	}
+	
+	/**
+	 * Build a chain code snapshot from the store
+	 * @param epoch -- database modification epoch to tag the snapshot with
+	 * @return snapshot of the local relation
+	 */
+	ChainCodeCorpus toChainCodeCorpus(long epoch) {
+		int[] offsets = new int[segmentCnt+1];
+		for (int k = 0; k < segmentCnt; k++) {
+			offsets[k+1] = offsets[k] + getChainCodeLength(k);
+		}
+		byte[] directions = new byte[offsets[segmentCnt]];
+		char[] types = new char[segmentCnt];
+		for (int k = 0; k < segmentCnt; k++) {
+			PackedChainCode.unpack(codes, codeOffsets.get(k), directions, offsets[k]);
+
+			/* the corpus treats a missing segment type as standard */
+			char type = segmentTypes.get(k);
+			types[k] = (type == ' ') ? 'S' : type;
+		}
+		return new ChainCodeCorpus(epoch, intColumn(ids), intColumn(fileIndex),
+				                   fileNames, types, shortColumn(segmentRotations),
+				                   directions, offsets);
+	}
+
+	/**
+	 * Build a moment grid from the store
+	 * @param epoch -- database modification epoch to tag the grid with
+	 * @return moment index over the segments with a global tuple
+	 */
+	MomentGridIndex toMomentIndex(long epoch) {
+		int[] gids = new int[globalCnt];
+		int[] xs = new int[globalCnt];
+		int[] ys = new int[globalCnt];
+		int[] fileIdx = new int[globalCnt];
+		int cnt = 0;
+		for (int k = 0; k < segmentCnt; k++) {
+			if (hasGlobal(k)) {
+				gids[cnt] = ids.get(k);
+				xs[cnt] = momentXs.get(k);
+				ys[cnt] = momentYs.get(k);
+				fileIdx[cnt] = fileIndex.get(k);
+				cnt++;
+			}
+		}
+		return new MomentGridIndex(epoch, MomentGridIndex.DEFAULT_CELL_SIZE,
+				Arrays.copyOf(gids, cnt), Arrays.copyOf(xs, cnt),
+				Arrays.copyOf(ys, cnt), Arrays.copyOf(fileIdx, cnt), fileNames);
+	}
+
+	/**
+	 * Build a chain code start point index from the store
+	 * @param epoch -- database modification epoch to tag the index with
+	 * @return start point index over every segment
+	 */
+	StartPointIndex toStartPointIndex(long epoch) {
+		return new StartPointIndex(epoch, intColumn(ids), intColumn(startXs),
+				intColumn(startYs), charColumn(segmentTypes),
+				shortColumn(segmentRotations), intColumn(fileIndex), fileNames);
+	}
+
+	/**
+	 * Build a model directory from the store
+	 * @return directory of the model images
+	 */
+	ModelDirectory toModelDirectory() {
+		String[] rowFiles = new String[segmentCnt];
+		for (int k = 0; k < segmentCnt; k++) {
+			rowFiles[k] = fileNames[fileIndex.get(k)];
+		}
+		return ModelDirectory.fromRows(intColumn(ids), rowFiles,
+				charColumn(segmentTypes), shortColumn(segmentRotations),
+				segmentCnt);
+	}
+
+	/**
+	 * Build a threshold cache from the store
+	 * @return thresholds of every segment with a global tuple and the
+	 * score of every filename that has one
+	 */
+	ModelThresholds toModelThresholds() {
+		int[] globalIds = new int[globalCnt];
+		double[] lower = new double[globalCnt];
+		double[] upper = new double[globalCnt];
+		int cnt = 0;
+		for (int k = 0; (k < segmentCnt) && (cnt < globalCnt); k++) {
+			if (hasGlobal(k)) {
+				globalIds[cnt] = ids.get(k);
+				lower[cnt] = theta1s.get(k);
+				upper[cnt++] = theta2s.get(k);
+			}
+		}
+		HashMap<String, Double> simG = new HashMap<String, Double>(Math.max(16, metaCnt * 2));
+		for (int f = 0; f < fileNames.length; f++) {
+			if (!Double.isNaN(simGScores.get(f))) {
+				simG.put(fileNames[f], simGScores.get(f));
+			}
+		}
+		return new ModelThresholds(Arrays.copyOf(globalIds, cnt), Arrays.copyOf(lower, cnt),
+				                   Arrays.copyOf(upper, cnt), simG);
+	}
+
+	private int[] intColumn(IntBuffer column) {
+		int[] values = new int[segmentCnt];
+		column.duplicate().get(values);
+		return values;
+	}
+
+	private short[] shortColumn(ShortBuffer column) {
+		short[] values = new short[segmentCnt];
+		column.duplicate().get(values);
+		return values;
+	}
+
+	private char[] charColumn(CharBuffer column) {
+		char[] values = new char[segmentCnt];
+		column.duplicate().get(values);
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return "Model store " + file + " of " + segmentCnt + " segments, "
+			   + fileNames.length + " filenames, and " + triadCnt + " triads";
+	}
+
+	/**
+	 * Gathers the model relations and writes them out in the store layout,
+	 * segments must be added in ascending id order
+	 */
+	static final class Writer {
+		private final ArrayList<String> fileNames = new ArrayList<String>();
+		private final HashMap<String, Integer> fileNameIdx =
+				new HashMap<String, Integer>();
+		private final HashMap<Integer, Double> simGScores =
+				new HashMap<Integer, Double>();
+		private int capacity = 1024;
+		private int segmentCnt = 0;
+		private int globalCnt = 0;
+		private int[] ids = new int[capacity];
+		private int[] fileIndex = new int[capacity];
+		private int[] segmentNumbers = new int[capacity];
+		private int[] startXs = new int[capacity];
+		private int[] startYs = new int[capacity];
+		private char[] segmentTypes = new char[capacity];
+		private short[] segmentRotations = new short[capacity];
+		private byte[] hasGlobal = new byte[capacity];
+		private int[] momentXs = new int[capacity];
+		private int[] momentYs = new int[capacity];
+		private double[] distances = new double[capacity];
+		private double[] theta1s = new double[capacity];
+		private double[] theta2s = new double[capacity];
+		private int[] sizes = new int[capacity];
+		private int[] codeOffsets = new int[capacity+1];
+		private byte[] codes = new byte[capacity * 32];
+		private int codeBytes = 0;
+		private int triadCnt = 0;
+		private int[] triadFiles = new int[capacity];
+		private int[] triads = new int[capacity * 6];
+
+		private int fileIndexOf(String filename) {
+			Integer f = fileNameIdx.get(filename);
+			if (f == null) {
+				f = fileNames.size();
+				fileNames.add(filename);
+				fileNameIdx.put(filename, f);
+			}
+			return f;
+		}
+
+		/**
+		 * Add a tuple of the local relation
+		 * @param id -- unique database identifier
+		 * @param filename -- filename as stored in the local relation
+		 * @param segmentNumber -- segment number assigned by segmentation
+		 * @param startX -- x coordinate of the chain code start
+		 * @param startY -- y coordinate of the chain code start
+		 * @param segmentType -- segment type, blank if there is none
+		 * @param segmentRotation -- segment rotation in degrees
+		 * @param packed -- chain code packed by {@link PackedChainCode}
+		 */
+		void addSegment(int id, String filename, int segmentNumber, int startX,
+				        int startY, char segmentType, short segmentRotation,
+				        byte[] packed) {
+			if (segmentCnt == capacity) {
+				capacity *= 2;
+				ids = Arrays.copyOf(ids, capacity);
+				fileIndex = Arrays.copyOf(fileIndex, capacity);
+				segmentNumbers = Arrays.copyOf(segmentNumbers, capacity);
+				startXs = Arrays.copyOf(startXs, capacity);
+				startYs = Arrays.copyOf(startYs, capacity);
+				segmentTypes = Arrays.copyOf(segmentTypes, capacity);
+				segmentRotations = Arrays.copyOf(segmentRotations, capacity);
+				hasGlobal = Arrays.copyOf(hasGlobal, capacity);
+				momentXs = Arrays.copyOf(momentXs, capacity);
+				momentYs = Arrays.copyOf(momentYs, capacity);
+				distances = Arrays.copyOf(distances, capacity);
+				theta1s = Arrays.copyOf(theta1s, capacity);
+				theta2s = Arrays.copyOf(theta2s, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				codeOffsets = Arrays.copyOf(codeOffsets, capacity+1);
+			}
+			ids[segmentCnt] = id;
+			fileIndex[segmentCnt] = fileIndexOf(filename);
+			segmentNumbers[segmentCnt] = segmentNumber;
+			startXs[segmentCnt] = startX;
+			startYs[segmentCnt] = startY;
+			segmentTypes[segmentCnt] = segmentType;
+			segmentRotations[segmentCnt] = segmentRotation;
+
+			if (codeBytes + packed.length > codes.length) {
+				codes = Arrays.copyOf(codes,
+						Math.max(codes.length * 2, codeBytes + packed.length));
+			}
+			System.arraycopy(packed, 0, codes, codeBytes, packed.length);
+			codeOffsets[segmentCnt] = codeBytes;
+			codeBytes += packed.length;
+			codeOffsets[segmentCnt+1] = codeBytes;
+			segmentCnt++;
+		}
+
+		/**
+		 * Attach the tuple of the global relation to the segment added last
+		 * @param momentX -- x coordinate of the centroid
+		 * @param momentY -- y coordinate of the centroid
+		 * @param distance -- distance from the starting centroid
+		 * @param theta1 -- first angle difference
+		 * @param theta2 -- second angle difference
+		 * @param size -- size of the segment in pixels
+		 */
+		void setGlobal(int momentX, int momentY, double distance,
+				       double theta1, double theta2, int size) {
+			int k = segmentCnt - 1;
+			if (hasGlobal[k] == 0) {
+				globalCnt++;
+			}
+			hasGlobal[k] = 1;
+			momentXs[k] = momentX;
+			momentYs[k] = momentY;
+			distances[k] = distance;
+			theta1s[k] = theta1;
+			theta2s[k] = theta2;
+			sizes[k] = size;
+		}
+
+		/**
+		 * Add a tuple of the meta relation
+		 * @param filename -- filename as stored in the meta relation
+		 * @param simGScore -- simG score of the model's Delaunay graph
+		 */
+		void setSimGScore(String filename, double simGScore) {
+			simGScores.put(fileIndexOf(filename), simGScore);
+		}
+
+		/**
+		 * Add a tuple of the Delaunay relation, triads of a filename keep
+		 * the order they are added in
+		 * @param filename -- filename as stored in the Delaunay relation
+		 * @param vertices -- x1, y1, x2, y2, x3, y3
+		 */
+		void addTriad(String filename, int... vertices) {
+			if (triadCnt == triadFiles.length) {
+				triadFiles = Arrays.copyOf(triadFiles, triadCnt * 2);
+				triads = Arrays.copyOf(triads, triadCnt * 2 * 6);
+			}
+			triadFiles[triadCnt] = fileIndexOf(filename);
+			System.arraycopy(vertices, 0, triads, triadCnt * 6, 6);
+			triadCnt++;
+		}
+
+		/**
+		 * @return number of segments added so far
+		 */
+		int size() {
+			return segmentCnt;
+		}
+
+		/**
+		 * Write the store, a temporary file is written first and moved
+		 * into place so readers never see a partial store
+		 * @param file -- destination
+		 * @return number of bytes written
+		 * @throws IOException if the file cannot be written
+		 */
+		long write(File file) throws IOException {
+			int fileCnt = fileNames.size();
+			byte[][] utf8 = new byte[fileCnt][];
+			long nameBytes = 0;
+			for (int f = 0; f < fileCnt; f++) {
+				utf8[f] = fileNames.get(f).getBytes(StandardCharsets.UTF_8);
+				nameBytes += 4 + utf8[f].length;
+			}
+
+			/* group the triads by filename, keeping their order */
+			int[] triadStarts = new int[fileCnt+1];
+			for (int t = 0; t < triadCnt; t++) {
+				triadStarts[triadFiles[t]+1]++;
+			}
+			for (int f = 0; f < fileCnt; f++) {
+				triadStarts[f+1] += triadStarts[f];
+			}
+			int[] grouped = new int[triadCnt * 6];
+			int[] next = Arrays.copyOf(triadStarts, fileCnt);
+			for (int t = 0; t < triadCnt; t++) {
+				System.arraycopy(triads, t * 6, grouped, next[triadFiles[t]]++ * 6, 6);
+			}
+
+			long n = segmentCnt;
+			long[] lengths = new long[SECTION_CNT];
+			lengths[S_FILE_NAMES] = nameBytes;
+			lengths[S_SIMG] = 8L * fileCnt;
+			lengths[S_IDS] = 4 * n;
+			lengths[S_FILE_INDEX] = 4 * n;
+			lengths[S_SEGMENT_NUMBER] = 4 * n;
+			lengths[S_START_X] = 4 * n;
+			lengths[S_START_Y] = 4 * n;
+			lengths[S_SEGMENT_TYPE] = 2 * n;
+			lengths[S_SEGMENT_ROTATION] = 2 * n;
+			lengths[S_HAS_GLOBAL] = n;
+			lengths[S_MOMENT_X] = 4 * n;
+			lengths[S_MOMENT_Y] = 4 * n;
+			lengths[S_DISTANCE] = 8 * n;
+			lengths[S_THETA1] = 8 * n;
+			lengths[S_THETA2] = 8 * n;
+			lengths[S_SIZE] = 4 * n;
+			lengths[S_CODE_OFFSETS] = 4 * (n + 1);
+			lengths[S_CODES] = codeBytes;
+			lengths[S_TRIAD_STARTS] = 4L * (fileCnt + 1);
+			lengths[S_TRIADS] = 24L * triadCnt;
+			long[] offsets = new long[SECTION_CNT];
+			long position = HEADER_BYTES;
+			for (int s = 0; s < SECTION_CNT; s++) {
+				offsets[s] = position;
+				position = align(position + lengths[s]);
+			}
+			if (position > Integer.MAX_VALUE) {
+				throw new IOException("Model store of " + position
+						              + " bytes is too large to map");
+			}
+
+			File tmp = new File(file.getAbsolutePath() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(segmentCnt);
+				out.writeInt(fileCnt);
+				out.writeInt(triadCnt);
+				out.writeInt((segmentCnt > 0) ? ids[segmentCnt-1] : 0);
+				out.writeInt(globalCnt);
+				out.writeInt(simGScores.size());
+				for (int s = 0; s < SECTION_CNT; s++) {
+					out.writeLong(offsets[s]);
+				}
+
+				for (int f = 0; f < fileCnt; f++) {
+					out.writeInt(utf8[f].length);
+					out.write(utf8[f]);
+				}
+				pad(out);
+				for (int f = 0; f < fileCnt; f++) {
+					Double score = simGScores.get(f);
+					out.writeDouble((score != null) ? score : Double.NaN);
+				}
+				pad(out);
+				writeInts(out, ids, segmentCnt);
+				writeInts(out, fileIndex, segmentCnt);
+				writeInts(out, segmentNumbers, segmentCnt);
+				writeInts(out, startXs, segmentCnt);
+				writeInts(out, startYs, segmentCnt);
+				for (int k = 0; k < segmentCnt; k++) {
+					out.writeChar(segmentTypes[k]);
+				}
+				pad(out);
+				for (int k = 0; k < segmentCnt; k++) {
+					out.writeShort(segmentRotations[k]);
+				}
+				pad(out);
+				out.write(hasGlobal, 0, segmentCnt);
+				pad(out);
+				writeInts(out, momentXs, segmentCnt);
+				writeInts(out, momentYs, segmentCnt);
+				writeDoubles(out, distances, segmentCnt);
+				writeDoubles(out, theta1s, segmentCnt);
+				writeDoubles(out, theta2s, segmentCnt);
+				writeInts(out, sizes, segmentCnt);
+				writeInts(out, codeOffsets, segmentCnt + 1);
+				out.write(codes, 0, codeBytes);
+				pad(out);
+				writeInts(out, triadStarts, fileCnt + 1);
+				writeInts(out, grouped, triadCnt * 6);
+				if (out.size() != position) {
+					throw new IOException("Model store layout mismatch, wrote "
+				                          + out.size() + " of " + position + " bytes");
+				}
+			}
+			Files.move(tmp.toPath(), file.toPath(),
+					   StandardCopyOption.REPLACE_EXISTING);
+			return position;
+		}
+
+		private static long align(long position) {
+			return (position + 7) & ~7L;
+		}
+
+		private static void pad(DataOutputStream out) throws IOException {
+			while ((out.size() & 7) != 0) {
+				out.writeByte(0);
+			}
+		}
+
+		private static void writeInts(DataOutputStream out, int[] values, int n)
+				throws IOException {
+			for (int i = 0; i < n; i++) {
+				out.writeInt(values[i]);
+			}
+			pad(out);
+		}
+
+		private static void writeDoubles(DataOutputStream out, double[] values, int n)
+				throws IOException {
+			for (int i = 0; i < n; i++) {
+				out.writeDouble(values[i]);
+			}
+			pad(out);
+		}
+	}
+}
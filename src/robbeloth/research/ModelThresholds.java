@@ -0,0 +1,213 @@
+package robbeloth.research;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Angle thresholds of every segment in the global relation and the simG
+ * score of every model image in the meta relation.<br/><br/>
+ *
+ * The global structure matchers used to ask the database for a model's
+ * thresholds with two range queries, and for its simG score with another,
+ * every time a sample was matched. Here the lower (theta 1) and upper
+ * (theta 2) thresholds sit in two double arrays ordered by id, so the
+ * thresholds of a model image are one contiguous slice found with a
+ * binary search. Instances are immutable. Like {@link ModelDirectory},
+ * {@link DatabaseModule} loads one the first time it is asked for and
+ * swaps in an updated copy as model images are inserted.
+ */
+public final class ModelThresholds {
+	private final int[] ids;				// global relation ids, ascending
+	private final double[] lowerThresholds;	// theta 1 of each id
+	private final double[] upperThresholds;	// theta 2 of each id
+	private final HashMap<String, Double> simGScores;
+
+	/**
+	 * Build a cache from already loaded columns
+	 * @param ids -- ids of the global relation, ascending
+	 * @param lowerThresholds -- theta 1 of each id
+	 * @param upperThresholds -- theta 2 of each id
+	 * @param simGScores -- simG score of each model image, keyed by the
+	 * filename as stored in the meta relation
+	 */
+	ModelThresholds(int[] ids, double[] lowerThresholds,
+			        double[] upperThresholds, HashMap<String, Double> simGScores) {
+		this.ids = ids;
+		this.lowerThresholds = lowerThresholds;
+		this.upperThresholds = upperThresholds;
+		this.simGScores = simGScores;
+	}
+
+	/**
+	 * Combine the caches of several model database shards into one
+	 * @param parts -- caches to combine, each shard's ids above those of
+	 * the shards before it
+	 * @return cache of every segment and model image in every part
+	 */
+	static ModelThresholds merge(List<ModelThresholds> parts) {
+		int cnt = 0;
+		int files = 0;
+		for (ModelThresholds part : parts) {
+			cnt += part.ids.length;
+			files += part.simGScores.size();
+		}
+		int[] ids = new int[cnt];
+		double[] lower = new double[cnt];
+		double[] upper = new double[cnt];
+		HashMap<String, Double> simG = new HashMap<String, Double>(Math.max(16, files * 2));
+		int k = 0;
+		for (ModelThresholds part : parts) {
+			int n = part.ids.length;
+			System.arraycopy(part.ids, 0, ids, k, n);
+			System.arraycopy(part.lowerThresholds, 0, lower, k, n);
+			System.arraycopy(part.upperThresholds, 0, upper, k, n);
+			simG.putAll(part.simGScores);
+			k += n;
+		}
+		return new ModelThresholds(ids, lower, upper, simG);
+	}
+
+	/**
+	 * Copy of this cache with the tuples of a newly inserted model image
+	 * @param filename -- filename as stored in the meta relation
+	 * @param newIds -- ids of the new global tuples, ascending
+	 * @param lower -- theta 1 of each new tuple
+	 * @param upper -- theta 2 of each new tuple
+	 * @param simGScore -- simG score of the image or null if it has none,
+	 * an image that already has a score keeps it
+	 * @return updated cache
+	 */
+	public ModelThresholds withImage(String filename, int[] newIds,
+			                         double[] lower, double[] upper,
+			                         Double simGScore) {
+		HashMap<String, Double> simG = simGScores;
+		if ((simGScore != null) && (!simGScores.containsKey(filename))) {
+			simG = new HashMap<String, Double>(simGScores);
+			simG.put(filename, simGScore);
+		}
+
+		/* a cache loaded while the tuples were being committed may
+		 * already hold some of them */
+		int add = 0;
+		for (int id : newIds) {
+			if (Arrays.binarySearch(ids, id) < 0) {
+				add++;
+			}
+		}
+		if (add == 0) {
+			return (simG == simGScores) ? this :
+				   new ModelThresholds(ids, lowerThresholds, upperThresholds, simG);
+		}
+
+		/* merge the two ascending id lists */
+		int n = ids.length + add;
+		int[] mergedIds = new int[n];
+		double[] mergedLower = new double[n];
+		double[] mergedUpper = new double[n];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (k < n) {
+			while ((j < newIds.length) && (Arrays.binarySearch(ids, newIds[j]) >= 0)) {
+				j++;
+			}
+			if ((j == newIds.length) || ((i < ids.length) && (ids[i] < newIds[j]))) {
+				mergedIds[k] = ids[i];
+				mergedLower[k] = lowerThresholds[i];
+				mergedUpper[k++] = upperThresholds[i++];
+			}
+			else {
+				mergedIds[k] = newIds[j];
+				mergedLower[k] = lower[j];
+				mergedUpper[k++] = upper[j++];
+			}
+		}
+		return new ModelThresholds(mergedIds, mergedLower, mergedUpper, simG);
+	}
+
+	/**
+	 * Position of the first tuple with an id at or above a given id
+	 * @param id -- unique id for a model image and segment
+	 * @return position in the threshold arrays, size() if every id is
+	 * smaller
+	 */
+	public int lowerBound(int id) {
+		int lo = 0;
+		int hi = ids.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ids[mid] < id) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Upper or lower thresholds of the tuples with ids in a range
+	 * @param firstID -- smallest id, inclusive
+	 * @param lastID -- largest id, inclusive
+	 * @param retrieveUpper -- true for theta 2, false for theta 1
+	 * @return thresholds in id order
+	 */
+	public double[] getThresholds(int firstID, int lastID, boolean retrieveUpper) {
+		int from = lowerBound(firstID);
+		int to = (lastID == Integer.MAX_VALUE) ? ids.length : lowerBound(lastID + 1);
+		return Arrays.copyOfRange(retrieveUpper ? upperThresholds : lowerThresholds,
+				                  from, Math.max(from, to));
+	}
+
+	/**
+	 * Number of tuples in the cache
+	 * @return global tuple count
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Id of the kth tuple
+	 * @param k -- position in the threshold arrays
+	 * @return global relation id
+	 */
+	public int getId(int k) {
+		return ids[k];
+	}
+
+	/**
+	 * Theta 1 of the kth tuple
+	 * @param k -- position in the threshold arrays
+	 * @return lower threshold
+	 */
+	public double getLowerThreshold(int k) {
+		return lowerThresholds[k];
+	}
+
+	/**
+	 * Theta 2 of the kth tuple
+	 * @param k -- position in the threshold arrays
+	 * @return upper threshold
+	 */
+	public double getUpperThreshold(int k) {
+		return upperThresholds[k];
+	}
+
+	/**
+	 * Get the simG score for a Delaunay graph of a model image
+	 * @param filename -- filename as stored in the meta relation
+	 * @return simG score or null if the meta relation has none
+	 */
+	public Double getSimGScore(String filename) {
+		return simGScores.get(filename);
+	}
+
+	@Override
+	public String toString() {
+		return "Threshold cache of " + ids.length + " segments and "
+			   + simGScores.size() + " simG scores";
+	}
+}
@@ -0,0 +1,167 @@
+package robbeloth.research;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bounded write-behind queue for model images. A dedicated writer thread
+ * stores each queued {@link ModelIngestBatch} through
+ * {@link DatabaseModule#insertModelBatch(ModelIngestBatch)} while the
+ * caller goes on extracting features from the next image or rotation.
+ * <br/><br/>
+ *
+ * Batches are written one at a time in the order they were queued, so
+ * ids are handed out exactly as they were when every image was written
+ * synchronously. When the queue is full the caller waits, which keeps
+ * the number of processed but unwritten images bounded. The result of
+ * each write, or the reason it failed, comes back through its future.
+ * {@link #flush()} is the barrier for everything queued before it.
+ */
+final class ModelWriteBehind {
+	private final BlockingQueue<Pending> queue;
+	private final Thread writer;
+
+	/* guarded by lock, written only counts finished writes */
+	private final Object lock = new Object();
+	private long submitted = 0;
+	private long written = 0;
+	private final List<String> failures = new ArrayList<String>();
+	private volatile boolean closed = false;
+
+	/* one queued model image and where its ids go */
+	private static final class Pending {
+		final ModelIngestBatch batch;
+		final CompletableFuture<int[]> result;
+
+		Pending(ModelIngestBatch batch, CompletableFuture<int[]> result) {
+			this.batch = batch;
+			this.result = result;
+		}
+	}
+
+	/* tells the writer thread to stop once it gets to it */
+	private static final Pending STOP = new Pending(null, null);
+
+	/**
+	 * Start the writer thread
+	 * @param capacity -- most model images waiting to be written
+	 */
+	ModelWriteBehind(int capacity) {
+		queue = new ArrayBlockingQueue<Pending>(capacity);
+		writer = new Thread(this::drain, "Model writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queue a model image to be written, waiting while the queue is full
+	 * @param batch -- tuples of the model image
+	 * @return future completed with the new local ids, or exceptionally
+	 * with the reason the image could not be stored
+	 */
+	CompletableFuture<int[]> submit(ModelIngestBatch batch) {
+		CompletableFuture<int[]> result = new CompletableFuture<int[]>();
+		if (closed) {
+			result.completeExceptionally(
+					new IllegalStateException("model writer is closed"));
+			return result;
+		}
+
+		synchronized (lock) {
+			submitted++;
+		}
+		try {
+			queue.put(new Pending(batch, result));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			synchronized (lock) {
+				submitted--;
+				lock.notifyAll();
+			}
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Wait until every model image queued so far has been written
+	 * @return true if all of them since the last flush were stored;
+	 * false if any failed or the wait was interrupted
+	 */
+	boolean flush() {
+		synchronized (lock) {
+			long target = submitted;
+			while (written < target) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			if (failures.isEmpty()) {
+				return true;
+			}
+			System.err.println("Model writer could not store " + failures);
+			failures.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * Write what is still queued and stop the writer thread
+	 * @return true if all queued model images since the last flush were
+	 * stored; false otherwise
+	 */
+	boolean close() {
+		closed = true;
+		boolean result = flush();
+		try {
+			queue.put(STOP);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return result;
+	}
+
+	/* body of the writer thread */
+	private void drain() {
+		while (true) {
+			Pending p;
+			try {
+				p = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (p == STOP) {
+				return;
+			}
+
+			/* complete the future before counting the write, so anything
+			 * chained onto it has run by the time a flush returns */
+			try {
+				int[] ids = DatabaseModule.insertModelBatch(p.batch);
+				if (ids == null) {
+					throw new SQLException("unable to store model image "
+				                           + p.batch.getFilename());
+				}
+				p.result.complete(ids);
+			} catch (SQLException | RuntimeException e) {
+				synchronized (lock) {
+					failures.add((p.batch != null) ? p.batch.getFilename() : null);
+				}
+				p.result.completeExceptionally(e);
+			}
+			synchronized (lock) {
+				written++;
+				lock.notifyAll();
+			}
+		}
+	}
+}
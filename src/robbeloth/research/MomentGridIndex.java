@@ -0,0 +1,248 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.opencv.core.Point;
+
+/**
+ * In-memory uniform grid over the moments (centroids) of every model
+ * segment, used to answer the epsilon box queries of the moments matcher
+ * without scanning the global relation.<br/><br/>
+ *
+ * Moments are bucketed into square cells and the buckets are kept sorted by
+ * cell so a query only visits the handful of cells its box overlaps. Like
+ * {@link ChainCodeCorpus} the grid is a snapshot tagged with the database
+ * modification epoch it was built at, see
+ * {@link DatabaseModule#getMomentIndex()}.
+ */
+public final class MomentGridIndex {
+	/* pixels per side of a grid cell */
+	public static final int DEFAULT_CELL_SIZE = 32;
+
+	private final long epoch;
+	private final int cellSize;
+	private final long[] cellKeys;		// occupied cells, ascending
+	private final int[] cellStarts;		// first moment of each cell plus end marker
+	private final int[] xs;				// moment x coordinate, grouped by cell
+	private final int[] ys;				// moment y coordinate, grouped by cell
+	private final int[] ids;			// database id, grouped by cell
+	private final int[] fileIndex;		// index into fileNames, grouped by cell
+	private final String[] fileNames;	// distinct model image filenames
+
+	/**
+	 * Build the grid from the moments of every model segment, the arrays
+	 * are parallel and may be in any order
+	 * @param epoch -- database modification epoch the data was read at
+	 * @param cellSize -- pixels per side of a grid cell
+	 * @param ids -- database id of each segment
+	 * @param momentXs -- x coordinate of each segment's moment
+	 * @param momentYs -- y coordinate of each segment's moment
+	 * @param fileIdx -- position of each segment's filename in fileNames
+	 * @param fileNames -- distinct model image filenames
+	 */
+	MomentGridIndex(long epoch, int cellSize, int[] ids, int[] momentXs,
+			        int[] momentYs, int[] fileIdx, String[] fileNames) {
+		this.epoch = epoch;
+		this.cellSize = (cellSize < 1) ? DEFAULT_CELL_SIZE : cellSize;
+		this.fileNames = fileNames;
+		int n = ids.length;
+
+		/* order the moments by cell, then by id within a cell */
+		long[] keys = new long[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = cellKey(cellOf(momentXs[i]), cellOf(momentYs[i]));
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> (keys[a] != keys[b]) ?
+				Long.compare(keys[a], keys[b]) : Integer.compare(ids[a], ids[b]));
+
+		this.xs = new int[n];
+		this.ys = new int[n];
+		this.ids = new int[n];
+		this.fileIndex = new int[n];
+		long[] occupied = new long[n];
+		int[] starts = new int[n+1];
+		int cells = 0;
+		for (int i = 0; i < n; i++) {
+			int j = order[i];
+			this.xs[i] = momentXs[j];
+			this.ys[i] = momentYs[j];
+			this.ids[i] = ids[j];
+			this.fileIndex[i] = fileIdx[j];
+			if ((cells == 0) || (occupied[cells-1] != keys[j])) {
+				occupied[cells] = keys[j];
+				starts[cells] = i;
+				cells++;
+			}
+		}
+		starts[cells] = n;
+		this.cellKeys = Arrays.copyOf(occupied, cells);
+		this.cellStarts = Arrays.copyOf(starts, cells+1);
+	}
+
+	/**
+	 * Combine the grids of several model database shards into one
+	 * @param epoch -- database modification epoch the parts were read at
+	 * @param parts -- grids to combine
+	 * @return grid holding every moment of every part
+	 */
+	static MomentGridIndex merge(long epoch, List<MomentGridIndex> parts) {
+		int n = 0;
+		int fileCnt = 0;
+		for (MomentGridIndex part : parts) {
+			n += part.ids.length;
+			fileCnt += part.fileNames.length;
+		}
+		int[] ids = new int[n];
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		int[] fileIdx = new int[n];
+		String[] fileNames = new String[fileCnt];
+		int row = 0;
+		int file = 0;
+		for (MomentGridIndex part : parts) {
+			int rows = part.ids.length;
+			System.arraycopy(part.ids, 0, ids, row, rows);
+			System.arraycopy(part.xs, 0, xs, row, rows);
+			System.arraycopy(part.ys, 0, ys, row, rows);
+			System.arraycopy(part.fileNames, 0, fileNames, file, part.fileNames.length);
+			for (int k = 0; k < rows; k++) {
+				fileIdx[row + k] = part.fileIndex[k] + file;
+			}
+			row += rows;
+			file += part.fileNames.length;
+		}
+		int cellSize = parts.isEmpty() ? DEFAULT_CELL_SIZE : parts.get(0).cellSize;
+		return new MomentGridIndex(epoch, cellSize, ids, xs, ys, fileIdx, fileNames);
+	}
+
+	/**
+	 * Database modification epoch this grid was built at
+	 * @return epoch value
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Number of moments in the grid
+	 * @return moment count
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Find the model images with a segment whose moment lies inside a box,
+	 * bounds are inclusive
+	 * @param minx -- smallest x coordinate
+	 * @param maxx -- largest x coordinate
+	 * @param miny -- smallest y coordinate
+	 * @param maxy -- largest y coordinate
+	 * @return one filename per matching segment, so a model image appears
+	 * once for each of its segments inside the box
+	 */
+	public ArrayList<String> getFilesWithin(int minx, int maxx, int miny, int maxy) {
+		ArrayList<String> filenames = new ArrayList<String>();
+		if ((minx > maxx) || (miny > maxy) || (cellKeys.length == 0)) {
+			return filenames;
+		}
+
+		int cxLo = cellOf(minx);
+		int cxHi = cellOf(maxx);
+		int cyLo = cellOf(miny);
+		int cyHi = cellOf(maxy);
+		long boxCells = ((long)(cxHi - cxLo) + 1) * ((long)(cyHi - cyLo) + 1);
+
+		if (boxCells > cellKeys.length) {
+			/* box is bigger than the occupied grid, just walk every cell */
+			for (int c = 0; c < cellKeys.length; c++) {
+				collect(c, minx, maxx, miny, maxy, filenames);
+			}
+		}
+		else {
+			for (int cx = cxLo; cx <= cxHi; cx++) {
+				for (int cy = cyLo; cy <= cyHi; cy++) {
+					int c = Arrays.binarySearch(cellKeys, cellKey(cx, cy));
+					if (c >= 0) {
+						collect(c, minx, maxx, miny, maxy, filenames);
+					}
+				}
+			}
+		}
+		return filenames;
+	}
+
+	/**
+	 * Find the model images with a segment whose moment is within
+	 * +/- epsilon (as a fraction of each coordinate) of a sample moment
+	 * @param momentx -- x coordinate of the moment
+	 * @param momenty -- y coordinate of the moment
+	 * @param epsilon -- error that is acceptable in finding a match
+	 * @return one filename per matching segment or null for a moment with
+	 * negative coordinates
+	 */
+	public ArrayList<String> getFilesWithMoment(int momentx, int momenty,
+			                                    float epsilon) {
+		// There are no negative coordinates
+		if ((momentx < 0) || (momenty < 0)) {
+			return null;
+		}
+		int minx = (int) (momentx - (momentx * epsilon));
+		int maxx = (int) (momentx + (momentx * epsilon));
+		int miny = (int) (momenty - (momenty * epsilon));
+		int maxy = (int) (momenty + (momenty * epsilon));
+		return getFilesWithin(minx, maxx, miny, maxy);
+	}
+
+	/**
+	 * Answer {@link #getFilesWithMoment(int, int, float)} for a whole set
+	 * of sample moments at once, the queries run in parallel
+	 * @param moments -- sample moments
+	 * @param epsilon -- error that is acceptable in finding a match
+	 * @return matching filenames for each moment, in the order given
+	 */
+	public List<ArrayList<String>> getFilesWithMoments(List<Point> moments,
+			                                           float epsilon) {
+		ArrayList<String>[] results = newResultArray(moments.size());
+		IntStream.range(0, moments.size()).parallel().forEach((i) -> {
+			Point p = moments.get(i);
+			results[i] = (p == null) ? null :
+				getFilesWithMoment((int)p.x, (int)p.y, epsilon);
+		});
+		return Arrays.asList(results);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayList<String>[] newResultArray(int n) {
+		return (ArrayList<String>[]) new ArrayList<?>[n];
+	}
+
+	private void collect(int c, int minx, int maxx, int miny, int maxy,
+			             ArrayList<String> filenames) {
+		for (int i = cellStarts[c]; i < cellStarts[c+1]; i++) {
+			if ((xs[i] >= minx) && (xs[i] <= maxx) &&
+				(ys[i] >= miny) && (ys[i] <= maxy)) {
+				filenames.add(fileNames[fileIndex[i]]);
+			}
+		}
+	}
+
+	private int cellOf(int coordinate) {
+		return Math.floorDiv(coordinate, cellSize);
+	}
+
+	private static long cellKey(int cx, int cy) {
+		return (((long) cx) << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public String toString() {
+		return "Moment grid of " + ids.length + " moments in " + cellKeys.length
+			   + " cells of " + cellSize + " pixels at epoch " + epoch;
+	}
+}
@@ -0,0 +1,294 @@
+package robbeloth.research;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions between the representations of a chain code used by the
+ * project.<br/><br/>
+ *
+ * <ul>
+ * <li>the comma separated string from
+ * {@link ChainCodingContainer#chainCodeString()}, e.g. 0,7,6</li>
+ * <li>the compact string of one character per direction, e.g. 076, which
+ * is what the string matchers compare</li>
+ * <li>one byte per direction (0-7), which is what
+ * {@link ChainCodeCorpus} keeps in memory</li>
+ * <li>three bits per direction behind a four byte count, which is what the
+ * model database stores in the packed chain code column</li>
+ * </ul>
+ */
+public final class PackedChainCode {
+	/* set to true to have the string matchers compare the comma separated 
+	 * form, as every run did before the compact form, so scores can be 
+	 * checked against historical results. The commas double the length 
+	 * of every comparison and count towards the edit distances, q-grams 
+	 * and cosine scores. */
+	public static final String COMMA_SEPARATED_PROPERTY = "obstruction.matcher.comma_separated";
+	private static final boolean MATCH_COMMA_SEPARATED = 
+			Boolean.getBoolean(COMMA_SEPARATED_PROPERTY);
+
+	/* number of bytes used to record how many codes are packed */
+	private static final int HEADER_BYTES = 4;
+	private static final int BITS_PER_CODE = 3;
+	private static final int CODE_MASK = 0x7;
+
+	private PackedChainCode() {
+	}
+
+	/**
+	 * Parse a comma separated chain code into one byte per direction
+	 * @param cc -- chain code as produced by chainCodeString()
+	 * @return directions, empty for an empty chain code
+	 * @throws IllegalArgumentException if the string holds anything
+	 * other than directions 0 through 7 separated by commas
+	 */
+	public static byte[] toCodes(String cc) {
+		if ((cc == null) || (cc.isEmpty())) {
+			return new byte[0];
+		}
+
+		/* every code is a single digit, so count commas to size output */
+		int n = 1;
+		for (int i = 0; i < cc.length(); i++) {
+			if (cc.charAt(i) == ',') {
+				n++;
+			}
+		}
+
+		byte[] codes = new byte[n];
+		int k = 0;
+		int value = -1;
+		for (int i = 0; i <= cc.length(); i++) {
+			char c = (i < cc.length()) ? cc.charAt(i) : ',';
+			if (c == ',') {
+				if ((value < 0) || (value > CODE_MASK)) {
+					throw new IllegalArgumentException(
+							"Not a chain code direction near position " + i);
+				}
+				codes[k++] = (byte) value;
+				value = -1;
+			}
+			else if ((c >= '0') && (c <= '9')) {
+				value = (value < 0) ? (c - '0') : (value * 10) + (c - '0');
+			}
+			else if (!Character.isWhitespace(c)) {
+				throw new IllegalArgumentException(
+						"Unexpected character " + c + " in chain code");
+			}
+		}
+		return codes;
+	}
+
+	/**
+	 * Render directions in the comma separated form
+	 * @param codes -- array holding the directions
+	 * @param offset -- position of the first direction
+	 * @param length -- number of directions
+	 * @return chain code as chainCodeString() would produce it
+	 */
+	public static String toChainCodeString(byte[] codes, int offset, int length) {
+		if (length <= 0) {
+			return "";
+		}
+		char[] chars = new char[(2 * length) - 1];
+		int j = 0;
+		for (int i = offset; i < offset + length; i++) {
+			if (j > 0) {
+				chars[j++] = ',';
+			}
+			chars[j++] = (char) ('0' + codes[i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Render directions in the compact form
+	 * @param codes -- array holding the directions
+	 * @param offset -- position of the first direction
+	 * @param length -- number of directions
+	 * @return one digit per direction
+	 */
+	public static String toCompactString(byte[] codes, int offset, int length) {
+		if (length <= 0) {
+			return "";
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) ('0' + codes[offset + i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Whether the string matchers compare the comma separated form
+	 * rather than the compact one
+	 * @return true when obstruction.matcher.comma_separated is set
+	 */
+	public static boolean isMatchingCommaSeparated() {
+		return MATCH_COMMA_SEPARATED;
+	}
+
+	/**
+	 * Render directions in the form the string matchers compare
+	 * @param codes -- array holding the directions
+	 * @param offset -- position of the first direction
+	 * @param length -- number of directions
+	 * @return compact or, for historical runs, comma separated chain code
+	 */
+	public static String toMatchString(byte[] codes, int offset, int length) {
+		return MATCH_COMMA_SEPARATED ? toChainCodeString(codes, offset, length) : 
+			                           toCompactString(codes, offset, length);
+	}
+
+	/**
+	 * Convert a comma separated chain code to the form the string
+	 * matchers compare
+	 * @param cc -- chain code as produced by chainCodeString()
+	 * @return compact or, for historical runs, the unchanged chain code
+	 */
+	public static String toMatchString(String cc) {
+		if (MATCH_COMMA_SEPARATED) {
+			return cc;
+		}
+		byte[] codes = toCodes(cc);
+		return toCompactString(codes, 0, codes.length);
+	}
+
+	/**
+	 * Pack directions at three bits apiece
+	 * @param codes -- array holding the directions
+	 * @param offset -- position of the first direction
+	 * @param length -- number of directions
+	 * @return packed chain code
+	 */
+	public static byte[] pack(byte[] codes, int offset, int length) {
+		byte[] packed = new byte[HEADER_BYTES +
+		                         ((length * BITS_PER_CODE) + 7) / 8];
+		packed[0] = (byte) (length >>> 24);
+		packed[1] = (byte) (length >>> 16);
+		packed[2] = (byte) (length >>> 8);
+		packed[3] = (byte) length;
+
+		int bitBuffer = 0;
+		int bitCnt = 0;
+		int j = HEADER_BYTES;
+		for (int i = offset; i < offset + length; i++) {
+			bitBuffer |= (codes[i] & CODE_MASK) << bitCnt;
+			bitCnt += BITS_PER_CODE;
+			if (bitCnt >= 8) {
+				packed[j++] = (byte) bitBuffer;
+				bitBuffer >>>= 8;
+				bitCnt -= 8;
+			}
+		}
+		if (bitCnt > 0) {
+			packed[j] = (byte) bitBuffer;
+		}
+		return packed;
+	}
+
+	/**
+	 * Pack a comma separated chain code at three bits per direction
+	 * @param cc -- chain code as produced by chainCodeString()
+	 * @return packed chain code
+	 */
+	public static byte[] pack(String cc) {
+		byte[] codes = toCodes(cc);
+		return pack(codes, 0, codes.length);
+	}
+
+	/**
+	 * Number of directions held in a packed chain code
+	 * @param packed -- packed chain code
+	 * @return direction count
+	 */
+	public static int unpackedLength(byte[] packed) {
+		return ((packed[0] & 0xFF) << 24) | ((packed[1] & 0xFF) << 16) |
+			   ((packed[2] & 0xFF) << 8)  |  (packed[3] & 0xFF);
+	}
+
+	/**
+	 * Unpack directions into a caller supplied array
+	 * @param packed -- packed chain code
+	 * @param dst -- destination with room for unpackedLength() directions
+	 * @param dstOffset -- position of the first direction in dst
+	 * @return number of directions written
+	 */
+	public static int unpack(byte[] packed, byte[] dst, int dstOffset) {
+		int length = unpackedLength(packed);
+		int bitBuffer = 0;
+		int bitCnt = 0;
+		int j = HEADER_BYTES;
+		for (int i = 0; i < length; i++) {
+			if (bitCnt < BITS_PER_CODE) {
+				bitBuffer |= (packed[j++] & 0xFF) << bitCnt;
+				bitCnt += 8;
+			}
+			dst[dstOffset + i] = (byte) (bitBuffer & CODE_MASK);
+			bitBuffer >>>= BITS_PER_CODE;
+			bitCnt -= BITS_PER_CODE;
+		}
+		return length;
+	}
+
+	/**
+	 * Number of directions held in a packed chain code inside a larger
+	 * buffer, such as a memory mapped {@link ModelStore}
+	 * @param buffer -- buffer holding the packed chain code
+	 * @param offset -- absolute position of the packed chain code
+	 * @return direction count
+	 */
+	public static int unpackedLength(ByteBuffer buffer, int offset) {
+		return ((buffer.get(offset) & 0xFF) << 24)     | 
+			   ((buffer.get(offset + 1) & 0xFF) << 16) |
+			   ((buffer.get(offset + 2) & 0xFF) << 8)  |  
+			    (buffer.get(offset + 3) & 0xFF);
+	}
+	
+	/**
+	 * Unpack directions held inside a larger buffer into a caller supplied
+	 * array, the buffer's position is left alone
+	 * @param buffer -- buffer holding the packed chain code
+	 * @param offset -- absolute position of the packed chain code
+	 * @param dst -- destination with room for unpackedLength() directions
+	 * @param dstOffset -- position of the first direction in dst
+	 * @return number of directions written
+	 */
+	public static int unpack(ByteBuffer buffer, int offset, byte[] dst, int dstOffset) {
+		int length = unpackedLength(buffer, offset);
+		int bitBuffer = 0;
+		int bitCnt = 0;
+		int j = offset + HEADER_BYTES;
+		for (int i = 0; i < length; i++) {
+			if (bitCnt < BITS_PER_CODE) {
+				bitBuffer |= (buffer.get(j++) & 0xFF) << bitCnt;
+				bitCnt += 8;
+			}
+			dst[dstOffset + i] = (byte) (bitBuffer & CODE_MASK);
+			bitBuffer >>>= BITS_PER_CODE;
+			bitCnt -= BITS_PER_CODE;
+		}
+		return length;
+	}
+
+	/**
+	 * Unpack directions into a new array
+	 * @param packed -- packed chain code
+	 * @return one byte per direction
+	 */
+	public static byte[] unpack(byte[] packed) {
+		byte[] codes = new byte[unpackedLength(packed)];
+		unpack(packed, codes, 0);
+		return codes;
+	}
+
+	/**
+	 * Render a packed chain code in the comma separated form
+	 * @param packed -- packed chain code
+	 * @return chain code as chainCodeString() would produce it
+	 */
+	public static String toChainCodeString(byte[] packed) {
+		byte[] codes = unpack(packed);
+		return toChainCodeString(codes, 0, codes.length);
+	}
+}
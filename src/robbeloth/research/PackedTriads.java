@@ -0,0 +1,61 @@
+package robbeloth.research;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.opencv.core.Point;
+
+/**
+ * Conversions for the Delaunay triangulation of a model image as stored
+ * in the packed triads column of the meta relation.<br/><br/>
+ *
+ * A triangulation is six big-endian ints per triangle, x1 y1 x2 y2 x3 y3,
+ * back to back with no header, so the triangles of a model image seen a
+ * second time can simply be appended. Coordinates are truncated to ints
+ * the same way the integer columns of the Delaunay relation store them.
+ */
+public final class PackedTriads {
+	/* ints and bytes taken by one triangle */
+	public static final int INTS_PER_TRIAD = 6;
+	public static final int BYTES_PER_TRIAD = INTS_PER_TRIAD * Integer.BYTES;
+
+	private PackedTriads() {
+	}
+
+	/**
+	 * Pack a flattened list of triangle vertices
+	 * @param triads -- three vertices per triangle, a trailing partial
+	 * triangle is left out
+	 * @return packed triangles, empty if there are none
+	 */
+	public static byte[] pack(List<Point> triads) {
+		int n = (triads != null) ? triads.size() / 3 : 0;
+		ByteBuffer buf = ByteBuffer.allocate(n * BYTES_PER_TRIAD);
+		for (int i = 0; i < n * 3; i++) {
+			Point p = triads.get(i);
+			buf.putInt((int) p.x);
+			buf.putInt((int) p.y);
+		}
+		return buf.array();
+	}
+
+	/**
+	 * Number of triangles in a packed triangulation
+	 * @param packed -- output of pack()
+	 * @return triangle count
+	 */
+	public static int count(byte[] packed) {
+		return (packed != null) ? packed.length / BYTES_PER_TRIAD : 0;
+	}
+
+	/**
+	 * Unpack a triangulation into an array of coordinates
+	 * @param packed -- output of pack()
+	 * @param dst -- array receiving INTS_PER_TRIAD ints per triangle
+	 * @param dstOffset -- position in dst of the first coordinate
+	 */
+	public static void unpack(byte[] packed, int[] dst, int dstOffset) {
+		int n = count(packed) * INTS_PER_TRIAD;
+		ByteBuffer.wrap(packed).asIntBuffer().get(dst, dstOffset, n);
+	}
+}
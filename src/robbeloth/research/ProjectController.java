@@ -71,7 +71,9 @@ public class ProjectController {
 		boolean rotateModelImages = false; // rotate model images or not
 		boolean performSynthesis = false;  // synthesize regions or not
 		int imgCnt = 0;
+		String modelStorePath = null;
 		/* usage: debugFile=/dir/debug.log rotateModelImages=true/false 
+		 *        modelStore=/dir/obstruction.store
 		 *        plplot.libdir=/dir cmd params/filenames */
 		final String[] commands = {"--version", 
 				                    "--process_model_image",
@@ -82,7 +84,9 @@ public class ProjectController {
 				                    "--find_match",
 				                    "--backup_database",
 				                    "--delete_image",
-				                    "--trim_database"};
+				                    "--trim_database",
+				                    "--export_model_store",
+				                    "--benchmark_lsh"};
 		
 		/* General process here (original thought process) in processing an image: 
 		 * 
@@ -177,6 +181,13 @@ public class ProjectController {
         	imgCnt++;
         }     
         
+        /* capture location of a columnar model store to map instead of 
+         * loading the model relations through the database */
+        if (args[imgCnt].startsWith("modelStore")) {
+        	modelStorePath = args[imgCnt].substring(args[imgCnt].indexOf('=')+1);
+        	imgCnt++;
+        }
+        
         // Assign o to output stream
         if (o != null) {            
             // Use stored value for output stream	
@@ -225,6 +236,14 @@ public class ProjectController {
 		System.out.println("Database Module initializing...");
 		DatabaseModule dbm = DatabaseModule.getInstance();
 		System.out.println("Database Module initialized --" + dbm.toString());
+		
+		/* Use the exported model store when there is one that is current */
+		File modelStore = new File((modelStorePath != null) ? 
+				modelStorePath : DatabaseModule.DEFAULT_MODEL_STORE);
+		if ((args.length > 0) && (!args[imgCnt].equals(commands[10])) && 
+			(modelStore.exists())) {
+			DatabaseModule.openModelStore(modelStore);
+		}
 		if (args.length < 1) {
 			StringBuilder sbCmds = new StringBuilder();
 			for (String cmd : commands) {
@@ -467,8 +486,14 @@ public class ProjectController {
 				System.out.println("Calling System.gc()");
 				System.gc();
 				
-				// debug database
-				DatabaseModule.dumpModel();
+				/* debug database, only the image just processed so the 
+				 * loop does not slow down as the database grows */
+				if (!DatabaseModule.flushModelWrites()) {
+					System.err.println("Not every view of " + args[imgCnt] 
+							           + " was stored");
+				}
+				DatabaseModule.dumpModel(args[imgCnt]);
+				DatabaseModule.dumpModelStats();
 			}	
 		}
 		// --drop_model_database
@@ -488,9 +513,21 @@ public class ProjectController {
 			run_unit_tests(args);
 		}
 		// --dump_model_database
-		/* Show a user friendly dump of the model database */
+		/* Show a user friendly dump of the model database, optionally 
+		 * followed by stats for the relation sizes only or by the model 
+		 * images to show */
 		else if (args[imgCnt].equals(commands[5])) {
-			DatabaseModule.dumpModel();
+			if (imgCnt + 1 >= args.length) {
+				DatabaseModule.dumpModel();
+			}
+			else if (args[imgCnt+1].equals("stats")) {
+				DatabaseModule.dumpModelStats();
+			}
+			else {
+				for (int i = imgCnt + 1; i < args.length; i++) {
+					DatabaseModule.dumpModel(args[i]);
+				}
+			}
 		}
 		// --find_match
 		else if (args[imgCnt].equals(commands[6])) {
@@ -598,6 +635,23 @@ public class ProjectController {
 		else if (args[imgCnt].equals(commands[9])) {
 			DatabaseModule.defrag();
 		}
+		// --export_model_store [file]
+		else if (args[imgCnt].equals(commands[10])) {
+			if (args.length > imgCnt + 1) {
+				modelStore = new File(args[++imgCnt]);
+			}
+			System.out.println("Exporting model store to: " + 
+				               modelStore.getAbsolutePath());
+			DatabaseModule.exportModelStore(modelStore);
+		}
+		// --benchmark_lsh [number of model segments to match]
+		else if (args[imgCnt].equals(commands[11])) {
+			int queryCnt = (args.length > imgCnt + 1) ? 
+					Integer.parseInt(args[++imgCnt]) : 200;
+			System.out.println("Benchmarking approximate matching with " 
+					+ queryCnt + " model segments");
+			LGAlgorithm.benchmark_LSH(queryCnt);
+		}
 		
 		// release resources
 		DatabaseModule.shutdown();
@@ -0,0 +1,186 @@
+package robbeloth.research;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Inverted index from each q-gram to the corpus rows holding it, with the
+ * number of times each row holds it.<br/><br/>
+ *
+ * Looking a sample up walks only the posting lists of the sample's grams
+ * and tallies, for every row met, the occurrences it shares with the
+ * sample (or the dot product of their counts). Both distances follow
+ * from the tally and the row's gram total, so a row sharing no gram with
+ * the sample is never visited and no two profiles are merged. Rows are
+ * split into blocks scanned in parallel, each block searching its own
+ * slice of every posting list, so the tallies need no locking.<br/><br/>
+ *
+ * The distances equal those of {@link QGramProfile} for every row.
+ */
+public final class QGramIndex {
+	/* rows tallied together by one task */
+	private static final int BLOCK_ROWS = 4096;
+
+	private final QGramProfiles profiles;
+	private final long[] keys;			// distinct grams, ascending
+	private final int[] starts;			// postings of keys[g] are starts[g]..starts[g+1]
+	private final int[] postingRows;	// rows holding each gram, ascending per gram
+	private final int[] postingCounts;	// occurrences of the gram in each row
+
+	/**
+	 * Index the profiles of a snapshot
+	 * @param profiles -- q-gram profiles of every row
+	 */
+	QGramIndex(QGramProfiles profiles) {
+		this.profiles = profiles;
+		int rows = profiles.size();
+
+		/* distinct grams of the whole corpus */
+		int entries = 0;
+		for (int k = 0; k < rows; k++) {
+			entries += profiles.get(k).size();
+		}
+		long[] all = new long[entries];
+		int e = 0;
+		for (int k = 0; k < rows; k++) {
+			QGramProfile p = profiles.get(k);
+			for (int g = 0; g < p.size(); g++) {
+				all[e++] = p.getGram(g);
+			}
+		}
+		Arrays.sort(all);
+		int distinct = 0;
+		for (int i = 0; i < entries; i++) {
+			if ((i == 0) || (all[i] != all[i-1])) {
+				all[distinct++] = all[i];
+			}
+		}
+		keys = Arrays.copyOf(all, distinct);
+
+		/* size each posting list, then fill them in row order */
+		starts = new int[distinct + 1];
+		int[] gramOf = new int[entries];
+		e = 0;
+		for (int k = 0; k < rows; k++) {
+			QGramProfile p = profiles.get(k);
+			for (int g = 0; g < p.size(); g++) {
+				int key = Arrays.binarySearch(keys, p.getGram(g));
+				gramOf[e++] = key;
+				starts[key + 1]++;
+			}
+		}
+		for (int g = 0; g < distinct; g++) {
+			starts[g + 1] += starts[g];
+		}
+		int[] next = Arrays.copyOf(starts, distinct);
+		postingRows = new int[entries];
+		postingCounts = new int[entries];
+		e = 0;
+		for (int k = 0; k < rows; k++) {
+			QGramProfile p = profiles.get(k);
+			for (int g = 0; g < p.size(); g++) {
+				int slot = next[gramOf[e++]]++;
+				postingRows[slot] = k;
+				postingCounts[slot] = p.getCount(g);
+			}
+		}
+	}
+
+	/**
+	 * @return number of distinct grams in the corpus
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * @return number of row and gram pairs held by the posting lists
+	 */
+	public int getPostings() {
+		return postingRows.length;
+	}
+
+	/**
+	 * Q-gram distance from a sample to every corpus row
+	 * @param sample -- profile made by the indexed {@link QGramProfiles}
+	 * @return distance of each row, as QGramProfile.qgramDistance gives it
+	 */
+	public int[] qgramDistances(QGramProfile sample) {
+		int rows = profiles.size();
+		int[] common = new int[rows];
+		tally(sample, (slot, g) -> {
+			common[postingRows[slot]] += Math.min(sample.getCount(g), postingCounts[slot]);
+		});
+
+		int[] distances = new int[rows];
+		for (int k = 0; k < rows; k++) {
+			distances[k] = sample.getTotal() + profiles.get(k).getTotal() - (2 * common[k]);
+		}
+		return distances;
+	}
+
+	/**
+	 * Cosine distance from a sample to every corpus row
+	 * @param sample -- profile made by the indexed {@link QGramProfiles}
+	 * @return distance of each row, as QGramProfile.cosineDistance gives it
+	 */
+	public double[] cosineDistances(QGramProfile sample) {
+		int rows = profiles.size();
+		double[] dots = new double[rows];
+		tally(sample, (slot, g) -> {
+			dots[postingRows[slot]] += 1.0 * sample.getCount(g) * postingCounts[slot];
+		});
+
+		double[] distances = new double[rows];
+		for (int k = 0; k < rows; k++) {
+			distances[k] = sample.cosineDistance(profiles.get(k), dots[k]);
+		}
+		return distances;
+	}
+
+	/* visit every posting of every sample gram, gram by gram within each
+	 * block of rows so a row is only ever updated by one task */
+	private void tally(QGramProfile sample, PostingVisitor visitor) {
+		int[] found = new int[sample.size()];
+		for (int g = 0; g < sample.size(); g++) {
+			found[g] = Arrays.binarySearch(keys, sample.getGram(g));
+		}
+
+		int blocks = (profiles.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+		IntStream.range(0, blocks).parallel().forEach((b) -> {
+			int firstRow = b * BLOCK_ROWS;
+			int lastRow = firstRow + BLOCK_ROWS;
+			for (int g = 0; g < found.length; g++) {
+				if (found[g] < 0) {
+					continue;	// no model segment holds this gram
+				}
+				int from = firstSlot(found[g], firstRow);
+				int to = firstSlot(found[g], lastRow);
+				for (int slot = from; slot < to; slot++) {
+					visitor.visit(slot, g);
+				}
+			}
+		});
+	}
+
+	/* first posting of gram key at or after row */
+	private int firstSlot(int key, int row) {
+		int lo = starts[key];
+		int hi = starts[key + 1];
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (postingRows[mid] < row) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/* work done for one posting of the gram at position g of the sample */
+	private interface PostingVisitor {
+		void visit(int slot, int g);
+	}
+}
@@ -0,0 +1,154 @@
+package robbeloth.research;
+
+/**
+ * Q-gram profile of a chain code, the number of times each substring of
+ * q characters occurs, kept as a sparse vector sorted by gram key so two
+ * profiles are compared with a single merge.<br/><br/>
+ *
+ * Profiles are made by {@link QGramProfiles}, which decides the gram keys,
+ * and only profiles made by the same one may be compared. The distances
+ * match the java-string-similarity QGram and Cosine classes.
+ */
+public final class QGramProfile {
+	private final String text;		// string the profile was taken from
+	private final int q;
+	private final long[] grams;		// gram keys, ascending
+	private final int[] counts;		// occurrences of each gram
+	private final int total;		// sum of counts
+	private final double norm;		// euclidean length of the counts
+
+	QGramProfile(String text, int q, long[] grams, int[] counts) {
+		this.text = text;
+		this.q = q;
+		this.grams = grams;
+		this.counts = counts;
+		int sum = 0;
+		double squares = 0;
+		for (int c : counts) {
+			sum += c;
+			squares += 1.0 * c * c;
+		}
+		this.total = sum;
+		this.norm = Math.sqrt(squares);
+	}
+
+	/**
+	 * @return string the profile was taken from
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return number of distinct q-grams
+	 */
+	public int size() {
+		return grams.length;
+	}
+
+	/**
+	 * @return number of q-grams counting repeats
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Key of the kth distinct q-gram
+	 * @param k -- position in the profile
+	 * @return gram key, keys ascend with k
+	 */
+	public long getGram(int k) {
+		return grams[k];
+	}
+
+	/**
+	 * Occurrences of the kth distinct q-gram
+	 * @param k -- position in the profile
+	 * @return count of at least one
+	 */
+	public int getCount(int k) {
+		return counts[k];
+	}
+
+	/**
+	 * Q-gram (Ukkonen) distance, the sum over every gram of the
+	 * difference in its counts
+	 * @param other -- profile from the same {@link QGramProfiles}
+	 * @return distance as QGram.distance would give it
+	 */
+	public int qgramDistance(QGramProfile other) {
+		return total + other.total - (2 * commonCount(other));
+	}
+
+	/**
+	 * Occurrences two profiles have in common, the sum over every gram of
+	 * the smaller of its counts
+	 * @param other -- profile from the same {@link QGramProfiles}
+	 * @return shared gram count
+	 */
+	public int commonCount(QGramProfile other) {
+		int common = 0;
+		int i = 0;
+		int j = 0;
+		while ((i < grams.length) && (j < other.grams.length)) {
+			if (grams[i] < other.grams[j]) {
+				i++;
+			}
+			else if (grams[i] > other.grams[j]) {
+				j++;
+			}
+			else {
+				common += Math.min(counts[i++], other.counts[j++]);
+			}
+		}
+		return common;
+	}
+
+	/**
+	 * Cosine distance, one less the cosine of the angle between the two
+	 * count vectors
+	 * @param other -- profile from the same {@link QGramProfiles}
+	 * @return 0 for equal strings, 1 when either string is shorter than
+	 * q, otherwise as Cosine.distance would give it
+	 */
+	public double cosineDistance(QGramProfile other) {
+		return cosineDistance(other, dotProduct(other));
+	}
+
+	/**
+	 * Cosine distance when the dot product of the count vectors is
+	 * already known
+	 * @param other -- profile from the same {@link QGramProfiles}
+	 * @param dot -- sum of the products of the counts of shared grams
+	 * @return distance as {@link #cosineDistance(QGramProfile)} gives it
+	 */
+	double cosineDistance(QGramProfile other, double dot) {
+		if ((text.length() == other.text.length()) && (text.equals(other.text))) {
+			return 0.0;
+		}
+		if ((text.length() < q) || (other.text.length() < q)) {
+			return 1.0;
+		}
+		return 1.0 - (dot / (norm * other.norm));
+	}
+
+	/* sum of the products of the counts of shared grams */
+	private double dotProduct(QGramProfile other) {
+		double dot = 0;
+		int i = 0;
+		int j = 0;
+		while ((i < grams.length) && (j < other.grams.length)) {
+			if (grams[i] < other.grams[j]) {
+				i++;
+			}
+			else if (grams[i] > other.grams[j]) {
+				j++;
+			}
+			else {
+				dot += 1.0 * counts[i++] * other.counts[j++];
+			}
+		}
+		return dot;
+	}
+}
@@ -0,0 +1,145 @@
+package robbeloth.research;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Q-gram profiles of every chain code in a {@link ChainCodeCorpus},
+ * built once per snapshot so a matcher only profiles the sample
+ * segments.<br/><br/>
+ *
+ * A gram of at most five characters below 4096 is keyed by packing its
+ * characters into a long, which covers every chain code gram without
+ * creating a string for it. Any other gram gets a key from a dictionary
+ * shared by the profiles, with the top bit set so the two kinds of key
+ * never meet. Like java-string-similarity, runs of whitespace are read
+ * as a single space before the grams are taken.
+ */
+public final class QGramProfiles {
+	private static final Pattern SPACE_REG = Pattern.compile("\\s+");
+	private static final int BITS_PER_CHAR = 12;
+	private static final int MAX_PACKED_Q = 5;
+
+	private final int q;
+	private final QGramProfile[] profiles;		// profile of each corpus row
+	private final ConcurrentHashMap<String, Long> otherGrams =
+			new ConcurrentHashMap<String, Long>();
+	private final AtomicLong otherGramCnt = new AtomicLong();
+	private QGramIndex index = null;			// built on demand
+
+	/**
+	 * Profile every row of a snapshot
+	 * @param corpus -- model chain codes
+	 * @param q -- gram length
+	 */
+	QGramProfiles(ChainCodeCorpus corpus, int q) {
+		if (q < 1) {
+			throw new IllegalArgumentException("q-gram length must be positive, not " + q);
+		}
+		this.q = q;
+		this.profiles = new QGramProfile[corpus.size()];
+		IntStream.range(0, profiles.length).parallel().forEach((k) -> {
+			profiles[k] = profileOf(corpus.getMatchString(k));
+		});
+	}
+
+	/**
+	 * @return gram length
+	 */
+	public int getQ() {
+		return q;
+	}
+
+	/**
+	 * @return number of profiled corpus rows
+	 */
+	public int size() {
+		return profiles.length;
+	}
+
+	/**
+	 * Profile of a corpus row
+	 * @param k -- row position in the snapshot
+	 * @return profile of the kth chain code
+	 */
+	public QGramProfile get(int k) {
+		return profiles[k];
+	}
+
+	/**
+	 * Inverted index of the rows' grams, built the first time it is asked
+	 * for and then shared
+	 * @return index over every profiled row
+	 */
+	public synchronized QGramIndex getIndex() {
+		if (index == null) {
+			long tic = System.nanoTime();
+			index = new QGramIndex(this);
+			long toc = System.nanoTime();
+			System.out.println("Indexed " + index.size() + " distinct " + q 
+					+ "-grams with " + index.getPostings() + " postings in " 
+					+ TimeUnit.MILLISECONDS.convert(toc - tic, TimeUnit.NANOSECONDS) 
+					+ " ms");
+		}
+		return index;
+	}
+
+	/**
+	 * Profile a string so it can be compared with the corpus rows
+	 * @param text -- chain code, typically of a sample segment
+	 * @return q-gram profile
+	 */
+	public QGramProfile profileOf(String text) {
+		String s = SPACE_REG.matcher(text).replaceAll(" ");
+		int n = Math.max(0, s.length() - q + 1);
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = keyOf(s, i);
+		}
+		Arrays.sort(keys);
+
+		/* run length encode the sorted keys */
+		int distinct = 0;
+		for (int i = 0; i < n; i++) {
+			if ((i == 0) || (keys[i] != keys[i-1])) {
+				distinct++;
+			}
+		}
+		long[] grams = new long[distinct];
+		int[] counts = new int[distinct];
+		int d = -1;
+		for (int i = 0; i < n; i++) {
+			if ((i == 0) || (keys[i] != keys[i-1])) {
+				grams[++d] = keys[i];
+			}
+			counts[d]++;
+		}
+		return new QGramProfile(text, q, grams, counts);
+	}
+
+	/* key of the gram starting at position start */
+	private long keyOf(String s, int start) {
+		if (q <= MAX_PACKED_Q) {
+			long key = 0;
+			boolean packed = true;
+			for (int i = start; i < start + q; i++) {
+				char c = s.charAt(i);
+				if (c >= (1 << BITS_PER_CHAR)) {
+					packed = false;
+					break;
+				}
+				key = (key << BITS_PER_CHAR) | c;
+			}
+			if (packed) {
+				return key;
+			}
+		}
+		String gram = s.substring(start, start + q);
+		return otherGrams.computeIfAbsent(gram,
+				(g) -> Long.MIN_VALUE | otherGramCnt.getAndIncrement());
+	}
+}
@@ -0,0 +1,229 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.opencv.core.Point;
+
+/**
+ * In-memory hash index over the chain code start point of every model
+ * segment, keyed on (start x, start y, segment type, segment rotation),
+ * the same columns the start location matcher asks the local relation
+ * about.<br/><br/>
+ *
+ * Lookups may be exact or may accept start points up to a tolerance in
+ * pixels away along each axis, to absorb the one or two pixel shifts
+ * segmentation introduces. Like {@link ChainCodeCorpus} the index is a
+ * snapshot tagged with the database modification epoch it was built at,
+ * see {@link DatabaseModule#getStartPointIndex()}.
+ */
+public final class StartPointIndex {
+	private final long epoch;
+	private final HashMap<Long, Integer> buckets;	// key to bucket number
+	private final int[] bucketStarts;	// first entry of each bucket plus end marker
+	private final int[] xs;				// start x, grouped by bucket
+	private final int[] ys;				// start y, grouped by bucket
+	private final char[] types;			// segment type, grouped by bucket
+	private final short[] rotations;	// segment rotation, grouped by bucket
+	private final int[] ids;			// database id, grouped by bucket
+	private final int[] fileIndex;		// index into fileNames, grouped by bucket
+	private final String[] fileNames;	// distinct model image filenames
+
+	/**
+	 * Build the index from the start point of every model segment, the
+	 * arrays are parallel and may be in any order
+	 * @param epoch -- database modification epoch the data was read at
+	 * @param ids -- database id of each segment
+	 * @param startXs -- x coordinate of each chain code start
+	 * @param startYs -- y coordinate of each chain code start
+	 * @param segmentTypes -- type of each segment
+	 * @param segmentRotations -- rotation of each segment
+	 * @param fileIdx -- position of each segment's filename in fileNames
+	 * @param fileNames -- distinct model image filenames
+	 */
+	StartPointIndex(long epoch, int[] ids, int[] startXs, int[] startYs,
+			        char[] segmentTypes, short[] segmentRotations,
+			        int[] fileIdx, String[] fileNames) {
+		this.epoch = epoch;
+		this.fileNames = fileNames;
+		int n = ids.length;
+
+		/* order entries by key, then by id so results come back in the
+		 * order the database would list them */
+		long[] keys = new long[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = key(startXs[i], startYs[i], segmentTypes[i], segmentRotations[i]);
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> (keys[a] != keys[b]) ?
+				Long.compare(keys[a], keys[b]) : Integer.compare(ids[a], ids[b]));
+
+		this.xs = new int[n];
+		this.ys = new int[n];
+		this.types = new char[n];
+		this.rotations = new short[n];
+		this.ids = new int[n];
+		this.fileIndex = new int[n];
+		this.buckets = new HashMap<Long, Integer>(Math.max(16, n * 2));
+		int[] starts = new int[n+1];
+		int bucketCnt = 0;
+		long lastKey = 0;
+		for (int i = 0; i < n; i++) {
+			int j = order[i];
+			this.xs[i] = startXs[j];
+			this.ys[i] = startYs[j];
+			this.types[i] = segmentTypes[j];
+			this.rotations[i] = segmentRotations[j];
+			this.ids[i] = ids[j];
+			this.fileIndex[i] = fileIdx[j];
+			if ((i == 0) || (keys[j] != lastKey)) {
+				lastKey = keys[j];
+				buckets.put(lastKey, bucketCnt);
+				starts[bucketCnt++] = i;
+			}
+		}
+		starts[bucketCnt] = n;
+		this.bucketStarts = Arrays.copyOf(starts, bucketCnt+1);
+	}
+
+	/**
+	 * Combine the indexes of several model database shards into one
+	 * @param epoch -- database modification epoch the parts were read at
+	 * @param parts -- indexes to combine
+	 * @return index holding every start point of every part
+	 */
+	static StartPointIndex merge(long epoch, List<StartPointIndex> parts) {
+		int n = 0;
+		int fileCnt = 0;
+		for (StartPointIndex part : parts) {
+			n += part.ids.length;
+			fileCnt += part.fileNames.length;
+		}
+		int[] ids = new int[n];
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		char[] types = new char[n];
+		short[] rotations = new short[n];
+		int[] fileIdx = new int[n];
+		String[] fileNames = new String[fileCnt];
+		int row = 0;
+		int file = 0;
+		for (StartPointIndex part : parts) {
+			int rows = part.ids.length;
+			System.arraycopy(part.ids, 0, ids, row, rows);
+			System.arraycopy(part.xs, 0, xs, row, rows);
+			System.arraycopy(part.ys, 0, ys, row, rows);
+			System.arraycopy(part.types, 0, types, row, rows);
+			System.arraycopy(part.rotations, 0, rotations, row, rows);
+			System.arraycopy(part.fileNames, 0, fileNames, file, part.fileNames.length);
+			for (int k = 0; k < rows; k++) {
+				fileIdx[row + k] = part.fileIndex[k] + file;
+			}
+			row += rows;
+			file += part.fileNames.length;
+		}
+		return new StartPointIndex(epoch, ids, xs, ys, types, rotations,
+				                   fileIdx, fileNames);
+	}
+
+	/**
+	 * Database modification epoch this index was built at
+	 * @return epoch value
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Number of start points in the index
+	 * @return entry count
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Find the model segments whose chain code starts at, or within a
+	 * tolerance of, a given point
+	 * @param ccStart -- chain code start point of a sample segment
+	 * @param segmentType -- type of model segment to consider
+	 * @param segmentRotation -- rotation of model segment to consider
+	 * @param tolerance -- pixels the start may be off along each axis, 0
+	 * for an exact match
+	 * @return one container per matching model segment holding the model
+	 * filename or null for a point with negative coordinates
+	 */
+	public List<PointMatchContainer> getImagesMatchingCCStart(Point ccStart,
+			char segmentType, short segmentRotation, int tolerance) {
+		// There are no negative coordinates
+		if ((ccStart == null) || (ccStart.x < 0) || (ccStart.y < 0)){
+			return null;
+		}
+		int x = (int) ccStart.x;
+		int y = (int) ccStart.y;
+		int t = (tolerance < 0) ? 0 : tolerance;
+
+		List<PointMatchContainer> pmcList = new ArrayList<PointMatchContainer>();
+		for (int dx = -t; dx <= t; dx++) {
+			for (int dy = -t; dy <= t; dy++) {
+				Integer bucket = buckets.get(key(x+dx, y+dy, segmentType, segmentRotation));
+				if (bucket == null) {
+					continue;
+				}
+				for (int i = bucketStarts[bucket]; i < bucketStarts[bucket+1]; i++) {
+					/* keys only hold the low bits of a coordinate */
+					if ((xs[i] == x+dx) && (ys[i] == y+dy) &&
+						(types[i] == segmentType) && (rotations[i] == segmentRotation)) {
+						PointMatchContainer pmc = new PointMatchContainer(ccStart);
+						pmc.setMatch(fileNames[fileIndex[i]]);
+						pmcList.add(pmc);
+					}
+				}
+			}
+		}
+		return pmcList;
+	}
+
+	/**
+	 * Answer {@link #getImagesMatchingCCStart(Point, char, short, int)}
+	 * for every start point of a sample at once, the lookups run in parallel
+	 * @param ccStarts -- chain code start points of the sample segments
+	 * @param segmentType -- type of model segment to consider
+	 * @param segmentRotation -- rotation of model segment to consider
+	 * @param tolerance -- pixels the start may be off along each axis
+	 * @return matches for each start point, in the order given
+	 */
+	public List<List<PointMatchContainer>> getImagesMatchingCCStarts(
+			List<Point> ccStarts, char segmentType, short segmentRotation,
+			int tolerance) {
+		List<List<PointMatchContainer>> results =
+				new ArrayList<List<PointMatchContainer>>(ccStarts.size());
+		for (int i = 0; i < ccStarts.size(); i++) {
+			results.add(null);
+		}
+		IntStream.range(0, ccStarts.size()).parallel().forEach((i) -> {
+			List<PointMatchContainer> matches = getImagesMatchingCCStart(
+					ccStarts.get(i), segmentType, segmentRotation, tolerance);
+			synchronized (results) {
+				results.set(i, matches);
+			}
+		});
+		return results;
+	}
+
+	/* 20 bits per coordinate, 8 bits of type, and 16 bits of rotation */
+	private static long key(int x, int y, char segmentType, short segmentRotation) {
+		return (((long) (x & 0xFFFFF)) << 44) | (((long) (y & 0xFFFFF)) << 24) |
+			   (((long) (segmentType & 0xFF)) << 16) | (segmentRotation & 0xFFFF);
+	}
+
+	@Override
+	public String toString() {
+		return "Start point index of " + ids.length + " segments in "
+			   + buckets.size() + " buckets at epoch " + epoch;
+	}
+}
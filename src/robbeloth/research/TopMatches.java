@@ -0,0 +1,173 @@
+package robbeloth.research;
+
+import java.util.Map;
+
+/**
+ * The k best scoring model segments for one sample segment.<br/><br/>
+ *
+ * A matcher collects its parallel stream into one of these per thread
+ * and merges them when the stream ends, so the threads never share
+ * anything while comparing. Scores are ordered first and ties go to the
+ * lower id, which makes the kept segments the same however the work was
+ * split among threads. When the summary weighs the k nearest segments,
+ * each one casts an equal share of the sample segment's vote for its
+ * model image.
+ */
+public final class TopMatches {
+	/* number of nearest model segments kept for each sample segment,
+	 * defaults to 1, the single best match every earlier run used */
+	public static final String K_PROPERTY = "obstruction.matcher.top_k";
+
+	private final int k;
+	private final boolean largestFirst;
+	private final int[] ids;			// best first
+	private final double[] scores;
+	private int size = 0;
+
+	/**
+	 * Create an empty collection
+	 * @param k -- most model segments to keep
+	 * @param largestFirst -- true when a larger score is a better match
+	 */
+	public TopMatches(int k, boolean largestFirst) {
+		this.k = Math.max(1, k);
+		this.largestFirst = largestFirst;
+		this.ids = new int[this.k];
+		this.scores = new double[this.k];
+	}
+
+	/**
+	 * Number of nearest model segments to keep, set with the
+	 * obstruction.matcher.top_k property
+	 * @return k, at least 1
+	 */
+	public static int getDefaultK() {
+		return Math.max(1, Integer.getInteger(K_PROPERTY, 1));
+	}
+
+	/**
+	 * Consider a model segment
+	 * @param id -- database id of the model segment
+	 * @param score -- its score against the sample segment
+	 */
+	public void offer(int id, double score) {
+		if ((size == k) && (!better(id, score, ids[size-1], scores[size-1]))) {
+			return;
+		}
+
+		/* shift worse entries down, dropping the last when full */
+		int pos = (size < k) ? size++ : size - 1;
+		while ((pos > 0) && (better(id, score, ids[pos-1], scores[pos-1]))) {
+			ids[pos] = ids[pos-1];
+			scores[pos] = scores[pos-1];
+			pos--;
+		}
+		ids[pos] = id;
+		scores[pos] = score;
+	}
+
+	/**
+	 * Merge another collection into this one, used as the combiner of a
+	 * parallel stream
+	 * @param other -- collection filled by another thread
+	 */
+	public void addAll(TopMatches other) {
+		for (int i = 0; i < other.size; i++) {
+			offer(other.ids[i], other.scores[i]);
+		}
+	}
+
+	/**
+	 * Largest distance still worth computing exactly, anything further
+	 * cannot be kept
+	 * @return score of the worst kept segment once k are kept, otherwise
+	 * Integer.MAX_VALUE
+	 */
+	public int getIntBound() {
+		if (size < k) {
+			return Integer.MAX_VALUE;
+		}
+		return (int) Math.min(Integer.MAX_VALUE, scores[size-1]);
+	}
+
+	/**
+	 * Score a model segment must beat to be kept
+	 * @return score of the worst kept segment once k are kept, otherwise
+	 * the worst possible score
+	 */
+	public double getBound() {
+		if (size < k) {
+			return largestFirst ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+		return scores[size-1];
+	}
+
+	/**
+	 * @return number of model segments kept
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Database id of a kept segment
+	 * @param rank -- 0 for the best
+	 * @return model segment id
+	 */
+	public int getId(int rank) {
+		return ids[rank];
+	}
+
+	/**
+	 * Score of a kept segment
+	 * @param rank -- 0 for the best
+	 * @return its score
+	 */
+	public double getScore(int rank) {
+		return scores[rank];
+	}
+
+	/**
+	 * @return id of the best model segment, Integer.MIN_VALUE if none was
+	 * offered
+	 */
+	public int getBestId() {
+		return (size > 0) ? ids[0] : Integer.MIN_VALUE;
+	}
+
+	/**
+	 * @return score of the best model segment, the worst possible score
+	 * if none was offered
+	 */
+	public double getBestScore() {
+		if (size > 0) {
+			return scores[0];
+		}
+		return largestFirst ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Cast the sample segment's vote, split evenly among the kept model
+	 * segments' images
+	 * @param votes -- votes so far by model image filename
+	 * @param corpus -- snapshot the ids came from
+	 */
+	public void vote(Map<String, Double> votes, ChainCodeCorpus corpus) {
+		if (size == 0) {
+			votes.merge(corpus.getFileNameForId(Integer.MIN_VALUE), 1.0, Double::sum);
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			votes.merge(corpus.getFileNameForId(ids[i]), 1.0 / size, Double::sum);
+		}
+	}
+
+	/* whether a beats b */
+	private boolean better(int idA, double scoreA, int idB, double scoreB) {
+		int c = Double.compare(scoreA, scoreB);
+		if (c != 0) {
+			return largestFirst ? (c > 0) : (c < 0);
+		}
+		return idA < idB;
+	}
+}
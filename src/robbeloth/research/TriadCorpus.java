@@ -0,0 +1,165 @@
+package robbeloth.research;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.opencv.core.Point;
+
+/**
+ * Read-only, in-memory snapshot of the Delaunay triangulation of every
+ * model image.<br/><br/>
+ *
+ * The Delaunay matchers walk the triangulation of every model on each
+ * match. Asking the database for one model at a time costs a query per
+ * model and a boxed Point per vertex, so every triangulation is loaded in
+ * one pass into a single int array, six coordinates per triangle, with
+ * each model's triangles next to each other. Like {@link ChainCodeCorpus}
+ * the snapshot remembers the database modification epoch it was loaded
+ * at, see {@link DatabaseModule#getTriadCorpus()}.
+ */
+public final class TriadCorpus {
+	private final long epoch;				// database epoch snapshot was taken at
+	private final String[] fileNames;		// model image filenames as stored
+	private final int[] triadStarts;		// model k is triads triadStarts[k]..triadStarts[k+1]
+	private final int[] coordinates;		// x1 y1 x2 y2 x3 y3 of every triad
+	private final HashMap<String, Integer> fileNameIdx;
+
+	/**
+	 * Build a snapshot from already loaded columns
+	 * @param epoch -- database modification epoch the data was read at
+	 * @param fileNames -- distinct model image filenames
+	 * @param triadStarts -- first triad of each model plus one final entry
+	 * holding the total number of triads
+	 * @param coordinates -- six coordinates per triad
+	 */
+	TriadCorpus(long epoch, String[] fileNames, int[] triadStarts,
+			    int[] coordinates) {
+		this.epoch = epoch;
+		this.fileNames = fileNames;
+		this.triadStarts = triadStarts;
+		this.coordinates = coordinates;
+		this.fileNameIdx = new HashMap<String, Integer>(Math.max(16, fileNames.length * 2));
+		for (int k = 0; k < fileNames.length; k++) {
+			fileNameIdx.put(key(fileNames[k]), k);
+		}
+	}
+
+	/**
+	 * Combine the snapshots of several model database shards into one
+	 * @param epoch -- database modification epoch the parts were read at
+	 * @param parts -- snapshots to combine
+	 * @return snapshot holding every model of every part
+	 */
+	static TriadCorpus merge(long epoch, List<TriadCorpus> parts) {
+		int fileCnt = 0;
+		int coordinateCnt = 0;
+		for (TriadCorpus part : parts) {
+			fileCnt += part.fileNames.length;
+			coordinateCnt += part.coordinates.length;
+		}
+		String[] fileNames = new String[fileCnt];
+		int[] triadStarts = new int[fileCnt+1];
+		int[] coordinates = new int[coordinateCnt];
+		int file = 0;
+		int coordinate = 0;
+		for (TriadCorpus part : parts) {
+			int files = part.fileNames.length;
+			System.arraycopy(part.fileNames, 0, fileNames, file, files);
+			System.arraycopy(part.coordinates, 0, coordinates, coordinate,
+					         part.coordinates.length);
+			for (int k = 0; k < files; k++) {
+				triadStarts[file + k] = part.triadStarts[k]
+						                + (coordinate / PackedTriads.INTS_PER_TRIAD);
+			}
+			file += files;
+			coordinate += part.coordinates.length;
+		}
+		triadStarts[fileCnt] = coordinate / PackedTriads.INTS_PER_TRIAD;
+		return new TriadCorpus(epoch, fileNames, triadStarts, coordinates);
+	}
+
+	/* the local relation stores : where the others store /, accept both */
+	private static String key(String filename) {
+		return filename.replace('/', ':');
+	}
+
+	/**
+	 * Database modification epoch this snapshot was loaded at
+	 * @return epoch value
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Number of model images with a triangulation
+	 * @return model count
+	 */
+	public int size() {
+		return fileNames.length;
+	}
+
+	/**
+	 * Find a model image in the snapshot
+	 * @param filename -- model image filename in either representation
+	 * @return position of the model or -1 if it has no triangulation
+	 */
+	public int indexOf(String filename) {
+		Integer k = (filename != null) ? fileNameIdx.get(key(filename)) : null;
+		return (k != null) ? k : -1;
+	}
+
+	/**
+	 * Filename of the kth model
+	 * @param k -- model position in the snapshot
+	 * @return filename as stored in the meta relation
+	 */
+	public String getFileName(int k) {
+		return fileNames[k];
+	}
+
+	/**
+	 * Number of triangles of the kth model
+	 * @param k -- model position in the snapshot
+	 * @return triangle count
+	 */
+	public int getTriadCount(int k) {
+		return triadStarts[k+1] - triadStarts[k];
+	}
+
+	/**
+	 * Coordinates of the triangles of the kth model
+	 * @param k -- model position in the snapshot
+	 * @return x1 y1 x2 y2 x3 y3 of each triangle, in the order they were
+	 * stored
+	 */
+	public int[] getTriads(int k) {
+		return Arrays.copyOfRange(coordinates,
+				triadStarts[k] * PackedTriads.INTS_PER_TRIAD,
+				triadStarts[k+1] * PackedTriads.INTS_PER_TRIAD);
+	}
+
+	/**
+	 * Triangles of the kth model in the form the database used to return
+	 * them in
+	 * @param k -- model position in the snapshot
+	 * @return flattened list of triangle vertices, three per triangle
+	 */
+	public List<Point> toPoints(int k) {
+		int first = triadStarts[k] * PackedTriads.INTS_PER_TRIAD;
+		int last = triadStarts[k+1] * PackedTriads.INTS_PER_TRIAD;
+		List<Point> points = new ArrayList<Point>((last - first) / 2);
+		for (int i = first; i < last; i += 2) {
+			points.add(new Point(coordinates[i], coordinates[i+1]));
+		}
+		return points;
+	}
+
+	@Override
+	public String toString() {
+		return "Triad corpus of " + triadStarts[fileNames.length] + " triads from "
+			   + fileNames.length + " model images at epoch " + epoch;
+	}
+}
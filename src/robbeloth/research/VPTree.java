@@ -0,0 +1,229 @@
+package robbeloth.research;
+
+import java.util.stream.IntStream;
+
+/**
+ * Vantage point tree over the chain codes of a {@link ChainCodeCorpus}
+ * under the metric longest common subsequence distance.<br/><br/>
+ *
+ * Each node is a row, the vantage point, with the median distance of the
+ * rows below it as a radius splitting them into those at most that far
+ * from it, the inside, and those at least that far, the outside. The
+ * distance is a metric, so a sample d from the vantage point is at least
+ * d less the radius from anything inside and at least the radius less d
+ * from anything outside, and a whole half is passed over when that
+ * already exceeds the worst match kept. The tree is laid out in one array
+ * of rows, a node followed by its inside and then its outside, and a
+ * search keeps exactly the model segments a full scan would.<br/><br/>
+ *
+ * A tree cannot take new rows without unbalancing, so rows appended to the
+ * model database are compared one by one after the search, see
+ * {@link #extend(ChainCodeCorpus)}, until there are enough of them to
+ * rebuild.
+ */
+public final class VPTree {
+	/* a half is only passed over by more than this, so rounding never
+	 * drops a model segment the scan would keep */
+	private static final double SLACK = 1e-6;
+
+	/* appended rows scanned one by one before the tree is rebuilt, as a
+	 * fraction of the rows in the tree */
+	private static final int REBUILD_FRACTION = 4;
+
+	/* ranges at least this long measure their distances in parallel */
+	private static final int PARALLEL_RANGE = 4096;
+
+	private final ChainCodeCorpus corpus;
+	private final int treeRows;			// rows laid out in the tree
+	private final int[] order;			// row at each tree position
+	private final double[] radii;		// radius of the node at each position
+	private final int[] outsides;		// position of each node's outside
+
+	/**
+	 * Build the tree of a snapshot
+	 * @param corpus -- model chain codes
+	 */
+	VPTree(ChainCodeCorpus corpus) {
+		this.corpus = corpus;
+		this.treeRows = corpus.size();
+		order = new int[treeRows];
+		radii = new double[treeRows];
+		outsides = new int[treeRows];
+		for (int k = 0; k < treeRows; k++) {
+			order[k] = k;
+		}
+		build(0, treeRows, new double[treeRows]);
+	}
+
+	/* share the tree of an earlier snapshot, whose rows this one starts
+	 * with */
+	private VPTree(ChainCodeCorpus corpus, VPTree earlier) {
+		this.corpus = corpus;
+		this.treeRows = earlier.treeRows;
+		this.order = earlier.order;
+		this.radii = earlier.radii;
+		this.outsides = earlier.outsides;
+	}
+
+	/**
+	 * Tree of a newer snapshot made by appending rows to this one's
+	 * @param newer -- snapshot holding this tree's rows first
+	 * @return this tree with the appended rows left to scan, or a new tree
+	 * once too many rows were appended
+	 */
+	VPTree extend(ChainCodeCorpus newer) {
+		if ((newer.size() - treeRows) * REBUILD_FRACTION > treeRows) {
+			return new VPTree(newer);
+		}
+		return new VPTree(newer, this);
+	}
+
+	/**
+	 * @return number of rows laid out in the tree
+	 */
+	public int size() {
+		return treeRows;
+	}
+
+	/**
+	 * @return number of appended rows compared one by one
+	 */
+	public int getUnindexed() {
+		return corpus.size() - treeRows;
+	}
+
+	/**
+	 * Find the model segments nearest a sample
+	 * @param sample -- sample chain code in the form the matchers compare
+	 * @param k -- number of model segments to keep
+	 * @return the k nearest model segments by database id, with the
+	 * distances rounded to float as the scan keeps them
+	 */
+	public TopMatches nearest(String sample, int k) {
+		TopMatches top = new TopMatches(k, false);
+		BitParallelPattern pattern = new BitParallelPattern(sample);
+		int[] sampleHistogram = DirectionHistograms.histogramOf(sample);
+		DirectionHistograms histograms = corpus.getDirectionHistograms();
+		search(pattern, sampleHistogram, histograms, 0, treeRows, top);
+		for (int row = treeRows; row < corpus.size(); row++) {
+			if ((float) histograms.metricLcsDistanceBound(sampleHistogram, row) > top.getBound()) {
+				continue;
+			}
+			top.offer(corpus.getId(row),
+					  (float) pattern.metricLcsDistance(corpus.getMatchString(row)));
+		}
+		return top;
+	}
+
+	/* search the subtree laid out from lo up to hi */
+	private void search(BitParallelPattern pattern, int[] sampleHistogram,
+			            DirectionHistograms histograms, int lo, int hi, TopMatches top) {
+		if (lo >= hi) {
+			return;
+		}
+		int row = order[lo];
+		int outside = outsides[lo];
+
+		/* when the direction counts alone put the sample far enough from
+		 * the vantage point to pass over the inside, the vantage point
+		 * cannot be kept either, but without its distance the outside
+		 * must still be searched */
+		double atLeast = histograms.metricLcsDistanceBound(sampleHistogram, row);
+		if (atLeast - radii[lo] > top.getBound() + SLACK) {
+			search(pattern, sampleHistogram, histograms, outside, hi, top);
+			return;
+		}
+		double d = pattern.metricLcsDistance(corpus.getMatchString(row));
+		top.offer(corpus.getId(row), (float) d);
+
+		/* the nearer half first, it tightens the bound for the other */
+		if (d <= radii[lo]) {
+			if (d - radii[lo] <= top.getBound() + SLACK) {
+				search(pattern, sampleHistogram, histograms, lo + 1, outside, top);
+			}
+			if (radii[lo] - d <= top.getBound() + SLACK) {
+				search(pattern, sampleHistogram, histograms, outside, hi, top);
+			}
+		}
+		else {
+			if (radii[lo] - d <= top.getBound() + SLACK) {
+				search(pattern, sampleHistogram, histograms, outside, hi, top);
+			}
+			if (d - radii[lo] <= top.getBound() + SLACK) {
+				search(pattern, sampleHistogram, histograms, lo + 1, outside, top);
+			}
+		}
+	}
+
+	/* lay out the rows from lo up to hi as a subtree with the first as
+	 * its vantage point, distances is scratch space */
+	private void build(int lo, int hi, double[] distances) {
+		if (lo >= hi) {
+			return;
+		}
+		if (hi - lo == 1) {
+			outsides[lo] = hi;
+			return;
+		}
+		BitParallelPattern vantage = new BitParallelPattern(corpus.getMatchString(order[lo]));
+		IntStream range = IntStream.range(lo + 1, hi);
+		if (hi - lo >= PARALLEL_RANGE) {
+			range = range.parallel();
+		}
+		range.forEach((p) -> {
+			distances[p] = vantage.metricLcsDistance(corpus.getMatchString(order[p]));
+		});
+
+		/* median splits the rest in two halves of about the same size */
+		int mid = (lo + 1 + hi) >>> 1;
+		select(lo + 1, hi, mid, distances);
+		radii[lo] = distances[mid];
+
+		/* rows as far as the median may fall on either side, the bounds
+		 * hold for both and the halves stay balanced */
+		int outside = mid + 1;
+		outsides[lo] = outside;
+		build(lo + 1, outside, distances);
+		build(outside, hi, distances);
+	}
+
+	/* partially sort positions lo up to hi by distance so position nth
+	 * holds the value a full sort would put there */
+	private void select(int lo, int hi, int nth, double[] distances) {
+		hi--;
+		while (lo < hi) {
+			double pivot = distances[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (distances[i] < pivot) {
+					i++;
+				}
+				while (distances[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--, distances);
+				}
+			}
+			if (nth <= j) {
+				hi = j;
+			}
+			else if (nth >= i) {
+				lo = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	private void swap(int a, int b, double[] distances) {
+		int r = order[a];
+		order[a] = order[b];
+		order[b] = r;
+		double d = distances[a];
+		distances[a] = distances[b];
+		distances[b] = d;
+	}
+}